@@ -48,6 +48,19 @@ public class SessionState {
     }
 
 
+    /**
+     * Makes the current thread act for an existing session, such as a worker
+     * thread doing part of a command on behalf of the session.  Pages the
+     * thread pins are then pinned by the session, and are unpinned along
+     * with the session's other pages.
+     *
+     * @param state the session-state for this local thread
+     */
+    public static void set(SessionState state) {
+        threadLocalState.set(state);
+    }
+
+
     /**
      * Removes the session-state from the thread's thread-local storage.
      */
@@ -5,10 +5,12 @@ import java.io.IOException;
 
 import java.util.ArrayList;
 import java.util.LinkedHashSet;
+import java.util.concurrent.locks.Lock;
 
 import edu.caltech.nanodb.storage.StorageManager;
 import edu.caltech.nanodb.storage.TableFileInfo;
 import edu.caltech.nanodb.storage.TableManager;
+import edu.caltech.nanodb.storage.colstore.ColStoreTableManager;
 
 
 /**
@@ -91,6 +93,20 @@ public class AnalyzeCommand extends Command {
 
 
     public void execute() throws ExecutionException {
+        // Compactions mustn't swap the files of a column-store table while
+        // it is analyzed.
+        Lock queryLock = ColStoreTableManager.getQueryLock().readLock();
+        queryLock.lock();
+        try {
+            analyzeTables();
+        }
+        finally {
+            queryLock.unlock();
+        }
+    }
+
+
+    private void analyzeTables() throws ExecutionException {
         // Make sure that all the tables are valid.
 
         ArrayList<TableFileInfo> tblInfos = new ArrayList<TableFileInfo>();
@@ -20,7 +20,6 @@ import edu.caltech.nanodb.relations.TableConstraintType;
 import edu.caltech.nanodb.relations.TableSchema;
 
 import edu.caltech.nanodb.storage.DBFileType;
-import edu.caltech.nanodb.storage.FileAnalyzer;
 import edu.caltech.nanodb.storage.StorageManager;
 import edu.caltech.nanodb.storage.TableFileInfo;
 import edu.caltech.nanodb.storage.colstore.ColStoreTableManager;
@@ -61,17 +60,6 @@ public class CreateColStoreCommand extends CreateTableCommand {
 
 	@Override
 	public void execute() throws ExecutionException {
-		// Analyze file
-		FileAnalyzer analyzer;
-		try 
-		{
-			analyzer = new FileAnalyzer(fileName);
-			analyzer.analyze(getColumnInfos());
-		}
-		catch (IOException e1) {
-			throw new ExecutionException("There was an error analyzing the data file.");
-		}
-		
 		// Tell storageManager to make colstore table
 		StorageManager storageManager = StorageManager.getInstance();
 
@@ -89,6 +77,7 @@ public class CreateColStoreCommand extends CreateTableCommand {
 						colInfo.getName() + "\".", iae);
 			}
 		}
+		initSortKey(tblFileInfo);
 
 		// Open all tables referenced by foreign-key constraints, so that we can
 		// verify the constraints.
@@ -135,13 +124,10 @@ public class CreateColStoreCommand extends CreateTableCommand {
         logger.debug("New table " + getTableName() + " is created!");
 
         try {
-			((ColStoreTableManager) tblFileInfo.getTableManager()).writeTable(analyzer, tblFileInfo);
+			((ColStoreTableManager) tblFileInfo.getTableManager()).writeTable(fileName, tblFileInfo);
 		} catch (IOException e) {
 			throw new ExecutionException("Could not write to table \"" + getTableName() +
 	                "\".  See nested exception for details.", e);
-		} catch (InterruptedException e) {
-			throw new ExecutionException("Could not write to table \"" + getTableName() +
-	                "\".  See nested exception for details.", e);
 		}
         
         out.println("Created table:  " + getTableName());
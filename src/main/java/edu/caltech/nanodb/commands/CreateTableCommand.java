@@ -11,6 +11,7 @@ import org.apache.log4j.Logger;
 
 import edu.caltech.nanodb.indexes.IndexFileInfo;
 import edu.caltech.nanodb.indexes.IndexInfo;
+import edu.caltech.nanodb.relations.ColumnIndexes;
 import edu.caltech.nanodb.relations.ColumnInfo;
 import edu.caltech.nanodb.relations.ForeignKeyColumnIndexes;
 import edu.caltech.nanodb.relations.KeyColumnIndexes;
@@ -46,6 +47,13 @@ public class CreateTableCommand extends Command {
     private List<ConstraintDecl> constraints = new ArrayList<ConstraintDecl>();
 
     private String engine = "nano";
+
+    /**
+     * The names of the columns the rows of a column-store table are kept
+     * sorted by, given with <tt>SORTED BY</tt>; empty if there is no sort key.
+     */
+    private List<String> sortColumns = new ArrayList<String>();
+
     /**
      * Useful for subclassing.
      */
@@ -106,6 +114,19 @@ public class CreateTableCommand extends Command {
         getConstraints().add(con);
     }
 
+    /**
+     * Adds a column to the sort key of the new table.  This method is
+     * primarily used by the SQL parser.
+     *
+     * @param colName the name of the column
+     */
+    public void addSortColumn(String colName) {
+        if (colName == null)
+            throw new IllegalArgumentException("colName cannot be null");
+
+        sortColumns.add(colName);
+    }
+
     @Override
     public void execute() throws ExecutionException {
         StorageManager storageManager = StorageManager.getInstance();
@@ -147,6 +168,8 @@ public class CreateTableCommand extends Command {
             }
         }
 
+        initSortKey(tblFileInfo);
+
         // Open all tables referenced by foreign-key constraints, so that we can verify the constraints.
         HashMap<String, TableSchema> referencedTables = new HashMap<String, TableSchema>();
         for (ConstraintDecl cd : getConstraints()) {
@@ -182,6 +205,38 @@ public class CreateTableCommand extends Command {
         out.println("Created table:  " + getTableName());
     }
 
+    /**
+     * Resolves the columns of the <tt>SORTED BY</tt> clause, if there is one,
+     * against the new table's schema, and sets the schema's sort key.
+     */
+    protected void initSortKey(TableFileInfo tblFileInfo)
+            throws ExecutionException {
+        if (sortColumns.isEmpty())
+            return;
+
+        if (tblFileInfo.getFileType() != DBFileType.COLUMNSTORE_DATA_FILE) {
+            throw new ExecutionException("Only column-store tables can " +
+                "have a sort key.");
+        }
+
+        TableSchema schema = tblFileInfo.getSchema();
+        int[] colIndexes = new int[sortColumns.size()];
+        for (int i = 0; i < colIndexes.length; i++) {
+            colIndexes[i] = schema.getColumnIndex(sortColumns.get(i));
+            if (colIndexes[i] < 0) {
+                throw new ExecutionException("Sort key column " +
+                    sortColumns.get(i) + " isn't a column of the table.");
+            }
+        }
+
+        try {
+            schema.setSortKey(new ColumnIndexes(colIndexes));
+        } catch (IllegalArgumentException e) {
+            throw new ExecutionException("Sort key columns " + sortColumns +
+                " are listed more than once.", e);
+        }
+    }
+
     protected void initTableConstraints(StorageManager storageManager, TableFileInfo tblFileInfo,
             HashMap<String, TableSchema> referencedTables) throws ExecutionException, IOException {
 
@@ -260,7 +315,9 @@ public class CreateTableCommand extends Command {
 
     @Override
     public String toString() {
-        return "CreateTable[" + getTableName() + "]";
+        if (sortColumns.isEmpty())
+            return "CreateTable[" + getTableName() + "]";
+        return "CreateTable[" + getTableName() + ", sorted by " + sortColumns + "]";
     }
 
     /**
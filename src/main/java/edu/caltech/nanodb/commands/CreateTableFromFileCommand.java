@@ -20,7 +20,6 @@ import edu.caltech.nanodb.relations.TableConstraintType;
 import edu.caltech.nanodb.relations.TableSchema;
 
 import edu.caltech.nanodb.storage.DBFileType;
-import edu.caltech.nanodb.storage.FileAnalyzer;
 import edu.caltech.nanodb.storage.StorageManager;
 import edu.caltech.nanodb.storage.TableFileInfo;
 import edu.caltech.nanodb.storage.colstore.ColStoreTableManager;
@@ -126,15 +125,6 @@ public class CreateTableFromFileCommand extends CreateTableCommand {
 
         out.println("Created table:  " + getTableName());
         
-        FileAnalyzer analyzer = null;
-        try {
-			analyzer = new FileAnalyzer(fileName);
-		} catch (FileNotFoundException e) {
-			// TODO Auto-generated catch block
-			e.printStackTrace();
-		}
-        
-
         // TODO: Write to table.
         
         
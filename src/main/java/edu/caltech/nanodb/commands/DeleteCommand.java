@@ -2,6 +2,7 @@ package edu.caltech.nanodb.commands;
 
 
 import java.io.IOException;
+import java.util.concurrent.locks.Lock;
 
 import edu.caltech.nanodb.expressions.Expression;
 
@@ -18,6 +19,7 @@ import edu.caltech.nanodb.server.EventDispatcher;
 import edu.caltech.nanodb.storage.StorageManager;
 import edu.caltech.nanodb.storage.TableFileInfo;
 import edu.caltech.nanodb.storage.TableManager;
+import edu.caltech.nanodb.storage.colstore.ColStoreTableManager;
 
 
 /**
@@ -126,6 +128,34 @@ public class DeleteCommand extends QueryCommand {
     }
 
 
+    /**
+     * Executes the command.  Column-store tables write their deletion bitmaps
+     * once all of the rows have been deleted, rather than once per row.
+     */
+    @Override
+    public void execute() throws ExecutionException {
+        // Flush the changes before a compaction can swap the table's files.
+        Lock queryLock = ColStoreTableManager.getQueryLock().readLock();
+        queryLock.lock();
+        try {
+            super.execute();
+
+            TableManager tableMgr = tblFileInfo.getTableManager();
+            if (tableMgr instanceof ColStoreTableManager) {
+                try {
+                    ((ColStoreTableManager) tableMgr).flushChanges(tblFileInfo);
+                }
+                catch (IOException e) {
+                    throw new ExecutionException(e);
+                }
+            }
+        }
+        finally {
+            queryLock.unlock();
+        }
+    }
+
+
     protected TupleProcessor getTupleProcessor() {
         return new TupleRemover(tblFileInfo);
     }
@@ -3,8 +3,10 @@ package edu.caltech.nanodb.commands;
 
 import java.io.FileNotFoundException;
 import java.io.IOException;
+import java.util.concurrent.locks.Lock;
 
 import edu.caltech.nanodb.storage.StorageManager;
+import edu.caltech.nanodb.storage.colstore.ColStoreTableManager;
 
 import org.apache.log4j.Logger;
 
@@ -59,6 +61,20 @@ public class DropTableCommand extends Command {
      *         table cannot be deleted for some reason.
      */
     public void execute() throws ExecutionException {
+        // Wait for any compaction of a column-store table to be done with the
+        // table's files.
+        Lock dropLock = ColStoreTableManager.getQueryLock().writeLock();
+        dropLock.lock();
+        try {
+            dropTable();
+        }
+        finally {
+            dropLock.unlock();
+        }
+    }
+
+
+    private void dropTable() throws ExecutionException {
         StorageManager storageManager = StorageManager.getInstance();
 
         // See if the table already doesn't exist.
@@ -3,6 +3,7 @@ package edu.caltech.nanodb.commands;
 
 import java.io.IOException;
 import java.util.List;
+import java.util.concurrent.locks.Lock;
 
 import edu.caltech.nanodb.expressions.Expression;
 import edu.caltech.nanodb.expressions.ExpressionException;
@@ -18,6 +19,7 @@ import edu.caltech.nanodb.server.EventDispatcher;
 import edu.caltech.nanodb.storage.StorageManager;
 import edu.caltech.nanodb.storage.TableFileInfo;
 import edu.caltech.nanodb.storage.TableManager;
+import edu.caltech.nanodb.storage.colstore.ColStoreTableManager;
 
 
 /**
@@ -161,8 +163,18 @@ public class InsertCommand extends QueryCommand {
 
         if (values != null) {
             // Inserting a single row.
-            if (!explain)
-                insertSingleRow();
+            if (!explain) {
+                // Keep compactions from swapping the files of a column-store
+                // table while the row is added to its delta store.
+                Lock queryLock = ColStoreTableManager.getQueryLock().readLock();
+                queryLock.lock();
+                try {
+                    insertSingleRow();
+                }
+                finally {
+                    queryLock.unlock();
+                }
+            }
             else
                 out.println("Nothing to explain about INSERT ... VALUES");
         }
@@ -1,11 +1,11 @@
 package edu.caltech.nanodb.commands;
 
-import edu.caltech.nanodb.storage.FileAnalyzer;
 import edu.caltech.nanodb.storage.StorageManager;
 import edu.caltech.nanodb.storage.TableFileInfo;
 import edu.caltech.nanodb.storage.colstore.ColStoreTableManager;
 
 import java.io.IOException;
+import java.util.concurrent.locks.Lock;
 
 /**
  * 从文本文件中加载数据
@@ -34,31 +34,27 @@ public class LoadFileCommand extends Command {
     @Override
     public void execute() throws ExecutionException {
 
-        // 获取导入表的信息
-        TableFileInfo tableFileInfo;
+        // 导入期间不允许OPTIMIZE替换表的列文件
+        Lock queryLock = ColStoreTableManager.getQueryLock().readLock();
+        queryLock.lock();
         try {
-            tableFileInfo = StorageManager.getInstance().openTable(tableName);
-        } catch (IOException e) {
-            throw new ExecutionException("Failed to get table file info for table " + tableName);
-        }
-
-        // 解析要导入的文件
-        FileAnalyzer analyzer;
-        try {
-            analyzer = new FileAnalyzer(fileName);
-            analyzer.analyze(tableFileInfo.getSchema().getColumnInfos());
-        } catch (IOException e) {
-            throw new ExecutionException("There was an error analyzing the data file.");
-        }
-
-        // 导入文件
-        try {
-            ColStoreTableManager tableManager = (ColStoreTableManager) tableFileInfo.getTableManager();
-            tableManager.writeTable(analyzer, tableFileInfo);
-        } catch (IOException e) {
-            throw new ExecutionException("Could not write to table " + tableName + ".  See nested exception ", e);
-        } catch (InterruptedException e) {
-            throw new ExecutionException("Could not write to table " + tableName + ".  See nested exception ", e);
+            // 获取导入表的信息
+            TableFileInfo tableFileInfo;
+            try {
+                tableFileInfo = StorageManager.getInstance().openTable(tableName);
+            } catch (IOException e) {
+                throw new ExecutionException("Failed to get table file info for table " + tableName);
+            }
+
+            // 解析并导入文件(只读一遍文件)
+            try {
+                ColStoreTableManager tableManager = (ColStoreTableManager) tableFileInfo.getTableManager();
+                tableManager.writeTable(fileName, tableFileInfo);
+            } catch (IOException e) {
+                throw new ExecutionException("Could not write to table " + tableName + ".  See nested exception ", e);
+            }
+        } finally {
+            queryLock.unlock();
         }
     }
 }
@@ -5,19 +5,30 @@ import java.io.IOException;
 
 import java.util.ArrayList;
 import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.concurrent.Future;
 
 import edu.caltech.nanodb.indexes.IndexFileInfo;
 import edu.caltech.nanodb.indexes.IndexManager;
 import edu.caltech.nanodb.relations.ColumnIndexes;
 import edu.caltech.nanodb.relations.TableSchema;
+import edu.caltech.nanodb.storage.DBFileType;
 import edu.caltech.nanodb.storage.StorageManager;
 import edu.caltech.nanodb.storage.TableFileInfo;
+import edu.caltech.nanodb.storage.colstore.ColStoreTableManager;
+import edu.caltech.nanodb.util.PropertiesUtil;
 
 
 /**
  * This Command class represents the <tt>OPTIMIZE</tt> SQL command, which
  * optimizes a table's representation (along with any indexes) to improve access
  * performance and space utilization.  This is not a standard SQL command.
+ * <p>
+ * For a column-store table, the table is compacted: its row groups are
+ * rewritten without their deleted rows, together with the rows of its delta
+ * store, into large row groups, sorted by the columns of the optional
+ * <tt>ORDER BY</tt> clause.  The compaction runs in the background unless
+ * {@link ColStoreTableManager#PROP_OPTIMIZE_BACKGROUND} is false.
  */
 public class OptimizeCommand extends Command {
 
@@ -28,6 +39,10 @@ public class OptimizeCommand extends Command {
     private LinkedHashSet<String> tableNames;
 
 
+    /** The columns to sort the rows of column-store tables by. */
+    private ArrayList<String> sortColumns;
+
+
     /**
      * Construct a new <tt>OPTIMIZE</tt> command with an empty table list.
      * Tables can be added to the internal list using the {@link #addTable}
@@ -36,6 +51,7 @@ public class OptimizeCommand extends Command {
     public OptimizeCommand() {
         super(Command.Type.UTILITY);
         tableNames = new LinkedHashSet<String>();
+        sortColumns = new ArrayList<String>();
     }
 
 
@@ -64,6 +80,25 @@ public class OptimizeCommand extends Command {
     }
 
 
+    /**
+     * Add a column to sort the rows of column-store tables by.  The rows are
+     * sorted by the columns in the order they are added.
+     *
+     * @param colName the name of the column
+     */
+    public void addSortColumn(String colName) {
+        if (colName == null)
+            throw new NullPointerException("colName cannot be null");
+
+        sortColumns.add(colName);
+    }
+
+
+    public List<String> getSortColumns() {
+        return sortColumns;
+    }
+
+
     public void execute() throws ExecutionException {
         // Optimize each table!
 
@@ -84,6 +119,13 @@ public class OptimizeCommand extends Command {
 
         for (TableFileInfo tblFileInfo : tblInfos) {
 
+            if (tblFileInfo.getFileType() == DBFileType.COLUMNSTORE_DATA_FILE) {
+                ColStoreTableManager tableManager =
+                    (ColStoreTableManager) tblFileInfo.getTableManager();
+                compact(tableManager, tblFileInfo);
+                continue;
+            }
+
             out.println("TODO:  Optimizing table " + tblFileInfo.getTableName());
 
             /*
@@ -118,6 +160,51 @@ public class OptimizeCommand extends Command {
     }
 
 
+    /**
+     * Compacts a column-store table, and waits for the compaction unless it
+     * should run in the background.
+     */
+    private void compact(ColStoreTableManager tableManager,
+                         TableFileInfo tblFileInfo) throws ExecutionException {
+        String tableName = tblFileInfo.getTableName();
+        Future<Integer> result;
+        try {
+            result = tableManager.startCompaction(tblFileInfo, sortColumns);
+        }
+        catch (IllegalArgumentException e) {
+            throw new ExecutionException(e.getMessage(), e);
+        }
+
+        if (Boolean.parseBoolean(PropertiesUtil.getProperty(
+            ColStoreTableManager.PROP_OPTIMIZE_BACKGROUND, "true"))) {
+            out.printf("Compacting table %s in the background.%n", tableName);
+            return;
+        }
+
+        int rows;
+        try {
+            rows = result.get();
+        }
+        catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new ExecutionException("Interrupted while optimizing table " +
+                tableName, e);
+        }
+        catch (java.util.concurrent.ExecutionException e) {
+            throw new ExecutionException("Error occurred while optimizing " +
+                "table " + tableName, e.getCause());
+        }
+
+        if (rows < 0) {
+            out.printf("Table %s changed while it was being compacted, and " +
+                "was left as it was.%n", tableName);
+        }
+        else {
+            out.printf("Compacted table %s into %d rows.%n", tableName, rows);
+        }
+    }
+
+
     /**
      * Prints a simple representation of the optimize command, including the
      * names of the tables to be optimized.
@@ -126,6 +213,8 @@ public class OptimizeCommand extends Command {
      */
     @Override
     public String toString() {
-        return "Optimize[" + tableNames + "]";
+        if (sortColumns.isEmpty())
+            return "Optimize[" + tableNames + "]";
+        return "Optimize[" + tableNames + ", order by " + sortColumns + "]";
     }
 }
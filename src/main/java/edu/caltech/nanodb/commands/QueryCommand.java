@@ -2,6 +2,7 @@ package edu.caltech.nanodb.commands;
 
 
 import java.io.IOException;
+import java.util.concurrent.locks.Lock;
 
 import edu.caltech.nanodb.qeval.PlanCost;
 import org.apache.log4j.Logger;
@@ -11,6 +12,7 @@ import edu.caltech.nanodb.qeval.EvalStats;
 import edu.caltech.nanodb.qeval.QueryEvaluator;
 import edu.caltech.nanodb.qeval.TupleProcessor;
 import edu.caltech.nanodb.relations.SchemaNameException;
+import edu.caltech.nanodb.storage.colstore.ColStoreTableManager;
 
 
 /**
@@ -79,6 +81,10 @@ public abstract class QueryCommand extends Command {
 
     public void execute() throws ExecutionException {
 
+        // Keep compactions from swapping the files of column-store tables
+        // while the query reads them.
+        Lock queryLock = ColStoreTableManager.getQueryLock().readLock();
+        queryLock.lock();
         try {
             prepareQueryPlan();
 
@@ -157,6 +163,9 @@ public abstract class QueryCommand extends Command {
         catch (Exception e) {
             throw new ExecutionException(e);
         }
+        finally {
+            queryLock.unlock();
+        }
     }
 
 
@@ -2,6 +2,7 @@ package edu.caltech.nanodb.commands;
 
 
 import java.io.IOException;
+import java.util.concurrent.locks.Lock;
 
 import java.util.ArrayList;
 import java.util.HashMap;
@@ -23,6 +24,7 @@ import edu.caltech.nanodb.server.EventDispatcher;
 import edu.caltech.nanodb.storage.StorageManager;
 import edu.caltech.nanodb.storage.TableFileInfo;
 import edu.caltech.nanodb.storage.TableManager;
+import edu.caltech.nanodb.storage.colstore.ColStoreTableManager;
 
 
 /**
@@ -199,6 +201,35 @@ public class UpdateCommand extends QueryCommand {
     }
 
 
+    /**
+     * Executes the command.  Column-store tables add the new versions of
+     * the updated rows to their delta store, and write their deletion
+     * bitmaps, once all of the rows have been updated.
+     */
+    @Override
+    public void execute() throws ExecutionException {
+        // Flush the changes before a compaction can swap the table's files.
+        Lock queryLock = ColStoreTableManager.getQueryLock().readLock();
+        queryLock.lock();
+        try {
+            super.execute();
+
+            TableManager tableMgr = tblFileInfo.getTableManager();
+            if (tableMgr instanceof ColStoreTableManager) {
+                try {
+                    ((ColStoreTableManager) tableMgr).flushChanges(tblFileInfo);
+                }
+                catch (IOException e) {
+                    throw new ExecutionException(e);
+                }
+            }
+        }
+        finally {
+            queryLock.unlock();
+        }
+    }
+
+
     protected TupleProcessor getTupleProcessor() {
         return new TupleUpdater(tblFileInfo, values);
     }
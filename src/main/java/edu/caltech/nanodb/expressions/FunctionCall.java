@@ -4,10 +4,14 @@ package edu.caltech.nanodb.expressions;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collection;
+import java.util.HashSet;
+import java.util.Set;
 
 import edu.caltech.nanodb.functions.Function;
 import edu.caltech.nanodb.functions.FunctionDirectory;
 import edu.caltech.nanodb.relations.ColumnInfo;
+import edu.caltech.nanodb.relations.ColumnType;
+import edu.caltech.nanodb.relations.SQLDataType;
 import edu.caltech.nanodb.relations.Schema;
 import edu.caltech.nanodb.relations.SchemaNameException;
 
@@ -29,6 +33,15 @@ public class FunctionCall extends Expression {
     private Function function;
 
 
+    /**
+     * The names of the aggregate functions.  These aren't in the
+     * {@link FunctionDirectory}, since they are computed by plan nodes rather
+     * than evaluated against a single tuple.
+     */
+    private static final Set<String> AGGREGATE_NAMES = new HashSet<String>(
+        Arrays.asList("COUNT", "COUNT-DISTINCT", "SUM", "AVG", "MIN", "MAX"));
+
+
     public FunctionCall(String funcName, Expression... args) {
         if (funcName == null)
             throw new IllegalArgumentException("funcName cannot be null");
@@ -57,14 +70,85 @@ public class FunctionCall extends Expression {
     }
 
 
+    /**
+     * Returns the name of the function, in uppercase.
+     *
+     * @return the name of the function
+     */
+    public String getFunctionName() {
+        return funcName.trim().toUpperCase();
+    }
+
+
+    /**
+     * Returns the arguments of the function call.  <tt>COUNT(*)</tt> has no
+     * arguments.
+     *
+     * @return the arguments of the function call
+     */
+    public ArrayList<Expression> getArguments() {
+        return args;
+    }
+
+
+    /**
+     * Returns true if this is a call to an aggregate function such as
+     * <tt>COUNT</tt> or <tt>SUM</tt>.
+     *
+     * @return true if this is a call to an aggregate function
+     */
+    public boolean isAggregate() {
+        return AGGREGATE_NAMES.contains(getFunctionName());
+    }
+
+
     @Override
     public ColumnInfo getColumnInfo(Schema schema) throws SchemaNameException {
+        if (function == null) {
+            if (isAggregate())
+                return getAggregateColumnInfo(schema);
+
+            throw new ExpressionException("Unrecognized function " + funcName);
+        }
         return function.getReturnType(args, schema);
     }
 
 
+    /** Computes the result type of an aggregate function call. */
+    private ColumnInfo getAggregateColumnInfo(Schema schema) {
+        String name = getFunctionName();
+        ColumnType type;
+        if (name.startsWith("COUNT")) {
+            type = new ColumnType(SQLDataType.INTEGER);
+        }
+        else if (name.equals("AVG")) {
+            type = new ColumnType(SQLDataType.DOUBLE);
+        }
+        else {
+            type = args.get(0).getColumnInfo(schema).getType();
+            if (name.equals("SUM")) {
+                switch (type.getBaseType()) {
+                case INTEGER:
+                case SMALLINT:
+                case BIGINT:
+                case TINYINT:
+                    type = new ColumnType(SQLDataType.BIGINT);
+                    break;
+
+                default:
+                    type = new ColumnType(SQLDataType.DOUBLE);
+                }
+            }
+        }
+        return new ColumnInfo(toString(), type);
+    }
+
+
     @Override
     public Object evaluate(Environment env) throws ExpressionException {
+        if (function == null)
+            throw new ExpressionException("Cannot evaluate function " + funcName);
+
         return function.evaluate(env, args);
     }
 
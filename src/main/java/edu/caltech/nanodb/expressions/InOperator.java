@@ -181,6 +181,16 @@ public class InOperator extends Expression {
     }
 
 
+    /**
+     * Returns the expression on the lefthand side of the <tt>IN</tt> operation.
+     *
+     * @return the expression checked against the values or subquery
+     */
+    public Expression getExpression() {
+        return expr;
+    }
+
+
     /**
      * If the <tt>IN</tt> operation has a list of values on the righthand side,
      * this will be the list of values.  Otherwise, this will be <tt>null</tt>.
@@ -0,0 +1,1384 @@
+package edu.caltech.nanodb.plans;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.log4j.Logger;
+
+import edu.caltech.nanodb.client.SessionState;
+import edu.caltech.nanodb.commands.SelectClause;
+import edu.caltech.nanodb.commands.SelectValue;
+import edu.caltech.nanodb.expressions.ColumnName;
+import edu.caltech.nanodb.expressions.ColumnValue;
+import edu.caltech.nanodb.expressions.Expression;
+import edu.caltech.nanodb.expressions.FunctionCall;
+import edu.caltech.nanodb.expressions.TupleLiteral;
+import edu.caltech.nanodb.relations.ColumnInfo;
+import edu.caltech.nanodb.relations.ColumnType;
+import edu.caltech.nanodb.relations.SQLDataType;
+import edu.caltech.nanodb.relations.Schema;
+import edu.caltech.nanodb.relations.Tuple;
+import edu.caltech.nanodb.storage.DBPage;
+import edu.caltech.nanodb.storage.StorageManager;
+import edu.caltech.nanodb.storage.TableFileInfo;
+import edu.caltech.nanodb.storage.colstore.BlockColumnStoreReader;
+import edu.caltech.nanodb.storage.colstore.CSHeaderPage;
+import edu.caltech.nanodb.storage.colstore.ColStoreTableManager;
+import edu.caltech.nanodb.storage.colstore.ColumnBatch;
+import edu.caltech.nanodb.storage.colstore.DeltaStore;
+import edu.caltech.nanodb.storage.colstore.ZoneMap;
+import edu.caltech.nanodb.util.PropertiesUtil;
+
+/**
+ * PlanNode that computes <tt>COUNT</tt>, <tt>SUM</tt>, <tt>AVG</tt>,
+ * <tt>MIN</tt> and <tt>MAX</tt> over any columns of a column-store table,
+ * optionally grouped by any columns.  The columns are read a batch at a
+ * time, as by {@link CSProjectNode}: the predicate columns first, and the
+ * other columns only for the rows that passed.  No tuple is built per row.
+ * <p>
+ * The values of each grouping column are mapped to dense ids, by dictionary
+ * code for batches of codes, and through a hash table of primitive values
+ * for numeric columns, so that a value is only boxed the first time it is
+ * seen.  With several grouping columns, the ids are combined column by
+ * column into group numbers.  The aggregates keep their state in primitive
+ * arrays indexed by group number.
+ * <p>
+ * Large tables are scanned by {@link #PROP_SCAN_THREADS} worker threads.
+ * The rows are split into morsels of about {@link #PROP_SCAN_MORSEL_ROWS}
+ * rows, which start on page boundaries of one of the columns; the workers
+ * take the morsels in order, and each aggregates its morsels into its own
+ * groups.  The groups of the workers are merged once the scan is done.
+ * <p>
+ * Queries over a single column are better served by
+ * {@link CSRunAggregateNode}, which works on runs instead of rows, unless
+ * the scan can use several threads.
+ */
+public class CSAggregateNode extends PlanNode {
+
+    /** A logging object for reporting anything interesting that happens. */
+    private static Logger logger = Logger.getLogger(CSAggregateNode.class);
+
+    /**
+     * The property for the number of threads that scan a column-store table
+     * for an aggregate query.  It defaults to the number of processors; with
+     * 1, the table is scanned on the calling thread.
+     */
+    public static final String PROP_SCAN_THREADS = "nanodb.scan.threads";
+
+    /**
+     * The property for the number of rows of the morsels that the scan
+     * threads take one at a time.  It defaults to 64K rows.
+     */
+    public static final String PROP_SCAN_MORSEL_ROWS = "nanodb.scan.morselRows";
+
+    /** The table to aggregate. */
+    private TableFileInfo tblFileInfo;
+
+    /** The select values, each either a grouping column or an aggregate. */
+    private List<SelectValue> selectValues;
+
+    /** The predicate of the <tt>SELECT</tt> clause, or null. */
+    private Expression predicate;
+
+    /** The grouping expressions, which are all columns. */
+    private List<Expression> groupByExprs;
+
+    /** The index in the table of each column the node reads. */
+    private int[] columnIndexes;
+
+    /** The position in the columns read of each grouping column. */
+    private int[] groupBatches;
+
+    /**
+     * For each select value, the position in {@link #groupBatches} of the
+     * grouping column it outputs, or -1 if it is an aggregate.
+     */
+    private int[] outputGroups;
+
+    /** For each select value, the aggregate function it computes, or null. */
+    private String[] functions;
+
+    /**
+     * For each aggregate, the position in the columns read of the column it
+     * aggregates, or -1 for <tt>COUNT(*)</tt>.
+     */
+    private int[] argBatches;
+
+    /** For each aggregate, the type of the column it aggregates, or null. */
+    private ColumnType[] argTypes;
+
+    /** The result tuples, computed on the first call to getNextTuple(). */
+    private Iterator<TupleLiteral> results;
+
+
+    public CSAggregateNode(SelectClause selClause, TableFileInfo tblFileInfo) {
+        super(OperationType.GROUP_AGGREGATE);
+
+        this.tblFileInfo = tblFileInfo;
+        selectValues = selClause.getSelectValues();
+        predicate = selClause.getWhereExpr();
+        groupByExprs = selClause.getGroupByExprs();
+    }
+
+
+    /**
+     * Returns true if the query can be computed by this node: every select
+     * value is either <tt>COUNT(*)</tt>, an aggregate over a column, or a
+     * grouping column, the query only groups by columns of the table, and
+     * there is no <tt>HAVING</tt> clause.
+     *
+     * @param selClause the query
+     * @param tblFileInfo the column-store table the query reads
+     *
+     * @return true if the node can compute the query
+     */
+    public static boolean canEvaluate(SelectClause selClause,
+                                      TableFileInfo tblFileInfo) {
+        if (selClause.getHavingExpr() != null)
+            return false;
+
+        Schema schema = tblFileInfo.getSchema();
+        List<Expression> groupBy = selClause.getGroupByExprs();
+        for (Expression expr : groupBy) {
+            if (!(expr instanceof ColumnValue) || findColumn(schema, expr) < 0)
+                return false;
+        }
+
+        for (SelectValue selVal : selClause.getSelectValues()) {
+            if (!selVal.isExpression())
+                return false;
+
+            Expression expr = selVal.getExpression();
+            if (expr instanceof ColumnValue) {
+                if (!groupBy.contains(expr))
+                    return false;
+            }
+            else if (expr instanceof FunctionCall) {
+                FunctionCall call = (FunctionCall) expr;
+                String name = call.getFunctionName();
+                if (!call.isAggregate() || name.equals("COUNT-DISTINCT"))
+                    return false;
+
+                // COUNT(*) has no arguments.
+                if (call.getArguments().isEmpty() && name.equals("COUNT"))
+                    continue;
+
+                if (call.getArguments().size() != 1 ||
+                    !(call.getArguments().get(0) instanceof ColumnValue)) {
+                    return false;
+                }
+
+                int i = findColumn(schema, call.getArguments().get(0));
+                if (i < 0)
+                    return false;
+                if ((name.equals("SUM") || name.equals("AVG")) &&
+                    !SQLDataType.isNumber(
+                        schema.getColumnInfo(i).getType().getBaseType())) {
+                    return false;
+                }
+            }
+            else {
+                return false;
+            }
+        }
+        return true;
+    }
+
+
+    /** Returns the number of threads aggregate queries scan tables with. */
+    public static int getScanThreads() {
+        String str = PropertiesUtil.getProperty(PROP_SCAN_THREADS);
+        if (str == null)
+            return Runtime.getRuntime().availableProcessors();
+
+        return Math.max(1, PropertiesUtil.getInt(PROP_SCAN_THREADS, 1));
+    }
+
+
+    /** Returns the index of the table column an expression refers to. */
+    private static int findColumn(Schema schema, Expression expr) {
+        ColumnName colName = ((ColumnValue) expr).getColumnName();
+        try {
+            return schema.getColumnIndex(colName);
+        }
+        catch (RuntimeException e) {
+            // The name is ambiguous or a wildcard.
+            return -1;
+        }
+    }
+
+
+    @Override
+    public void prepare() {
+        Schema inputSchema = tblFileInfo.getSchema();
+
+        // The columns to read: the grouping columns, then the aggregated
+        // columns, each once.
+        ArrayList<Integer> columns = new ArrayList<Integer>();
+        groupBatches = new int[groupByExprs.size()];
+        for (int i = 0; i < groupBatches.length; i++)
+            groupBatches[i] = addColumn(columns, findColumn(inputSchema, groupByExprs.get(i)));
+
+        schema = new Schema();
+        outputGroups = new int[selectValues.size()];
+        functions = new String[selectValues.size()];
+        argBatches = new int[selectValues.size()];
+        argTypes = new ColumnType[selectValues.size()];
+        for (int i = 0; i < selectValues.size(); i++) {
+            SelectValue selVal = selectValues.get(i);
+            Expression expr = selVal.getExpression();
+
+            ColumnInfo info = expr.getColumnInfo(inputSchema);
+            if (selVal.getAlias() != null)
+                info = new ColumnInfo(selVal.getAlias(), info.getType());
+            schema.addColumnInfo(info);
+
+            outputGroups[i] = -1;
+            argBatches[i] = -1;
+            if (expr instanceof ColumnValue) {
+                outputGroups[i] = groupByExprs.indexOf(expr);
+                continue;
+            }
+
+            FunctionCall call = (FunctionCall) expr;
+            functions[i] = call.getFunctionName();
+            if (!call.getArguments().isEmpty()) {
+                int column = findColumn(inputSchema, call.getArguments().get(0));
+                argBatches[i] = addColumn(columns, column);
+                argTypes[i] = inputSchema.getColumnInfo(column).getType();
+            }
+        }
+
+        // Something has to be read to count the rows.
+        if (columns.isEmpty() && predicate == null)
+            columns.add(0);
+
+        columnIndexes = new int[columns.size()];
+        for (int i = 0; i < columnIndexes.length; i++)
+            columnIndexes[i] = columns.get(i);
+    }
+
+
+    /**
+     * Adds a table column to the columns to read, unless it's there already.
+     *
+     * @return the position of the column in the columns to read
+     */
+    private static int addColumn(List<Integer> columns, int column) {
+        int i = columns.indexOf(column);
+        if (i < 0) {
+            i = columns.size();
+            columns.add(column);
+        }
+        return i;
+    }
+
+
+    private static Accumulator newAccumulator(String function, ColumnType argType) {
+        switch (function) {
+        case "COUNT":
+            return new CountAccumulator();
+
+        case "SUM":
+        case "AVG":
+            return new SumAccumulator(function.equals("AVG"), argType);
+
+        case "MIN":
+        case "MAX":
+            return new MinMaxAccumulator(function.equals("MAX"), argType);
+
+        default:
+            throw new IllegalArgumentException("Unsupported aggregate " + function);
+        }
+    }
+
+
+    @Override
+    public void initialize() {
+        super.initialize();
+        results = null;
+    }
+
+
+    @Override
+    public Tuple getNextTuple() throws IllegalStateException, IOException {
+        if (results == null)
+            results = computeResults().iterator();
+
+        return results.hasNext() ? results.next() : null;
+    }
+
+
+    /** Reads every row of the columns and computes the result tuples. */
+    private List<TupleLiteral> computeResults() throws IOException {
+        int[] morsels = makeMorsels();
+        int threads = Math.min(getScanThreads(), morsels.length - 1);
+
+        Partial result;
+        if (threads <= 1) {
+            result = new Partial();
+            result.prepare();
+            result.scanRows(-1, -1);
+        }
+        else {
+            result = scanInParallel(morsels, threads);
+        }
+
+        result.addDeltaRows();
+
+        int numGroups = result.getNumGroups();
+        ArrayList<TupleLiteral> tuples = new ArrayList<TupleLiteral>();
+        int[] keyIds = new int[groupBatches.length];
+        for (int g = 0; g < numGroups; g++) {
+            result.getKeyIds(g, keyIds);
+            TupleLiteral tuple = new TupleLiteral();
+            for (int i = 0; i < selectValues.size(); i++) {
+                if (functions[i] != null) {
+                    tuple.addValue(result.accumulators[i].getResult(g));
+                }
+                else {
+                    int k = outputGroups[i];
+                    tuple.addValue(result.keyColumns[k].getValue(keyIds[k]));
+                }
+            }
+            tuples.add(tuple);
+        }
+
+        logger.debug(String.format("Aggregated %d rows into %d groups",
+            result.rows, numGroups));
+        return tuples;
+    }
+
+
+    /**
+     * Splits the table's rows into morsels for the scan threads.  The morsels
+     * start on page boundaries of the first column read, if it has a zone
+     * map, so that no page of that column is read by two threads.
+     *
+     * @return the first row of each morsel, followed by the number of rows
+     *         of the table
+     */
+    private int[] makeMorsels() throws IOException {
+        DBPage headerPage = StorageManager.getInstance().loadDBPage(
+            tblFileInfo.getDBFile(), 0);
+        int numRows = CSHeaderPage.getNumRows(headerPage);
+        int morselRows = Math.max(1,
+            PropertiesUtil.getInt(PROP_SCAN_MORSEL_ROWS, 1 << 16));
+
+        int column = (columnIndexes.length > 0) ? columnIndexes[0] : 0;
+        ZoneMap zoneMap = (numRows > morselRows) ?
+            new BlockColumnStoreReader().readZoneMap(tblFileInfo, column) : null;
+
+        ArrayList<Integer> starts = new ArrayList<Integer>();
+        starts.add(0);
+        if (zoneMap != null) {
+            for (int i = 0; i < zoneMap.size(); i++) {
+                int row = zoneMap.getFirstRow(i);
+                if (row - starts.get(starts.size() - 1) >= morselRows && row < numRows)
+                    starts.add(row);
+            }
+        }
+        else {
+            for (int row = morselRows; row < numRows; row += morselRows)
+                starts.add(row);
+        }
+
+        int[] morsels = new int[starts.size() + 1];
+        for (int i = 0; i < starts.size(); i++)
+            morsels[i] = starts.get(i);
+        morsels[starts.size()] = numRows;
+        return morsels;
+    }
+
+
+    /**
+     * Aggregates the morsels of the table on a pool of worker threads, each
+     * with its own scans and groups, and merges the workers' groups.
+     *
+     * @param morsels the morsels, as returned by {@link #makeMorsels}
+     * @param threads the number of worker threads
+     * @return the merged groups
+     */
+    private Partial scanInParallel(final int[] morsels, int threads)
+            throws IOException {
+        logger.debug(String.format("Scanning %d morsels with %d threads",
+            morsels.length - 1, threads));
+
+        final SessionState session = SessionState.get();
+        final AtomicInteger nextMorsel = new AtomicInteger();
+        final Partial[] partials = new Partial[threads];
+        ExecutorService pool = Executors.newFixedThreadPool(threads);
+        try {
+            List<Future<Void>> futures = new ArrayList<Future<Void>>();
+            for (int i = 0; i < threads; i++) {
+                final Partial partial = new Partial();
+                partials[i] = partial;
+                futures.add(pool.submit(new Callable<Void>() {
+                    @Override
+                    public Void call() throws IOException {
+                        SessionState.set(session);
+                        partial.prepare();
+
+                        // Morsels are taken in increasing order, so the
+                        // worker's scans only move forward.
+                        int m;
+                        while ((m = nextMorsel.getAndIncrement()) < morsels.length - 1)
+                            partial.scanRows(morsels[m], morsels[m + 1]);
+                        return null;
+                    }
+                }));
+            }
+            waitForAll(futures);
+        }
+        finally {
+            pool.shutdownNow();
+        }
+
+        for (int i = 1; i < partials.length; i++)
+            partials[0].merge(partials[i]);
+        return partials[0];
+    }
+
+
+    /** Waits for the worker tasks, and reports the first one that failed. */
+    private static void waitForAll(List<Future<Void>> futures)
+            throws IOException {
+        try {
+            for (Future<Void> future : futures)
+                future.get();
+        }
+        catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while scanning table");
+        }
+        catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof IOException)
+                throw (IOException) cause;
+            if (cause instanceof RuntimeException)
+                throw (RuntimeException) cause;
+            throw new IOException(cause);
+        }
+    }
+
+
+    /**
+     * The scans and the groups of one thread: either the whole scan, or one
+     * of the workers of a parallel scan.
+     */
+    private class Partial {
+        /** Reads and evaluates the predicate columns. */
+        private CSSimpleFilterNode predNode;
+
+        /** The scans of the columns read, other than the predicate's. */
+        private ArrayList<CSFileScanNode> fileScanChildren;
+
+        /** The current batch of each column read. */
+        private ColumnBatch[] batches;
+
+        /** True for the columns that are read by their own scan. */
+        private boolean[] ownScan;
+
+        /** For each select value, the aggregate it computes, or null. */
+        Accumulator[] accumulators;
+
+        /** The ids of the values of each grouping column. */
+        KeyColumn[] keyColumns;
+
+        /**
+         * For each grouping column after the first, the group numbers of the
+         * combinations of the previous group number and the column's value id.
+         */
+        private LongIntMap[] groupMaps;
+
+        /**
+         * For each grouping column after the first, the previous group number
+         * and the value id of each group number.
+         */
+        private int[][] groupParents;
+
+        private int[][] groupValues;
+
+        /** The number of groups of each grouping column's group numbers. */
+        private int[] groupCounts;
+
+        /** The positions in the current batches of the rows that passed. */
+        private int[] sel;
+
+        /** The group number of each row in {@link #sel}. */
+        private int[] groupIds;
+
+        /** The value ids of a grouping column, for each row in {@link #sel}. */
+        private int[] valueIds;
+
+        /** The number of rows aggregated. */
+        int rows;
+
+        Partial() {
+            Schema inputSchema = tblFileInfo.getSchema();
+            keyColumns = new KeyColumn[groupBatches.length];
+            for (int i = 0; i < keyColumns.length; i++) {
+                keyColumns[i] = new KeyColumn(inputSchema.getColumnInfo(
+                    columnIndexes[groupBatches[i]]).getType());
+            }
+            groupMaps = new LongIntMap[groupBatches.length];
+            groupParents = new int[groupBatches.length][];
+            groupValues = new int[groupBatches.length][];
+            groupCounts = new int[groupBatches.length];
+            for (int i = 1; i < groupBatches.length; i++) {
+                groupMaps[i] = new LongIntMap();
+                groupParents[i] = new int[16];
+                groupValues[i] = new int[16];
+            }
+
+            accumulators = new Accumulator[functions.length];
+            for (int i = 0; i < functions.length; i++) {
+                if (functions[i] != null) {
+                    accumulators[i] = newAccumulator(functions[i], argTypes[i]);
+                    accumulators[i].setBatch(argBatches[i]);
+                    accumulators[i].ensureCapacity(1);
+                }
+            }
+
+            sel = new int[ColumnBatch.DEFAULT_CAPACITY];
+            groupIds = new int[ColumnBatch.DEFAULT_CAPACITY];
+            valueIds = new int[ColumnBatch.DEFAULT_CAPACITY];
+        }
+
+        /** Starts the scans of the predicate and of the other columns. */
+        void prepare() throws IOException {
+            Schema inputSchema = tblFileInfo.getSchema();
+            predNode = new CSSimpleFilterNode(tblFileInfo, predicate);
+            predNode.prepare();
+
+            fileScanChildren = new ArrayList<CSFileScanNode>();
+            batches = new ColumnBatch[columnIndexes.length];
+            ownScan = new boolean[columnIndexes.length];
+            for (int i = 0; i < batches.length; i++) {
+                ColumnInfo colInfo = inputSchema.getColumnInfo(columnIndexes[i]);
+                batches[i] = predNode.getBatch(colInfo);
+                CSFileScanNode node = new CSFileScanNode(tblFileInfo, colInfo, null);
+                fileScanChildren.add(node);
+                if (batches[i] != null) continue;
+
+                ownScan[i] = true;
+                batches[i] = node.createBatch();
+                node.prepare();
+            }
+        }
+
+        /**
+         * Aggregates the rows of a range, or of the whole table if
+         * <tt>start</tt> is negative.  Successive ranges must not go
+         * backwards.
+         */
+        void scanRows(int start, int end) throws IOException {
+            if (start >= 0) {
+                predNode.setRowRange(start, end);
+                int[] range = new int[] { start, end };
+                for (int i = 0; i < batches.length; i++) {
+                    if (ownScan[i])
+                        fileScanChildren.get(i).setCandidateRows(range);
+                }
+            }
+
+            while (true) {
+                int n = predNode.readBatches();
+                int selSize;
+                if (n < 0) {
+                    // There is no predicate, so every row is aggregated.
+                    for (int i = 0; i < batches.length; i++) {
+                        int m = fileScanChildren.get(i).getNextBatch(batches[i]);
+                        n = (n < 0) ? m : Math.min(n, m);
+                    }
+                    if (n <= 0)
+                        break;
+
+                    selSize = predNode.evaluate(batches[0].getFirstRow(), n, sel);
+                }
+                else {
+                    if (n == 0)
+                        break;
+
+                    // The predicate scans may have skipped rows using the
+                    // zone maps.
+                    int row = predNode.getBatchRow();
+                    selSize = predNode.evaluate(row, n, sel);
+                    for (int i = 0; i < batches.length; i++) {
+                        if (ownScan[i]) {
+                            CSFileScanNode node = fileScanChildren.get(i);
+                            node.skipTo(row);
+                            node.getSelectedBatch(batches[i], n, sel, selSize);
+                        }
+                    }
+                }
+                aggregate(selSize);
+            }
+        }
+
+        /**
+         * Reads the rows of the table's delta store into the batches, and
+         * adds the rows that pass the predicate to the aggregates.
+         */
+        void addDeltaRows() throws IOException {
+            DeltaStore deltaStore = ((ColStoreTableManager)
+                tblFileInfo.getTableManager()).getDeltaStore(tblFileInfo);
+            if (deltaStore == null)
+                return;
+
+            Tuple tup = deltaStore.getFirstTuple();
+            while (tup != null) {
+                predNode.clearBatches();
+                for (int i = 0; i < batches.length; i++) {
+                    if (ownScan[i])
+                        batches[i].reset(0);
+                }
+
+                int n = 0;
+                while (tup != null && n < sel.length) {
+                    predNode.addRow(tup);
+                    for (int i = 0; i < batches.length; i++) {
+                        if (ownScan[i])
+                            batches[i].add(tup.getColumnValue(columnIndexes[i]));
+                    }
+                    n++;
+                    tup = deltaStore.getNextTuple(tup);
+                }
+
+                aggregate(predNode.evaluate(n, sel));
+            }
+        }
+
+        /** Adds the selected rows of the current batches to the aggregates. */
+        private void aggregate(int selSize) {
+            if (selSize == 0)
+                return;
+
+            rows += selSize;
+            int[] ids = null;
+            if (groupBatches.length > 0) {
+                ids = groupIds;
+                keyColumns[0].lookup(batches[groupBatches[0]], sel, selSize, ids);
+                for (int k = 1; k < groupBatches.length; k++) {
+                    keyColumns[k].lookup(batches[groupBatches[k]], sel, selSize,
+                        valueIds);
+                    for (int j = 0; j < selSize; j++)
+                        groupIds[j] = combineGroup(k, groupIds[j], valueIds[j]);
+                }
+            }
+
+            int numGroups = getNumGroups();
+            for (Accumulator acc : accumulators) {
+                if (acc == null)
+                    continue;
+
+                acc.ensureCapacity(numGroups);
+                ColumnBatch batch = (acc.batch < 0) ? null : batches[acc.batch];
+                acc.add(batch, sel, selSize, ids);
+            }
+        }
+
+        /**
+         * Returns the group number of a group of the grouping columns before
+         * column <tt>k</tt>, combined with a value id of column <tt>k</tt>.
+         */
+        private int combineGroup(int k, int prevGroup, int valueId) {
+            long key = ((long) prevGroup << 32) | valueId;
+            int group = groupMaps[k].get(key);
+            if (group < 0) {
+                group = groupCounts[k]++;
+                groupMaps[k].put(key, group);
+                if (group == groupParents[k].length) {
+                    groupParents[k] = Arrays.copyOf(groupParents[k], group * 2);
+                    groupValues[k] = Arrays.copyOf(groupValues[k], group * 2);
+                }
+                groupParents[k][group] = prevGroup;
+                groupValues[k][group] = valueId;
+            }
+            return group;
+        }
+
+        /** Returns the number of groups seen so far. */
+        int getNumGroups() {
+            int k = groupBatches.length;
+            if (k == 0)
+                return 1;
+            if (k == 1)
+                return keyColumns[0].size();
+            return groupCounts[k - 1];
+        }
+
+        /** Finds the value id of each grouping column of a group. */
+        void getKeyIds(int group, int[] keyIds) {
+            for (int k = groupBatches.length - 1; k > 0; k--) {
+                keyIds[k] = groupValues[k][group];
+                group = groupParents[k][group];
+            }
+            if (keyIds.length > 0)
+                keyIds[0] = group;
+        }
+
+        /** Adds the groups of another thread to these groups. */
+        void merge(Partial other) {
+            int[] keyIds = new int[groupBatches.length];
+            for (int og = 0; og < other.getNumGroups(); og++) {
+                int group = 0;
+                if (groupBatches.length > 0) {
+                    other.getKeyIds(og, keyIds);
+                    group = keyColumns[0].getId(
+                        other.keyColumns[0].getValue(keyIds[0]));
+                    for (int k = 1; k < groupBatches.length; k++) {
+                        int id = keyColumns[k].getId(
+                            other.keyColumns[k].getValue(keyIds[k]));
+                        group = combineGroup(k, group, id);
+                    }
+                }
+
+                for (int i = 0; i < accumulators.length; i++) {
+                    if (accumulators[i] != null) {
+                        accumulators[i].ensureCapacity(group + 1);
+                        accumulators[i].merge(group, other.accumulators[i], og);
+                    }
+                }
+            }
+            rows += other.rows;
+        }
+    }
+
+
+    /**
+     * Maps the values of a grouping column to dense ids, in the order they
+     * are first seen.  Numeric values are looked up by their primitive value,
+     * other values in a hash map; batches of dictionary codes remember the id
+     * of each code, so each code is only looked up once.
+     */
+    private static class KeyColumn {
+        private ColumnBatch.Kind valueKind;
+
+        private LongIntMap primitiveIds;
+
+        private HashMap<Object, Integer> objectIds;
+
+        /** The value of each id. */
+        private ArrayList<Object> values = new ArrayList<Object>();
+
+        /** The dictionary that {@link #codeIds} is for. */
+        private Object[] codeDictionary;
+
+        /** The id of each dictionary code, or -1 if it hasn't been seen. */
+        private int[] codeIds;
+
+        KeyColumn(ColumnType colType) {
+            valueKind = ColumnBatch.getValueKind(colType);
+            if (valueKind == ColumnBatch.Kind.OBJECT)
+                objectIds = new HashMap<Object, Integer>();
+            else
+                primitiveIds = new LongIntMap();
+        }
+
+        int size() {
+            return values.size();
+        }
+
+        Object getValue(int id) {
+            return values.get(id);
+        }
+
+        /** Stores the ids of the values of the selected rows into <tt>ids</tt>. */
+        void lookup(ColumnBatch batch, int[] sel, int selSize, int[] ids) {
+            switch (batch.getKind()) {
+            case CODE: {
+                Object[] dict = batch.getDictionary();
+                if (dict != codeDictionary) {
+                    codeDictionary = dict;
+                    codeIds = new int[dict.length];
+                    Arrays.fill(codeIds, -1);
+                }
+                int[] codes = batch.getCodes();
+                for (int j = 0; j < selSize; j++) {
+                    int code = codes[sel[j]];
+                    int id = codeIds[code];
+                    if (id < 0) {
+                        id = getId(dict[code]);
+                        codeIds[code] = id;
+                    }
+                    ids[j] = id;
+                }
+                break;
+            }
+
+            case INT: {
+                int[] ints = batch.getInts();
+                for (int j = 0; j < selSize; j++)
+                    ids[j] = getId(ints[sel[j]], batch, sel[j]);
+                break;
+            }
+
+            case LONG: {
+                long[] longs = batch.getLongs();
+                for (int j = 0; j < selSize; j++)
+                    ids[j] = getId(longs[sel[j]], batch, sel[j]);
+                break;
+            }
+
+            case DOUBLE: {
+                double[] doubles = batch.getDoubles();
+                for (int j = 0; j < selSize; j++) {
+                    ids[j] = getId(Double.doubleToLongBits(doubles[sel[j]]),
+                        batch, sel[j]);
+                }
+                break;
+            }
+
+            default: {
+                Object[] objects = batch.getObjects();
+                for (int j = 0; j < selSize; j++)
+                    ids[j] = getId(objects[sel[j]]);
+            }
+            }
+        }
+
+        /** Returns the id of a primitive value, boxing it if it's new. */
+        private int getId(long key, ColumnBatch batch, int pos) {
+            int id = primitiveIds.get(key);
+            if (id < 0) {
+                id = values.size();
+                primitiveIds.put(key, id);
+                values.add(batch.getObject(pos));
+            }
+            return id;
+        }
+
+        /** Returns the id of a value given as an object. */
+        private int getId(Object value) {
+            if (objectIds == null) {
+                long key = (valueKind == ColumnBatch.Kind.DOUBLE) ?
+                    Double.doubleToLongBits(((Number) value).doubleValue()) :
+                    ((Number) value).longValue();
+                int id = primitiveIds.get(key);
+                if (id < 0) {
+                    id = values.size();
+                    primitiveIds.put(key, id);
+                    values.add(value);
+                }
+                return id;
+            }
+
+            Integer id = objectIds.get(value);
+            if (id == null) {
+                id = values.size();
+                objectIds.put(value, id);
+                values.add(value);
+            }
+            return id;
+        }
+    }
+
+
+    /**
+     * The state of one aggregate function for every group, in arrays indexed
+     * by group number.
+     */
+    private abstract static class Accumulator {
+        /** The position of the aggregated column's batch, or -1 for COUNT(*). */
+        int batch = -1;
+
+        /** The number of rows added to each group. */
+        long[] counts = new long[0];
+
+        void setBatch(int batch) {
+            this.batch = batch;
+        }
+
+        void ensureCapacity(int groups) {
+            if (groups > counts.length)
+                grow(Math.max(groups, counts.length * 2));
+        }
+
+        void grow(int capacity) {
+            counts = Arrays.copyOf(counts, capacity);
+        }
+
+        /**
+         * Adds the selected rows of a batch.
+         *
+         * @param batch the batch of the aggregated column, or null
+         * @param sel the positions of the rows
+         * @param selSize the number of rows
+         * @param groups the group number of each row, or null if the rows
+         *        aren't grouped
+         */
+        abstract void add(ColumnBatch batch, int[] sel, int selSize, int[] groups);
+
+        abstract Object getResult(int group);
+
+        /**
+         * Adds the state of a group of another accumulator of the same
+         * aggregate to the state of a group of this one.
+         */
+        void merge(int group, Accumulator other, int otherGroup) {
+            counts[group] += other.counts[otherGroup];
+        }
+
+        /** Counts the selected rows in their groups. */
+        void addCounts(int selSize, int[] groups) {
+            if (groups == null) {
+                counts[0] += selSize;
+                return;
+            }
+            for (int j = 0; j < selSize; j++)
+                counts[groups[j]]++;
+        }
+    }
+
+
+    private static class CountAccumulator extends Accumulator {
+        @Override
+        void add(ColumnBatch batch, int[] sel, int selSize, int[] groups) {
+            addCounts(selSize, groups);
+        }
+
+        @Override
+        Object getResult(int group) {
+            return Integer.valueOf((int) counts[group]);
+        }
+    }
+
+
+    /**
+     * Base class of the aggregates of numeric values, which decodes batches
+     * of dictionary codes through tables of the codes' primitive values.
+     */
+    private abstract static class NumericAccumulator extends Accumulator {
+        /** True if the values are summed or compared as longs. */
+        boolean integral;
+
+        private Object[] codeDictionary;
+
+        long[] codeLongs;
+
+        double[] codeDoubles;
+
+        NumericAccumulator(ColumnType argType) {
+            ColumnBatch.Kind kind = ColumnBatch.getValueKind(argType);
+            integral = (kind == ColumnBatch.Kind.INT || kind == ColumnBatch.Kind.LONG);
+        }
+
+        /** Builds the tables of the primitive values of a batch's codes. */
+        void decodeTables(ColumnBatch batch) {
+            Object[] dict = batch.getDictionary();
+            if (dict == codeDictionary)
+                return;
+
+            codeDictionary = dict;
+            codeLongs = new long[dict.length];
+            codeDoubles = new double[dict.length];
+            for (int code = 1; code < dict.length; code++) {
+                if (dict[code] != null) {
+                    codeLongs[code] = ((Number) dict[code]).longValue();
+                    codeDoubles[code] = ((Number) dict[code]).doubleValue();
+                }
+            }
+        }
+
+        /** Returns the value at a position of a batch, as a long. */
+        long getLong(ColumnBatch batch, int pos) {
+            switch (batch.getKind()) {
+            case INT:
+                return batch.getInts()[pos];
+
+            case LONG:
+                return batch.getLongs()[pos];
+
+            case CODE:
+                return codeLongs[batch.getCodes()[pos]];
+
+            default:
+                return ((Number) batch.getObject(pos)).longValue();
+            }
+        }
+
+        /** Returns the value at a position of a batch, as a double. */
+        double getDouble(ColumnBatch batch, int pos) {
+            switch (batch.getKind()) {
+            case DOUBLE:
+                return batch.getDoubles()[pos];
+
+            case CODE:
+                return codeDoubles[batch.getCodes()[pos]];
+
+            default:
+                return ((Number) batch.getObject(pos)).doubleValue();
+            }
+        }
+    }
+
+
+    private static class SumAccumulator extends NumericAccumulator {
+        private boolean average;
+
+        private long[] longSums = new long[0];
+
+        private double[] doubleSums = new double[0];
+
+        SumAccumulator(boolean average, ColumnType argType) {
+            super(argType);
+            this.average = average;
+        }
+
+        @Override
+        void grow(int capacity) {
+            super.grow(capacity);
+            if (integral)
+                longSums = Arrays.copyOf(longSums, capacity);
+            else
+                doubleSums = Arrays.copyOf(doubleSums, capacity);
+        }
+
+        @Override
+        void add(ColumnBatch batch, int[] sel, int selSize, int[] groups) {
+            addCounts(selSize, groups);
+            if (batch.getKind() == ColumnBatch.Kind.CODE)
+                decodeTables(batch);
+
+            if (integral && batch.getKind() == ColumnBatch.Kind.INT) {
+                int[] ints = batch.getInts();
+                for (int j = 0; j < selSize; j++)
+                    longSums[groups == null ? 0 : groups[j]] += ints[sel[j]];
+            }
+            else if (integral && batch.getKind() == ColumnBatch.Kind.LONG) {
+                long[] longs = batch.getLongs();
+                for (int j = 0; j < selSize; j++)
+                    longSums[groups == null ? 0 : groups[j]] += longs[sel[j]];
+            }
+            else if (integral) {
+                for (int j = 0; j < selSize; j++)
+                    longSums[groups == null ? 0 : groups[j]] += getLong(batch, sel[j]);
+            }
+            else {
+                for (int j = 0; j < selSize; j++)
+                    doubleSums[groups == null ? 0 : groups[j]] += getDouble(batch, sel[j]);
+            }
+        }
+
+        @Override
+        Object getResult(int group) {
+            long count = counts[group];
+            if (count == 0)
+                return null;
+
+            if (average) {
+                double sum = integral ? (double) longSums[group] : doubleSums[group];
+                return sum / count;
+            }
+            return integral ? (Object) Long.valueOf(longSums[group]) :
+                Double.valueOf(doubleSums[group]);
+        }
+
+        @Override
+        void merge(int group, Accumulator other, int otherGroup) {
+            super.merge(group, other, otherGroup);
+            SumAccumulator o = (SumAccumulator) other;
+            if (integral)
+                longSums[group] += o.longSums[otherGroup];
+            else
+                doubleSums[group] += o.doubleSums[otherGroup];
+        }
+    }
+
+
+    /**
+     * Keeps the smallest or largest value of each group.  Numeric values are
+     * compared as primitives.  Other values are compared as objects, except
+     * that batches of dictionary codes are compared by code, since the codes
+     * are in the order of their values; the best code of each group is only
+     * decoded when the dictionary changes, and at the end.
+     */
+    private static class MinMaxAccumulator extends NumericAccumulator {
+        private boolean max;
+
+        private ColumnType argType;
+
+        /** True if the values are compared as objects. */
+        private boolean objects;
+
+        private long[] longBest = new long[0];
+
+        private double[] doubleBest = new double[0];
+
+        private Object[] objectBest = new Object[0];
+
+        /** The dictionary {@link #codeBest} holds codes of. */
+        private Object[] bestDictionary;
+
+        /** The best code of each group, or 0 if there is none. */
+        private int[] codeBest = new int[0];
+
+        MinMaxAccumulator(boolean max, ColumnType argType) {
+            super(argType);
+            this.max = max;
+            this.argType = argType;
+            objects = ColumnBatch.getValueKind(argType) == ColumnBatch.Kind.OBJECT;
+        }
+
+        @Override
+        void grow(int capacity) {
+            super.grow(capacity);
+            if (objects) {
+                objectBest = Arrays.copyOf(objectBest, capacity);
+                codeBest = Arrays.copyOf(codeBest, capacity);
+            }
+            else if (integral) {
+                longBest = Arrays.copyOf(longBest, capacity);
+            }
+            else {
+                doubleBest = Arrays.copyOf(doubleBest, capacity);
+            }
+        }
+
+        @Override
+        void add(ColumnBatch batch, int[] sel, int selSize, int[] groups) {
+            if (objects) {
+                addObjects(batch, sel, selSize, groups);
+                addCounts(selSize, groups);
+                return;
+            }
+
+            if (batch.getKind() == ColumnBatch.Kind.CODE)
+                decodeTables(batch);
+            for (int j = 0; j < selSize; j++) {
+                int g = (groups == null) ? 0 : groups[j];
+                boolean first = (counts[g]++ == 0);
+                if (integral) {
+                    long v = getLong(batch, sel[j]);
+                    if (first || (max ? v > longBest[g] : v < longBest[g]))
+                        longBest[g] = v;
+                }
+                else {
+                    double v = getDouble(batch, sel[j]);
+                    if (first || (max ? v > doubleBest[g] : v < doubleBest[g]))
+                        doubleBest[g] = v;
+                }
+            }
+        }
+
+        private void addObjects(ColumnBatch batch, int[] sel, int selSize,
+                                int[] groups) {
+            if (batch.getKind() == ColumnBatch.Kind.CODE) {
+                Object[] dict = batch.getDictionary();
+                if (dict != bestDictionary) {
+                    decodeBestCodes();
+                    bestDictionary = dict;
+                }
+                int[] codes = batch.getCodes();
+                for (int j = 0; j < selSize; j++) {
+                    int g = (groups == null) ? 0 : groups[j];
+                    int code = codes[sel[j]];
+                    int best = codeBest[g];
+                    if (best == 0 || (max ? code > best : code < best))
+                        codeBest[g] = code;
+                }
+                return;
+            }
+
+            for (int j = 0; j < selSize; j++)
+                addObject((groups == null) ? 0 : groups[j], batch.getObject(sel[j]));
+        }
+
+        @SuppressWarnings("unchecked")
+        private void addObject(int g, Object value) {
+            Object best = objectBest[g];
+            if (best == null) {
+                objectBest[g] = value;
+                return;
+            }
+            int c = ((Comparable<Object>) value).compareTo(best);
+            if (max ? c > 0 : c < 0)
+                objectBest[g] = value;
+        }
+
+        /** Merges the best codes of the groups into their best objects. */
+        private void decodeBestCodes() {
+            if (bestDictionary == null)
+                return;
+
+            for (int g = 0; g < codeBest.length; g++) {
+                if (codeBest[g] != 0) {
+                    addObject(g, bestDictionary[codeBest[g]]);
+                    codeBest[g] = 0;
+                }
+            }
+            bestDictionary = null;
+        }
+
+        @Override
+        Object getResult(int group) {
+            if (counts[group] == 0)
+                return null;
+
+            if (objects) {
+                decodeBestCodes();
+                return objectBest[group];
+            }
+
+            switch (argType.getBaseType()) {
+            case TINYINT:
+                return Byte.valueOf((byte) longBest[group]);
+
+            case SMALLINT:
+                return Short.valueOf((short) longBest[group]);
+
+            case INTEGER:
+                return Integer.valueOf((int) longBest[group]);
+
+            case BIGINT:
+                return Long.valueOf(longBest[group]);
+
+            case FLOAT:
+                return Float.valueOf((float) doubleBest[group]);
+
+            default:
+                return Double.valueOf(doubleBest[group]);
+            }
+        }
+
+        @Override
+        void merge(int group, Accumulator other, int otherGroup) {
+            MinMaxAccumulator o = (MinMaxAccumulator) other;
+            if (o.counts[otherGroup] == 0)
+                return;
+
+            boolean first = (counts[group] == 0);
+            super.merge(group, other, otherGroup);
+            if (objects) {
+                o.decodeBestCodes();
+                decodeBestCodes();
+                addObject(group, o.objectBest[otherGroup]);
+            }
+            else if (integral) {
+                long v = o.longBest[otherGroup];
+                if (first || (max ? v > longBest[group] : v < longBest[group]))
+                    longBest[group] = v;
+            }
+            else {
+                double v = o.doubleBest[otherGroup];
+                if (first || (max ? v > doubleBest[group] : v < doubleBest[group]))
+                    doubleBest[group] = v;
+            }
+        }
+    }
+
+
+    /**
+     * A hash table from <tt>long</tt> keys to non-negative <tt>int</tt>
+     * values, with open addressing, so that looking up a key doesn't box it.
+     */
+    private static class LongIntMap {
+        private long[] keys = new long[64];
+
+        private int[] values = new int[64];
+
+        private boolean[] used = new boolean[64];
+
+        private int size;
+
+        /** Returns the value of a key, or -1 if the key isn't in the map. */
+        int get(long key) {
+            int mask = keys.length - 1;
+            for (int i = hash(key) & mask; used[i]; i = (i + 1) & mask) {
+                if (keys[i] == key)
+                    return values[i];
+            }
+            return -1;
+        }
+
+        /** Adds a key that isn't in the map yet. */
+        void put(long key, int value) {
+            if ((size + 1) * 4 > keys.length * 3)
+                rehash();
+
+            int mask = keys.length - 1;
+            int i = hash(key) & mask;
+            while (used[i])
+                i = (i + 1) & mask;
+            keys[i] = key;
+            values[i] = value;
+            used[i] = true;
+            size++;
+        }
+
+        private void rehash() {
+            long[] oldKeys = keys;
+            int[] oldValues = values;
+            boolean[] oldUsed = used;
+            keys = new long[oldKeys.length * 2];
+            values = new int[oldKeys.length * 2];
+            used = new boolean[oldKeys.length * 2];
+            size = 0;
+            for (int i = 0; i < oldKeys.length; i++) {
+                if (oldUsed[i])
+                    put(oldKeys[i], oldValues[i]);
+            }
+        }
+
+        private static int hash(long key) {
+            long h = key * 0x9E3779B97F4A7C15L;
+            return (int) (h ^ (h >>> 32));
+        }
+    }
+
+
+    @Override
+    public void cleanUp() {
+        // Nothing to clean up.
+    }
+
+
+    @Override
+    public String toString() {
+        StringBuilder buf = new StringBuilder();
+        buf.append("CSAggregate[values:  ").append(selectValues);
+        if (!groupByExprs.isEmpty())
+            buf.append(", group:  ").append(groupByExprs);
+        buf.append("]\n");
+        if (predicate != null)
+            buf.append("\tpred:  ").append(predicate).append("\n");
+        return buf.toString();
+    }
+
+
+    @Override
+    public boolean equals(Object obj) {
+        if (obj instanceof CSAggregateNode) {
+            CSAggregateNode other = (CSAggregateNode) obj;
+            return tblFileInfo.equals(other.tblFileInfo) &&
+                   selectValues.equals(other.selectValues) &&
+                   groupByExprs.equals(other.groupByExprs) &&
+                   (predicate == null ? other.predicate == null :
+                                        predicate.equals(other.predicate));
+        }
+        return false;
+    }
+
+
+    @Override
+    public int hashCode() {
+        int hash = 7;
+        hash = 31 * hash + tblFileInfo.hashCode();
+        hash = 31 * hash + selectValues.hashCode();
+        hash = 31 * hash + groupByExprs.hashCode();
+        hash = 31 * hash + (predicate != null ? predicate.hashCode() : 0);
+        return hash;
+    }
+}
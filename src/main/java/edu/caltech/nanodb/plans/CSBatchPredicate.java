@@ -0,0 +1,1045 @@
+package edu.caltech.nanodb.plans;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import edu.caltech.nanodb.expressions.BooleanOperator;
+import edu.caltech.nanodb.expressions.ColumnValue;
+import edu.caltech.nanodb.expressions.CompareOperator;
+import edu.caltech.nanodb.expressions.Environment;
+import edu.caltech.nanodb.expressions.Expression;
+import edu.caltech.nanodb.expressions.InOperator;
+import edu.caltech.nanodb.expressions.LiteralValue;
+import edu.caltech.nanodb.expressions.TypeConverter;
+import edu.caltech.nanodb.relations.ColumnType;
+import edu.caltech.nanodb.relations.SQLDataType;
+import edu.caltech.nanodb.relations.Schema;
+import edu.caltech.nanodb.storage.colstore.CSGeneratedTuple;
+import edu.caltech.nanodb.storage.colstore.ColumnBatch;
+import edu.caltech.nanodb.storage.colstore.ZoneMap;
+
+/**
+ * A predicate compiled to run over column batches.  Evaluating the predicate
+ * takes a <em>selection vector</em> of candidate row positions within the
+ * batches and produces the positions that satisfy the predicate.
+ * <p>
+ * Comparisons between a column and a literal are evaluated with a loop over
+ * the column's primitive array; <tt>AND</tt> narrows the selection term by
+ * term, <tt>OR</tt> only evaluates each term on the rows that have not yet
+ * passed, and <tt>NOT</tt> complements its term's selection.  Anything else
+ * falls back to evaluating the expression one row at a time.
+ * <p>
+ * When a batch holds dictionary codes, a comparison or <tt>IN</tt> list on
+ * that column is first evaluated against each entry of the dictionary,
+ * giving the set of matching codes; the rows are then filtered by looking up
+ * their codes in that set, without decoding them.  Since codes are assigned
+ * in value order, range comparisons become a range of codes instead.  The
+ * code set or range is only rebuilt when the dictionary changes, which is
+ * once per scan.
+ * <p>
+ * Before a scan, the predicate can be evaluated against the zone maps of
+ * its columns, giving the ranges of rows that may pass; pages outside those
+ * ranges don't need to be read at all.
+ */
+public abstract class CSBatchPredicate {
+
+    /**
+     * Evaluates the predicate against the candidate positions.
+     *
+     * @param batches the batches of the predicate's columns, in the order of
+     *        the schema the predicate was compiled against
+     * @param sel the candidate positions, in increasing order
+     * @param selSize the number of candidate positions
+     * @param out the array to store the passing positions into.  This may be
+     *        the same array as <tt>sel</tt>.
+     *
+     * @return the number of positions stored into <tt>out</tt>
+     */
+    public abstract int filter(ColumnBatch[] batches, int[] sel, int selSize,
+                               int[] out);
+
+
+    /**
+     * Returns the ranges of rows that may pass the predicate, judging only
+     * by the zone maps of its columns.  Rows outside the ranges are certain
+     * to fail.
+     *
+     * @param zoneMaps the zone maps of the predicate's columns, in the order
+     *        of the schema the predicate was compiled against; an element is
+     *        null if that column has no zone map
+     *
+     * @return the ranges as sorted, disjoint <tt>[start, end)</tt> pairs of
+     *         row numbers, or null if any row may pass
+     */
+    public int[] getCandidateRows(ZoneMap[] zoneMaps) {
+        return null;
+    }
+
+
+    /** Returns the rows in both sets of ranges; null stands for all rows. */
+    static int[] intersectRows(int[] a, int[] b) {
+        if (a == null) return b;
+        if (b == null) return a;
+
+        int[] out = new int[a.length + b.length];
+        int n = 0;
+        int i = 0;
+        int j = 0;
+        while (i < a.length && j < b.length) {
+            int start = Math.max(a[i], b[j]);
+            int end = Math.min(a[i + 1], b[j + 1]);
+            if (start < end) {
+                out[n++] = start;
+                out[n++] = end;
+            }
+            // Move past whichever range ends first.
+            if (a[i + 1] < b[j + 1])
+                i += 2;
+            else
+                j += 2;
+        }
+        return Arrays.copyOf(out, n);
+    }
+
+
+    /** Returns the rows in either set of ranges; null stands for all rows. */
+    static int[] unionRows(int[] a, int[] b) {
+        if (a == null || b == null) return null;
+
+        int[] out = new int[a.length + b.length];
+        int n = 0;
+        int i = 0;
+        int j = 0;
+        while (i < a.length || j < b.length) {
+            int start;
+            int end;
+            if (j >= b.length || (i < a.length && a[i] <= b[j])) {
+                start = a[i];
+                end = a[i + 1];
+                i += 2;
+            }
+            else {
+                start = b[j];
+                end = b[j + 1];
+                j += 2;
+            }
+
+            if (n > 0 && start <= out[n - 1]) {
+                out[n - 1] = Math.max(out[n - 1], end);
+            }
+            else {
+                out[n++] = start;
+                out[n++] = end;
+            }
+        }
+        return Arrays.copyOf(out, n);
+    }
+
+
+    /**
+     * Compiles a predicate over the specified columns.
+     *
+     * @param expr the predicate to compile
+     * @param schema the columns the predicate refers to; the batches passed
+     *        to {@link #filter} must be in the same order
+     * @param capacity the capacity of the batches the predicate will see
+     *
+     * @return the compiled predicate
+     */
+    public static CSBatchPredicate compile(Expression expr, Schema schema,
+                                           int capacity) {
+        if (expr instanceof BooleanOperator) {
+            BooleanOperator boolOp = (BooleanOperator) expr;
+            List<CSBatchPredicate> terms = new ArrayList<CSBatchPredicate>();
+            for (int i = 0; i < boolOp.getNumTerms(); i++)
+                terms.add(compile(boolOp.getTerm(i), schema, capacity));
+
+            switch (boolOp.getType()) {
+            case AND_EXPR:
+                return new AndPredicate(terms);
+
+            case OR_EXPR:
+                return new OrPredicate(terms, capacity);
+
+            case NOT_EXPR:
+                return new NotPredicate(terms.get(0), capacity);
+            }
+        }
+        else if (expr instanceof CompareOperator) {
+            CSBatchPredicate pred = compileCompare((CompareOperator) expr, schema);
+            if (pred != null)
+                return pred;
+        }
+        else if (expr instanceof InOperator) {
+            CSBatchPredicate pred = compileIn((InOperator) expr, schema);
+            if (pred != null)
+                return pred;
+        }
+
+        return new ExpressionPredicate(expr, schema);
+    }
+
+
+    /**
+     * Compiles a comparison between a column and a literal into a primitive
+     * loop, or returns <tt>null</tt> if the comparison doesn't have that form.
+     */
+    private static CSBatchPredicate compileCompare(CompareOperator cmp,
+                                                   Schema schema) {
+        Expression lhs = cmp.getLeftExpression();
+        Expression rhs = cmp.getRightExpression();
+        CompareOperator.Type type = cmp.getType();
+
+        if (lhs instanceof LiteralValue && rhs instanceof ColumnValue) {
+            Expression tmp = lhs;
+            lhs = rhs;
+            rhs = tmp;
+            type = flip(type);
+        }
+
+        if (!(lhs instanceof ColumnValue && rhs instanceof LiteralValue))
+            return null;
+
+        int column = schema.getColumnIndex(((ColumnValue) lhs).getColumnName());
+        Object value = rhs.evaluate(null);
+        if (column < 0 || value == null)
+            return null;
+
+        ColumnType colType = schema.getColumnInfo(column).getType();
+        switch (ColumnBatch.getValueKind(colType)) {
+        case INT:
+        case LONG:
+            if (isIntegral(value))
+                return new LongCompare(column, type, ((Number) value).longValue());
+            break;
+
+        case DOUBLE:
+            if (value instanceof Number)
+                return new DoubleCompare(column, type, ((Number) value).doubleValue());
+            break;
+
+        default:
+            SQLDataType baseType = colType.getBaseType();
+            if (value instanceof String && (baseType == SQLDataType.CHAR ||
+                                            baseType == SQLDataType.VARCHAR)) {
+                return new ObjectCompare(column, type, (String) value);
+            }
+        }
+
+        return null;
+    }
+
+
+    /**
+     * Compiles <tt>column IN (literal, ...)</tt> into a predicate, or returns
+     * <tt>null</tt> if the <tt>IN</tt> operation doesn't have that form.
+     */
+    private static CSBatchPredicate compileIn(InOperator in, Schema schema) {
+        if (!(in.getExpression() instanceof ColumnValue) || in.getValues() == null)
+            return null;
+
+        ColumnValue colValue = (ColumnValue) in.getExpression();
+        int column = schema.getColumnIndex(colValue.getColumnName());
+        if (column < 0)
+            return null;
+
+        ArrayList<Object> values = new ArrayList<Object>();
+        for (Expression e : in.getValues()) {
+            if (!(e instanceof LiteralValue))
+                return null;
+
+            Object value = e.evaluate(null);
+            if (value != null)
+                values.add(value);
+        }
+        return new InPredicate(column, values);
+    }
+
+
+    private static boolean isIntegral(Object value) {
+        return value instanceof Integer || value instanceof Long ||
+               value instanceof Short || value instanceof Byte;
+    }
+
+
+    /** Returns the comparison to use when the operands are swapped. */
+    static CompareOperator.Type flip(CompareOperator.Type type) {
+        switch (type) {
+        case LESS_THAN:
+            return CompareOperator.Type.GREATER_THAN;
+
+        case LESS_OR_EQUAL:
+            return CompareOperator.Type.GREATER_OR_EQUAL;
+
+        case GREATER_THAN:
+            return CompareOperator.Type.LESS_THAN;
+
+        case GREATER_OR_EQUAL:
+            return CompareOperator.Type.LESS_OR_EQUAL;
+
+        default:
+            return type;
+        }
+    }
+
+
+    /** Applies a comparison type to the result of a <tt>compareTo()</tt>. */
+    static boolean test(CompareOperator.Type type, int compResult) {
+        switch (type) {
+        case EQUALS:
+            return compResult == 0;
+
+        case NOT_EQUALS:
+            return compResult != 0;
+
+        case LESS_THAN:
+            return compResult < 0;
+
+        case GREATER_THAN:
+            return compResult > 0;
+
+        case LESS_OR_EQUAL:
+            return compResult <= 0;
+
+        default:
+            return compResult >= 0;
+        }
+    }
+
+
+    /** Each term filters the positions that passed the previous term. */
+    private static class AndPredicate extends CSBatchPredicate {
+        private List<CSBatchPredicate> terms;
+
+        AndPredicate(List<CSBatchPredicate> terms) {
+            this.terms = terms;
+        }
+
+        @Override
+        public int filter(ColumnBatch[] batches, int[] sel, int selSize,
+                          int[] out) {
+            int n = selSize;
+            int[] in = sel;
+            for (CSBatchPredicate term : terms) {
+                if (n == 0)
+                    break;
+                n = term.filter(batches, in, n, out);
+                in = out;
+            }
+            if (in != out)
+                System.arraycopy(sel, 0, out, 0, n);
+            return n;
+        }
+
+        @Override
+        public int[] getCandidateRows(ZoneMap[] zoneMaps) {
+            int[] rows = null;
+            for (CSBatchPredicate term : terms)
+                rows = intersectRows(rows, term.getCandidateRows(zoneMaps));
+            return rows;
+        }
+    }
+
+
+    /**
+     * Each term is evaluated against the positions that no earlier term has
+     * accepted; the result is the accepted positions in their original order.
+     */
+    private static class OrPredicate extends CSBatchPredicate {
+        private List<CSBatchPredicate> terms;
+
+        private int[] remaining;
+
+        private int[] passed;
+
+        private boolean[] hit;
+
+        OrPredicate(List<CSBatchPredicate> terms, int capacity) {
+            this.terms = terms;
+            remaining = new int[capacity];
+            passed = new int[capacity];
+            hit = new boolean[capacity];
+        }
+
+        @Override
+        public int filter(ColumnBatch[] batches, int[] sel, int selSize,
+                          int[] out) {
+            System.arraycopy(sel, 0, remaining, 0, selSize);
+            int remSize = selSize;
+
+            for (CSBatchPredicate term : terms) {
+                if (remSize == 0)
+                    break;
+
+                int k = term.filter(batches, remaining, remSize, passed);
+                for (int i = 0; i < k; i++)
+                    hit[passed[i]] = true;
+
+                int r = 0;
+                for (int i = 0; i < remSize; i++) {
+                    if (!hit[remaining[i]])
+                        remaining[r++] = remaining[i];
+                }
+                remSize = r;
+            }
+
+            int n = 0;
+            for (int i = 0; i < selSize; i++) {
+                int pos = sel[i];
+                if (hit[pos]) {
+                    hit[pos] = false;
+                    out[n++] = pos;
+                }
+            }
+            return n;
+        }
+
+        @Override
+        public int[] getCandidateRows(ZoneMap[] zoneMaps) {
+            int[] rows = new int[0];
+            for (CSBatchPredicate term : terms) {
+                rows = unionRows(rows, term.getCandidateRows(zoneMaps));
+                if (rows == null)
+                    break;
+            }
+            return rows;
+        }
+    }
+
+
+    /** Keeps the candidate positions that the term rejects. */
+    private static class NotPredicate extends CSBatchPredicate {
+        private CSBatchPredicate term;
+
+        private int[] passed;
+
+        NotPredicate(CSBatchPredicate term, int capacity) {
+            this.term = term;
+            passed = new int[capacity];
+        }
+
+        @Override
+        public int filter(ColumnBatch[] batches, int[] sel, int selSize,
+                          int[] out) {
+            int k = term.filter(batches, sel, selSize, passed);
+            int n = 0;
+            int j = 0;
+            for (int i = 0; i < selSize; i++) {
+                int pos = sel[i];
+                if (j < k && passed[j] == pos)
+                    j++;
+                else
+                    out[n++] = pos;
+            }
+            return n;
+        }
+    }
+
+
+    /**
+     * A predicate on a single column, which can be evaluated against each
+     * value on its own.  Batches of dictionary codes are filtered with a
+     * table of which codes match, built from the batch's dictionary.
+     */
+    private abstract static class ColumnPredicate extends CSBatchPredicate {
+        protected int column;
+
+        /** The dictionary that {@link #codeMatches} was built from. */
+        private Object[] matchDictionary;
+
+        /** Whether the value of each dictionary code passes the predicate. */
+        private boolean[] codeMatches;
+
+        ColumnPredicate(int column) {
+            this.column = column;
+        }
+
+        /** Returns true if a non-null value of the column passes. */
+        abstract boolean matches(Object value);
+
+        /**
+         * Returns true if some value from <tt>min</tt> to <tt>max</tt> may
+         * pass.
+         */
+        abstract boolean mayMatch(Object min, Object max);
+
+        /**
+         * Keeps the rows of the zone map entries whose range of values may
+         * pass.  Null values never pass, so pages of only nulls are dropped.
+         */
+        @Override
+        public int[] getCandidateRows(ZoneMap[] zoneMaps) {
+            ZoneMap zoneMap = zoneMaps[column];
+            if (zoneMap == null)
+                return null;
+
+            int[] rows = new int[zoneMap.size() * 2];
+            int n = 0;
+            for (int i = 0; i < zoneMap.size(); i++) {
+                Object min = zoneMap.getMin(i);
+                if (min == null || !mayMatch(min, zoneMap.getMax(i)))
+                    continue;
+
+                int start = zoneMap.getFirstRow(i);
+                int end = start + zoneMap.getCount(i);
+                if (n > 0 && rows[n - 1] == start) {
+                    rows[n - 1] = end;
+                }
+                else {
+                    rows[n++] = start;
+                    rows[n++] = end;
+                }
+            }
+            return Arrays.copyOf(rows, n);
+        }
+
+        /** Filters a batch that holds dictionary codes by code. */
+        protected int filterCodes(ColumnBatch batch, int[] sel, int selSize,
+                                  int[] out) {
+            Object[] dict = batch.getDictionary();
+            if (dict != matchDictionary) {
+                codeMatches = new boolean[dict.length];
+                for (int code = 1; code < dict.length; code++) {
+                    if (dict[code] != null)
+                        codeMatches[code] = matches(dict[code]);
+                }
+                matchDictionary = dict;
+            }
+
+            boolean[] m = codeMatches;
+            int[] codes = batch.getCodes();
+            int n = 0;
+            for (int i = 0; i < selSize; i++) {
+                int p = sel[i];
+                if (m[codes[p]]) out[n++] = p;
+            }
+            return n;
+        }
+
+        /** Filters a batch by testing each value on its own. */
+        protected int filterObjects(ColumnBatch batch, int[] sel, int selSize,
+                                    int[] out) {
+            if (batch.getKind() == ColumnBatch.Kind.CODE)
+                return filterCodes(batch, sel, selSize, out);
+
+            int n = 0;
+            for (int i = 0; i < selSize; i++) {
+                int p = sel[i];
+                if (matches(batch.getObject(p))) out[n++] = p;
+            }
+            return n;
+        }
+    }
+
+
+    /**
+     * Compares a column against a literal.  Since dictionary codes are in the
+     * same order as the values they stand for, the codes that pass any
+     * comparison other than <tt>&lt;&gt;</tt> form a range, which is found
+     * with a binary search of the dictionary; batches of codes are then
+     * filtered by comparing each code against the ends of the range.
+     */
+    private abstract static class ComparePredicate extends ColumnPredicate {
+        protected CompareOperator.Type type;
+
+        /** The dictionary that the code range was found in. */
+        private Object[] rangeDictionary;
+
+        /** The lowest code that passes. */
+        private int lowCode;
+
+        /** The highest code that passes. */
+        private int highCode;
+
+        ComparePredicate(int column, CompareOperator.Type type) {
+            super(column);
+            this.type = type;
+        }
+
+        /** Compares a non-null value of the column to the literal. */
+        abstract int compare(Object v);
+
+        @Override
+        boolean matches(Object v) {
+            return test(type, compare(v));
+        }
+
+        @Override
+        boolean mayMatch(Object min, Object max) {
+            switch (type) {
+            case EQUALS:
+                return compare(min) <= 0 && compare(max) >= 0;
+
+            case NOT_EQUALS:
+                return compare(min) != 0 || compare(max) != 0;
+
+            case LESS_THAN:
+            case LESS_OR_EQUAL:
+                return matches(min);
+
+            default:
+                return matches(max);
+            }
+        }
+
+        /**
+         * If the column's values are in order, the entries that may pass form
+         * one range, whose ends are found with a binary search of the zone
+         * map instead of testing every entry.
+         */
+        @Override
+        public int[] getCandidateRows(ZoneMap[] zoneMaps) {
+            ZoneMap zoneMap = zoneMaps[column];
+            if (zoneMap == null || !zoneMap.isSorted() ||
+                type == CompareOperator.Type.NOT_EQUALS) {
+                return super.getCandidateRows(zoneMaps);
+            }
+
+            int lo = 0;
+            int hi = zoneMap.size();
+            while (lo < hi) {
+                int mid = (lo + hi) >>> 1;
+                if (isBelow(zoneMap.getMax(mid)))
+                    lo = mid + 1;
+                else
+                    hi = mid;
+            }
+            int first = lo;
+
+            hi = zoneMap.size();
+            while (lo < hi) {
+                int mid = (lo + hi) >>> 1;
+                if (isAbove(zoneMap.getMin(mid)))
+                    hi = mid;
+                else
+                    lo = mid + 1;
+            }
+            int last = lo - 1;
+
+            if (first > last)
+                return new int[0];
+            return new int[] { zoneMap.getFirstRow(first),
+                zoneMap.getFirstRow(last) + zoneMap.getCount(last) };
+        }
+
+        /**
+         * Returns true if all values of an entry with this largest value are
+         * below the values that pass.  Entries of only nulls come first in
+         * the column's order, so they are below.
+         */
+        private boolean isBelow(Object max) {
+            if (max == null)
+                return true;
+
+            switch (type) {
+            case GREATER_THAN:
+                return compare(max) <= 0;
+
+            case GREATER_OR_EQUAL:
+            case EQUALS:
+                return compare(max) < 0;
+
+            default:
+                return false;
+            }
+        }
+
+        /**
+         * Returns true if all values of an entry with this smallest value are
+         * above the values that pass.
+         */
+        private boolean isAbove(Object min) {
+            if (min == null)
+                return false;
+
+            switch (type) {
+            case LESS_THAN:
+                return compare(min) >= 0;
+
+            case LESS_OR_EQUAL:
+            case EQUALS:
+                return compare(min) > 0;
+
+            default:
+                return false;
+            }
+        }
+
+        @Override
+        protected int filterCodes(ColumnBatch batch, int[] sel, int selSize,
+                                  int[] out) {
+            if (type == CompareOperator.Type.NOT_EQUALS)
+                return super.filterCodes(batch, sel, selSize, out);
+
+            Object[] dict = batch.getDictionary();
+            if (dict != rangeDictionary) {
+                findCodeRange(dict);
+                rangeDictionary = dict;
+            }
+
+            int lo = lowCode;
+            int hi = highCode;
+            int[] codes = batch.getCodes();
+            int n = 0;
+            for (int i = 0; i < selSize; i++) {
+                int p = sel[i];
+                int c = codes[p];
+                if (c >= lo && c <= hi) out[n++] = p;
+            }
+            return n;
+        }
+
+        /** Finds the range of codes whose values pass the comparison. */
+        private void findCodeRange(Object[] dict) {
+            int size = dict.length - 1;
+            switch (type) {
+            case EQUALS:
+                lowCode = firstCode(dict, false);
+                highCode = firstCode(dict, true) - 1;
+                break;
+
+            case LESS_THAN:
+                lowCode = 1;
+                highCode = firstCode(dict, false) - 1;
+                break;
+
+            case LESS_OR_EQUAL:
+                lowCode = 1;
+                highCode = firstCode(dict, true) - 1;
+                break;
+
+            case GREATER_THAN:
+                lowCode = firstCode(dict, true);
+                highCode = size;
+                break;
+
+            default:
+                lowCode = firstCode(dict, false);
+                highCode = size;
+            }
+        }
+
+        /**
+         * Returns the first code whose value is greater than the literal, or
+         * greater than or equal to it if <tt>strict</tt> is false.  Returns
+         * one past the last code if there is no such code.
+         */
+        private int firstCode(Object[] dict, boolean strict) {
+            int lo = 1;
+            int hi = dict.length;
+            while (lo < hi) {
+                int mid = (lo + hi) >>> 1;
+                int cmp = compare(dict[mid]);
+                if (cmp > 0 || (!strict && cmp == 0))
+                    hi = mid;
+                else
+                    lo = mid + 1;
+            }
+            return lo;
+        }
+    }
+
+
+    /** Compares an integer column against an integer literal. */
+    private static class LongCompare extends ComparePredicate {
+        private long value;
+
+        LongCompare(int column, CompareOperator.Type type, long value) {
+            super(column, type);
+            this.value = value;
+        }
+
+        @Override
+        public int filter(ColumnBatch[] batches, int[] sel, int selSize,
+                          int[] out) {
+            ColumnBatch batch = batches[column];
+            if (batch.getKind() == ColumnBatch.Kind.INT)
+                return filterInts(batch.getInts(), sel, selSize, out);
+            else if (batch.getKind() == ColumnBatch.Kind.LONG)
+                return filterLongs(batch.getLongs(), sel, selSize, out);
+            else
+                return filterObjects(batch, sel, selSize, out);
+        }
+
+        private int filterInts(int[] vals, int[] sel, int selSize, int[] out) {
+            long v = value;
+            int n = 0;
+            switch (type) {
+            case EQUALS:
+                for (int i = 0; i < selSize; i++) {
+                    int p = sel[i];
+                    if (vals[p] == v) out[n++] = p;
+                }
+                break;
+
+            case NOT_EQUALS:
+                for (int i = 0; i < selSize; i++) {
+                    int p = sel[i];
+                    if (vals[p] != v) out[n++] = p;
+                }
+                break;
+
+            case LESS_THAN:
+                for (int i = 0; i < selSize; i++) {
+                    int p = sel[i];
+                    if (vals[p] < v) out[n++] = p;
+                }
+                break;
+
+            case GREATER_THAN:
+                for (int i = 0; i < selSize; i++) {
+                    int p = sel[i];
+                    if (vals[p] > v) out[n++] = p;
+                }
+                break;
+
+            case LESS_OR_EQUAL:
+                for (int i = 0; i < selSize; i++) {
+                    int p = sel[i];
+                    if (vals[p] <= v) out[n++] = p;
+                }
+                break;
+
+            case GREATER_OR_EQUAL:
+                for (int i = 0; i < selSize; i++) {
+                    int p = sel[i];
+                    if (vals[p] >= v) out[n++] = p;
+                }
+                break;
+            }
+            return n;
+        }
+
+        private int filterLongs(long[] vals, int[] sel, int selSize, int[] out) {
+            long v = value;
+            int n = 0;
+            switch (type) {
+            case EQUALS:
+                for (int i = 0; i < selSize; i++) {
+                    int p = sel[i];
+                    if (vals[p] == v) out[n++] = p;
+                }
+                break;
+
+            case NOT_EQUALS:
+                for (int i = 0; i < selSize; i++) {
+                    int p = sel[i];
+                    if (vals[p] != v) out[n++] = p;
+                }
+                break;
+
+            case LESS_THAN:
+                for (int i = 0; i < selSize; i++) {
+                    int p = sel[i];
+                    if (vals[p] < v) out[n++] = p;
+                }
+                break;
+
+            case GREATER_THAN:
+                for (int i = 0; i < selSize; i++) {
+                    int p = sel[i];
+                    if (vals[p] > v) out[n++] = p;
+                }
+                break;
+
+            case LESS_OR_EQUAL:
+                for (int i = 0; i < selSize; i++) {
+                    int p = sel[i];
+                    if (vals[p] <= v) out[n++] = p;
+                }
+                break;
+
+            case GREATER_OR_EQUAL:
+                for (int i = 0; i < selSize; i++) {
+                    int p = sel[i];
+                    if (vals[p] >= v) out[n++] = p;
+                }
+                break;
+            }
+            return n;
+        }
+
+        @Override
+        int compare(Object v) {
+            return Long.compare(((Number) v).longValue(), value);
+        }
+    }
+
+
+    /** Compares a floating-point column against a numeric literal. */
+    private static class DoubleCompare extends ComparePredicate {
+        private double value;
+
+        DoubleCompare(int column, CompareOperator.Type type, double value) {
+            super(column, type);
+            this.value = value;
+        }
+
+        @Override
+        int compare(Object v) {
+            return Double.compare(((Number) v).doubleValue(), value);
+        }
+
+        @Override
+        public int filter(ColumnBatch[] batches, int[] sel, int selSize,
+                          int[] out) {
+            ColumnBatch batch = batches[column];
+            if (batch.getKind() != ColumnBatch.Kind.DOUBLE)
+                return filterObjects(batch, sel, selSize, out);
+
+            int n = 0;
+            double[] vals = batch.getDoubles();
+            double v = value;
+            switch (type) {
+            case EQUALS:
+                for (int i = 0; i < selSize; i++) {
+                    int p = sel[i];
+                    if (vals[p] == v) out[n++] = p;
+                }
+                break;
+
+            case NOT_EQUALS:
+                for (int i = 0; i < selSize; i++) {
+                    int p = sel[i];
+                    if (vals[p] != v) out[n++] = p;
+                }
+                break;
+
+            case LESS_THAN:
+                for (int i = 0; i < selSize; i++) {
+                    int p = sel[i];
+                    if (vals[p] < v) out[n++] = p;
+                }
+                break;
+
+            case GREATER_THAN:
+                for (int i = 0; i < selSize; i++) {
+                    int p = sel[i];
+                    if (vals[p] > v) out[n++] = p;
+                }
+                break;
+
+            case LESS_OR_EQUAL:
+                for (int i = 0; i < selSize; i++) {
+                    int p = sel[i];
+                    if (vals[p] <= v) out[n++] = p;
+                }
+                break;
+
+            case GREATER_OR_EQUAL:
+                for (int i = 0; i < selSize; i++) {
+                    int p = sel[i];
+                    if (vals[p] >= v) out[n++] = p;
+                }
+                break;
+            }
+            return n;
+        }
+    }
+
+
+    /** Compares a string column against a string literal. */
+    private static class ObjectCompare extends ComparePredicate {
+        private String value;
+
+        ObjectCompare(int column, CompareOperator.Type type, String value) {
+            super(column, type);
+            this.value = value;
+        }
+
+        @Override
+        int compare(Object v) {
+            return ((String) v).compareTo(value);
+        }
+
+        @Override
+        public int filter(ColumnBatch[] batches, int[] sel, int selSize,
+                          int[] out) {
+            return filterObjects(batches[column], sel, selSize, out);
+        }
+    }
+
+
+    /**
+     * Tests whether a column is equal to one of a list of literals.  The
+     * literals are coerced to the column's type the same way
+     * {@link CompareOperator} coerces its operands.
+     */
+    private static class InPredicate extends ColumnPredicate {
+        private List<Object> values;
+
+        InPredicate(int column, List<Object> values) {
+            super(column);
+            this.values = values;
+        }
+
+        @Override
+        boolean matches(Object v) {
+            for (Object value : values) {
+                if (compare(v, value) == 0)
+                    return true;
+            }
+            return false;
+        }
+
+        @Override
+        boolean mayMatch(Object min, Object max) {
+            for (Object value : values) {
+                if (compare(min, value) <= 0 && compare(max, value) >= 0)
+                    return true;
+            }
+            return false;
+        }
+
+        @SuppressWarnings("unchecked")
+        private static int compare(Object v, Object value) {
+            TypeConverter.Pair coerced = TypeConverter.coerceComparison(v, value);
+            return ((Comparable) coerced.value1).compareTo(coerced.value2);
+        }
+
+        @Override
+        public int filter(ColumnBatch[] batches, int[] sel, int selSize,
+                          int[] out) {
+            return filterObjects(batches[column], sel, selSize, out);
+        }
+    }
+
+
+    /**
+     * Evaluates an arbitrary expression one row at a time, the same way
+     * {@link SimpleFilterNode} does.
+     */
+    private static class ExpressionPredicate extends CSBatchPredicate {
+        private Expression expr;
+
+        private Schema schema;
+
+        private Environment environment;
+
+        ExpressionPredicate(Expression expr, Schema schema) {
+            this.expr = expr;
+            this.schema = schema;
+            environment = new Environment();
+        }
+
+        @Override
+        public int filter(ColumnBatch[] batches, int[] sel, int selSize,
+                          int[] out) {
+            int n = 0;
+            for (int i = 0; i < selSize; i++) {
+                int p = sel[i];
+                CSGeneratedTuple tuple =
+                    new CSGeneratedTuple(schema.getColumnInfos());
+                for (int c = 0; c < batches.length; c++)
+                    tuple.setColumnValue(c, batches[c].getObject(p));
+
+                environment.clear();
+                environment.addTuple(schema, tuple);
+                if (expr.evaluatePredicate(environment))
+                    out[n++] = p;
+            }
+            return n;
+        }
+    }
+}
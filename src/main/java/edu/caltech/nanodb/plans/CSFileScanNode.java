@@ -1,21 +1,15 @@
 package edu.caltech.nanodb.plans;
 
 import java.io.IOException;
-import java.util.ArrayList;
-import java.util.BitSet;
-import java.util.Collection;
 
 import org.apache.log4j.Logger;
 
-import edu.caltech.nanodb.expressions.ColumnName;
 import edu.caltech.nanodb.expressions.Expression;
 import edu.caltech.nanodb.relations.ColumnInfo;
-import edu.caltech.nanodb.storage.DBFile;
-import edu.caltech.nanodb.storage.DBPage;
-import edu.caltech.nanodb.storage.StorageManager;
 import edu.caltech.nanodb.storage.TableFileInfo;
 import edu.caltech.nanodb.storage.colstore.BlockColumnStoreReader;
-import edu.caltech.nanodb.storage.colstore.ColStoreBlock;
+import edu.caltech.nanodb.storage.colstore.ColumnBatch;
+import edu.caltech.nanodb.storage.colstore.ZoneMap;
 
 /**
  * A select plan-node that scans a column store file, checking the optional predicate
@@ -38,14 +32,27 @@ public class CSFileScanNode {
     /** The block reader for column store files. */
     private BlockColumnStoreReader reader;
     
-    /** The current data page for the column. */
-    private DBPage currentPage;
-    
-    /** The current block of the column. */
-    private ColStoreBlock currentBlock;
-    
+    /** The batch that {@link #getNextObject} returns values from. */
+    private ColumnBatch currentBatch;
+
+    /** The position of the next value in {@link #currentBatch}. */
+    private int batchPos;
+
+    /** The row number of the next value that will be read into a batch. */
+    private int nextRow;
+
     /** The predicate to filter out the column values. */
     private Expression predicate;
+
+    /**
+     * The ranges of rows the scan reads, as sorted <tt>[start, end)</tt>
+     * pairs, or null to read every row.  Rows outside the ranges are
+     * skipped without reading their pages.
+     */
+    private int[] candidateRows;
+
+    /** The index in {@link #candidateRows} of the range being read. */
+    private int rangeIndex;
     
     /** A flag to mark whether the node can produce any more values. */
     boolean done;
@@ -59,69 +66,169 @@ public class CSFileScanNode {
 		this.colInfo = colInfo;
 		predicate = pred;
 		reader = new BlockColumnStoreReader();
-		currentPage = null;
-		currentBlock = null;
+		reader.setScanAccess(true);
+		currentBatch = null;
 		columnIndex = tblFileInfo.getSchema().getColumnIndex(colInfo);
 		done = false;
 	}
 
 	public void prepare() throws IOException {
-		currentPage = reader.getFirstDataPage(tblFileInfo, columnIndex);
-		if (currentPage != null) {
-			currentBlock = reader.getFirstBlockInPage(tblFileInfo, currentPage, 
-				columnIndex);
+		reader.startScan(tblFileInfo, columnIndex);
+		nextRow = 0;
+		rangeIndex = 0;
+		batchPos = 0;
+		if (currentBatch != null) currentBatch.reset(0);
+		done = false;
+	}
+
+	/** Returns the column that the node is scanning over. */
+	public ColumnInfo getColumnInfo() {
+		return colInfo;
+	}
+
+	/**
+	 * Returns the zone map of the scanned column, or null if it doesn't have
+	 * one.  The scan must have been prepared.
+	 */
+	public ZoneMap getZoneMap() {
+		return reader.getZoneMap();
+	}
+
+	/**
+	 * Restricts the scan to ranges of rows.  Scans of different columns that
+	 * are given the same ranges stay aligned.  A scan that has finished the
+	 * previous ranges can be given new ranges further on, as long as they
+	 * start at or after the rows already read.
+	 *
+	 * @param candidateRows sorted <tt>[start, end)</tt> pairs of row numbers,
+	 *        or null to read every row
+	 */
+	public void setCandidateRows(int[] candidateRows) {
+		this.candidateRows = candidateRows;
+		rangeIndex = 0;
+		done = false;
+	}
+
+	/**
+	 * Skips forward to a row, without reading the pages in between.
+	 *
+	 * @param row the row number of the next row to read
+	 */
+	public void skipTo(int row) throws IOException {
+		if (row > nextRow) {
+			reader.skip(row - nextRow);
+			nextRow = row;
 		}
 	}
-	
+
 	/**
-     * Advances the current object forward in the block. Gets the next block if 
-     * the current block is done. Otherwise gets the next object.
-     */
-	public Object getNextObject() throws IOException {
-		if (done) return null;
-		
-		Object ret = currentBlock.getNext();
-		
-		while (ret == null) {
-			getNextBlock();
-			if (currentBlock == null) {
-				return null;
-			}
-			ret = currentBlock.getNext();
+	 * Moves the scan to the next candidate row, and returns how many rows
+	 * can be read from there, or 0 if there are no more candidate rows.
+	 */
+	private int nextCandidate() throws IOException {
+		if (candidateRows == null)
+			return Integer.MAX_VALUE;
+
+		while (rangeIndex < candidateRows.length &&
+				candidateRows[rangeIndex + 1] <= nextRow) {
+			rangeIndex += 2;
 		}
-		return ret;
+		if (rangeIndex >= candidateRows.length)
+			return 0;
+
+		skipTo(candidateRows[rangeIndex]);
+		return candidateRows[rangeIndex + 1] - nextRow;
 	}
-	
+
+	/** Creates an empty batch that can hold values of the scanned column. */
+	public ColumnBatch createBatch() {
+		return new ColumnBatch(colInfo.getType());
+	}
+
 	/**
-     * Advances the current block forward in the page. Gets the next page if 
-     * the current page is done. Otherwise gets the next block.
-     */
-	private void getNextBlock() throws IOException {
-		ColStoreBlock ret = reader.getNextBlockInPage(tblFileInfo, currentPage, 
-			columnIndex, currentBlock);
-		
-		while (ret == null) {
-			getNextPage();
-			if (currentPage == null) {
-				currentBlock = null;
-				return;
-			}
-			ret = reader.getFirstBlockInPage(tblFileInfo, currentPage, columnIndex);
+	 * Reads the next batch of values from the column.  The batch is emptied
+	 * first, and then filled until it is full or the column runs out of values.
+	 * If the scan is restricted to candidate rows, a batch never spans more
+	 * than one range.
+	 *
+	 * @param batch the batch to fill
+	 * @return the number of values in the batch; 0 when the scan is done
+	 */
+	public int getNextBatch(ColumnBatch batch) throws IOException {
+		int max = done ? 0 : nextCandidate();
+		batch.reset(nextRow);
+		if (max == 0) {
+			done = true;
+			return 0;
 		}
-		
-		currentBlock = ret;
+
+		int n = reader.readBatch(batch, max);
+		nextRow += n;
+		if (n == 0) done = true;
+		return n;
 	}
-	
+
 	/**
-     * Advances the current page forward in the page. Returns null if there are
-     * no more pages.
-     */
-	private void getNextPage() throws IOException {
-		currentPage = reader.getNextDataPage(tblFileInfo, currentPage, columnIndex);
-		
-		if (currentPage == null) {
+	 * Reads the next runs of the column into a batch that holds runs.  Run
+	 * length encoded blocks are returned as single entries, so a consumer
+	 * does work proportional to the number of runs rather than rows.  Runs
+	 * may extend past the end of a candidate range.
+	 *
+	 * @param batch the batch to fill
+	 * @return the number of runs in the batch; 0 when the scan is done
+	 */
+	public int getNextRuns(ColumnBatch batch) throws IOException {
+		int max = done ? 0 : nextCandidate();
+		batch.reset(nextRow);
+		batch.startRuns();
+		if (max == 0) {
+			done = true;
+			return 0;
+		}
+
+		int n = reader.readRuns(batch);
+		if (n == 0) {
 			done = true;
 		}
+		else {
+			nextRow = batch.getRunStarts()[n - 1] + batch.getRunLengths()[n - 1];
+		}
+		return n;
+	}
+
+	/**
+	 * Advances the scan by <tt>numRows</tt> rows, but only decodes the rows
+	 * at the selected positions.  The batch is emptied first; each selected
+	 * row is stored at its position in the batch, and the values at the other
+	 * positions must not be used.
+	 *
+	 * @param batch the batch to fill
+	 * @param numRows the number of rows to advance the scan by
+	 * @param sel the positions of the rows to decode, in increasing order
+	 * @param selSize the number of positions in <tt>sel</tt>
+	 */
+	public void getSelectedBatch(ColumnBatch batch, int numRows, int[] sel,
+			int selSize) throws IOException {
+		batch.reset(nextRow);
+		reader.readSelected(batch, numRows, sel, selSize);
+		nextRow += numRows;
+	}
+
+	/**
+     * Returns the next value of the column, one at a time.  Values are still
+     * read from the column a batch at a time.
+     */
+	public Object getNextObject() throws IOException {
+		if (currentBatch == null) {
+			currentBatch = createBatch();
+			batchPos = 0;
+		}
+
+		if (batchPos >= currentBatch.getSize()) {
+			if (getNextBatch(currentBatch) == 0) return null;
+			batchPos = 0;
+		}
+		return currentBatch.getObject(batchPos++);
 	}
 
 	public String toString() {
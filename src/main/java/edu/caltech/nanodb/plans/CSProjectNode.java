@@ -4,6 +4,7 @@ import java.io.IOException;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.SortedMap;
+import java.util.TreeSet;
 
 import org.apache.log4j.Logger;
 
@@ -16,15 +17,24 @@ import edu.caltech.nanodb.expressions.OrderByExpression;
 import edu.caltech.nanodb.plans.PlanNode.OperationType;
 import edu.caltech.nanodb.qeval.ColumnStats;
 import edu.caltech.nanodb.qeval.PlanCost;
+import edu.caltech.nanodb.qeval.SelectivityEstimator;
+import edu.caltech.nanodb.qeval.TableStats;
 import edu.caltech.nanodb.relations.ColumnInfo;
 import edu.caltech.nanodb.relations.Schema;
 import edu.caltech.nanodb.relations.Tuple;
 import edu.caltech.nanodb.storage.TableFileInfo;
 import edu.caltech.nanodb.storage.colstore.CSGeneratedTuple;
+import edu.caltech.nanodb.storage.colstore.ColStoreTableManager;
+import edu.caltech.nanodb.storage.colstore.ColumnBatch;
+import edu.caltech.nanodb.storage.colstore.DeltaStore;
 
 /**
  * PlanNode representing the <tt>SELECT</tt> clause in a <tt>SELECT</tt>
  * operation.  This is the relational algebra Project operator.
+ * <p>
+ * The rows of the table's row groups are read from the column pages first,
+ * and then the rows inserted since the last tuple move are read from the
+ * table's delta store, a row at a time.
  */
 public class CSProjectNode extends PlanNode {
 	
@@ -52,6 +62,39 @@ public class CSProjectNode extends PlanNode {
     /** A flag to mark whether the node can produce any more values. */
     private boolean done;
 
+    /**
+     * The current batch of values for each projected column.  Columns that
+     * the predicate also refers to share the predicate node's batch.
+     */
+    private ColumnBatch[] batches;
+
+    /** True for the projected columns that are read by their own scan. */
+    private boolean[] ownScan;
+
+    /** The positions in the current batches of the rows that passed. */
+    private int[] sel;
+
+    /** The number of positions in {@link #sel}. */
+    private int selSize;
+
+    /** The position in {@link #sel} of the next row to return. */
+    private int selPos;
+
+    /** The table's delta store, or null if it doesn't have one. */
+    private DeltaStore deltaStore;
+
+    /** True once the column pages have been read, and the delta store is. */
+    private boolean deltaScan;
+
+    /** True once every row of the delta store has been read. */
+    private boolean deltaDone;
+
+    /** The last row read from the delta store, or null before the first. */
+    private Tuple deltaTuple;
+
+    /** The index in the table of each projected column. */
+    private int[] columnIndexes;
+
     /**
      * This collection holds the non-wildcard column information, so that we can
      * more easily assign schema to projected tuples.
@@ -131,15 +174,89 @@ public class CSProjectNode extends PlanNode {
         
         predNode.prepare();
         
-        for (CSFileScanNode node : fileScanChildren) {
+        batches = new ColumnBatch[fileScanChildren.size()];
+        ownScan = new boolean[batches.length];
+        for (int i = 0; i < batches.length; i++) {
+        	CSFileScanNode node = fileScanChildren.get(i);
+        	batches[i] = predNode.getBatch(node.getColumnInfo());
+        	if (batches[i] != null) continue;
+        	
+        	ownScan[i] = true;
+        	batches[i] = node.createBatch();
         	try {
 				node.prepare();
-			} catch (IOException e) {
-				// TODO Auto-generated catch block
-				e.printStackTrace();
+			}
+			catch (IOException e) {
+				throw new RuntimeException("Couldn't prepare the scan of column " +
+					node.getColumnInfo().getName() + " of " + tblFileInfo.getTableName(), e);
 			}
         }
-		
+        sel = new int[ColumnBatch.DEFAULT_CAPACITY];
+        selSize = 0;
+        selPos = 0;
+
+        columnIndexes = new int[fileScanChildren.size()];
+        for (int i = 0; i < columnIndexes.length; i++) {
+        	columnIndexes[i] = inputSchema.getColumnIndex(
+        		fileScanChildren.get(i).getColumnInfo());
+        }
+        deltaStore = ((ColStoreTableManager) tblFileInfo.getTableManager())
+        	.getDeltaStore(tblFileInfo);
+
+        try {
+        	prepareCost();
+        } catch (IOException e) {
+        	throw new RuntimeException("Couldn't read the statistics of " +
+        		tblFileInfo.getTableName(), e);
+        }
+	}
+
+	/**
+	 * Computes the cost and the column statistics of the node from the
+	 * table's statistics.  Only the pages of the columns that are projected
+	 * or used by the predicate are counted, since no other column is read.
+	 */
+	private void prepareCost() throws IOException {
+		TableStats tableStats = tblFileInfo.getStats();
+		ArrayList<ColumnStats> tableColStats = tableStats.getAllColumnStats();
+
+		float selectivity = 1.0f;
+		if (predicate != null) {
+			selectivity = SelectivityEstimator.estimateSelectivity(predicate,
+				inputSchema, tableColStats);
+		}
+
+		TreeSet<Integer> readColumns = new TreeSet<Integer>();
+		for (int index : columnIndexes)
+			readColumns.add(index);
+		if (predicate != null) {
+			ArrayList<ColumnName> symbols = new ArrayList<ColumnName>();
+			predicate.getAllSymbols(symbols);
+			for (ColumnName colName : symbols) {
+				int index = inputSchema.getColumnIndex(colName);
+				if (index >= 0)
+					readColumns.add(index);
+			}
+		}
+
+		ColStoreTableManager tableManager =
+			(ColStoreTableManager) tblFileInfo.getTableManager();
+		int numColumns = inputSchema.numColumns();
+		long numPages = 0;
+		for (int index : readColumns) {
+			int pages = tableManager.getColumnPages(tblFileInfo, index);
+			if (pages < 0)
+				pages = tableStats.numDataPages / numColumns;
+			numPages += pages;
+		}
+
+		float tupleSize = tableStats.avgTupleSize * columnIndexes.length / numColumns;
+		cost = new PlanCost(tableStats.numTuples * selectivity, tupleSize,
+			tableStats.numTuples, numPages);
+
+		stats = new ArrayList<ColumnStats>();
+		for (int index : columnIndexes)
+			stats.add(tableColStats.get(index));
 	}
 
 
@@ -182,33 +299,112 @@ public class CSProjectNode extends PlanNode {
 	public Tuple getNextTuple() throws IllegalStateException, IOException {
 		if (done) return null;
 		
-		CSGeneratedTuple tuple = new CSGeneratedTuple(nonWildcardColumnInfos);
-
-		Object temp;
-		while (!predNode.getNext()) {
-			for (int i = 0; i < fileScanChildren.size(); i++) {
-				CSFileScanNode node = fileScanChildren.get(i);
-				temp = node.getNextObject();
-				if (temp == null) {
-					done = true;
-					return null;
-				}
+		if (selPos >= selSize) {
+			boolean more = !deltaScan && fetchBatches();
+			if (!more) {
+				deltaScan = true;
+				more = fetchDeltaBatches();
 			}
-		}
-		
-		for (int i = 0; i < fileScanChildren.size(); i++) {
-			CSFileScanNode node = fileScanChildren.get(i);
-			temp = node.getNextObject();
-			if (temp == null) {
+			if (!more) {
 				done = true;
 				return null;
 			}
-			tuple.setColumnValue(i, temp);
 		}
 		
-		return tuple;
+		return materialize(sel[selPos++]);
 	}
 	
+	/**
+	 * Reads rows of the delta store into the batches until at least one row
+	 * passes the predicate.  The predicate is evaluated on them the same way
+	 * as on rows read from the column pages.
+	 * 
+	 * @return true if the selection vector contains at least one row
+	 */
+	private boolean fetchDeltaBatches() throws IOException {
+		selSize = 0;
+		selPos = 0;
+		while (selSize == 0 && !deltaDone) {
+			predNode.clearBatches();
+			for (int i = 0; i < batches.length; i++) {
+				if (ownScan[i]) batches[i].reset(0);
+			}
+			
+			int n = 0;
+			while (n < sel.length) {
+				if (deltaStore == null) {
+					deltaDone = true;
+					break;
+				}
+				deltaTuple = (deltaTuple == null) ? deltaStore.getFirstTuple() :
+					deltaStore.getNextTuple(deltaTuple);
+				if (deltaTuple == null) {
+					deltaDone = true;
+					break;
+				}
+				
+				predNode.addRow(deltaTuple);
+				for (int i = 0; i < batches.length; i++) {
+					if (ownScan[i]) batches[i].add(deltaTuple.getColumnValue(columnIndexes[i]));
+				}
+				n++;
+			}
+			if (n == 0) return false;
+			
+			selSize = predNode.evaluate(n, sel);
+		}
+		return selSize > 0;
+	}
 	
+	/**
+	 * Reads batches until at least one row passes the predicate and hasn't
+	 * been deleted.  The predicate columns are read and evaluated first.  The other projected
+	 * columns then only decode the rows that passed, and skip over the rest.
+	 * All scans start at the same row and advance by the same number of rows,
+	 * so the batches stay aligned.
+	 * 
+	 * @return true if the selection vector contains at least one row
+	 */
+	private boolean fetchBatches() throws IOException {
+		selSize = 0;
+		selPos = 0;
+		while (selSize == 0) {
+			int n = predNode.readBatches();
+			if (n < 0) {
+				// There is no predicate, so every row is projected.
+				for (int i = 0; i < batches.length; i++) {
+					int m = fileScanChildren.get(i).getNextBatch(batches[i]);
+					n = (n < 0) ? m : Math.min(n, m);
+				}
+				if (n <= 0) return false;
+				
+				selSize = predNode.evaluate(batches[0].getFirstRow(), n, sel);
+				continue;
+			}
+			
+			if (n == 0) return false;
+			
+			// The predicate scans may have skipped rows using the zone maps.
+			int row = predNode.getBatchRow();
+			selSize = predNode.evaluate(row, n, sel);
+			for (int i = 0; i < batches.length; i++) {
+				if (ownScan[i]) {
+					CSFileScanNode node = fileScanChildren.get(i);
+					node.skipTo(row);
+					node.getSelectedBatch(batches[i], n, sel, selSize);
+				}
+			}
+		}
+		return true;
+	}
+	
+	/** Builds the output tuple for a row of the current batches. */
+	private Tuple materialize(int row) {
+		CSGeneratedTuple tuple = new CSGeneratedTuple(nonWildcardColumnInfos);
+		for (int i = 0; i < batches.length; i++) {
+			tuple.setColumnValue(i, batches[i].getObject(row));
+		}
+		return tuple;
+	}
 
 }
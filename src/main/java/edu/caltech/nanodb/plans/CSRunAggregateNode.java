@@ -0,0 +1,533 @@
+package edu.caltech.nanodb.plans;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.log4j.Logger;
+
+import edu.caltech.nanodb.commands.SelectClause;
+import edu.caltech.nanodb.commands.SelectValue;
+import edu.caltech.nanodb.expressions.ColumnName;
+import edu.caltech.nanodb.expressions.ColumnValue;
+import edu.caltech.nanodb.expressions.Expression;
+import edu.caltech.nanodb.expressions.FunctionCall;
+import edu.caltech.nanodb.expressions.TupleLiteral;
+import edu.caltech.nanodb.relations.ColumnInfo;
+import edu.caltech.nanodb.relations.SQLDataType;
+import edu.caltech.nanodb.relations.Schema;
+import edu.caltech.nanodb.relations.Tuple;
+import edu.caltech.nanodb.storage.TableFileInfo;
+import edu.caltech.nanodb.storage.colstore.ColStoreTableManager;
+import edu.caltech.nanodb.storage.colstore.ColumnBatch;
+import edu.caltech.nanodb.storage.colstore.DeleteBitmaps;
+import edu.caltech.nanodb.storage.colstore.DeltaStore;
+import edu.caltech.nanodb.storage.colstore.ZoneMap;
+
+/**
+ * PlanNode that computes <tt>COUNT</tt>, <tt>SUM</tt>, <tt>AVG</tt>,
+ * <tt>MIN</tt> and <tt>MAX</tt>, optionally grouped, over a single column of
+ * a column-store table.  The column is read as <tt>(value, start, length)</tt>
+ * runs, so a run-length encoded block is handled as one entry: the predicate
+ * is evaluated once per run, and the aggregates and groups are updated once
+ * per run, weighted by the run's length.  For RLE columns the cost is
+ * proportional to the number of runs rather than the number of rows.  For
+ * dictionary-encoded columns, the predicate is evaluated on the codes and
+ * groups are looked up by code.  Deleted rows are subtracted from the
+ * length of the runs that hold them, by counting them in the deletion
+ * bitmaps.  Rows in the table's delta store are added afterwards as runs of
+ * one row.
+ * <p>
+ * The node can only be used when the select values, the predicate and the
+ * grouping all refer to the same column; see {@link #canEvaluate}.
+ */
+public class CSRunAggregateNode extends PlanNode {
+
+    /** A logging object for reporting anything interesting that happens. */
+    private static Logger logger = Logger.getLogger(CSRunAggregateNode.class);
+
+    /** The table to aggregate. */
+    private TableFileInfo tblFileInfo;
+
+    /** The select values, each either the grouping column or an aggregate. */
+    private List<SelectValue> selectValues;
+
+    /** The predicate of the <tt>SELECT</tt> clause, or null. */
+    private Expression predicate;
+
+    /** True if the query groups by the column. */
+    private boolean grouped;
+
+    /** The column the node reads. */
+    private ColumnInfo colInfo;
+
+    /** The scan over the column's runs. */
+    private CSFileScanNode scan;
+
+    /** The compiled predicate, or null if there is no predicate. */
+    private CSBatchPredicate batchPredicate;
+
+    /**
+     * For each select value, the aggregate function it computes, or null if
+     * the value is the grouping column.
+     */
+    private String[] functions;
+
+    /** The result tuples, computed on the first call to getNextTuple(). */
+    private Iterator<TupleLiteral> results;
+
+
+    public CSRunAggregateNode(SelectClause selClause, TableFileInfo tblFileInfo) {
+        super(OperationType.GROUP_AGGREGATE);
+
+        this.tblFileInfo = tblFileInfo;
+        selectValues = selClause.getSelectValues();
+        predicate = selClause.getWhereExpr();
+        grouped = !selClause.getGroupByExprs().isEmpty();
+        colInfo = getColumn(selClause, tblFileInfo.getSchema());
+    }
+
+
+    /**
+     * Returns true if the query can be computed by this node: every select
+     * value is either an aggregate over a column or <tt>COUNT(*)</tt>, or the
+     * grouping column, there is no <tt>HAVING</tt> clause, and all of the
+     * select values, the predicate and the grouping refer to a single column.
+     *
+     * @param selClause the query
+     * @param tblFileInfo the column-store table the query reads
+     *
+     * @return true if the node can compute the query
+     */
+    public static boolean canEvaluate(SelectClause selClause,
+                                      TableFileInfo tblFileInfo) {
+        if (selClause.getHavingExpr() != null)
+            return false;
+
+        List<Expression> groupBy = selClause.getGroupByExprs();
+        if (groupBy.size() > 1 ||
+            (groupBy.size() == 1 && !(groupBy.get(0) instanceof ColumnValue))) {
+            return false;
+        }
+
+        Schema schema = tblFileInfo.getSchema();
+        for (SelectValue selVal : selClause.getSelectValues()) {
+            if (!selVal.isExpression())
+                return false;
+
+            Expression expr = selVal.getExpression();
+            if (expr instanceof ColumnValue) {
+                if (groupBy.isEmpty() || !expr.equals(groupBy.get(0)))
+                    return false;
+            }
+            else if (expr instanceof FunctionCall) {
+                FunctionCall call = (FunctionCall) expr;
+                String name = call.getFunctionName();
+                if (!call.isAggregate() || name.equals("COUNT-DISTINCT"))
+                    return false;
+
+                // COUNT(*) has no arguments.
+                if (call.getArguments().isEmpty() && name.equals("COUNT"))
+                    continue;
+
+                if (call.getArguments().size() != 1 ||
+                    !(call.getArguments().get(0) instanceof ColumnValue)) {
+                    return false;
+                }
+
+                ColumnName arg =
+                    ((ColumnValue) call.getArguments().get(0)).getColumnName();
+                if (name.equals("SUM") || name.equals("AVG")) {
+                    int i = schema.getColumnIndex(arg);
+                    if (i < 0 || !SQLDataType.isNumber(
+                            schema.getColumnInfo(i).getType().getBaseType())) {
+                        return false;
+                    }
+                }
+            }
+            else {
+                return false;
+            }
+        }
+
+        try {
+            getColumn(selClause, schema);
+            return true;
+        }
+        catch (IllegalArgumentException e) {
+            return false;
+        }
+    }
+
+
+    /**
+     * Finds the single column that a query refers to.  If the query doesn't
+     * refer to any column, as in <tt>SELECT COUNT(*) FROM t</tt>, the first
+     * column of the table is used to count the rows.
+     *
+     * @throws IllegalArgumentException if the query refers to more than one
+     *         column, or to a column that isn't in the table
+     */
+    private static ColumnInfo getColumn(SelectClause selClause, Schema schema) {
+        ArrayList<ColumnName> symbols = new ArrayList<ColumnName>();
+        for (SelectValue selVal : selClause.getSelectValues()) {
+            if (selVal.isExpression())
+                selVal.getExpression().getAllSymbols(symbols);
+        }
+        if (selClause.getWhereExpr() != null)
+            selClause.getWhereExpr().getAllSymbols(symbols);
+        for (Expression expr : selClause.getGroupByExprs())
+            expr.getAllSymbols(symbols);
+
+        HashSet<Integer> columns = new HashSet<Integer>();
+        for (ColumnName name : symbols) {
+            int i = schema.getColumnIndex(name);
+            if (i < 0)
+                throw new IllegalArgumentException("Unknown column " + name);
+            columns.add(i);
+        }
+
+        if (columns.size() > 1) {
+            throw new IllegalArgumentException(
+                "Query refers to more than one column: " + symbols);
+        }
+
+        int i = columns.isEmpty() ? 0 : columns.iterator().next();
+        return schema.getColumnInfo(i);
+    }
+
+
+    @Override
+    public void prepare() {
+        Schema inputSchema = tblFileInfo.getSchema();
+
+        schema = new Schema();
+        functions = new String[selectValues.size()];
+        for (int i = 0; i < selectValues.size(); i++) {
+            SelectValue selVal = selectValues.get(i);
+            Expression expr = selVal.getExpression();
+
+            ColumnInfo info = expr.getColumnInfo(inputSchema);
+            if (selVal.getAlias() != null)
+                info = new ColumnInfo(selVal.getAlias(), info.getType());
+            schema.addColumnInfo(info);
+
+            if (expr instanceof FunctionCall)
+                functions[i] = ((FunctionCall) expr).getFunctionName();
+        }
+
+        scan = new CSFileScanNode(tblFileInfo, colInfo, null);
+        if (predicate != null) {
+            Schema predSchema = new Schema();
+            predSchema.addColumnInfo(colInfo);
+            batchPredicate = CSBatchPredicate.compile(predicate, predSchema,
+                ColumnBatch.DEFAULT_CAPACITY);
+        }
+    }
+
+
+    @Override
+    public void initialize() {
+        super.initialize();
+        results = null;
+    }
+
+
+    @Override
+    public Tuple getNextTuple() throws IllegalStateException, IOException {
+        if (results == null)
+            results = computeResults().iterator();
+
+        return results.hasNext() ? results.next() : null;
+    }
+
+
+    /** Reads every run of the column and computes the result tuples. */
+    private List<TupleLiteral> computeResults() throws IOException {
+        LinkedHashMap<Object, RunAccumulator[]> groups =
+            new LinkedHashMap<Object, RunAccumulator[]>();
+
+        RunAccumulator[] current = null;
+        Object currentKey = null;
+
+        // The groups of the dictionary codes, so that runs read as codes
+        // find their group without decoding and hashing the value.
+        Object[] codeDictionary = null;
+        RunAccumulator[][] codeGroups = null;
+
+        if (!grouped) {
+            current = newAccumulators();
+            groups.put(null, current);
+        }
+
+        ColumnBatch batch = scan.createBatch();
+        ColumnBatch[] batches = { batch };
+        int[] sel = new int[batch.getCapacity()];
+
+        DeleteBitmaps deletes = ((ColStoreTableManager)
+            tblFileInfo.getTableManager()).getDeleteBitmaps(tblFileInfo);
+        if (deletes != null && deletes.getNumDeleted() == 0)
+            deletes = null;
+
+        scan.prepare();
+        if (batchPredicate != null) {
+            scan.setCandidateRows(batchPredicate.getCandidateRows(
+                new ZoneMap[] { scan.getZoneMap() }));
+        }
+        while (true) {
+            int n = scan.getNextRuns(batch);
+            if (n == 0)
+                break;
+
+            for (int i = 0; i < n; i++)
+                sel[i] = i;
+            int selSize = n;
+            if (batchPredicate != null)
+                selSize = batchPredicate.filter(batches, sel, n, sel);
+
+            int[] starts = batch.getRunStarts();
+            int[] lengths = batch.getRunLengths();
+            boolean byCode = grouped && batch.getKind() == ColumnBatch.Kind.CODE;
+            if (byCode && batch.getDictionary() != codeDictionary) {
+                codeDictionary = batch.getDictionary();
+                codeGroups = new RunAccumulator[codeDictionary.length][];
+            }
+
+            for (int j = 0; j < selSize; j++) {
+                int i = sel[j];
+                int length = lengths[i];
+                if (deletes != null) {
+                    length -= deletes.countDeleted(starts[i], starts[i] + length);
+                    if (length == 0)
+                        continue;
+                }
+                Object value = batch.getObject(i);
+
+                if (byCode) {
+                    int code = batch.getCodes()[i];
+                    current = codeGroups[code];
+                    if (current == null) {
+                        current = getGroup(groups, value);
+                        codeGroups[code] = current;
+                    }
+                    currentKey = value;
+                }
+                else if (grouped && (current == null || !value.equals(currentKey))) {
+                    // Consecutive runs usually belong to different groups,
+                    // but pages may split a run, so remember the last group.
+                    current = getGroup(groups, value);
+                    currentKey = value;
+                }
+
+                for (RunAccumulator acc : current) {
+                    if (acc != null)
+                        acc.addRun(value, length);
+                }
+            }
+        }
+
+        addDeltaRows(groups);
+
+        ArrayList<TupleLiteral> tuples = new ArrayList<TupleLiteral>();
+        for (Map.Entry<Object, RunAccumulator[]> entry : groups.entrySet()) {
+            TupleLiteral tuple = new TupleLiteral();
+            RunAccumulator[] accs = entry.getValue();
+            for (int i = 0; i < functions.length; i++) {
+                if (functions[i] == null)
+                    tuple.addValue(entry.getKey());
+                else
+                    tuple.addValue(accs[i].getResult());
+            }
+            tuples.add(tuple);
+        }
+
+        logger.debug(String.format("Aggregated %d groups over %s",
+            groups.size(), colInfo));
+        return tuples;
+    }
+
+
+    /**
+     * Adds the rows of the table's delta store that pass the predicate to the
+     * aggregates, as runs of one row.  The rows are read into batches, so the
+     * predicate is evaluated the same way as on the column's pages.
+     */
+    private void addDeltaRows(Map<Object, RunAccumulator[]> groups)
+            throws IOException {
+        DeltaStore deltaStore = ((ColStoreTableManager)
+            tblFileInfo.getTableManager()).getDeltaStore(tblFileInfo);
+        if (deltaStore == null)
+            return;
+
+        int column = tblFileInfo.getSchema().getColumnIndex(colInfo);
+        ColumnBatch batch = scan.createBatch();
+        ColumnBatch[] batches = { batch };
+        int[] sel = new int[batch.getCapacity()];
+
+        Tuple tup = deltaStore.getFirstTuple();
+        while (tup != null) {
+            batch.reset(0);
+            while (tup != null && !batch.isFull()) {
+                batch.add(tup.getColumnValue(column));
+                tup = deltaStore.getNextTuple(tup);
+            }
+
+            int n = batch.getSize();
+            for (int i = 0; i < n; i++)
+                sel[i] = i;
+            int selSize = n;
+            if (batchPredicate != null)
+                selSize = batchPredicate.filter(batches, sel, n, sel);
+
+            for (int j = 0; j < selSize; j++) {
+                Object value = batch.getObject(sel[j]);
+                for (RunAccumulator acc : getGroup(groups, grouped ? value : null)) {
+                    if (acc != null)
+                        acc.addRun(value, 1);
+                }
+            }
+        }
+    }
+
+
+    /** Returns the accumulators of a group, adding the group if it's new. */
+    private RunAccumulator[] getGroup(Map<Object, RunAccumulator[]> groups,
+                                      Object key) {
+        RunAccumulator[] accs = groups.get(key);
+        if (accs == null) {
+            accs = newAccumulators();
+            groups.put(key, accs);
+        }
+        return accs;
+    }
+
+
+    private RunAccumulator[] newAccumulators() {
+        RunAccumulator[] accs = new RunAccumulator[functions.length];
+        for (int i = 0; i < functions.length; i++) {
+            if (functions[i] != null)
+                accs[i] = new RunAccumulator(functions[i], colInfo);
+        }
+        return accs;
+    }
+
+
+    /**
+     * Accumulates one aggregate function over runs of equal values.  Each run
+     * contributes its value once, weighted by the number of rows in the run.
+     */
+    private static class RunAccumulator {
+        private String function;
+
+        private boolean integral;
+
+        private long count;
+
+        private long longSum;
+
+        private double doubleSum;
+
+        private Comparable<Object> min;
+
+        private Comparable<Object> max;
+
+        RunAccumulator(String function, ColumnInfo colInfo) {
+            this.function = function;
+            ColumnBatch.Kind kind = ColumnBatch.getValueKind(colInfo.getType());
+            integral = (kind == ColumnBatch.Kind.INT || kind == ColumnBatch.Kind.LONG);
+        }
+
+        @SuppressWarnings("unchecked")
+        void addRun(Object value, int length) {
+            count += length;
+            switch (function) {
+            case "SUM":
+            case "AVG":
+                if (integral)
+                    longSum += ((Number) value).longValue() * length;
+                else
+                    doubleSum += ((Number) value).doubleValue() * length;
+                break;
+
+            case "MIN":
+                if (min == null || min.compareTo(value) > 0)
+                    min = (Comparable<Object>) value;
+                break;
+
+            case "MAX":
+                if (max == null || max.compareTo(value) < 0)
+                    max = (Comparable<Object>) value;
+                break;
+            }
+        }
+
+        Object getResult() {
+            switch (function) {
+            case "COUNT":
+                return Integer.valueOf((int) count);
+
+            case "SUM":
+                if (count == 0)
+                    return null;
+                return integral ? (Object) Long.valueOf(longSum) : Double.valueOf(doubleSum);
+
+            case "AVG":
+                if (count == 0)
+                    return null;
+                return (integral ? (double) longSum : doubleSum) / count;
+
+            case "MIN":
+                return min;
+
+            default:
+                return max;
+            }
+        }
+    }
+
+
+    @Override
+    public void cleanUp() {
+        // Nothing to clean up.
+    }
+
+
+    @Override
+    public String toString() {
+        StringBuilder buf = new StringBuilder();
+        buf.append("CSRunAggregate[values:  ").append(selectValues);
+        if (grouped)
+            buf.append(", group:  ").append(colInfo.getColumnName());
+        if (predicate != null)
+            buf.append(", pred:  ").append(predicate);
+        buf.append("]\n\t").append(scan);
+        return buf.toString();
+    }
+
+
+    @Override
+    public boolean equals(Object obj) {
+        if (obj instanceof CSRunAggregateNode) {
+            CSRunAggregateNode other = (CSRunAggregateNode) obj;
+            return tblFileInfo.equals(other.tblFileInfo) &&
+                   selectValues.equals(other.selectValues) &&
+                   (predicate == null ? other.predicate == null :
+                                        predicate.equals(other.predicate));
+        }
+        return false;
+    }
+
+
+    @Override
+    public int hashCode() {
+        int hash = 7;
+        hash = 31 * hash + tblFileInfo.hashCode();
+        hash = 31 * hash + selectValues.hashCode();
+        hash = 31 * hash + (predicate != null ? predicate.hashCode() : 0);
+        return hash;
+    }
+}
@@ -2,48 +2,64 @@ package edu.caltech.nanodb.plans;
 
 import java.io.IOException;
 import java.util.ArrayList;
+import java.util.Arrays;
 
 import org.apache.log4j.Logger;
 
 import edu.caltech.nanodb.expressions.ColumnName;
-import edu.caltech.nanodb.expressions.Environment;
 import edu.caltech.nanodb.expressions.Expression;
 import edu.caltech.nanodb.relations.ColumnInfo;
 import edu.caltech.nanodb.relations.Schema;
+import edu.caltech.nanodb.relations.Tuple;
 import edu.caltech.nanodb.storage.TableFileInfo;
-import edu.caltech.nanodb.storage.colstore.CSGeneratedTuple;
+import edu.caltech.nanodb.storage.colstore.ColStoreTableManager;
+import edu.caltech.nanodb.storage.colstore.ColumnBatch;
+import edu.caltech.nanodb.storage.colstore.DeleteBitmaps;
+import edu.caltech.nanodb.storage.colstore.ZoneMap;
 
 /**
  * This select plan node implements a simple filter of a subplan based on a
- * predicate.
+ * predicate.  The predicate columns are read a batch at a time, and the
+ * predicate is compiled into a {@link CSBatchPredicate} that produces a
+ * selection vector of the rows in the batch that pass.  Before the scan, the
+ * predicate is checked against the zone maps of its columns, and the column
+ * scans only read the ranges of rows that may pass.  Rows that have been
+ * deleted are removed from the selection vector before the predicate is
+ * evaluated.
  */
 public class CSSimpleFilterNode {
 	/** A logging object for reporting anything interesting that happens. */
     private static Logger logger = Logger.getLogger(CSSimpleFilterNode.class);
-    
-    /**
-     * The environment used to evaluate expressions against tuples being
-     * processed.
-     */
-    private Environment environment;
-	
+
     /** The predicate being evaluated. */
 	private Expression predicate;
-	
+
+	/** The compiled form of the predicate. */
+	private CSBatchPredicate batchPredicate;
+
 	/** The table information pertaining to the predicate. */
 	private TableFileInfo tblFileInfo;
-	
+
 	/** Children nodes that read data pertaining to the predicate. */
     private ArrayList<CSFileScanNode> fileScanChildren;
-   
-    /** Schema used for predicate evaluation. */
+
+    /** The current batch of each of the predicate columns. */
+    private ColumnBatch[] batches;
+
+    /**
+     * Schema used for predicate evaluation.  Each column the predicate
+     * refers to appears once, even if it's referenced several times.
+     */
     private Schema schema;
-    
-    /** Column infos used for predicate evaluation. */
-    private ArrayList<ColumnInfo> infos;
-    
-    /** A flag to mark whether the node can produce any more values. */
-    boolean done;
+
+    /**
+     * The ranges of rows that may pass the predicate according to the zone
+     * maps, or null if any row may pass.
+     */
+    private int[] candidateRows;
+
+    /** The deletion bitmaps of the table. */
+    private DeleteBitmaps deletes;
 
     /**
      * Constructs a SimpleFilterNode that evaluates a predicate over all rows.
@@ -52,62 +68,192 @@ public class CSSimpleFilterNode {
 		this.predicate = predicate;
 		this.tblFileInfo = tblFileInfo;
 		fileScanChildren = new ArrayList<CSFileScanNode>();
-		infos = new ArrayList<ColumnInfo>();
+		batches = new ColumnBatch[0];
 		schema = null;
-		done = false;
-		environment = new Environment();
 	}
 
 	public void prepare() {
+		deletes = ((ColStoreTableManager) tblFileInfo.getTableManager())
+			.getDeleteBitmaps(tblFileInfo);
 		if (predicate == null) return;
-		
+
 		Schema prev = tblFileInfo.getSchema();
 		schema = new Schema();
 		ArrayList<ColumnName> symbols = new ArrayList<ColumnName>();
 		predicate.getAllSymbols(symbols);
-		
+
 		ColumnInfo current;
 		for (ColumnName name : symbols) {
 			current = prev.getColumnInfo(prev.getColumnIndex(name));
-			infos.add(current);
+			if (schema.getColumnIndex(current) >= 0) continue;
+
 			fileScanChildren.add(new CSFileScanNode(tblFileInfo, current, null));
 			schema.addColumnInfo(current);
 		}
-		
-		for (CSFileScanNode node : fileScanChildren) {
+
+		batches = new ColumnBatch[fileScanChildren.size()];
+		for (int i = 0; i < batches.length; i++) {
+			CSFileScanNode node = fileScanChildren.get(i);
+			batches[i] = node.createBatch();
         	try {
 				node.prepare();
-			} catch (IOException e) {
-				// TODO Auto-generated catch block
-				e.printStackTrace();
+			}
+			catch (IOException e) {
+				throw new RuntimeException("Couldn't prepare the scan of column " +
+					node.getColumnInfo().getName() + " of " + tblFileInfo.getTableName(), e);
 			}
         }
-		
-		logger.debug(schema);	
+
+		batchPredicate = CSBatchPredicate.compile(predicate, schema,
+			ColumnBatch.DEFAULT_CAPACITY);
+
+		// Every scan skips the same rows, so the batches stay aligned.
+		ZoneMap[] zoneMaps = new ZoneMap[batches.length];
+		for (int i = 0; i < batches.length; i++)
+			zoneMaps[i] = fileScanChildren.get(i).getZoneMap();
+		candidateRows = batchPredicate.getCandidateRows(zoneMaps);
+		for (CSFileScanNode node : fileScanChildren)
+			node.setCandidateRows(candidateRows);
+
+		if (candidateRows != null) {
+			int rows = 0;
+			for (int i = 0; i < candidateRows.length; i += 2)
+				rows += candidateRows[i + 1] - candidateRows[i];
+			logger.debug(String.format("Zone maps leave %d candidate rows in %d ranges",
+				rows, candidateRows.length / 2));
+		}
+
+		logger.debug(schema);
 	}
-	
-	public boolean getNext() throws IOException {
-		if (done) return false;
-		if (predicate == null) return true;
-		
-		CSGeneratedTuple tuple = new CSGeneratedTuple(infos);
-		
-		Object temp;
-		for (int i = 0; i < fileScanChildren.size(); i++) {
-			CSFileScanNode node = fileScanChildren.get(i);
-			temp = node.getNextObject();
-			if (temp == null) {
-				done = true;
-				return false;
+
+	/**
+	 * Restricts the predicate scans to a range of rows, within the ranges
+	 * left by the zone maps.  Successive ranges must not go backwards, since
+	 * the scans only move forward.
+	 *
+	 * @param start the first row of the range
+	 * @param end the row after the last row of the range
+	 */
+	public void setRowRange(int start, int end) {
+		int[] rows;
+		if (candidateRows == null) {
+			rows = new int[] { start, end };
+		}
+		else {
+			int[] ranges = new int[candidateRows.length];
+			int n = 0;
+			for (int i = 0; i < candidateRows.length; i += 2) {
+				int s = Math.max(start, candidateRows[i]);
+				int e = Math.min(end, candidateRows[i + 1]);
+				if (s < e) {
+					ranges[n++] = s;
+					ranges[n++] = e;
+				}
 			}
-			tuple.setColumnValue(i, temp);
+			rows = Arrays.copyOf(ranges, n);
+		}
+
+		for (CSFileScanNode node : fileScanChildren)
+			node.setCandidateRows(rows);
+	}
+
+	/**
+	 * Returns the batch that holds the current values of a table column, if
+	 * the predicate refers to that column.
+	 *
+	 * @param colInfo the table column
+	 * @return the column's batch, or null if the predicate doesn't use it
+	 */
+	public ColumnBatch getBatch(ColumnInfo colInfo) {
+		if (schema == null) return null;
+
+		int i = schema.getColumnIndex(colInfo);
+		return (i < 0) ? null : batches[i];
+	}
+
+	/**
+	 * Returns the row number of the first row of the current batches.  Rows
+	 * between batches may have been skipped using the zone maps.
+	 */
+	public int getBatchRow() {
+		return batches[0].getFirstRow();
+	}
+
+	/**
+	 * Reads the next batch of every predicate column.
+	 *
+	 * @return the number of rows in the batches, or -1 if there is no
+	 *         predicate and therefore no columns to read
+	 */
+	public int readBatches() throws IOException {
+		if (batches.length == 0) return -1;
+
+		int n = Integer.MAX_VALUE;
+		for (int i = 0; i < batches.length; i++)
+			n = Math.min(n, fileScanChildren.get(i).getNextBatch(batches[i]));
+		return n;
+	}
+
+	/**
+	 * Evaluates the predicate against the rows of the current batches.
+	 *
+	 * @param numRows the number of rows in the current batches
+	 * @param sel the array to store the positions of the passing rows into
+	 * @return the number of passing rows
+	 */
+	public int evaluate(int numRows, int[] sel) {
+		for (int i = 0; i < numRows; i++)
+			sel[i] = i;
+
+		if (batchPredicate == null) return numRows;
+		return batchPredicate.filter(batches, sel, numRows, sel);
+	}
+
+	/**
+	 * Evaluates the predicate against the rows of the current batches that
+	 * haven't been deleted.  The deletion bitmaps are applied to the
+	 * selection vector first, so the predicate isn't evaluated on deleted
+	 * rows.
+	 *
+	 * @param firstRow the row number of the first row of the batches
+	 * @param numRows the number of rows in the current batches
+	 * @param sel the array to store the positions of the passing rows into
+	 * @return the number of passing rows
+	 */
+	public int evaluate(int firstRow, int numRows, int[] sel) {
+		for (int i = 0; i < numRows; i++)
+			sel[i] = i;
+
+		int selSize = numRows;
+		if (deletes != null)
+			selSize = deletes.filter(firstRow, sel, selSize);
+		if (batchPredicate == null || selSize == 0) return selSize;
+		return batchPredicate.filter(batches, sel, selSize, sel);
+	}
+
+	/**
+	 * Empties the batches of the predicate columns, so that rows of the
+	 * table's delta store can be added with {@link #addRow}.
+	 */
+	public void clearBatches() {
+		for (ColumnBatch batch : batches)
+			batch.reset(0);
+	}
+
+	/**
+	 * Adds the values of a row of the table's delta store to the batches of
+	 * the predicate columns.
+	 *
+	 * @param tup a row with the table's columns
+	 */
+	public void addRow(Tuple tup) {
+		Schema tableSchema = tblFileInfo.getSchema();
+		for (int i = 0; i < batches.length; i++) {
+			int column = tableSchema.getColumnIndex(schema.getColumnInfo(i));
+			batches[i].add(tup.getColumnValue(column));
 		}
-		
-		environment.clear();
-        environment.addTuple(schema, tuple);
-        return predicate.evaluatePredicate(environment);
 	}
-	
+
 	public String toString() {
         String plan = "CSSimpleFilter[pred:  " + predicate.toString() + "]\n";
         for (CSFileScanNode node : fileScanChildren) {
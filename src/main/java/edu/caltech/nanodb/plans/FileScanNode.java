@@ -10,6 +10,7 @@ import edu.caltech.nanodb.qeval.PlanCost;
 import edu.caltech.nanodb.qeval.SelectivityEstimator;
 import edu.caltech.nanodb.qeval.TableStats;
 import edu.caltech.nanodb.relations.Tuple;
+import edu.caltech.nanodb.storage.StorageManager;
 import edu.caltech.nanodb.storage.TableFileInfo;
 import edu.caltech.nanodb.storage.TableManager;
 
@@ -104,12 +105,20 @@ public class FileScanNode extends SelectNode implements Marked {
             return;
         }
 
-        TableManager tableManager = tblFileInfo.getTableManager();
-        if (currentTuple == null) {
-            // currentTuple 若为null则getFirstTuple
-            currentTuple = tableManager.getFirstTuple(tblFileInfo);
-        } else {
-            currentTuple = tableManager.getNextTuple(tblFileInfo, currentTuple);
+        // 顺序扫描读取的页以低优先级缓存, 避免冲掉其他查询常用的页
+        StorageManager storageManager = StorageManager.getInstance();
+        boolean wasScan = storageManager.setScanAccess(true);
+        try {
+            TableManager tableManager = tblFileInfo.getTableManager();
+            if (currentTuple == null) {
+                // currentTuple 若为null则getFirstTuple
+                currentTuple = tableManager.getFirstTuple(tblFileInfo);
+            } else {
+                currentTuple = tableManager.getNextTuple(tblFileInfo, currentTuple);
+            }
+        }
+        finally {
+            storageManager.setScanAccess(wasScan);
         }
     }
 
@@ -18,9 +18,13 @@ import edu.caltech.nanodb.commands.SelectClause;
 import edu.caltech.nanodb.commands.SelectValue;
 import edu.caltech.nanodb.expressions.BooleanOperator;
 import edu.caltech.nanodb.expressions.ColumnName;
+import edu.caltech.nanodb.expressions.ColumnValue;
 import edu.caltech.nanodb.expressions.Expression;
+import edu.caltech.nanodb.expressions.FunctionCall;
 import edu.caltech.nanodb.expressions.OrderByExpression;
 import edu.caltech.nanodb.plans.CSProjectNode;
+import edu.caltech.nanodb.plans.CSAggregateNode;
+import edu.caltech.nanodb.plans.CSRunAggregateNode;
 import edu.caltech.nanodb.plans.FileScanNode;
 import edu.caltech.nanodb.plans.NestedLoopsJoinNode;
 import edu.caltech.nanodb.plans.PlanNode;
@@ -29,11 +33,13 @@ import edu.caltech.nanodb.plans.RenameNode;
 import edu.caltech.nanodb.plans.SelectNode;
 import edu.caltech.nanodb.plans.SimpleFilterNode;
 import edu.caltech.nanodb.plans.SortNode;
+import edu.caltech.nanodb.relations.ColumnIndexes;
 import edu.caltech.nanodb.relations.JoinType;
 import edu.caltech.nanodb.relations.Schema;
 import edu.caltech.nanodb.storage.DBFileType;
 import edu.caltech.nanodb.storage.StorageManager;
 import edu.caltech.nanodb.storage.TableFileInfo;
+import edu.caltech.nanodb.storage.colstore.ColStoreTableManager;
 
 /**
  * This planner implementation uses dynamic programming to devise an optimal
@@ -97,6 +103,45 @@ public class DPJoinPlanner implements Planner {
         }
     }
 
+    /**
+     * Returns true if the rows of a column-store table are already in the
+     * order of a query's <tt>ORDER BY</tt> clause, so that they don't need to
+     * be sorted.  This is the case if the clause lists a prefix of the
+     * table's sort key, all ascending, and the table's rows are in key order.
+     */
+    private boolean isInSortKeyOrder(SelectClause selClause,
+                                     TableFileInfo tableInfo) throws IOException {
+        if (isAggregateQuery(selClause))
+            return false;
+
+        ColumnIndexes sortKey = tableInfo.getSchema().getSortKey();
+        List<OrderByExpression> orderByExprs = selClause.getOrderByExprs();
+        if (sortKey == null || orderByExprs.size() > sortKey.size())
+            return false;
+
+        for (int i = 0; i < orderByExprs.size(); i++) {
+            OrderByExpression orderBy = orderByExprs.get(i);
+            if (!orderBy.isAscending() ||
+                !(orderBy.getExpression() instanceof ColumnValue))
+                return false;
+
+            ColumnName colName =
+                ((ColumnValue) orderBy.getExpression()).getColumnName();
+            if (tableInfo.getSchema().getColumnIndex(colName) != sortKey.getCol(i))
+                return false;
+
+            // The name could also be the alias of another value.
+            for (SelectValue selVal : selClause.getSelectValues()) {
+                if (colName.getColumnName().equalsIgnoreCase(selVal.getAlias()))
+                    return false;
+            }
+        }
+
+        ColStoreTableManager tableManager =
+            (ColStoreTableManager) tableInfo.getTableManager();
+        return tableManager.isSorted(tableInfo);
+    }
+
     /**
      * 为查询语句生成一个执行计划
      * 
@@ -119,7 +164,36 @@ public class DPJoinPlanner implements Planner {
 
             if (tableInfo.getFileType() == DBFileType.COLUMNSTORE_DATA_FILE) {
                 logger.debug("Jumping to ColumnStore planner.");
-                PlanNode plan = new CSProjectNode(selClause, tableInfo);
+                PlanNode plan;
+                if (isAggregateQuery(selClause)) {
+                    // Run aggregation is single-threaded, so it's only used
+                    // if the scan can't be split among several threads.
+                    boolean batch = CSAggregateNode.canEvaluate(selClause, tableInfo);
+                    if (batch && CSAggregateNode.getScanThreads() > 1) {
+                        plan = new CSAggregateNode(selClause, tableInfo);
+                    }
+                    else if (CSRunAggregateNode.canEvaluate(selClause, tableInfo)) {
+                        plan = new CSRunAggregateNode(selClause, tableInfo);
+                    }
+                    else if (batch) {
+                        plan = new CSAggregateNode(selClause, tableInfo);
+                    }
+                    else {
+                        throw new UnsupportedOperationException(
+                            "Column-store aggregation only supports " +
+                            "COUNT, SUM, AVG, MIN and MAX of columns, " +
+                            "grouped by columns, without HAVING");
+                    }
+                }
+                else {
+                    plan = new CSProjectNode(selClause, tableInfo);
+                }
+
+                List<OrderByExpression> orderByExprs = selClause.getOrderByExprs();
+                if (!orderByExprs.isEmpty() &&
+                    !isInSortKeyOrder(selClause, tableInfo)) {
+                    plan = new SortNode(plan, orderByExprs);
+                }
                 plan.prepare();
                 return plan;
             }
@@ -240,6 +314,25 @@ public class DPJoinPlanner implements Planner {
         }
     }
 
+    /**
+     * 判断查询是否需要分组聚合：有GROUP BY，或者某个select value是聚合函数
+     *
+     * @param selClause 查询
+     * @return 需要分组聚合时返回true
+     */
+    private boolean isAggregateQuery(SelectClause selClause) {
+        if (!selClause.getGroupByExprs().isEmpty())
+            return true;
+
+        for (SelectValue selVal : selClause.getSelectValues()) {
+            if (selVal.isExpression() && selVal.getExpression() instanceof FunctionCall &&
+                ((FunctionCall) selVal.getExpression()).isAggregate()) {
+                return true;
+            }
+        }
+        return false;
+    }
+
     /**
      * 将expr对应的谓词添加到conjuncts，如果Expression是AND表达式就将其内部的各个term放入到conjuncts中，
      * 若不是将整个expression当作谓词
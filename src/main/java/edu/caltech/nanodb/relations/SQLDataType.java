@@ -161,6 +161,10 @@ public enum SQLDataType {
         return (type.typeID >= 1 && type.typeID <= 20);
     }
 
+    public static boolean isInteger(SQLDataType type) {
+        return (type.typeID >= 1 && type.typeID <= 4);
+    }
+
     public static boolean isString(SQLDataType type) {
         return (type.typeID >= 21 && type.typeID <= 23);
     }
@@ -48,6 +48,14 @@ public class TableSchema extends Schema {
         new HashMap<String, ColumnIndexes>();
 
 
+    /**
+     * The columns that the rows of the table are stored sorted by, or
+     * <tt>null</tt> if the rows aren't kept in any order.  Only column-store
+     * tables can have a sort key.
+     */
+    private ColumnIndexes sortKey;
+
+
     /**
      * Sets the primary key on this table.
      *
@@ -81,6 +89,28 @@ public class TableSchema extends Schema {
     }
 
 
+    /**
+     * Sets the columns that the rows of the table are stored sorted by.
+     *
+     * @param sortKey the sort key, or <tt>null</tt> if the rows aren't kept
+     *        in any order
+     */
+    public void setSortKey(ColumnIndexes sortKey) {
+        this.sortKey = sortKey;
+    }
+
+
+    /**
+     * Returns the columns that the rows of the table are stored sorted by, or
+     * <tt>null</tt> if the rows aren't kept in any order.
+     *
+     * @return the sort key of the table, or <tt>null</tt>
+     */
+    public ColumnIndexes getSortKey() {
+        return sortKey;
+    }
+
+
     public void addCandidateKey(KeyColumnIndexes ck) {
         if (ck == null)
             throw new IllegalArgumentException("ck cannot be null");
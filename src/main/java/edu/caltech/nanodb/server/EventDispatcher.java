@@ -44,6 +44,11 @@ public class EventDispatcher {
     }
 
 
+    public void removeCommandEventListener(CommandEventListener listener) {
+        commandEventListeners.remove(listener);
+    }
+
+
     /**
      *
      * @param cmd the command that is about to be executed
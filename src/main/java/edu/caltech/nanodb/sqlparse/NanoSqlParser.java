@@ -29,11 +29,11 @@ import antlr.collections.impl.BitSet;
 
 /**
  * A parser for processing SQL commands into the various command-classes derived
- * from {@link Command}.  The information in these
+ * from {@link edu.caltech.nanodb.commands.Command}.  The information in these
  * commands is then used for data-definition, data-manipulation, and general
  * utility operations, within the database.
  */
-public class NanoSqlParser extends LLkParser       implements NanoSqlParserTokenTypes
+public class NanoSqlParser extends antlr.LLkParser       implements NanoSqlParserTokenTypes
  {
 
 protected NanoSqlParser(TokenBuffer tokenBuf, int k) {
@@ -247,7 +247,7 @@ public NanoSqlParser(ParserSharedInputState state) {
 	
 /**
  * CREATE Statements - each database object that can be created will produce a
- * different {@link Command} instance that contains
+ * different {@link edu.caltech.nanodb.commands.Command} instance that contains
  * the SQL command's details.  This rule returns that Command instance, fully
  * configured.
  */
@@ -379,7 +379,7 @@ public NanoSqlParser(ParserSharedInputState state) {
 			e=expression();
 			uc.addValue(name, e);
 			{
-			_loop107:
+			_loop113:
 			do {
 				if ((LA(1)==COMMA)) {
 					match(COMMA);
@@ -389,7 +389,7 @@ public NanoSqlParser(ParserSharedInputState state) {
 					uc.addValue(name, e);
 				}
 				else {
-					break _loop107;
+					break _loop113;
 				}
 				
 			} while (true);
@@ -616,7 +616,7 @@ public NanoSqlParser(ParserSharedInputState state) {
 			tblName=dbobj_ident();
 			c = new AnalyzeCommand(tblName, verbose);
 			{
-			_loop121:
+			_loop127:
 			do {
 				if ((LA(1)==COMMA)) {
 					match(COMMA);
@@ -624,7 +624,7 @@ public NanoSqlParser(ParserSharedInputState state) {
 					c.addTable(tblName);
 				}
 				else {
-					break _loop121;
+					break _loop127;
 				}
 				
 			} while (true);
@@ -734,7 +734,7 @@ public NanoSqlParser(ParserSharedInputState state) {
 			tblName=dbobj_ident();
 			c = new VerifyCommand(tblName);
 			{
-			_loop126:
+			_loop132:
 			do {
 				if ((LA(1)==COMMA)) {
 					match(COMMA);
@@ -742,7 +742,7 @@ public NanoSqlParser(ParserSharedInputState state) {
 					c.addTable(tblName);
 				}
 				else {
-					break _loop126;
+					break _loop132;
 				}
 				
 			} while (true);
@@ -761,6 +761,7 @@ public NanoSqlParser(ParserSharedInputState state) {
 		
 		c = null;
 		String tblName = null;
+		String colName = null;
 		
 		
 		try {      // for error handling
@@ -768,7 +769,7 @@ public NanoSqlParser(ParserSharedInputState state) {
 			tblName=dbobj_ident();
 			c = new OptimizeCommand(tblName);
 			{
-			_loop129:
+			_loop135:
 			do {
 				if ((LA(1)==COMMA)) {
 					match(COMMA);
@@ -776,11 +777,46 @@ public NanoSqlParser(ParserSharedInputState state) {
 					c.addTable(tblName);
 				}
 				else {
-					break _loop129;
+					break _loop135;
 				}
 				
 			} while (true);
 			}
+			{
+			switch ( LA(1)) {
+			case ORDER:
+			{
+				match(ORDER);
+				match(BY);
+				colName=dbobj_ident();
+				c.addSortColumn(colName);
+				{
+				_loop138:
+				do {
+					if ((LA(1)==COMMA)) {
+						match(COMMA);
+						colName=dbobj_ident();
+						c.addSortColumn(colName);
+					}
+					else {
+						break _loop138;
+					}
+					
+				} while (true);
+				}
+				break;
+			}
+			case EOF:
+			case SEMICOLON:
+			{
+				break;
+			}
+			default:
+			{
+				throw new NoViableAltException(LT(1), getFilename());
+			}
+			}
+			}
 		}
 		catch (RecognitionException ex) {
 			reportError(ex);
@@ -921,6 +957,8 @@ public NanoSqlParser(ParserSharedInputState state) {
 			case DESC:
 			case FROM:
 			case FULL:
+			case GROUP:
+			case HAVING:
 			case IN:
 			case INNER:
 			case JOIN:
@@ -936,12 +974,10 @@ public NanoSqlParser(ParserSharedInputState state) {
 			case SEMICOLON:
 			case IDENT:
 			case QUOTED_IDENT:
+			case EQUALS:
 			case COMMA:
 			case RPAREN:
-			case GROUP:
-			case HAVING:
 			case STAR:
-			case EQUALS:
 			case NOT_EQUALS:
 			case GRTR_THAN:
 			case LESS_THAN:
@@ -976,6 +1012,7 @@ public NanoSqlParser(ParserSharedInputState state) {
 		String name = null;
 		boolean temp = false;
 		boolean ifNotExists = false;
+		String engine = null;
 		
 		
 		try {      // for error handling
@@ -1023,6 +1060,46 @@ public NanoSqlParser(ParserSharedInputState state) {
 			name=dbobj_ident();
 			c = new CreateTableCommand(name, temp, ifNotExists);
 			table_decl(c);
+			{
+			switch ( LA(1)) {
+			case ENGINE:
+			{
+				match(ENGINE);
+				match(EQUALS);
+				engine=dbobj_ident();
+				c.setEngine(engine);
+				break;
+			}
+			case EOF:
+			case SORTED:
+			case SEMICOLON:
+			{
+				break;
+			}
+			default:
+			{
+				throw new NoViableAltException(LT(1), getFilename());
+			}
+			}
+			}
+			{
+			switch ( LA(1)) {
+			case SORTED:
+			{
+				sort_key_decl(c);
+				break;
+			}
+			case EOF:
+			case SEMICOLON:
+			{
+				break;
+			}
+			default:
+			{
+				throw new NoViableAltException(LT(1), getFilename());
+			}
+			}
+			}
 		}
 		catch (RecognitionException ex) {
 			reportError(ex);
@@ -1138,7 +1215,7 @@ public NanoSqlParser(ParserSharedInputState state) {
 			colName=dbobj_ident();
 			c.addColumn(colName);
 			{
-			_loop54:
+			_loop60:
 			do {
 				if ((LA(1)==COMMA)) {
 					match(COMMA);
@@ -1146,7 +1223,7 @@ public NanoSqlParser(ParserSharedInputState state) {
 					c.addColumn(colName);
 				}
 				else {
-					break _loop54;
+					break _loop60;
 				}
 				
 			} while (true);
@@ -1177,6 +1254,24 @@ public NanoSqlParser(ParserSharedInputState state) {
 			filename=file_name();
 			c = new CreateColStoreCommand(name, filename);
 			table_decl(c);
+			{
+			switch ( LA(1)) {
+			case SORTED:
+			{
+				sort_key_decl(c);
+				break;
+			}
+			case EOF:
+			case SEMICOLON:
+			{
+				break;
+			}
+			default:
+			{
+				throw new NoViableAltException(LT(1), getFilename());
+			}
+			}
+			}
 		}
 		catch (RecognitionException ex) {
 			reportError(ex);
@@ -1250,7 +1345,7 @@ public NanoSqlParser(ParserSharedInputState state) {
 			}
 			}
 			{
-			_loop24:
+			_loop26:
 			do {
 				if ((LA(1)==COMMA)) {
 					match(COMMA);
@@ -1279,7 +1374,45 @@ public NanoSqlParser(ParserSharedInputState state) {
 					}
 				}
 				else {
-					break _loop24;
+					break _loop26;
+				}
+				
+			} while (true);
+			}
+			match(RPAREN);
+		}
+		catch (RecognitionException ex) {
+			reportError(ex);
+			recover(ex,_tokenSet_5);
+		}
+	}
+	
+/**
+ * Parse the <tt>SORTED BY</tt> clause of a column-store table, which lists
+ * the columns of the table's sort key.
+ */
+	public final void sort_key_decl(
+		CreateTableCommand ct
+	) throws RecognitionException, TokenStreamException {
+		
+		
+		try {      // for error handling
+			String colName = null;
+			match(SORTED);
+			match(BY);
+			match(LPAREN);
+			colName=dbobj_ident();
+			ct.addSortColumn(colName);
+			{
+			_loop29:
+			do {
+				if ((LA(1)==COMMA)) {
+					match(COMMA);
+					colName=dbobj_ident();
+					ct.addSortColumn(colName);
+				}
+				else {
+					break _loop29;
 				}
 				
 			} while (true);
@@ -1314,9 +1447,9 @@ public NanoSqlParser(ParserSharedInputState state) {
 			colType=column_type();
 			colInfo = new ColumnInfo(nm.getText(), colType);
 			{
-			_loop27:
+			_loop32:
 			do {
-				if ((_tokenSet_5.member(LA(1)))) {
+				if ((_tokenSet_6.member(LA(1)))) {
 					con=column_constraint();
 					
 					con.addColumn(nm.getText());
@@ -1324,7 +1457,7 @@ public NanoSqlParser(ParserSharedInputState state) {
 					
 				}
 				else {
-					break _loop27;
+					break _loop32;
 				}
 				
 			} while (true);
@@ -1332,7 +1465,7 @@ public NanoSqlParser(ParserSharedInputState state) {
 		}
 		catch (RecognitionException ex) {
 			reportError(ex);
-			recover(ex,_tokenSet_6);
+			recover(ex,_tokenSet_7);
 		}
 		return colInfo;
 	}
@@ -1413,7 +1546,7 @@ public NanoSqlParser(ParserSharedInputState state) {
 				match(IDENT);
 				c.addColumn(c1.getText());
 				{
-				_loop41:
+				_loop46:
 				do {
 					if ((LA(1)==COMMA)) {
 						match(COMMA);
@@ -1422,7 +1555,7 @@ public NanoSqlParser(ParserSharedInputState state) {
 						c.addColumn(ci.getText());
 					}
 					else {
-						break _loop41;
+						break _loop46;
 					}
 					
 				} while (true);
@@ -1440,7 +1573,7 @@ public NanoSqlParser(ParserSharedInputState state) {
 				match(IDENT);
 				c.addColumn(fkc1.getText());
 				{
-				_loop43:
+				_loop48:
 				do {
 					if ((LA(1)==COMMA)) {
 						match(COMMA);
@@ -1449,7 +1582,7 @@ public NanoSqlParser(ParserSharedInputState state) {
 						c.addColumn(fkci.getText());
 					}
 					else {
-						break _loop43;
+						break _loop48;
 					}
 					
 				} while (true);
@@ -1468,7 +1601,7 @@ public NanoSqlParser(ParserSharedInputState state) {
 					match(IDENT);
 					c.addRefColumn(rtc1.getText());
 					{
-					_loop46:
+					_loop51:
 					do {
 						if ((LA(1)==COMMA)) {
 							match(COMMA);
@@ -1477,7 +1610,7 @@ public NanoSqlParser(ParserSharedInputState state) {
 							c.addRefColumn(rtci.getText());
 						}
 						else {
-							break _loop46;
+							break _loop51;
 						}
 						
 					} while (true);
@@ -1507,7 +1640,7 @@ public NanoSqlParser(ParserSharedInputState state) {
 		}
 		catch (RecognitionException ex) {
 			reportError(ex);
-			recover(ex,_tokenSet_6);
+			recover(ex,_tokenSet_7);
 		}
 		return c;
 	}
@@ -1658,7 +1791,7 @@ public NanoSqlParser(ParserSharedInputState state) {
 		}
 		catch (RecognitionException ex) {
 			reportError(ex);
-			recover(ex,_tokenSet_7);
+			recover(ex,_tokenSet_8);
 		}
 		return ct;
 	}
@@ -1771,7 +1904,7 @@ public NanoSqlParser(ParserSharedInputState state) {
 		}
 		catch (RecognitionException ex) {
 			reportError(ex);
-			recover(ex,_tokenSet_7);
+			recover(ex,_tokenSet_8);
 		}
 		return c;
 	}
@@ -1807,11 +1940,15 @@ public NanoSqlParser(ParserSharedInputState state) {
 				sc.setDistinct(true);
 				break;
 			}
+			case AVG:
 			case COUNT:
 			case EXISTS:
 			case FALSE:
+			case MAX:
+			case MIN:
 			case NOT:
 			case NULL:
+			case SUM:
 			case TRUE:
 			case INT_LITERAL:
 			case LONG_LITERAL:
@@ -1836,7 +1973,7 @@ public NanoSqlParser(ParserSharedInputState state) {
 			sv=select_value();
 			sc.addSelectValue(sv);
 			{
-			_loop62:
+			_loop68:
 			do {
 				if ((LA(1)==COMMA)) {
 					match(COMMA);
@@ -1844,7 +1981,7 @@ public NanoSqlParser(ParserSharedInputState state) {
 					sc.addSelectValue(sv);
 				}
 				else {
-					break _loop62;
+					break _loop68;
 				}
 				
 			} while (true);
@@ -1859,11 +1996,11 @@ public NanoSqlParser(ParserSharedInputState state) {
 				break;
 			}
 			case EOF:
+			case GROUP:
 			case ORDER:
 			case WHERE:
 			case SEMICOLON:
 			case RPAREN:
-			case GROUP:
 			{
 				break;
 			}
@@ -1883,10 +2020,10 @@ public NanoSqlParser(ParserSharedInputState state) {
 				break;
 			}
 			case EOF:
+			case GROUP:
 			case ORDER:
 			case SEMICOLON:
 			case RPAREN:
-			case GROUP:
 			{
 				break;
 			}
@@ -1905,7 +2042,7 @@ public NanoSqlParser(ParserSharedInputState state) {
 				e=expression();
 				sc.addGroupByExpr(e);
 				{
-				_loop67:
+				_loop73:
 				do {
 					if ((LA(1)==COMMA)) {
 						match(COMMA);
@@ -1913,7 +2050,7 @@ public NanoSqlParser(ParserSharedInputState state) {
 						sc.addGroupByExpr(e);
 					}
 					else {
-						break _loop67;
+						break _loop73;
 					}
 					
 				} while (true);
@@ -1991,7 +2128,7 @@ public NanoSqlParser(ParserSharedInputState state) {
 				}
 				sc.addOrderByExpr(new OrderByExpression(e, ascending));
 				{
-				_loop73:
+				_loop79:
 				do {
 					if ((LA(1)==COMMA)) {
 						match(COMMA);
@@ -2026,7 +2163,7 @@ public NanoSqlParser(ParserSharedInputState state) {
 						sc.addOrderByExpr(new OrderByExpression(e, ascending));
 					}
 					else {
-						break _loop73;
+						break _loop79;
 					}
 					
 				} while (true);
@@ -2048,7 +2185,7 @@ public NanoSqlParser(ParserSharedInputState state) {
 		}
 		catch (RecognitionException ex) {
 			reportError(ex);
-			recover(ex,_tokenSet_8);
+			recover(ex,_tokenSet_9);
 		}
 		return sc;
 	}
@@ -2113,11 +2250,15 @@ public NanoSqlParser(ParserSharedInputState state) {
 				sv = new SelectValue(new ColumnName());
 				break;
 			}
+			case AVG:
 			case COUNT:
 			case EXISTS:
 			case FALSE:
+			case MAX:
+			case MIN:
 			case NOT:
 			case NULL:
+			case SUM:
 			case TRUE:
 			case INT_LITERAL:
 			case LONG_LITERAL:
@@ -2160,12 +2301,12 @@ public NanoSqlParser(ParserSharedInputState state) {
 				}
 				case EOF:
 				case FROM:
+				case GROUP:
 				case ORDER:
 				case WHERE:
 				case SEMICOLON:
 				case COMMA:
 				case RPAREN:
-				case GROUP:
 				{
 					break;
 				}
@@ -2186,7 +2327,7 @@ public NanoSqlParser(ParserSharedInputState state) {
 		}
 		catch (RecognitionException ex) {
 			reportError(ex);
-			recover(ex,_tokenSet_9);
+			recover(ex,_tokenSet_10);
 		}
 		return sv;
 	}
@@ -2202,7 +2343,7 @@ public NanoSqlParser(ParserSharedInputState state) {
 		try {      // for error handling
 			fc=join_expr();
 			{
-			_loop79:
+			_loop85:
 			do {
 				if ((LA(1)==COMMA)) {
 					match(COMMA);
@@ -2210,7 +2351,7 @@ public NanoSqlParser(ParserSharedInputState state) {
 					fc = new FromClause(fc, next, JoinType.CROSS);
 				}
 				else {
-					break _loop79;
+					break _loop85;
 				}
 				
 			} while (true);
@@ -2218,7 +2359,7 @@ public NanoSqlParser(ParserSharedInputState state) {
 		}
 		catch (RecognitionException ex) {
 			reportError(ex);
-			recover(ex,_tokenSet_10);
+			recover(ex,_tokenSet_11);
 		}
 		return fc;
 	}
@@ -2242,7 +2383,7 @@ public NanoSqlParser(ParserSharedInputState state) {
 		}
 		catch (RecognitionException ex) {
 			reportError(ex);
-			recover(ex,_tokenSet_11);
+			recover(ex,_tokenSet_12);
 		}
 		return e;
 	}
@@ -2264,9 +2405,9 @@ public NanoSqlParser(ParserSharedInputState state) {
 		try {      // for error handling
 			fc=from_expr();
 			{
-			_loop91:
+			_loop97:
 			do {
-				if ((_tokenSet_12.member(LA(1)))) {
+				if ((_tokenSet_13.member(LA(1)))) {
 					{
 					switch ( LA(1)) {
 					case CROSS:
@@ -2409,7 +2550,7 @@ public NanoSqlParser(ParserSharedInputState state) {
 						fc.addUsingName(n);
 						
 						{
-						_loop90:
+						_loop96:
 						do {
 							if ((LA(1)==COMMA)) {
 								match(COMMA);
@@ -2417,7 +2558,7 @@ public NanoSqlParser(ParserSharedInputState state) {
 								fc.addUsingName(n);
 							}
 							else {
-								break _loop90;
+								break _loop96;
 							}
 							
 						} while (true);
@@ -2428,6 +2569,7 @@ public NanoSqlParser(ParserSharedInputState state) {
 					case EOF:
 					case CROSS:
 					case FULL:
+					case GROUP:
 					case INNER:
 					case JOIN:
 					case LEFT:
@@ -2438,7 +2580,6 @@ public NanoSqlParser(ParserSharedInputState state) {
 					case SEMICOLON:
 					case COMMA:
 					case RPAREN:
-					case GROUP:
 					{
 						break;
 					}
@@ -2451,7 +2592,7 @@ public NanoSqlParser(ParserSharedInputState state) {
 					}
 				}
 				else {
-					break _loop91;
+					break _loop97;
 				}
 				
 			} while (true);
@@ -2459,7 +2600,7 @@ public NanoSqlParser(ParserSharedInputState state) {
 		}
 		catch (RecognitionException ex) {
 			reportError(ex);
-			recover(ex,_tokenSet_13);
+			recover(ex,_tokenSet_14);
 		}
 		return fc;
 	}
@@ -2507,6 +2648,7 @@ public NanoSqlParser(ParserSharedInputState state) {
 				case EOF:
 				case CROSS:
 				case FULL:
+				case GROUP:
 				case INNER:
 				case JOIN:
 				case LEFT:
@@ -2519,7 +2661,6 @@ public NanoSqlParser(ParserSharedInputState state) {
 				case SEMICOLON:
 				case COMMA:
 				case RPAREN:
-				case GROUP:
 				{
 					break;
 				}
@@ -2568,7 +2709,7 @@ public NanoSqlParser(ParserSharedInputState state) {
 		}
 		catch (RecognitionException ex) {
 			reportError(ex);
-			recover(ex,_tokenSet_14);
+			recover(ex,_tokenSet_15);
 		}
 		return fc;
 	}
@@ -2590,7 +2731,7 @@ public NanoSqlParser(ParserSharedInputState state) {
 				name=dbobj_ident();
 				cols = new ArrayList<String>(); cols.add(name);
 				{
-				_loop101:
+				_loop107:
 				do {
 					if ((LA(1)==COMMA)) {
 						match(COMMA);
@@ -2598,7 +2739,7 @@ public NanoSqlParser(ParserSharedInputState state) {
 						cols.add(name);
 					}
 					else {
-						break _loop101;
+						break _loop107;
 					}
 					
 				} while (true);
@@ -2620,7 +2761,7 @@ public NanoSqlParser(ParserSharedInputState state) {
 		}
 		catch (RecognitionException ex) {
 			reportError(ex);
-			recover(ex,_tokenSet_15);
+			recover(ex,_tokenSet_16);
 		}
 		return cols;
 	}
@@ -2639,7 +2780,7 @@ public NanoSqlParser(ParserSharedInputState state) {
 			e=expression();
 			exprs.add(e);
 			{
-			_loop104:
+			_loop110:
 			do {
 				if ((LA(1)==COMMA)) {
 					match(COMMA);
@@ -2647,7 +2788,7 @@ public NanoSqlParser(ParserSharedInputState state) {
 					exprs.add(e);
 				}
 				else {
-					break _loop104;
+					break _loop110;
 				}
 				
 			} while (true);
@@ -2673,7 +2814,7 @@ public NanoSqlParser(ParserSharedInputState state) {
 		try {      // for error handling
 			e=logical_and_expr();
 			{
-			_loop138:
+			_loop147:
 			do {
 				if ((LA(1)==OR)) {
 					match(OR);
@@ -2693,7 +2834,7 @@ public NanoSqlParser(ParserSharedInputState state) {
 					
 				}
 				else {
-					break _loop138;
+					break _loop147;
 				}
 				
 			} while (true);
@@ -2701,7 +2842,7 @@ public NanoSqlParser(ParserSharedInputState state) {
 		}
 		catch (RecognitionException ex) {
 			reportError(ex);
-			recover(ex,_tokenSet_11);
+			recover(ex,_tokenSet_12);
 		}
 		return e;
 	}
@@ -2718,11 +2859,15 @@ public NanoSqlParser(ParserSharedInputState state) {
 			match(LPAREN);
 			{
 			switch ( LA(1)) {
+			case AVG:
 			case COUNT:
 			case EXISTS:
 			case FALSE:
+			case MAX:
+			case MIN:
 			case NOT:
 			case NULL:
+			case SUM:
 			case TRUE:
 			case INT_LITERAL:
 			case LONG_LITERAL:
@@ -2738,7 +2883,7 @@ public NanoSqlParser(ParserSharedInputState state) {
 				e=expression();
 				exprs.add(e);
 				{
-				_loop135:
+				_loop144:
 				do {
 					if ((LA(1)==COMMA)) {
 						match(COMMA);
@@ -2746,7 +2891,7 @@ public NanoSqlParser(ParserSharedInputState state) {
 						exprs.add(e);
 					}
 					else {
-						break _loop135;
+						break _loop144;
 					}
 					
 				} while (true);
@@ -2784,7 +2929,7 @@ public NanoSqlParser(ParserSharedInputState state) {
 		try {      // for error handling
 			e=logical_not_expr();
 			{
-			_loop141:
+			_loop150:
 			do {
 				if ((LA(1)==AND)) {
 					match(AND);
@@ -2804,7 +2949,7 @@ public NanoSqlParser(ParserSharedInputState state) {
 					
 				}
 				else {
-					break _loop141;
+					break _loop150;
 				}
 				
 			} while (true);
@@ -2812,7 +2957,7 @@ public NanoSqlParser(ParserSharedInputState state) {
 		}
 		catch (RecognitionException ex) {
 			reportError(ex);
-			recover(ex,_tokenSet_16);
+			recover(ex,_tokenSet_17);
 		}
 		return e;
 	}
@@ -2835,10 +2980,14 @@ public NanoSqlParser(ParserSharedInputState state) {
 				notExpr = true;
 				break;
 			}
+			case AVG:
 			case COUNT:
 			case EXISTS:
 			case FALSE:
+			case MAX:
+			case MIN:
 			case NULL:
+			case SUM:
 			case TRUE:
 			case INT_LITERAL:
 			case LONG_LITERAL:
@@ -2861,9 +3010,13 @@ public NanoSqlParser(ParserSharedInputState state) {
 			}
 			{
 			switch ( LA(1)) {
+			case AVG:
 			case COUNT:
 			case FALSE:
+			case MAX:
+			case MIN:
 			case NULL:
+			case SUM:
 			case TRUE:
 			case INT_LITERAL:
 			case LONG_LITERAL:
@@ -2900,7 +3053,7 @@ public NanoSqlParser(ParserSharedInputState state) {
 		}
 		catch (RecognitionException ex) {
 			reportError(ex);
-			recover(ex,_tokenSet_17);
+			recover(ex,_tokenSet_18);
 		}
 		return e;
 	}
@@ -3067,7 +3220,7 @@ public NanoSqlParser(ParserSharedInputState state) {
 					{
 					match(IN);
 					{
-					if ((LA(1)==LPAREN) && (_tokenSet_18.member(LA(2)))) {
+					if ((LA(1)==LPAREN) && (_tokenSet_19.member(LA(2)))) {
 						values=param_list();
 						e = new InOperator(e, values);
 					}
@@ -3109,6 +3262,8 @@ public NanoSqlParser(ParserSharedInputState state) {
 			case DESC:
 			case FROM:
 			case FULL:
+			case GROUP:
+			case HAVING:
 			case INNER:
 			case JOIN:
 			case LEFT:
@@ -3122,8 +3277,6 @@ public NanoSqlParser(ParserSharedInputState state) {
 			case QUOTED_IDENT:
 			case COMMA:
 			case RPAREN:
-			case GROUP:
-			case HAVING:
 			{
 				break;
 			}
@@ -3136,7 +3289,7 @@ public NanoSqlParser(ParserSharedInputState state) {
 		}
 		catch (RecognitionException ex) {
 			reportError(ex);
-			recover(ex,_tokenSet_17);
+			recover(ex,_tokenSet_18);
 		}
 		return e;
 	}
@@ -3155,7 +3308,7 @@ public NanoSqlParser(ParserSharedInputState state) {
 		}
 		catch (RecognitionException ex) {
 			reportError(ex);
-			recover(ex,_tokenSet_17);
+			recover(ex,_tokenSet_18);
 		}
 		return e;
 	}
@@ -3176,7 +3329,7 @@ public NanoSqlParser(ParserSharedInputState state) {
 		try {      // for error handling
 			e=mult_expr();
 			{
-			_loop160:
+			_loop169:
 			do {
 				if ((LA(1)==PLUS||LA(1)==MINUS)) {
 					{
@@ -3203,7 +3356,7 @@ public NanoSqlParser(ParserSharedInputState state) {
 					e = new ArithmeticOperator(mathType, e, e2);
 				}
 				else {
-					break _loop160;
+					break _loop169;
 				}
 				
 			} while (true);
@@ -3211,7 +3364,7 @@ public NanoSqlParser(ParserSharedInputState state) {
 		}
 		catch (RecognitionException ex) {
 			reportError(ex);
-			recover(ex,_tokenSet_19);
+			recover(ex,_tokenSet_20);
 		}
 		return e;
 	}
@@ -3232,7 +3385,7 @@ public NanoSqlParser(ParserSharedInputState state) {
 		try {      // for error handling
 			e=unary_op_expr();
 			{
-			_loop164:
+			_loop173:
 			do {
 				if ((LA(1)==STAR||LA(1)==SLASH||LA(1)==PERCENT)) {
 					{
@@ -3265,7 +3418,7 @@ public NanoSqlParser(ParserSharedInputState state) {
 					e = new ArithmeticOperator(mathType, e, e2);
 				}
 				else {
-					break _loop164;
+					break _loop173;
 				}
 				
 			} while (true);
@@ -3273,7 +3426,7 @@ public NanoSqlParser(ParserSharedInputState state) {
 		}
 		catch (RecognitionException ex) {
 			reportError(ex);
-			recover(ex,_tokenSet_20);
+			recover(ex,_tokenSet_21);
 		}
 		return e;
 	}
@@ -3304,9 +3457,13 @@ public NanoSqlParser(ParserSharedInputState state) {
 				e=unary_op_expr();
 				break;
 			}
+			case AVG:
 			case COUNT:
 			case FALSE:
+			case MAX:
+			case MIN:
 			case NULL:
+			case SUM:
 			case TRUE:
 			case INT_LITERAL:
 			case LONG_LITERAL:
@@ -3407,11 +3564,15 @@ public NanoSqlParser(ParserSharedInputState state) {
 				match(LPAREN);
 				{
 				switch ( LA(1)) {
+				case AVG:
 				case COUNT:
 				case EXISTS:
 				case FALSE:
+				case MAX:
+				case MIN:
 				case NOT:
 				case NULL:
+				case SUM:
 				case TRUE:
 				case INT_LITERAL:
 				case LONG_LITERAL:
@@ -3443,11 +3604,11 @@ public NanoSqlParser(ParserSharedInputState state) {
 				break;
 			}
 			default:
-				if ((LA(1)==IDENT||LA(1)==QUOTED_IDENT) && (_tokenSet_21.member(LA(2)))) {
+				if ((LA(1)==IDENT||LA(1)==QUOTED_IDENT) && (_tokenSet_22.member(LA(2)))) {
 					cn=column_name();
 					e = new ColumnValue(cn);
 				}
-				else if ((LA(1)==COUNT||LA(1)==IDENT||LA(1)==QUOTED_IDENT) && (LA(2)==LPAREN)) {
+				else if ((_tokenSet_23.member(LA(1))) && (LA(2)==LPAREN)) {
 					e=function_call();
 				}
 			else {
@@ -3488,6 +3649,47 @@ public NanoSqlParser(ParserSharedInputState state) {
 				f = new FunctionCall(name, args);
 				break;
 			}
+			case AVG:
+			case MAX:
+			case MIN:
+			case SUM:
+			{
+				{
+				switch ( LA(1)) {
+				case AVG:
+				{
+					match(AVG);
+					name="AVG";
+					break;
+				}
+				case MAX:
+				{
+					match(MAX);
+					name="MAX";
+					break;
+				}
+				case MIN:
+				{
+					match(MIN);
+					name="MIN";
+					break;
+				}
+				case SUM:
+				{
+					match(SUM);
+					name="SUM";
+					break;
+				}
+				default:
+				{
+					throw new NoViableAltException(LT(1), getFilename());
+				}
+				}
+				}
+				args=param_list();
+				f = new FunctionCall(name, args);
+				break;
+			}
 			case COUNT:
 			{
 				match(COUNT);
@@ -3495,12 +3697,16 @@ public NanoSqlParser(ParserSharedInputState state) {
 				match(LPAREN);
 				{
 				switch ( LA(1)) {
+				case AVG:
 				case COUNT:
 				case DISTINCT:
 				case EXISTS:
 				case FALSE:
+				case MAX:
+				case MIN:
 				case NOT:
 				case NULL:
+				case SUM:
 				case TRUE:
 				case INT_LITERAL:
 				case LONG_LITERAL:
@@ -3521,11 +3727,15 @@ public NanoSqlParser(ParserSharedInputState state) {
 						name="COUNT-DISTINCT";
 						break;
 					}
+					case AVG:
 					case COUNT:
 					case EXISTS:
 					case FALSE:
+					case MAX:
+					case MIN:
 					case NOT:
 					case NULL:
+					case SUM:
 					case TRUE:
 					case INT_LITERAL:
 					case LONG_LITERAL:
@@ -3553,7 +3763,6 @@ public NanoSqlParser(ParserSharedInputState state) {
 				case STAR:
 				{
 					match(STAR);
-					args.add(new ColumnValue(new ColumnName()));
 					break;
 				}
 				default:
@@ -3611,6 +3820,7 @@ public NanoSqlParser(ParserSharedInputState state) {
 		"\"desc\"",
 		"\"distinct\"",
 		"\"drop\"",
+		"\"engine\"",
 		"\"exists\"",
 		"\"exit\"",
 		"\"explain\"",
@@ -3618,6 +3828,8 @@ public NanoSqlParser(ParserSharedInputState state) {
 		"\"foreign\"",
 		"\"from\"",
 		"\"full\"",
+		"\"group\"",
+		"\"having\"",
 		"\"if\"",
 		"\"in\"",
 		"\"index\"",
@@ -3649,6 +3861,7 @@ public NanoSqlParser(ParserSharedInputState state) {
 		"\"set\"",
 		"\"similar\"",
 		"\"some\"",
+		"\"sorted\"",
 		"\"start\"",
 		"\"stddev\"",
 		"\"store\"",
@@ -3694,13 +3907,11 @@ public NanoSqlParser(ParserSharedInputState state) {
 		"IDENT",
 		"QUOTED_IDENT",
 		"TEMPORARY",
+		"EQUALS",
 		"LPAREN",
 		"COMMA",
 		"RPAREN",
-		"GROUP",
-		"HAVING",
 		"STAR",
-		"EQUALS",
 		"NOT_EQUALS",
 		"GRTR_THAN",
 		"LESS_THAN",
@@ -3725,109 +3936,119 @@ public NanoSqlParser(ParserSharedInputState state) {
 	}
 	public static final BitSet _tokenSet_0 = new BitSet(mk_tokenSet_0());
 	private static final long[] mk_tokenSet_1() {
-		long[] data = { 2L, 17592186044416L, 0L, 0L};
+		long[] data = { 2L, 281474976710656L, 0L, 0L};
 		return data;
 	}
 	public static final BitSet _tokenSet_1 = new BitSet(mk_tokenSet_1());
 	private static final long[] mk_tokenSet_2() {
-		long[] data = { -6857178294605820670L, -149533580279805L, 0L, 0L};
+		long[] data = { 482805966832684290L, -2392537284476835L, 3L, 0L, 0L, 0L};
 		return data;
 	}
 	public static final BitSet _tokenSet_2 = new BitSet(mk_tokenSet_2());
 	private static final long[] mk_tokenSet_3() {
-		long[] data = { 0L, 281474976710656L, 0L, 0L};
+		long[] data = { 0L, 9007199254740992L, 0L, 0L};
 		return data;
 	}
 	public static final BitSet _tokenSet_3 = new BitSet(mk_tokenSet_3());
 	private static final long[] mk_tokenSet_4() {
-		long[] data = { 2361690142621584642L, -439804650061822L, 0L, 0L};
+		long[] data = { 446777169813720322L, -11540474028359663L, 3L, 0L, 0L, 0L};
 		return data;
 	}
 	public static final BitSet _tokenSet_4 = new BitSet(mk_tokenSet_4());
 	private static final long[] mk_tokenSet_5() {
-		long[] data = { 721701840286646272L, 2048L, 0L, 0L};
+		long[] data = { 536870914L, 281474976710720L, 0L, 0L};
 		return data;
 	}
 	public static final BitSet _tokenSet_5 = new BitSet(mk_tokenSet_5());
 	private static final long[] mk_tokenSet_6() {
-		long[] data = { 0L, 1688849860263936L, 0L, 0L};
+		long[] data = { 5773614722289500160L, 32768L, 0L, 0L};
 		return data;
 	}
 	public static final BitSet _tokenSet_6 = new BitSet(mk_tokenSet_6());
 	private static final long[] mk_tokenSet_7() {
-		long[] data = { 721701840286646272L, 1688849860265984L, 0L, 0L};
+		long[] data = { 0L, 54043195528445952L, 0L, 0L};
 		return data;
 	}
 	public static final BitSet _tokenSet_7 = new BitSet(mk_tokenSet_7());
 	private static final long[] mk_tokenSet_8() {
-		long[] data = { 2L, 1143492092887040L, 0L, 0L};
+		long[] data = { 5773614722289500160L, 54043195528478720L, 0L, 0L};
 		return data;
 	}
 	public static final BitSet _tokenSet_8 = new BitSet(mk_tokenSet_8());
 	private static final long[] mk_tokenSet_9() {
-		long[] data = { 36028814198833154L, 3958241861042176L, 0L, 0L};
+		long[] data = { 2L, 36310271995674624L, 0L, 0L};
 		return data;
 	}
 	public static final BitSet _tokenSet_9 = new BitSet(mk_tokenSet_9());
 	private static final long[] mk_tokenSet_10() {
-		long[] data = { 36028797018963970L, 3395291907620864L, 0L, 0L};
+		long[] data = { 288230547950403586L, 54324670521933824L, 0L, 0L};
 		return data;
 	}
 	public static final BitSet _tokenSet_10 = new BitSet(mk_tokenSet_10());
 	private static final long[] mk_tokenSet_11() {
-		long[] data = { 2342479338022112258L, 8567394604679168L, 0L, 0L};
+		long[] data = { 288230513590665218L, 36310272012451840L, 0L, 0L};
 		return data;
 	}
 	public static final BitSet _tokenSet_11 = new BitSet(mk_tokenSet_11());
 	private static final long[] mk_tokenSet_12() {
-		long[] data = { 2306450523756167168L, 0L, 0L};
+		long[] data = { 293090733018057730L, 56013520382197761L, 0L, 0L};
 		return data;
 	}
 	public static final BitSet _tokenSet_12 = new BitSet(mk_tokenSet_12());
 	private static final long[] mk_tokenSet_13() {
-		long[] data = { 36028797018963970L, 3958241861042176L, 0L, 0L};
+		long[] data = { 4859910122635264L, 1L, 0L, 0L};
 		return data;
 	}
 	public static final BitSet _tokenSet_13 = new BitSet(mk_tokenSet_13());
 	private static final long[] mk_tokenSet_14() {
-		long[] data = { 2346982920402501634L, 3958241861058560L, 0L, 0L};
+		long[] data = { 288230513590665218L, 54324670521933824L, 0L, 0L};
 		return data;
 	}
 	public static final BitSet _tokenSet_14 = new BitSet(mk_tokenSet_14());
 	private static final long[] mk_tokenSet_15() {
-		long[] data = { -9223372036854775808L, 32768L, 0L, 0L};
+		long[] data = { 329119220732264450L, 54324670522195969L, 0L, 0L};
 		return data;
 	}
 	public static final BitSet _tokenSet_15 = new BitSet(mk_tokenSet_15());
 	private static final long[] mk_tokenSet_16() {
-		long[] data = { 2360493736531594242L, 8567394604679168L, 0L, 0L};
+		long[] data = { 0L, 524292L, 0L, 0L};
 		return data;
 	}
 	public static final BitSet _tokenSet_16 = new BitSet(mk_tokenSet_16());
 	private static final long[] mk_tokenSet_17() {
-		long[] data = { 2360493736531594498L, 8567394604679168L, 0L, 0L};
+		long[] data = { 437205921093913602L, 56013520382197761L, 0L, 0L};
 		return data;
 	}
 	public static final BitSet _tokenSet_17 = new BitSet(mk_tokenSet_17());
 	private static final long[] mk_tokenSet_18() {
-		long[] data = { 3377704553414656L, 3460285688157570048L, 1L, 0L, 0L, 0L};
+		long[] data = { 437205921093913858L, 56013520382197761L, 0L, 0L};
 		return data;
 	}
 	public static final BitSet _tokenSet_18 = new BitSet(mk_tokenSet_18());
 	private static final long[] mk_tokenSet_19() {
-		long[] data = { 2361690142621584642L, 1143474500702044162L, 0L, 0L};
+		long[] data = { 30399307149479936L, -4564829230898068480L, 4L, 0L, 0L, 0L};
 		return data;
 	}
 	public static final BitSet _tokenSet_19 = new BitSet(mk_tokenSet_19());
 	private static final long[] mk_tokenSet_20() {
-		long[] data = { 2361690142621584642L, 4602239014522585090L, 0L, 0L};
+		long[] data = { 446777169813720322L, 4528087950361100305L, 0L, 0L};
 		return data;
 	}
 	public static final BitSet _tokenSet_20 = new BitSet(mk_tokenSet_20());
 	private static final long[] mk_tokenSet_21() {
-		long[] data = { 2361690142621584642L, -431008557039614L, 0L, 0L};
+		long[] data = { 446777169813720322L, -83598068066287599L, 0L, 0L};
 		return data;
 	}
 	public static final BitSet _tokenSet_21 = new BitSet(mk_tokenSet_21());
+	private static final long[] mk_tokenSet_22() {
+		long[] data = { 446777169813720322L, -11399736540004335L, 3L, 0L, 0L, 0L};
+		return data;
+	}
+	public static final BitSet _tokenSet_22 = new BitSet(mk_tokenSet_22());
+	private static final long[] mk_tokenSet_23() {
+		long[] data = { 3377699721580544L, 1688849860264960L, 0L, 0L};
+		return data;
+	}
+	public static final BitSet _tokenSet_23 = new BitSet(mk_tokenSet_23());
 	
 	}
@@ -41,110 +41,112 @@ public interface NanoSqlParserTokenTypes {
 	int DESC = 26;
 	int DISTINCT = 27;
 	int DROP = 28;
-	int EXISTS = 29;
-	int EXIT = 30;
-	int EXPLAIN = 31;
-	int FALSE = 32;
-	int FOREIGN = 33;
-	int FROM = 34;
-	int FULL = 35;
-	int IF = 36;
-	int IN = 37;
-	int INDEX = 38;
-	int INNER = 39;
-	int INSERT = 40;
-	int INTO = 41;
-	int IS = 42;
-	int JOIN = 43;
-	int KEY = 44;
-	int LEFT = 45;
-	int LIKE = 46;
-	int MAX = 47;
-	int MIN = 48;
-	int NATURAL = 49;
-	int NOT = 50;
-	int NULL = 51;
-	int ON = 52;
-	int OPTIMIZE = 53;
-	int OR = 54;
-	int ORDER = 55;
-	int OUTER = 56;
-	int PRIMARY = 57;
-	int QUIT = 58;
-	int REFERENCES = 59;
-	int RENAME = 60;
-	int RIGHT = 61;
-	int ROLLBACK = 62;
-	int SELECT = 63;
-	int SET = 64;
-	int SIMILAR = 65;
-	int SOME = 66;
-	int START = 67;
-	int STDDEV = 68;
-	int STORE = 69;
-	int SUM = 70;
-	int TABLE = 71;
-	int TO = 72;
-	int TRANSACTION = 73;
-	int TRUE = 74;
-	int UNIQUE = 75;
-	int UNKNOWN = 76;
-	int UPDATE = 77;
-	int USING = 78;
-	int VALUES = 79;
-	int VARIANCE = 80;
-	int VERBOSE = 81;
-	int VERIFY = 82;
-	int VIEW = 83;
-	int WHERE = 84;
-	int WORK = 85;
-	int TYPE_BIGINT = 86;
-	int TYPE_BLOB = 87;
-	int TYPE_CHAR = 88;
-	int TYPE_CHARACTER = 89;
-	int TYPE_DATE = 90;
-	int TYPE_DATETIME = 91;
-	int TYPE_DECIMAL = 92;
-	int TYPE_FLOAT = 93;
-	int TYPE_DOUBLE = 94;
-	int TYPE_INT = 95;
-	int TYPE_INTEGER = 96;
-	int TYPE_NUMERIC = 97;
-	int TYPE_TEXT = 98;
-	int TYPE_TIME = 99;
-	int TYPE_TIMESTAMP = 100;
-	int TYPE_VARCHAR = 101;
-	int TYPE_VARYING = 102;
-	int INT_LITERAL = 103;
-	int LONG_LITERAL = 104;
-	int FLOAT_LITERAL = 105;
-	int DEC_LITERAL = 106;
-	int PERIOD = 107;
-	int SEMICOLON = 108;
-	int IDENT = 109;
-	int QUOTED_IDENT = 110;
-	int TEMPORARY = 111;
-	int LPAREN = 112;
-	int COMMA = 113;
-	int RPAREN = 114;
-	int GROUP = 115;
-	int HAVING = 116;
-	int STAR = 117;
-	int EQUALS = 118;
-	int NOT_EQUALS = 119;
-	int GRTR_THAN = 120;
-	int LESS_THAN = 121;
-	int GRTR_EQUAL = 122;
-	int LESS_EQUAL = 123;
-	int PLUS = 124;
-	int MINUS = 125;
-	int SLASH = 126;
-	int PERCENT = 127;
-	int STRING_LITERAL = 128;
-	int COLON = 129;
-	int NEWLINE = 130;
-	int WS = 131;
-	int COMMENT = 132;
-	int COMPARE_OPERATOR = 133;
-	int NUM_LITERAL_OR_SYMBOL = 134;
+	int ENGINE = 29;
+	int EXISTS = 30;
+	int EXIT = 31;
+	int EXPLAIN = 32;
+	int FALSE = 33;
+	int FOREIGN = 34;
+	int FROM = 35;
+	int FULL = 36;
+	int GROUP = 37;
+	int HAVING = 38;
+	int IF = 39;
+	int IN = 40;
+	int INDEX = 41;
+	int INNER = 42;
+	int INSERT = 43;
+	int INTO = 44;
+	int IS = 45;
+	int JOIN = 46;
+	int KEY = 47;
+	int LEFT = 48;
+	int LIKE = 49;
+	int MAX = 50;
+	int MIN = 51;
+	int NATURAL = 52;
+	int NOT = 53;
+	int NULL = 54;
+	int ON = 55;
+	int OPTIMIZE = 56;
+	int OR = 57;
+	int ORDER = 58;
+	int OUTER = 59;
+	int PRIMARY = 60;
+	int QUIT = 61;
+	int REFERENCES = 62;
+	int RENAME = 63;
+	int RIGHT = 64;
+	int ROLLBACK = 65;
+	int SELECT = 66;
+	int SET = 67;
+	int SIMILAR = 68;
+	int SOME = 69;
+	int SORTED = 70;
+	int START = 71;
+	int STDDEV = 72;
+	int STORE = 73;
+	int SUM = 74;
+	int TABLE = 75;
+	int TO = 76;
+	int TRANSACTION = 77;
+	int TRUE = 78;
+	int UNIQUE = 79;
+	int UNKNOWN = 80;
+	int UPDATE = 81;
+	int USING = 82;
+	int VALUES = 83;
+	int VARIANCE = 84;
+	int VERBOSE = 85;
+	int VERIFY = 86;
+	int VIEW = 87;
+	int WHERE = 88;
+	int WORK = 89;
+	int TYPE_BIGINT = 90;
+	int TYPE_BLOB = 91;
+	int TYPE_CHAR = 92;
+	int TYPE_CHARACTER = 93;
+	int TYPE_DATE = 94;
+	int TYPE_DATETIME = 95;
+	int TYPE_DECIMAL = 96;
+	int TYPE_FLOAT = 97;
+	int TYPE_DOUBLE = 98;
+	int TYPE_INT = 99;
+	int TYPE_INTEGER = 100;
+	int TYPE_NUMERIC = 101;
+	int TYPE_TEXT = 102;
+	int TYPE_TIME = 103;
+	int TYPE_TIMESTAMP = 104;
+	int TYPE_VARCHAR = 105;
+	int TYPE_VARYING = 106;
+	int INT_LITERAL = 107;
+	int LONG_LITERAL = 108;
+	int FLOAT_LITERAL = 109;
+	int DEC_LITERAL = 110;
+	int PERIOD = 111;
+	int SEMICOLON = 112;
+	int IDENT = 113;
+	int QUOTED_IDENT = 114;
+	int TEMPORARY = 115;
+	int EQUALS = 116;
+	int LPAREN = 117;
+	int COMMA = 118;
+	int RPAREN = 119;
+	int STAR = 120;
+	int NOT_EQUALS = 121;
+	int GRTR_THAN = 122;
+	int LESS_THAN = 123;
+	int GRTR_EQUAL = 124;
+	int LESS_EQUAL = 125;
+	int PLUS = 126;
+	int MINUS = 127;
+	int SLASH = 128;
+	int PERCENT = 129;
+	int STRING_LITERAL = 130;
+	int COLON = 131;
+	int NEWLINE = 132;
+	int WS = 133;
+	int COMMENT = 134;
+	int COMPARE_OPERATOR = 135;
+	int NUM_LITERAL_OR_SYMBOL = 136;
 }
@@ -2,13 +2,22 @@ package edu.caltech.nanodb.storage;
 
 
 import java.io.IOException;
+import java.util.AbstractMap;
 import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Iterator;
-import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantLock;
 
 import edu.caltech.nanodb.transactions.TransactionManager;
 import edu.caltech.nanodb.util.PropertiesUtil;
@@ -21,6 +30,24 @@ import edu.caltech.nanodb.storage.writeahead.LogSequenceNumber;
 /**
  * The buffer manager reduces the number of disk IO operations by managing an
  * in-memory cache of data pages.
+ * <p>
+ * The buffer manager can be used by several threads at once, such as the
+ * sessions of a shared server or the workers of a parallel scan.  The cache
+ * is split by page into {@link #PROP_PAGECACHE_SEGMENTS} segments, each with
+ * its own lock and its own {@link ReplacementPolicy}, so that threads
+ * working on pages of different segments don't contend.  The number of bytes cached is
+ * shared by all segments.  A thread that needs room evicts from its own
+ * segment first, then from the segments it can lock without waiting, so that
+ * eviction never takes a global lock.
+ * <p>
+ * Pin counts are kept on the pages themselves, and each session's pinned
+ * pages in a concurrent set.  Dirty pages that are evicted are written back
+ * outside of the segment locks, while holding the page's latch; a thread
+ * that misses such a page waits on the latch before it reads the page from
+ * the file again.  Eviction never waits for a latch, and skips the pages
+ * that another thread is writing.  A page is read from its file holding no
+ * lock at all; threads that miss a page that is being read wait for the
+ * load instead (see {@link #startLoad}).
  *
  * @todo Add integrity checks, e.g. to make sure every cached page's file
  *       appears in the collection of cached files.
@@ -39,11 +66,30 @@ public class BufferManager {
 
     /**
      * The system property that can be used to specify the page replacement
-     * policy in the buffer manager.
+     * policy in the buffer manager:  <tt>lru</tt> (the default),
+     * <tt>fifo</tt>, <tt>clock</tt>, or the scan-resistant <tt>2q</tt>.
+     *
+     * @see ReplacementPolicy
      */
     public static final String PROP_PAGECACHE_POLICY = "nanodb.pagecache.policy";
 
 
+    /**
+     * The system property that can be used to specify the number of segments
+     * the page cache is split into.  It is rounded up to a power of two, and
+     * defaults to 16.
+     */
+    public static final String PROP_PAGECACHE_SEGMENTS = "nanodb.pagecache.segments";
+
+
+    /**
+     * The system property that can be used to keep the data of cached pages
+     * off the Java heap, in a {@link PageFrameArena} as large as the page
+     * cache.  It defaults to false.
+     */
+    public static final String PROP_PAGECACHE_OFFHEAP = "nanodb.pagecache.offheap";
+
+
     /**
      * This helper class keeps track of a data page that is currently cached.
      */
@@ -80,40 +126,21 @@ public class BufferManager {
 
 
     /**
-     * This helper class keeps track of a data page that is currently "pinned"
-     * or in use by a client.  This prevents the page from being flushed out
-     * of the cache while the client is using it.
+     * One part of the page cache:  the pages whose page info hashes to the
+     * segment, the replacement policy that orders them, and the lock that
+     * guards both.
      */
-    private static class PinnedPageInfo {
-        /** The session ID of the session that has this page pinned. */
-        public int sessionID;
+    private static class Segment {
+        /** Guards {@link #pages} and {@link #policy}. */
+        final ReentrantLock lock = new ReentrantLock();
 
-        /** The page that is pinned. */
-        public DBPage dbPage;
+        final HashMap<CachedPageInfo, DBPage> pages =
+            new HashMap<CachedPageInfo, DBPage>();
 
+        final ReplacementPolicy<CachedPageInfo> policy;
 
-        public PinnedPageInfo(int sessionID, DBPage dbPage) {
-            this.sessionID = sessionID;
-            this.dbPage = dbPage;
-        }
-
-
-        @Override
-        public boolean equals(Object obj) {
-            if (obj instanceof PinnedPageInfo) {
-                PinnedPageInfo other = (PinnedPageInfo) obj;
-                return sessionID == other.sessionID &&
-                    dbPage.equals(other.dbPage);
-            }
-            return false;
-        }
-
-        @Override
-        public int hashCode() {
-            int hash = 7;
-            hash = 31 * hash + sessionID;
-            hash = 31 * hash + dbPage.hashCode();
-            return hash;
+        Segment(ReplacementPolicy<CachedPageInfo> policy) {
+            this.policy = policy;
         }
     }
 
@@ -122,6 +149,29 @@ public class BufferManager {
     private static Logger logger = Logger.getLogger(BufferManager.class);
 
 
+    /**
+     * The most dirty pages written at once.  Their latches are held until
+     * they have all been written.
+     */
+    private static final int WRITE_BATCH_PAGES = 64;
+
+
+    /** Orders cached pages by the path of their file, then by page number. */
+    private static final Comparator<Map.Entry<CachedPageInfo, DBPage>> PAGE_ORDER =
+        new Comparator<Map.Entry<CachedPageInfo, DBPage>>() {
+            @Override
+            public int compare(Map.Entry<CachedPageInfo, DBPage> a,
+                               Map.Entry<CachedPageInfo, DBPage> b) {
+                CachedPageInfo x = a.getKey();
+                CachedPageInfo y = b.getKey();
+                int c = x.dbFile.getDataFile().compareTo(y.dbFile.getDataFile());
+                if (c != 0)
+                    return c;
+                return Integer.compare(x.pageNo, y.pageNo);
+            }
+        };
+
+
     private FileManager fileManager;
 
 
@@ -129,36 +179,64 @@ public class BufferManager {
      * This collection holds the {@link DBFile} objects corresponding to various
      * opened files the database is currently using.
      */
-    private LinkedHashMap<String, DBFile> cachedFiles;
+    private ConcurrentHashMap<String, DBFile> cachedFiles;
 
 
     /**
-     * This collection holds database pages (not WAL pages) that the database
-     * is currently working with, so that they don't continually need to be
-     * reloaded.
+     * The segments that hold the database pages (not WAL pages) that the
+     * database is currently working with, so that they don't continually
+     * need to be reloaded.
      */
-    private LinkedHashMap<CachedPageInfo, DBPage> cachedPages;
+    private Segment[] segments;
+
+
+    /** The name of the replacement policy of the segments. */
+    private String replacementPolicy;
 
 
     /**
-     * This collection holds all pages that are pinned by various sessions
-     * that are currently accessing the database.
+     * True for the threads that are loading pages for a sequential scan; see
+     * {@link #setScanAccess}.
      */
-    private HashSet<PinnedPageInfo> pinnedPages;
+    private ThreadLocal<Boolean> scanAccess = new ThreadLocal<Boolean>() {
+        @Override
+        protected Boolean initialValue() {
+            return Boolean.FALSE;
+        }
+    };
+
+
+    /** The segment that the next eviction from other segments starts at. */
+    private AtomicInteger nextEvictSegment;
+
+
+    /**
+     * The dirty pages that have been evicted from the cache but are still
+     * being written back, each latched by the thread writing it.
+     */
+    private ConcurrentHashMap<CachedPageInfo, DBPage> evictingPages;
+
+
+    /**
+     * The pages that are being loaded from their files, each with a latch
+     * that is released once the page has been added to the cache or the
+     * load has failed.  See {@link #startLoad}.
+     */
+    private ConcurrentHashMap<CachedPageInfo, CountDownLatch> loadingPages;
 
 
     /**
      * This collection maps session IDs to the pages that each session has
      * pinned.
      */
-    private HashMap<Integer, HashSet<PinnedPageInfo>> pinnedPagesBySessionID;
+    private ConcurrentHashMap<Integer, Set<DBPage>> pinnedPagesBySessionID;
 
 
     /**
      * This field records how many bytes are currently cached, in total.  Note
      * that this does not currently keep track of clean copies of dirty pages.
      */
-    private long totalBytesCached;
+    private AtomicLong totalBytesCached;
 
 
     /**
@@ -167,21 +245,42 @@ public class BufferManager {
     private long maxCacheSize;
 
 
+    /**
+     * The frames that cached pages of the current page size are loaded into,
+     * or <tt>null</tt> if pages are kept on the heap.
+     */
+    private PageFrameArena frameArena;
+
+
     public BufferManager(FileManager fileManager) {
         this.fileManager = fileManager;
 
         configureMaxCacheSize();
 
-        cachedFiles = new LinkedHashMap<String, DBFile>();
-
-        String replacementPolicy = configureReplacementPolicy();
-        cachedPages = new LinkedHashMap<CachedPageInfo, DBPage>(16, 0.75f,
-            "lru".equals(replacementPolicy));
-
-        totalBytesCached = 0;
+        cachedFiles = new ConcurrentHashMap<String, DBFile>();
+
+        replacementPolicy = configureReplacementPolicy();
+        int numSegments = Integer.highestOneBit(Math.max(1,
+            PropertiesUtil.getInt(PROP_PAGECACHE_SEGMENTS, 16)) * 2 - 1);
+        segments = new Segment[numSegments];
+        for (int i = 0; i < numSegments; i++)
+            segments[i] = new Segment(createReplacementPolicy());
+        nextEvictSegment = new AtomicInteger();
+        evictingPages = new ConcurrentHashMap<CachedPageInfo, DBPage>();
+        loadingPages = new ConcurrentHashMap<CachedPageInfo, CountDownLatch>();
+
+        totalBytesCached = new AtomicLong();
+
+        if (PropertiesUtil.getBoolean(PROP_PAGECACHE_OFFHEAP, false)) {
+            // Pages are loaded before room is made for them, so allow a page
+            // per segment beyond the cache size.  Otherwise most pages loaded
+            // into a full cache would go on the heap.
+            int pageSize = StorageManager.getCurrentPageSize();
+            frameArena = new PageFrameArena(pageSize,
+                maxCacheSize + (long) segments.length * pageSize);
+        }
         
-        pinnedPages = new HashSet<PinnedPageInfo>();
-        pinnedPagesBySessionID = new HashMap<Integer, HashSet<PinnedPageInfo>>();
+        pinnedPagesBySessionID = new ConcurrentHashMap<Integer, Set<DBPage>>();
     }
 
 
@@ -229,20 +328,63 @@ public class BufferManager {
 
     private String configureReplacementPolicy() {
         String str = PropertiesUtil.getProperty(PROP_PAGECACHE_POLICY);
-        if (str != null) {
-            str = str.trim().toLowerCase();
-
-            if (!("lru".equals(str) || "fifo".equals(str))) {
-                logger.error(String.format(
-                    "Unrecognized value \"%s\" for page-cache replacement " +
-                    "policy; using default value of LRU.", str));
-            }
+        if (str == null)
+            return "lru";
+
+        str = str.trim().toLowerCase();
+        if (!("lru".equals(str) || "fifo".equals(str) ||
+              "clock".equals(str) || "2q".equals(str))) {
+            logger.error(String.format(
+                "Unrecognized value \"%s\" for page-cache replacement " +
+                "policy; using default value of LRU.", str));
+            str = "lru";
         }
 
         return str;
     }
 
 
+    /** Creates a replacement policy for a segment of the page cache. */
+    private ReplacementPolicy<CachedPageInfo> createReplacementPolicy() {
+        if ("fifo".equals(replacementPolicy))
+            return new FIFOPolicy<CachedPageInfo>();
+        else if ("clock".equals(replacementPolicy))
+            return new ClockPolicy<CachedPageInfo>();
+        else if ("2q".equals(replacementPolicy))
+            return new TwoQueuePolicy<CachedPageInfo>();
+        else
+            return new LRUPolicy<CachedPageInfo>();
+    }
+
+
+    /**
+     * Returns the arena that pages should be loaded into before they are
+     * added to the cache, or <tt>null</tt> if pages are kept on the heap.
+     * Frames are returned to the arena when their pages are evicted.
+     */
+    public PageFrameArena getFrameArena() {
+        return frameArena;
+    }
+
+
+    /**
+     * Marks the pages that the current thread requests from now on as being
+     * read by a sequential scan, or stops doing so.  The replacement policy
+     * evicts such pages sooner, and doesn't count the scan's use of pages
+     * that are already cached, so that a large scan doesn't flush the pages
+     * other queries keep using.
+     *
+     * @param scan true if the thread is about to read pages for a scan
+     *
+     * @return the previous setting, so that the caller can restore it
+     */
+    public boolean setScanAccess(boolean scan) {
+        boolean previous = scanAccess.get();
+        scanAccess.set(scan);
+        return previous;
+    }
+
+
     /**
      * Retrieves the specified {@link DBFile} from the buffer manager, if it has
      * already been opened.
@@ -271,77 +413,105 @@ public class BufferManager {
             throw new IllegalArgumentException("dbFile cannot be null");
 
         String filename = dbFile.getDataFile().getName();
-        if (cachedFiles.containsKey(filename)) {
+
+        // NOTE:  If we want to keep a cap on how many files are opened, we
+        //        would do that here.
+
+        if (cachedFiles.putIfAbsent(filename, dbFile) != null) {
             throw new IllegalStateException(
                 "File cache already contains file " + filename);
         }
-        
-        // NOTE:  If we want to keep a cap on how many files are opened, we
-        //        would do that here.
 
         logger.debug(String.format( "Adding file %s to file-cache.", filename));
-        
-        cachedFiles.put(filename, dbFile);
     }
-    
-    
+
+
+    /** Returns the segment that holds a page. */
+    private Segment getSegment(CachedPageInfo cpi) {
+        int hash = cpi.hashCode();
+        hash ^= (hash >>> 16);
+        return segments[hash & (segments.length - 1)];
+    }
+
+
+    /**
+     * Records that the calling thread is about to load a page from its file,
+     * so that two threads can't both miss the page and add it twice.  If
+     * another thread is already loading the page, nothing is recorded, and
+     * that thread's latch is returned instead; the caller should wait on it
+     * and look the page up again.
+     * <p>
+     * The load ends when {@link #addPage} adds the page, before any pages are
+     * written back to make room for it, or when {@link #finishLoad} is
+     * called.  No lock is held meanwhile, so the page is read from its file
+     * while other pages are loaded and evicted.
+     *
+     * @param dbFile the file of the page
+     * @param pageNo the page number of the page
+     * @param loaded the latch to release when the caller's load ends
+     * @return <tt>null</tt> if the caller is to load the page, or the latch
+     *         of the thread that is loading it
+     */
+    public CountDownLatch startLoad(DBFile dbFile, int pageNo,
+                                    CountDownLatch loaded) {
+        return loadingPages.putIfAbsent(new CachedPageInfo(dbFile, pageNo),
+            loaded);
+    }
+
+
+    /**
+     * Ends a load of a page started by {@link #startLoad}, if
+     * {@link #addPage} hasn't already, and wakes the threads waiting for it.
+     *
+     * @param dbFile the file of the page
+     * @param pageNo the page number of the page
+     * @param loaded the latch the load was started with
+     */
+    public void finishLoad(DBFile dbFile, int pageNo, CountDownLatch loaded) {
+        // Once the page was added, another thread may have started loading
+        // it again, so only remove the caller's own load.
+        loadingPages.remove(new CachedPageInfo(dbFile, pageNo), loaded);
+        loaded.countDown();
+    }
+
+
     public void pinPage(DBPage dbPage) {
         // Make sure this page is pinned by the session so that we don't
-        // flush it until the session is done with it.
+        // flush it until the session is done with it.  The page's pin-count
+        // only goes up the first time the session pins it.
         
         int sessionID = SessionState.get().getSessionID();
-        PinnedPageInfo pp = new PinnedPageInfo(sessionID, dbPage);
-        
-        // First, add it to the overall set of pinned pages.
+        Set<DBPage> pinnedBySession = pinnedPagesBySessionID.get(sessionID);
+        if (pinnedBySession == null) {
+            Set<DBPage> pages = Collections.newSetFromMap(
+                new ConcurrentHashMap<DBPage, Boolean>());
+            pinnedBySession = pinnedPagesBySessionID.putIfAbsent(sessionID, pages);
+            if (pinnedBySession == null)
+                pinnedBySession = pages;
+        }
         
-        if (pinnedPages.add(pp)) {
+        if (pinnedBySession.add(dbPage)) {
             dbPage.incPinCount();
             logger.debug(String.format("Session %d is pinning page [%s,%d].  " +
                 "New pin-count is %d.", sessionID, dbPage.getDBFile(),
                 dbPage.getPageNo(), dbPage.getPinCount()));
         }
-        
-        // Next, add it to the set of pages pinned by this particular session.
-        // (This makes it easier to unpin all pages used by this session.)
-        
-        HashSet<PinnedPageInfo> pinnedBySession = pinnedPagesBySessionID.get(sessionID);
-        
-        if (pinnedBySession == null) {
-            pinnedBySession = new HashSet<PinnedPageInfo>();
-            pinnedPagesBySessionID.put(sessionID, pinnedBySession);
-        }
-
-        pinnedBySession.add(pp);
     }
 
 
     public void unpinPage(DBPage dbPage) {
-        // If the page is pinned by the session then unpin it.
+        // If the page is pinned by the session then unpin it.  The session's
+        // set of pages is left in place, even if it becomes empty, since
+        // another thread of the session may be adding to it.
         int sessionID = SessionState.get().getSessionID();
-        PinnedPageInfo pp = new PinnedPageInfo(sessionID, dbPage);
-
-        // First, remove it from the overall set of pinned pages.
+        Set<DBPage> pinnedBySession = pinnedPagesBySessionID.get(sessionID);
         
-        if (pinnedPages.remove(pp)) {
+        if (pinnedBySession != null && pinnedBySession.remove(dbPage)) {
             dbPage.decPinCount();
             logger.debug(String.format("Session %d is unpinning page " +
                 "[%s,%d].  New pin-count is %d.", sessionID, dbPage.getDBFile(),
                 dbPage.getPageNo(), dbPage.getPinCount()));
         }
-
-        // Next, remove it from the set of pages pinned by this particular
-        // session.
-
-        HashSet<PinnedPageInfo> pinnedBySession =
-            pinnedPagesBySessionID.get(sessionID);
-        
-        if (pinnedBySession != null) {
-            pinnedBySession.remove(pp);
-
-            // If the set becomes empty, remove the hash-set for the session.
-            if (pinnedBySession.isEmpty())
-                pinnedPagesBySessionID.remove(sessionID);
-        }
     }
 
 
@@ -349,43 +519,92 @@ public class BufferManager {
      * This method unpins all pages pinned by the current session.  This is
      * generally done at the end of each transaction so that pages aren't
      * pinned forever, and can actually be evicted from the buffer manager.
+     * No other thread of the session may be pinning pages meanwhile.
      */
     public void unpinAllPages() {
+        unpinAllPages(Collections.<DBPage>emptySet());
+    }
+
+
+    /**
+     * Unpins all pages pinned by the current session, except for pages it is
+     * still using, which stay pinned by the session.  This lets a long task
+     * that doesn't run as a command, and so isn't unpinned at the end of one,
+     * release the pages it is done with as it goes.  No other thread of the
+     * session may be pinning pages meanwhile.
+     *
+     * @param keep the pages to leave pinned
+     */
+    public void unpinAllPages(Collection<DBPage> keep) {
         // Unpin all pages pinned by this session.
         int sessionID = SessionState.get().getSessionID();
 
         // Remove the set of pages pinned by this session, and save the
         // return-value so we can iterate through it and unpin each page.
-        HashSet<PinnedPageInfo> pinnedBySession =
-            pinnedPagesBySessionID.remove(sessionID);
+        Set<DBPage> pinnedBySession = pinnedPagesBySessionID.remove(sessionID);
 
         // If no pages pinned, we're done.
         if (pinnedBySession == null)
             return;
 
-        for (PinnedPageInfo pp : pinnedBySession) {
-            DBPage dbPage = pp.dbPage;
+        Set<DBPage> kept = null;
+        for (DBPage dbPage : pinnedBySession) {
+            if (keep.contains(dbPage)) {
+                // The page stays pinned, so its pin-count doesn't change.
+                if (kept == null) {
+                    kept = Collections.newSetFromMap(
+                        new ConcurrentHashMap<DBPage, Boolean>());
+                }
+                kept.add(dbPage);
+                continue;
+            }
 
-            pinnedPages.remove(pp);
             dbPage.decPinCount();
             logger.debug(String.format("Session %d is unpinning page " +
                 "[%s,%d].  New pin-count is %d.", sessionID, dbPage.getDBFile(),
                 dbPage.getPageNo(), dbPage.getPinCount()));
         }
+
+        if (kept != null)
+            pinnedPagesBySessionID.put(sessionID, kept);
     }
 
 
     public DBPage getPage(DBFile dbFile, int pageNo) {
-        DBPage dbPage = cachedPages.get(new CachedPageInfo(dbFile, pageNo));
+        CachedPageInfo cpi = new CachedPageInfo(dbFile, pageNo);
+        Segment segment = getSegment(cpi);
+
+        DBPage dbPage;
+        DBPage evictingPage = null;
+        segment.lock.lock();
+        try {
+            dbPage = segment.pages.get(cpi);
+            if (dbPage != null) {
+                segment.policy.pageAccessed(cpi, scanAccess.get());
+
+                // Make sure this page is pinned by the session so that we
+                // don't flush it until the session is done with it.  It's
+                // pinned under the segment's lock, so it can't be evicted
+                // in between.
+                pinPage(dbPage);
+            }
+            else {
+                evictingPage = evictingPages.get(cpi);
+            }
+        }
+        finally {
+            segment.lock.unlock();
+        }
 
         logger.debug(String.format(
             "Requested page [%s,%d] is%s in page-cache.",
             dbFile, pageNo, (dbPage != null ? "" : " NOT")));
 
-        if (dbPage != null) {
-            // Make sure this page is pinned by the session so that we don't
-            // flush it until the session is done with it.
-            pinPage(dbPage);
+        if (evictingPage != null) {
+            // The page is being written back; wait for the write, so that
+            // the caller reads the current contents from the file.
+            evictingPage.getLatch().lock();
+            evictingPage.getLatch().unlock();
         }
 
         return dbPage;
@@ -400,87 +619,189 @@ public class BufferManager {
         int pageNo = dbPage.getPageNo();
 
         CachedPageInfo cpi = new CachedPageInfo(dbFile, pageNo);
-        if (cachedPages.containsKey(cpi)) {
-            throw new IllegalStateException(String.format(
-                "Page cache already contains page [%s,%d]", dbFile, pageNo));
-        }
+        Segment segment = getSegment(cpi);
 
         logger.debug(String.format("Adding page [%s,%d] to page-cache.",
             dbFile, pageNo));
 
-        int pageSize = dbPage.getPageSize();
-        ensureSpaceAvailable(pageSize);
+        ArrayList<CachedPageInfo> dirtyPages = new ArrayList<CachedPageInfo>();
+        segment.lock.lock();
+        try {
+            if (segment.pages.containsKey(cpi)) {
+                throw new IllegalStateException(String.format(
+                    "Page cache already contains page [%s,%d]", dbFile, pageNo));
+            }
+
+            segment.pages.put(cpi, dbPage);
+            segment.policy.pageAdded(cpi, scanAccess.get());
+            totalBytesCached.addAndGet(dbPage.getPageSize());
+
+            // Make sure this page is pinned by the session so that we don't
+            // flush it until the session is done with it.  This also keeps
+            // the eviction below from choosing it.
+            pinPage(dbPage);
+
+            evictPages(segment, dirtyPages);
+        }
+        finally {
+            segment.lock.unlock();
+        }
 
-        cachedPages.put(cpi, dbPage);
+        // The page can be found now, so threads waiting for it to load don't
+        // need to wait for the pages evicted to make room to be written.
+        // Nobody else can be loading the page while it's being added.
+        CountDownLatch loading = loadingPages.remove(cpi);
+        if (loading != null)
+            loading.countDown();
 
-        // Make sure this page is pinned by the session so that we don't flush
-        // it until the session is done with it.
-        pinPage(dbPage);
+        ensureSpaceAvailable(dirtyPages);
     }
 
 
     /**
-     * This helper function ensures that the buffer manager has the specified
-     * amount of space available.  This is done by removing pages out of the
-     * buffer manager's cache
+     * This helper function ensures that the cache is within its maximum
+     * size, by evicting pages from the segments other than the one a page
+     * was just added to.  Segments that another thread holds are skipped.
+     * Then the dirty pages that were evicted, from any segment, are written
+     * back to disk.
      *
-     * @param bytesRequired the amount of space that should be made available
-     *        in the cache, in bytes
+     * @param dirtyPages the dirty pages already evicted from the segment the
+     *        page was added to
      *
      * @throws IOException if an IO error occurs when flushing dirty pages out
      *         to disk
      */
-    private void ensureSpaceAvailable(int bytesRequired) throws IOException {
-        // If we already have enough space, return without doing anything.
-        if (bytesRequired + totalBytesCached <= maxCacheSize)
-            return;
+    private void ensureSpaceAvailable(List<CachedPageInfo> dirtyPages)
+        throws IOException {
 
-        // We don't currently have enough space in the cache.  Try to solve
-        // this problem by evicting pages.  We collect together the pages to
-        // evict, so that we can update the write-ahead log before flushing
-        // the pages.
+        int start = nextEvictSegment.getAndIncrement();
+        for (int i = 0; i < segments.length &&
+             totalBytesCached.get() > maxCacheSize; i++) {
+            Segment segment = segments[(start + i) & (segments.length - 1)];
+            if (!segment.lock.tryLock())
+                continue;
 
-        ArrayList<DBPage> dirtyPages = new ArrayList<DBPage>();
+            try {
+                evictPages(segment, dirtyPages);
+            }
+            finally {
+                segment.lock.unlock();
+            }
+        }
+
+        // If we have any dirty data pages, they need to be flushed to disk.
+        writeEvictedPages(dirtyPages);
 
-        if (!cachedPages.isEmpty()) {
-            // The cache will be too large after adding this page.
+        if (totalBytesCached.get() > maxCacheSize)
+            logger.warn("Buffer manager is currently using too much space.");
+    }
 
-            Iterator<Map.Entry<CachedPageInfo, DBPage>> entries =
-                cachedPages.entrySet().iterator();
 
-            while (entries.hasNext() &&
-                bytesRequired + totalBytesCached > maxCacheSize) {
-                Map.Entry<CachedPageInfo, DBPage> entry = entries.next();
+    /**
+     * Evicts unpinned pages of a segment, in the order its replacement policy
+     * chooses them, until the cache is within its maximum size.  The caller
+     * must hold the segment's lock.  Clean pages are invalidated; dirty pages
+     * are latched and moved to {@link #evictingPages}, to be written by
+     * {@link #writeEvictedPages}.  Dirty pages that another thread is
+     * writing back are skipped, and given back to the policy.
+     *
+     * @param segment the segment to evict from
+     * @param dirtyPages the list to add the dirty pages that were evicted to
+     */
+    private void evictPages(Segment segment, List<CachedPageInfo> dirtyPages) {
+        ArrayList<CachedPageInfo> skipped = null;
+        while (totalBytesCached.get() > maxCacheSize) {
+            // The policy only chooses pages that aren't in use.
+            CachedPageInfo cpi = segment.policy.chooseVictim(segment.pages);
+            if (cpi == null)
+                break;
+
+            DBPage oldPage = segment.pages.get(cpi);
+            if (!removePage(cpi, oldPage, dirtyPages)) {
+                if (skipped == null)
+                    skipped = new ArrayList<CachedPageInfo>();
+                skipped.add(cpi);
+                continue;
+            }
 
-                DBPage oldPage = entry.getValue();
+            segment.pages.remove(cpi);
 
-                if (oldPage.isPinned())  // Can't flush pages that are in use.
-                    continue;
+            logger.debug(String.format(
+                "    Evicting page [%s,%d] from page-cache to make room.",
+                cpi.dbFile, cpi.pageNo));
+        }
 
-                logger.debug(String.format(
-                    "    Evicting page [%s,%d] from page-cache to make room.",
-                    oldPage.getDBFile(), oldPage.getPageNo()));
+        // The policy forgot the skipped pages when it chose them.
+        if (skipped != null) {
+            for (CachedPageInfo cpi : skipped)
+                segment.policy.pageAdded(cpi, false);
+        }
+    }
 
-                entries.remove();
-                totalBytesCached -= oldPage.getPageSize();
 
-                // If the page is dirty, we need to write its data to disk before
-                // invalidating it.  Otherwise, just invalidate it.
-                if (oldPage.isDirty()) {
-                    logger.debug("    Evicted page is dirty; must save to disk.");
-                    dirtyPages.add(oldPage);
-                }
-                else {
-                    oldPage.invalidate();
-                }
+    /**
+     * Accounts for a page that is being removed from a segment, whose lock
+     * the caller holds.  If the page is dirty, it is latched and recorded as
+     * being evicted until it's written back; otherwise it is invalidated.
+     * <p>
+     * A dirty page whose latch another thread holds is being written back by
+     * that thread.  Since the caller holds the segment's lock, and maybe the
+     * latches of other pages, it doesn't wait for the latch:  the page is
+     * left alone, and the caller must keep it in the segment.
+     *
+     * @return true if the page can be removed from the segment, or false if
+     *         another thread holds its latch
+     */
+    private boolean removePage(CachedPageInfo cpi, DBPage oldPage,
+                               List<CachedPageInfo> dirtyPages) {
+        int pageSize = oldPage.getPageSize();
+
+        // If the page is dirty, we need to write its data to disk before
+        // invalidating it.  Otherwise, just invalidate it.
+        if (oldPage.isDirty()) {
+            if (!oldPage.getLatch().tryLock()) {
+                logger.debug(String.format("    Page [%s,%d] is being " +
+                    "written by another thread; not removing it.",
+                    oldPage.getDBFile(), oldPage.getPageNo()));
+                return false;
             }
+
+            logger.debug("    Evicted page is dirty; must save to disk.");
+            evictingPages.put(cpi, oldPage);
+            dirtyPages.add(cpi);
+        }
+        else {
+            oldPage.invalidate();
         }
 
-        // If we have any dirty data pages, they need to be flushed to disk.
-        writeDirtyPages(dirtyPages, /* invalidate */ true);
+        totalBytesCached.addAndGet(-pageSize);
+        return true;
+    }
 
-        if (bytesRequired + totalBytesCached > maxCacheSize)
-            logger.warn("Buffer manager is currently using too much space.");
+
+    /**
+     * Writes back and invalidates the dirty pages that were evicted by
+     * {@link #removePage}, and releases their latches.
+     */
+    private void writeEvictedPages(List<CachedPageInfo> dirtyPages)
+        throws IOException {
+
+        if (dirtyPages.isEmpty())
+            return;
+
+        ArrayList<DBPage> pages = new ArrayList<DBPage>(dirtyPages.size());
+        for (CachedPageInfo cpi : dirtyPages)
+            pages.add(evictingPages.get(cpi));
+
+        try {
+            writeDirtyPages(pages, /* invalidate */ true);
+        }
+        finally {
+            for (int i = 0; i < pages.size(); i++) {
+                evictingPages.remove(dirtyPages.get(i));
+                pages.get(i).getLatch().unlock();
+            }
+        }
     }
 
 
@@ -494,7 +815,13 @@ public class BufferManager {
             // these pages to be written back to disk.
             LogSequenceNumber maxLSN = null;
             for (DBPage dbPage : dirtyPages) {
-                DBFileType type = dbPage.getDBFile().getType();
+                DBFile dbFile = dbPage.getDBFile();
+                if (dbFile == null) {
+                    // Another thread evicted the page meanwhile.
+                    continue;
+                }
+
+                DBFileType type = dbFile.getType();
                 if (type == DBFileType.WRITE_AHEAD_LOG_FILE ||
                     type == DBFileType.TXNSTATE_FILE) {
                     // We don't log changes to these files.
@@ -502,6 +829,11 @@ public class BufferManager {
                 }
                 
                 LogSequenceNumber pageLSN = dbPage.getPageLSN();
+                if (pageLSN == null) {
+                    // The page has been written out meanwhile, or its change
+                    // wasn't logged.
+                    continue;
+                }
                 if (maxLSN == null || pageLSN.compareTo(maxLSN) > 0)
                     maxLSN = pageLSN;
             }
@@ -514,14 +846,109 @@ public class BufferManager {
                     txnMgr.forceWAL(maxLSN);
             }
 
-            // Finally, we can write out each dirty page.
+            // Finally, we can write out the dirty pages, in file and page
+            // order, so that adjacent pages are written together.
+            ArrayList<Map.Entry<CachedPageInfo, DBPage>> sorted =
+                new ArrayList<Map.Entry<CachedPageInfo, DBPage>>(dirtyPages.size());
             for (DBPage dbPage : dirtyPages) {
-                fileManager.saveDBPage(dbPage);
+                DBFile dbFile = dbPage.getDBFile();
+                if (dbFile != null) {
+                    sorted.add(new AbstractMap.SimpleImmutableEntry<CachedPageInfo, DBPage>(
+                        new CachedPageInfo(dbFile, dbPage.getPageNo()), dbPage));
+                }
+            }
+            Collections.sort(sorted, PAGE_ORDER);
+
+            // The latches keep two threads from writing the same page at
+            // once.  Only wait for a latch while holding none, and add the
+            // pages after it to the batch while their latches are free, so
+            // that two threads writing overlapping pages can't deadlock.
+            int i = 0;
+            while (i < sorted.size()) {
+                ArrayList<DBPage> batch = new ArrayList<DBPage>();
+                DBPage first = sorted.get(i++).getValue();
+                first.getLatch().lock();
+                batch.add(first);
+
+                while (i < sorted.size() && batch.size() < WRITE_BATCH_PAGES) {
+                    DBPage dbPage = sorted.get(i).getValue();
+                    if (!dbPage.getLatch().tryLock())
+                        break;
+
+                    batch.add(dbPage);
+                    i++;
+                }
+
+                writeBatch(batch, invalidate);
+            }
+        }
+    }
+
+
+    /**
+     * Writes out a batch of dirty pages whose latches the caller holds, and
+     * releases the latches.
+     */
+    private void writeBatch(List<DBPage> batch, boolean invalidate)
+        throws IOException {
+
+        try {
+            // Another thread may have written or evicted a page meanwhile.
+            ArrayList<DBPage> toWrite = new ArrayList<DBPage>(batch.size());
+            for (DBPage dbPage : batch) {
+                if (dbPage.isDirty() && dbPage.getDBFile() != null)
+                    toWrite.add(dbPage);
+            }
+
+            fileManager.saveDBPages(toWrite);
 
-                if (invalidate)
+            if (invalidate) {
+                for (DBPage dbPage : batch)
                     dbPage.invalidate();
             }
         }
+        finally {
+            for (DBPage dbPage : batch)
+                dbPage.getLatch().unlock();
+        }
+    }
+
+
+    /**
+     * Returns the dirty pages in the cache that match a file, or all dirty
+     * pages if the file is null, locking one segment at a time.
+     */
+    private ArrayList<DBPage> getDirtyPages(DBFile dbFile, int minPageNo,
+                                            int maxPageNo) {
+        ArrayList<DBPage> dirtyPages = new ArrayList<DBPage>();
+        for (Segment segment : segments) {
+            segment.lock.lock();
+            try {
+                for (Map.Entry<CachedPageInfo, DBPage> entry :
+                     segment.pages.entrySet()) {
+                    CachedPageInfo info = entry.getKey();
+                    if (dbFile != null && !dbFile.equals(info.dbFile))
+                        continue;
+
+                    DBPage oldPage = entry.getValue();
+                    if (!oldPage.isDirty())
+                        continue;
+
+                    int pageNo = info.pageNo;
+                    if (pageNo < minPageNo || pageNo > maxPageNo)
+                        continue;
+
+                    logger.debug(String.format("    Saving page [%s,%d] to disk.",
+                        oldPage.getDBFile(), oldPage.getPageNo()));
+
+                    dirtyPages.add(oldPage);
+                }
+            }
+            finally {
+                segment.lock.unlock();
+            }
+        }
+        return dirtyPages;
     }
 
 
@@ -553,32 +980,8 @@ public class BufferManager {
         logger.info(String.format("Writing all dirty pages for file %s to disk%s.",
             dbFile, (sync ? " (with sync)" : "")));
 
-        Iterator<Map.Entry<CachedPageInfo, DBPage>> entries =
-            cachedPages.entrySet().iterator();
-
-        ArrayList<DBPage> dirtyPages = new ArrayList<DBPage>();
-
-        while (entries.hasNext()) {
-            Map.Entry<CachedPageInfo, DBPage> entry = entries.next();
-
-            CachedPageInfo info = entry.getKey();
-            if (dbFile.equals(info.dbFile)) {
-                DBPage oldPage = entry.getValue();
-                if (!oldPage.isDirty())
-                    continue;
-
-                int pageNo = oldPage.getPageNo();
-                if (pageNo < minPageNo || pageNo > maxPageNo)
-                    continue;
-
-                logger.debug(String.format("    Saving page [%s,%d] to disk.",
-                    oldPage.getDBFile(), oldPage.getPageNo()));
-
-                dirtyPages.add(oldPage);
-            }
-        }
-
-        writeDirtyPages(dirtyPages, /* invalidate */ false);
+        writeDirtyPages(getDirtyPages(dbFile, minPageNo, maxPageNo),
+            /* invalidate */ false);
 
         if (sync) {
             logger.debug("Syncing file " + dbFile);
@@ -624,30 +1027,19 @@ public class BufferManager {
     public void writeAll(boolean sync) throws IOException {
         logger.info("Writing ALL dirty pages in the Buffer Manager to disk.");
 
-        Iterator<Map.Entry<CachedPageInfo, DBPage>> entries =
-            cachedPages.entrySet().iterator();
-
-        ArrayList<DBPage> dirtyPages = new ArrayList<DBPage>();
+        ArrayList<DBPage> dirtyPages =
+            getDirtyPages(null, 0, Integer.MAX_VALUE);
         HashSet<DBFile> dirtyFiles = new HashSet<DBFile>();
-
-        while (entries.hasNext()) {
-            Map.Entry<CachedPageInfo, DBPage> entry = entries.next();
-
-            DBPage oldPage = entry.getValue();
-            if (!oldPage.isDirty())
+        for (DBPage oldPage : dirtyPages) {
+            DBFile dbFile = oldPage.getDBFile();
+            if (dbFile == null)
                 continue;
 
-            DBFile dbFile = oldPage.getDBFile();
             DBFileType type = dbFile.getType();
             if (type != DBFileType.WRITE_AHEAD_LOG_FILE &&
                 type != DBFileType.TXNSTATE_FILE) {
-                dirtyFiles.add(oldPage.getDBFile());
+                dirtyFiles.add(dbFile);
             }
-
-            logger.debug(String.format("    Saving page [%s,%d] to disk.",
-                dbFile, oldPage.getPageNo()));
-
-            dirtyPages.add(oldPage);
         }
 
         writeDirtyPages(dirtyPages, /* invalidate */ false);
@@ -677,39 +1069,7 @@ public class BufferManager {
         logger.info("Flushing all pages for file " + dbFile +
             " from the Buffer Manager.");
 
-        Iterator<Map.Entry<CachedPageInfo, DBPage>> entries =
-            cachedPages.entrySet().iterator();
-
-        ArrayList<DBPage> dirtyPages = new ArrayList<DBPage>();
-
-        while (entries.hasNext()) {
-            Map.Entry<CachedPageInfo, DBPage> entry = entries.next();
-
-            CachedPageInfo info = entry.getKey();
-            if (dbFile.equals(info.dbFile)) {
-                DBPage oldPage = entry.getValue();
-
-                logger.debug(String.format(
-                    "    Evicting page [%s,%d] from page-cache.",
-                    oldPage.getDBFile(), oldPage.getPageNo()));
-
-                // Remove the page from the cache.
-                entries.remove();
-                totalBytesCached -= oldPage.getPageSize();
-
-                // If the page is dirty, we need to write its data to disk before
-                // invalidating it.  Otherwise, just invalidate it.
-                if (oldPage.isDirty()) {
-                    logger.debug("    Evicted page is dirty; must save to disk.");
-                    dirtyPages.add(oldPage);
-                }
-                else {
-                    oldPage.invalidate();
-                }
-            }
-        }
-
-        writeDirtyPages(dirtyPages, /* invalidate */ true);
+        flushPages(dbFile);
     }
 
 
@@ -729,36 +1089,67 @@ public class BufferManager {
     public void flushAll() throws IOException {
         logger.info("Flushing ALL database pages from the Buffer Manager.");
 
-        Iterator<Map.Entry<CachedPageInfo, DBPage>> entries =
-            cachedPages.entrySet().iterator();
-
-        ArrayList<DBPage> dirtyPages = new ArrayList<DBPage>();
+        flushPages(null);
+    }
 
-        while (entries.hasNext()) {
-            Map.Entry<CachedPageInfo, DBPage> entry = entries.next();
 
-            DBPage oldPage = entry.getValue();
+    /**
+     * Removes the cached pages of a file, or all cached pages if the file is
+     * null, locking one segment at a time, and writes out the dirty ones.
+     * If another thread is writing back one of the pages, the pages removed
+     * so far are written and their latches released, and then the segment
+     * is scanned again once that thread is done.
+     */
+    private void flushPages(DBFile dbFile) throws IOException {
+        ArrayList<CachedPageInfo> dirtyPages = new ArrayList<CachedPageInfo>();
+        for (Segment segment : segments) {
+            DBPage busyPage;
+            do {
+                busyPage = null;
+                segment.lock.lock();
+                try {
+                    Iterator<Map.Entry<CachedPageInfo, DBPage>> entries =
+                        segment.pages.entrySet().iterator();
+
+                    while (entries.hasNext()) {
+                        Map.Entry<CachedPageInfo, DBPage> entry = entries.next();
+
+                        CachedPageInfo info = entry.getKey();
+                        if (dbFile != null && !dbFile.equals(info.dbFile))
+                            continue;
+
+                        DBPage oldPage = entry.getValue();
+                        if (!removePage(info, oldPage, dirtyPages)) {
+                            busyPage = oldPage;
+                            continue;
+                        }
+
+                        logger.debug(String.format(
+                            "    Evicting page [%s,%d] from page-cache.",
+                            info.dbFile, info.pageNo));
+
+                        // Remove the page from the cache.
+                        entries.remove();
+                        segment.policy.pageRemoved(info);
+                    }
+                }
+                finally {
+                    segment.lock.unlock();
+                }
 
-            logger.debug(String.format(
-                "    Evicting page [%s,%d] from page-cache.",
-                oldPage.getDBFile(), oldPage.getPageNo()));
-
-            // Remove the page from the cache.
-            entries.remove();
-            totalBytesCached -= oldPage.getPageSize();
-
-            // If the page is dirty, we need to write its data to disk before
-            // invalidating it.  Otherwise, just invalidate it.
-            if (oldPage.isDirty()) {
-                logger.debug("    Evicted page is dirty; must save to disk.");
-                dirtyPages.add(oldPage);
-            }
-            else {
-                oldPage.invalidate();
+                if (busyPage != null) {
+                    // Wait for the other thread's write holding no locks or
+                    // latches, so that it can't be waiting for this thread.
+                    writeEvictedPages(dirtyPages);
+                    dirtyPages.clear();
+                    busyPage.getLatch().lock();
+                    busyPage.getLatch().unlock();
+                }
             }
+            while (busyPage != null);
         }
 
-        writeDirtyPages(dirtyPages, /* invalidate */ true);
+        writeEvictedPages(dirtyPages);
     }
 
 
@@ -0,0 +1,144 @@
+package edu.caltech.nanodb.storage;
+
+
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.Map;
+
+
+/**
+ * The CLOCK approximation of LRU.  The pages form a ring that a clock hand
+ * sweeps, and each page has a reference bit that is set when the page is
+ * used.  The hand clears the bits it passes over, and evicts the first
+ * unpinned page whose bit is already clear.
+ * <p>
+ * Pages loaded by sequential scans are kept off the ring, in the order they
+ * were loaded, and are evicted before all others unless a query other than a
+ * scan uses them again.  Otherwise a long scan would make the hand clear the
+ * bits of all the other pages, and then evict them.
+ *
+ * @param <K> the type of the keys the buffer manager identifies pages by
+ */
+public class ClockPolicy<K> extends ReplacementPolicy<K> {
+
+    /** A page's place on the ring. */
+    private static class Frame<K> {
+        K key;
+
+        boolean referenced;
+
+        Frame<K> prev;
+
+        Frame<K> next;
+
+        Frame(K key, boolean referenced) {
+            this.key = key;
+            this.referenced = referenced;
+        }
+    }
+
+
+    /** The pages loaded by scans and not used since, oldest first. */
+    private LinkedHashSet<K> scanPages = new LinkedHashSet<K>();
+
+    /** The frames of the other pages, by key. */
+    private HashMap<K, Frame<K>> frames = new HashMap<K, Frame<K>>();
+
+    /** The frame the clock hand points to, or null if there are none. */
+    private Frame<K> hand;
+
+
+    @Override
+    public void pageAdded(K key, boolean scan) {
+        if (scan)
+            scanPages.add(key);
+        else
+            addFrame(key);
+    }
+
+
+    @Override
+    public void pageAccessed(K key, boolean scan) {
+        if (scan)
+            return;
+
+        Frame<K> frame = frames.get(key);
+        if (frame != null)
+            frame.referenced = true;
+        else if (scanPages.remove(key))
+            addFrame(key);
+    }
+
+
+    @Override
+    public void pageRemoved(K key) {
+        if (scanPages.remove(key))
+            return;
+
+        Frame<K> frame = frames.remove(key);
+        if (frame != null)
+            unlink(frame);
+    }
+
+
+    @Override
+    public K chooseVictim(Map<K, DBPage> pages) {
+        K victim = removeFirstUnpinned(scanPages, pages);
+        if (victim != null)
+            return victim;
+
+        // After two turns every reference bit is clear, so if no page has
+        // been found by then, all of them are pinned.
+        for (int i = 2 * frames.size(); i > 0; i--) {
+            Frame<K> frame = hand;
+            hand = frame.next;
+
+            if (pages.get(frame.key).isPinned())
+                continue;
+
+            if (frame.referenced) {
+                frame.referenced = false;
+                continue;
+            }
+
+            frames.remove(frame.key);
+            unlink(frame);
+            return frame.key;
+        }
+        return null;
+    }
+
+
+    /** Adds a page to the ring, with its reference bit set. */
+    private void addFrame(K key) {
+        Frame<K> frame = new Frame<K>(key, true);
+        frames.put(key, frame);
+
+        // Add the frame just behind the hand, so that the hand reaches it
+        // last.
+        if (hand == null) {
+            frame.prev = frame;
+            frame.next = frame;
+            hand = frame;
+        }
+        else {
+            frame.prev = hand.prev;
+            frame.next = hand;
+            hand.prev.next = frame;
+            hand.prev = frame;
+        }
+    }
+
+
+    private void unlink(Frame<K> frame) {
+        if (frame.next == frame) {
+            hand = null;
+            return;
+        }
+
+        frame.prev.next = frame.next;
+        frame.next.prev = frame.prev;
+        if (hand == frame)
+            hand = frame.next;
+    }
+}
@@ -4,6 +4,8 @@ package edu.caltech.nanodb.storage;
 import java.io.File;
 import java.io.IOException;
 import java.io.RandomAccessFile;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
 
 
 /**
@@ -76,6 +78,21 @@ public class DBFile {
     private RandomAccessFile fileContents;
 
 
+    /**
+     * The channel of {@link #fileContents}, which pages are read and written
+     * through at explicit positions.
+     */
+    private FileChannel channel;
+
+
+    /**
+     * A read-only memory mapping of the file, from the start of the file, or
+     * <tt>null</tt> if the file hasn't been mapped.  See
+     * {@link FileManager#mapDBPage}.
+     */
+    private volatile MappedByteBuffer mapping;
+
+
     /**
      * This static helper method returns true if the specified page size is
      * valid; i.e. it must be within the minimum and maximum page sizes, and
@@ -200,6 +217,7 @@ public class DBFile {
         this.type = type;
         this.pageSize = pageSize;
         this.fileContents = fileContents;
+        channel = fileContents.getChannel();
 
         // Check to make sure the file contains a whole number of pages.
         long fileSize = fileContents.length();
@@ -304,11 +322,43 @@ public class DBFile {
     }
 
 
+    /**
+     * Returns the channel for reading and writing the data file's contents.
+     * Pages are read and written at explicit positions, which doesn't use
+     * the channel's position, so that threads can access the file at once.
+     * Code that does set the position must hold the lock of
+     * {@link #getFileContents}.
+     *
+     * @return the channel for accessing the data file's contents
+     */
+    public FileChannel getChannel() {
+        return channel;
+    }
+
+
+    /**
+     * Returns the read-only memory mapping of the file, or <tt>null</tt> if
+     * the file hasn't been mapped.
+     */
+    MappedByteBuffer getMapping() {
+        return mapping;
+    }
+
+
+    /** Sets the read-only memory mapping of the file. */
+    void setMapping(MappedByteBuffer mapping) {
+        this.mapping = mapping;
+    }
+
+
     /**
      * Close file stream before delete it;
      * @throws IOException
      */
     public void close() throws IOException {
+        // The mapping stays valid for pages that still use it, and is
+        // unmapped when they are garbage collected.
+        mapping = null;
         if(this.fileContents!=null){
             this.fileContents.close();
         }
@@ -2,10 +2,13 @@ package edu.caltech.nanodb.storage;
 
 
 import java.io.UnsupportedEncodingException;
-import java.util.Arrays;
+import java.nio.ByteBuffer;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.ReentrantLock;
 
 import org.apache.log4j.Logger;
 
+import edu.caltech.nanodb.client.SessionState;
 import edu.caltech.nanodb.expressions.TypeConverter;
 import edu.caltech.nanodb.relations.ColumnType;
 import edu.caltech.nanodb.storage.writeahead.LogSequenceNumber;
@@ -25,6 +28,11 @@ import edu.caltech.nanodb.storage.writeahead.LogSequenceNumber;
  * byte (MSB) stored at the lowest index, and the least significant byte (LSB)
  * stored at the highest index.  (This is also the network byte order specified
  * by the Internet Protocol.)
+ * <p>
+ * The page's data is held in a {@link ByteBuffer}, either on the Java heap or
+ * in a frame of a {@link PageFrameArena} when the buffer manager keeps its
+ * pages off-heap.  The old version of the data is only kept for pages whose
+ * changes are recorded in the write-ahead log.
  *
  * @see PageReader
  * @see PageWriter
@@ -55,9 +63,17 @@ public class DBPage {
     /**
      * The pin-count of this page.  When nonzero, the page is not allowed to be
      * flushed from the buffer manager since the page is being used by at least
-     * one session.
+     * one session.  Sessions on different threads pin the page concurrently.
+     */
+    private final AtomicInteger pinCount = new AtomicInteger();
+
+
+    /**
+     * The latch that the buffer manager holds while it writes the page back
+     * to its file, so that a thread that misses the page in the meantime
+     * waits for the write before reading the page from the file again.
      */
-    private int pinCount;
+    private final ReentrantLock latch = new ReentrantLock();
 
 
     /** This flag is true if this page has been modified in memory. */
@@ -75,12 +91,21 @@ public class DBPage {
 
 
     /** The actual data for the table-page. */
-    private byte[] pageData;
+    private ByteBuffer pageData;
 
 
     /**
-     * When the page is marked dirty, this gets set to the original version of
-     * the page, so that we can properly record changes to the write-ahead log.
+     * The arena that {@link #pageData} is a frame of, or <tt>null</tt> if the
+     * data is on the heap.  The frame is returned to the arena when the page
+     * is invalidated.
+     */
+    private PageFrameArena arena;
+
+
+    /**
+     * When the page is changed under a transaction, this gets set to the
+     * original version of the page, so that we can properly record changes to
+     * the write-ahead log.
      */
     private byte[] oldPageData;
 
@@ -99,6 +124,27 @@ public class DBPage {
      * @throws IllegalArgumentException if <tt>pageNo</tt> is negative
      */
     public DBPage(DBFile dbFile, int pageNo) {
+        this(dbFile, pageNo, (PageFrameArena) null);
+    }
+
+
+    /**
+     * Constructs a new, empty table-page for the specified table file, whose
+     * data is held in a frame of an arena if the arena has a free frame of
+     * the file's page size.  Otherwise the data is allocated on the heap.
+     * The contents of a frame are not cleared.
+     *
+     * @param dbFile The database file that this page is contained within.
+     *
+     * @param pageNo The page number within the database file.
+     *
+     * @param arena the arena to take a frame from, or <tt>null</tt>
+     *
+     * @throws NullPointerException if <tt>dbFile</tt> is <tt>null</tt>
+     *
+     * @throws IllegalArgumentException if <tt>pageNo</tt> is negative
+     */
+    public DBPage(DBFile dbFile, int pageNo, PageFrameArena arena) {
         if (dbFile == null)
             throw new NullPointerException("dbFile must not be null");
 
@@ -109,16 +155,47 @@ public class DBPage {
 
         this.dbFile = dbFile;
         this.pageNo = pageNo;
-        pinCount = 0;
         dirty = false;
         pageLSN = null;
 
         // Allocate the space for the page data.
-        pageData = new byte[dbFile.getPageSize()];
+        if (arena != null && arena.getFrameSize() == dbFile.getPageSize())
+            pageData = arena.allocate();
+
+        if (pageData != null)
+            this.arena = arena;
+        else
+            pageData = ByteBuffer.allocate(dbFile.getPageSize());
+
         oldPageData = null;
     }
 
 
+    /**
+     * Constructs a page over data that is already in memory, such as a slice
+     * of a memory mapped file.  The data is used as it is, not copied.
+     *
+     * @param dbFile The database file that this page is contained within.
+     *
+     * @param pageNo The page number within the database file.
+     *
+     * @param pageData the page's data, of the file's page size
+     */
+    DBPage(DBFile dbFile, int pageNo, ByteBuffer pageData) {
+        if (dbFile == null)
+            throw new NullPointerException("dbFile must not be null");
+
+        if (pageData.capacity() != dbFile.getPageSize()) {
+            throw new IllegalArgumentException("pageData must hold " +
+                dbFile.getPageSize() + " bytes (got " + pageData.capacity() + ")");
+        }
+
+        this.dbFile = dbFile;
+        this.pageNo = pageNo;
+        this.pageData = pageData;
+    }
+
+
     /**
      * Returns the database file that this page is contained within.
      *
@@ -158,44 +235,68 @@ public class DBPage {
      * @return the page-size in bytes
      */
     public int getPageSize() {
-        return pageData.length;
+        return pageData.capacity();
     }
 
     
     public void incPinCount() {
-        pinCount++;
+        pinCount.incrementAndGet();
     }
     
     
     public void decPinCount() {
-        if (pinCount <= 0) {
-            throw new IllegalStateException(
-                "pinCount is not positive (value is " + pinCount + ")");
-        }
+        while (true) {
+            int count = pinCount.get();
+            if (count <= 0) {
+                throw new IllegalStateException(
+                    "pinCount is not positive (value is " + count + ")");
+            }
 
-        pinCount--;
+            if (pinCount.compareAndSet(count, count - 1))
+                return;
+        }
     }
     
     
     public int getPinCount() {
-        return pinCount;
+        return pinCount.get();
     }
 
 
     public boolean isPinned() {
-        return (pinCount > 0);
+        return (pinCount.get() > 0);
+    }
+
+
+    /** Returns the latch held while the page is written back to its file. */
+    public ReentrantLock getLatch() {
+        return latch;
     }
     
 
     /**
-     * Returns the byte-array of the page's data.  <b>Note that if any changes
-     * are made to the page's data, the dirty-flag must be updated
-     * appropriately or else the data will not be written back to the file.</b>
+     * Returns a copy of the page's data.
      *
      * @return a byte-array containing the page's data
      */
     public byte[] getPageData() {
-        return pageData;
+        byte[] data = new byte[pageData.capacity()];
+        read(0, data);
+        return data;
+    }
+
+
+    /**
+     * Returns a buffer over the page's data, for reading the page from its
+     * file or writing it back.  The buffer's position is 0 and its limit is
+     * the page size.  <b>Note that if any changes are made to the page's data
+     * through the buffer, the dirty-flag must be updated appropriately or
+     * else the data will not be written back to the file.</b>
+     *
+     * @return a buffer that shares the page's data
+     */
+    public ByteBuffer getPageBuffer() {
+        return pageData.duplicate();
     }
 
 
@@ -217,7 +318,7 @@ public class DBPage {
         if (oldPageData == null)
             throw new IllegalStateException("No old page data to sync");
         
-        System.arraycopy(pageData, 0, oldPageData, 0, pageData.length);
+        read(0, oldPageData);
     }
     
 
@@ -239,10 +340,12 @@ public class DBPage {
      *        otherwise
      */
     public void setDirty(boolean dirty) {
-        if (!this.dirty && dirty) {
-            // Page is being changed from clean to dirty.  Duplicate the current
-            // data so that we have it when updating the write-ahead log.
-            oldPageData = pageData.clone();
+        if (dirty && oldPageData == null && isLogged()) {
+            // Page is being changed under a transaction for the first time
+            // since it was clean.  Duplicate the current data so that we have
+            // it when updating the write-ahead log.  Pages that aren't logged
+            // don't need the copy.
+            oldPageData = getPageData();
         }
         else if (this.dirty && !dirty) {
             // Page is being changed from dirty to clean.  Clear out the old
@@ -257,6 +360,22 @@ public class DBPage {
     }
 
 
+    /**
+     * Returns true if changes to the page may be recorded in the write-ahead
+     * log:  it is a page of a heap file or an index, being changed while the
+     * session has a transaction in progress.  Column-store data files, the
+     * write-ahead log itself and the transaction-state file aren't logged.
+     */
+    private boolean isLogged() {
+        DBFileType type = dbFile.getType();
+        if (type != DBFileType.HEAP_DATA_FILE &&
+            type != DBFileType.BTREE_INDEX_FILE)
+            return false;
+
+        return SessionState.get().getTxnState().isTxnInProgress();
+    }
+
+
     public LogSequenceNumber getPageLSN() {
         return pageLSN;
     }
@@ -274,6 +393,12 @@ public class DBPage {
      * try to use the page.
      */
     public void invalidate() {
+        if (arena != null) {
+            // The frame is reused by the next page that is loaded.
+            arena.release(pageData);
+            arena = null;
+        }
+
         dbFile = null;
         pageNo = -1;
         pageData = null;
@@ -281,6 +406,33 @@ public class DBPage {
     }
 
 
+    /**
+     * Returns a buffer over a range of the page's data, positioned at the
+     * start of the range.
+     */
+    private ByteBuffer getRange(int position, int length) {
+        ByteBuffer range = pageData.duplicate();
+        range.limit(position + length);
+        range.position(position);
+        return range;
+    }
+
+
+    /** Decodes a range of the page's data as a US-ASCII string. */
+    private String readASCII(int position, int len)
+        throws UnsupportedEncodingException {
+
+        if (pageData.hasArray()) {
+            return new String(pageData.array(),
+                pageData.arrayOffset() + position, len, "US-ASCII");
+        }
+
+        byte[] bytes = new byte[len];
+        read(position, bytes);
+        return new String(bytes, "US-ASCII");
+    }
+
+
     /*=============================*/
     /* TYPED DATA ACCESS FUNCTIONS */
     /*=============================*/
@@ -299,7 +451,7 @@ public class DBPage {
      * @param len the number of bytes to transfer to the destination buffer
      */
     public void read(int position, byte[] b, int off, int len) {
-        System.arraycopy(pageData, position, b, off, len);
+        getRange(position, len).get(b, off, len);
     }
 
 
@@ -331,7 +483,25 @@ public class DBPage {
      */
     public void write(int position, byte[] b, int off, int len) {
         setDirty(true);
-        System.arraycopy(b, off, pageData, position, len);
+        getRange(position, len).put(b, off, len);
+    }
+
+
+    /**
+     * Write a sequence of bytes from another page into this page.
+     *
+     * @param position the starting index within this page to start writing
+     *        data
+     *
+     * @param src the page to read the data from
+     *
+     * @param srcPosition the starting index within the source page
+     *
+     * @param len the number of bytes to transfer
+     */
+    public void write(int position, DBPage src, int srcPosition, int len) {
+        setDirty(true);
+        getRange(position, len).put(src.getRange(srcPosition, len));
     }
 
 
@@ -358,7 +528,18 @@ public class DBPage {
      */
     public void moveDataRange(int srcPosition, int dstPosition, int length) {
         setDirty(true);
-        System.arraycopy(pageData, srcPosition, pageData, dstPosition, length);
+        if (pageData.hasArray()) {
+            byte[] data = pageData.array();
+            int offset = pageData.arrayOffset();
+            System.arraycopy(data, offset + srcPosition, data,
+                offset + dstPosition, length);
+        }
+        else {
+            // The ranges may overlap, so copy through an array.
+            byte[] data = new byte[length];
+            read(srcPosition, data);
+            getRange(dstPosition, length).put(data);
+        }
     }
 
 
@@ -372,7 +553,7 @@ public class DBPage {
     public void setDataRange(int position, int length, byte value) {
         setDirty(true);
         for (int i = 0; i < length; i++)
-            pageData[position + i] = value;
+            pageData.put(position + i, value);
     }
     
 
@@ -388,7 +569,7 @@ public class DBPage {
      * @return the Boolean value
      */
     public boolean readBoolean(int position) {
-        return (pageData[position] != 0);
+        return (pageData.get(position) != 0);
     }
 
     /**
@@ -402,7 +583,7 @@ public class DBPage {
      */
     public void writeBoolean(int position, boolean value) {
         setDirty(true);
-        pageData[position] = (byte) (value ? 1 : 0);
+        pageData.put(position, (byte) (value ? 1 : 0));
     }
 
 
@@ -414,7 +595,7 @@ public class DBPage {
      * @return the signed byte value
      */
     public byte readByte(int position) {
-        return pageData[position];
+        return pageData.get(position);
     }
 
     /**
@@ -429,7 +610,7 @@ public class DBPage {
      */
     public void writeByte(int position, int value) {
         setDirty(true);
-        pageData[position] = (byte) value;
+        pageData.put(position, (byte) value);
     }
 
 
@@ -443,7 +624,7 @@ public class DBPage {
      * @return the unsigned byte value, as an integer
      */
     public int readUnsignedByte(int position) {
-        return pageData[position] & 0xFF;
+        return pageData.get(position) & 0xFF;
     }
 
 
@@ -457,10 +638,7 @@ public class DBPage {
      * @return the unsigned short value, as an integer
      */
     public int readUnsignedShort(int position) {
-        int value = ((pageData[position++] & 0xFF) <<  8)
-                  | ((pageData[position  ] & 0xFF)      );
-
-        return value;
+        return pageData.getShort(position) & 0xFFFF;
     }
 
     /**
@@ -472,13 +650,7 @@ public class DBPage {
      * @return the signed short value
      */
     public short readShort(int position) {
-        // Don't chop off high-order bits.  When byte is cast to int, the sign
-        // will be extended, so if original byte is negative, the resulting
-        // int will be too.
-        int value = ((pageData[position++]       ) <<  8)
-                  | ((pageData[position  ] & 0xFF)      );
-
-        return (short) value;
+        return pageData.getShort(position);
     }
 
     /**
@@ -493,9 +665,7 @@ public class DBPage {
      */
     public void writeShort(int position, int value) {
         setDirty(true);
-
-        pageData[position++] = (byte) (0xFF & (value >> 8));
-        pageData[position  ] = (byte) (0xFF &  value);
+        pageData.putShort(position, (short) value);
     }
 
 
@@ -508,15 +678,7 @@ public class DBPage {
      */
     public char readChar(int position)
     {
-        // NOTE:  Exactly like readShort(), but result is cast to a different
-        // type.
-
-        // Don't chop off high-order bits.  When byte is cast to int, the sign will
-        // be extended, so if original byte is negative, so will resulting int.
-        int value = ((pageData[position++]       ) <<  8)
-                  | ((pageData[position  ] & 0xFF)      );
-
-        return (char) value;
+        return pageData.getChar(position);
     }
 
     /**
@@ -544,12 +706,7 @@ public class DBPage {
      * @return the unsigned integer value, as a long
      */
     public long readUnsignedInt(int position) {
-        long value = ((pageData[position++] & 0xFF) << 24)
-                   | ((pageData[position++] & 0xFF) << 16)
-                   | ((pageData[position++] & 0xFF) <<  8)
-                   | ((pageData[position  ] & 0xFF)      );
-
-        return value;
+        return pageData.getInt(position) & 0xFFFFFFFFL;
     }
 
 
@@ -561,12 +718,7 @@ public class DBPage {
      * @return the signed int value
      */
     public int readInt(int position) {
-        int value = ((pageData[position++] & 0xFF) << 24)
-                  | ((pageData[position++] & 0xFF) << 16)
-                  | ((pageData[position++] & 0xFF) <<  8)
-                  | ((pageData[position  ] & 0xFF)      );
-
-        return value;
+        return pageData.getInt(position);
     }
 
     /**
@@ -578,11 +730,7 @@ public class DBPage {
      */
     public void writeInt(int position, int value) {
         setDirty(true);
-
-        pageData[position++] = (byte) (0xFF & (value >> 24));
-        pageData[position++] = (byte) (0xFF & (value >> 16));
-        pageData[position++] = (byte) (0xFF & (value >>  8));
-        pageData[position  ] = (byte) (0xFF &  value);
+        pageData.putInt(position, value);
     }
 
 
@@ -595,16 +743,7 @@ public class DBPage {
      * @return the signed long value
      */
     public long readLong(int position) {
-        long value = ((long) (pageData[position++] & 0xFF) << 56)
-                   | ((long) (pageData[position++] & 0xFF) << 48)
-                   | ((long) (pageData[position++] & 0xFF) << 40)
-                   | ((long) (pageData[position++] & 0xFF) << 32)
-                   | ((long) (pageData[position++] & 0xFF) << 24)
-                   | ((long) (pageData[position++] & 0xFF) << 16)
-                   | ((long) (pageData[position++] & 0xFF) <<  8)
-                   | ((long) (pageData[position  ] & 0xFF)      );
-
-        return value;
+        return pageData.getLong(position);
     }
 
     /**
@@ -616,15 +755,7 @@ public class DBPage {
      */
     public void writeLong(int position, long value) {
         setDirty(true);
-
-        pageData[position++] = (byte) (0xFF & (value >> 56));
-        pageData[position++] = (byte) (0xFF & (value >> 48));
-        pageData[position++] = (byte) (0xFF & (value >> 40));
-        pageData[position++] = (byte) (0xFF & (value >> 32));
-        pageData[position++] = (byte) (0xFF & (value >> 24));
-        pageData[position++] = (byte) (0xFF & (value >> 16));
-        pageData[position++] = (byte) (0xFF & (value >>  8));
-        pageData[position  ] = (byte) (0xFF &  value);
+        pageData.putLong(position, value);
     }
 
 
@@ -648,6 +779,47 @@ public class DBPage {
     }
 
 
+    /**
+     * Reads consecutive 4-byte integer values, starting at the specified
+     * position, into an array.  This is much faster than calling
+     * {@link #readInt} for each value.
+     *
+     * @param position the location in the page to start reading values from
+     * @param values the array to store the values into
+     * @param off the index in the array of the first value
+     * @param count the number of values to read
+     */
+    public void readInts(int position, int[] values, int off, int count) {
+        getRange(position, count * 4).asIntBuffer().get(values, off, count);
+    }
+
+    /**
+     * Reads consecutive 8-byte long integer values, starting at the
+     * specified position, into an array.
+     *
+     * @param position the location in the page to start reading values from
+     * @param values the array to store the values into
+     * @param off the index in the array of the first value
+     * @param count the number of values to read
+     */
+    public void readLongs(int position, long[] values, int off, int count) {
+        getRange(position, count * 8).asLongBuffer().get(values, off, count);
+    }
+
+    /**
+     * Reads consecutive 8-byte double values, starting at the specified
+     * position, into an array.
+     *
+     * @param position the location in the page to start reading values from
+     * @param values the array to store the values into
+     * @param off the index in the array of the first value
+     * @param count the number of values to read
+     */
+    public void readDoubles(int position, double[] values, int off, int count) {
+        getRange(position, count * 8).asDoubleBuffer().get(values, off, count);
+    }
+
+
     /**
      * This method reads and returns a variable-length string whose maximum
      * length is 255 bytes.  The string is expected to be in US-ASCII
@@ -668,7 +840,7 @@ public class DBPage {
         String str = null;
 
         try {
-            str = new String(pageData, position, len, "US-ASCII");
+            str = readASCII(position, len);
         }
         catch (UnsupportedEncodingException e) {
             // According to the Java docs, the US-ASCII character-encoding is
@@ -743,7 +915,7 @@ public class DBPage {
         String str = null;
 
         try {
-            str = new String(pageData, position, len, "US-ASCII");
+            str = readASCII(position, len);
         }
         catch (UnsupportedEncodingException e) {
             // According to the Java docs, the US-ASCII character-encoding is
@@ -824,11 +996,11 @@ public class DBPage {
 
         // Fixed-size strings are padded with 0-bytes, so trim these off the
         // end of the string value.
-        while (len > 0 && pageData[position + len - 1] == 0)
+        while (len > 0 && pageData.get(position + len - 1) == 0)
             len--;
 
         try {
-            str = new String(pageData, position, len, "US-ASCII");
+            str = readASCII(position, len);
         }
         catch (UnsupportedEncodingException e) {
             // According to the Java docs, the US-ASCII character-encoding is
@@ -886,7 +1058,8 @@ public class DBPage {
         write(position, bytes);
 
         // Zero out the rest of the fixed-size string value.
-        Arrays.fill(pageData, position + bytes.length, position + len, (byte) 0);
+        for (int i = position + bytes.length; i < position + len; i++)
+            pageData.put(i, (byte) 0);
     }
 
 
@@ -1162,11 +1335,11 @@ public class DBPage {
             if (i % 32 == 0)
                 buf.append("\n                ");
 
-            buf.append(String.format(" %02X", pageData[i]));
+            buf.append(String.format(" %02X", pageData.get(i)));
         }
 
         buf.append("\noldPageData =");
-        for (int i = 0; i < pageSize; i++) {
+        for (int i = 0; oldPageData != null && i < pageSize; i++) {
             if (i % 32 == 0)
                 buf.append("\n                ");
 
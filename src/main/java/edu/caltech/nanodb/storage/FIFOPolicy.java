@@ -0,0 +1,16 @@
+package edu.caltech.nanodb.storage;
+
+
+/**
+ * Evicts pages in the order they were loaded, pages loaded by sequential
+ * scans first.
+ *
+ * @param <K> the type of the keys the buffer manager identifies pages by
+ */
+public class FIFOPolicy<K> extends LRUPolicy<K> {
+
+    @Override
+    public void pageAccessed(K key, boolean scan) {
+        // Using a page doesn't change when it is evicted.
+    }
+}
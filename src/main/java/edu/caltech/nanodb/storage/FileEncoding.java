@@ -6,5 +6,9 @@ public enum FileEncoding {
     // 字典压缩
     DICTIONARY,
     // 无压缩
-    NONE
+    NONE,
+    // 帧参考压缩,每页存最小值和按位压缩的差值
+    FOR,
+    // 差分压缩,每页存首值和按位压缩的相邻差值
+    DELTA
 }
\ No newline at end of file
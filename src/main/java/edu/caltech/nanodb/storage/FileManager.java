@@ -8,6 +8,13 @@ import java.io.File;
 import java.io.FileNotFoundException;
 import java.io.IOException;
 import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
 
 
 /**
@@ -28,6 +35,18 @@ public class FileManager {
     private static Logger logger = Logger.getLogger(FileManager.class);
 
 
+    /** Orders pages by the path of their file, then by page number. */
+    private static final Comparator<DBPage> PAGE_ORDER = new Comparator<DBPage>() {
+        @Override
+        public int compare(DBPage a, DBPage b) {
+            int c = a.getDBFile().getDataFile().compareTo(b.getDBFile().getDataFile());
+            if (c != 0)
+                return c;
+            return Integer.compare(a.getPageNo(), b.getPageNo());
+        }
+    };
+
+
     /**
      * The base directory that the file-manager should use for creating and
      * opening files.
@@ -219,6 +238,31 @@ public class FileManager {
      */
     public DBPage loadDBPage(DBFile dbFile, int pageNo, boolean create)
         throws IOException {
+        return loadDBPage(dbFile, pageNo, create, null);
+    }
+
+
+    /**
+     * Loads a page from the underlying data file like
+     * {@link #loadDBPage(DBFile, int, boolean)}, into a frame of an arena if
+     * the arena has one free.  The frame is returned to the arena when the
+     * page is invalidated.
+     *
+     * @param dbFile the database file to load the page from
+     * @param pageNo the number of the page to load
+     * @param create a flag specifying whether the page should be created if it
+     *        doesn't already exist
+     * @param arena the arena to take the page's frame from, or <tt>null</tt>
+     *        to allocate the page's data on the heap
+     *
+     * @return the newly loaded database page
+     * @throws IllegalArgumentException if the page number is negative
+     *
+     * @throws java.io.EOFException if the requested page is not in the data file,
+     *         and the <tt>create</tt> flag is set to <tt>false</tt>.
+     */
+    public DBPage loadDBPage(DBFile dbFile, int pageNo, boolean create,
+                             PageFrameArena arena) throws IOException {
 
         if (pageNo < 0) {
             throw new IllegalArgumentException("pageNo must be >= 0, got " +
@@ -226,53 +270,157 @@ public class FileManager {
         }
 
         // Create the page object, which will receive the data being read.
-        DBPage page = new DBPage(dbFile, pageNo);
+        DBPage page = new DBPage(dbFile, pageNo, arena);
+        try {
+            readPage(dbFile, page, create);
+        }
+        catch (IOException e) {
+            page.invalidate();
+            throw e;
+        }
+        return page;
+    }
+
+
+    /** Reads a page's data from its file. */
+    private void readPage(DBFile dbFile, DBPage page, boolean create)
+        throws IOException {
 
+        int pageNo = page.getPageNo();
         long pageStart = getPageStart(dbFile, pageNo);
+        ByteBuffer buffer = page.getPageBuffer();
 
-        RandomAccessFile fileContents = dbFile.getFileContents();
-        fileContents.seek(pageStart);
+        // A positional read doesn't use the channel's position, so threads
+        // can read pages of the same file at once.
+        FileChannel channel = dbFile.getChannel();
         try {
-            fileContents.readFully(page.getPageData());
+            while (buffer.hasRemaining()) {
+                if (channel.read(buffer, pageStart + buffer.position()) < 0)
+                    throw new EOFException();
+            }
         }
         catch (EOFException e) {
-            if (create) {
-                // Caller wants to create the page if it doesn't already exist
-                // yet.  Don't let the exception propagate.
-
-                logger.debug(String.format(
-                    "Requested page %d doesn't yet exist in file %s; creating.",
-                    pageNo, dbFile.getDataFile().getName()));
-
-                // ...of course, we don't propagate the exception, but we also
-                // don't actually extend the file's size until the page is
-                // stored back to the file...
-                long newLength = (1L + (long) pageNo) * (long) dbFile.getPageSize();
-
-                // This check is just for safety.  It would be highly irregular
-                // to get an EOF exception and then have the file actually be
-                // longer than we expect.  But, if it happens, we'll scream.
+            if (!create) {
+                // Caller expected the page to exist!  Let the exception propagate.
+                throw e;
+            }
+
+            // Caller wants to create the page if it doesn't already exist
+            // yet.  Don't let the exception propagate.
+
+            logger.debug(String.format(
+                "Requested page %d doesn't yet exist in file %s; creating.",
+                pageNo, dbFile.getDataFile().getName()));
+
+            // The page's frame may hold the data of another page.
+            buffer.clear();
+            while (buffer.hasRemaining())
+                buffer.put((byte) 0);
+
+            // ...of course, we don't propagate the exception, but we also
+            // don't actually extend the file's size until the page is
+            // stored back to the file...
+            long newLength = (1L + (long) pageNo) * (long) dbFile.getPageSize();
+
+            RandomAccessFile fileContents = dbFile.getFileContents();
+            synchronized (fileContents) {
                 long oldLength = fileContents.length();
                 if (oldLength < newLength) {
                     fileContents.setLength(newLength);
                     logger.debug("Set file " + dbFile + " length to " + newLength);
                 }
                 else {
-                    String msg = "Expected DB file to be less than " +
-                        newLength + " bytes long, but it's " + oldLength +
-                        " bytes long!";
-
-                    logger.error(msg);
-                    throw new IOException(msg);
+                    // Another thread created a later page meanwhile, so this
+                    // page is in the file now.  Read it after all.
+                    buffer.clear();
+                    while (buffer.hasRemaining()) {
+                        if (channel.read(buffer, pageStart + buffer.position()) < 0)
+                            throw new EOFException();
+                    }
                 }
             }
-            else {
-                // Caller expected the page to exist!  Let the exception propagate.
-                throw e;
-            }
         }
+    }
 
-        return page;
+
+    /**
+     * Loads a run of consecutive pages from the underlying data file, with a
+     * single scattering read into the pages' buffers, instead of a read per
+     * page.  Like {@link #loadDBPage}, this does no page caching whatsoever.
+     * <p>
+     * (This method is simply a wrapper of
+     * {@link #loadDBPages(DBFile, int, int, PageFrameArena)}, allocating the
+     * pages' data on the heap.)
+     *
+     * @param dbFile the database file to load the pages from
+     * @param startPage the number of the first page to load
+     * @param count the number of pages to load
+     *
+     * @return the newly loaded database pages, in page order
+     *
+     * @throws IllegalArgumentException if the page number is negative, or the
+     *         count isn't positive
+     *
+     * @throws java.io.EOFException if any of the pages is not in the data file.
+     */
+    public List<DBPage> loadDBPages(DBFile dbFile, int startPage, int count)
+        throws IOException {
+        return loadDBPages(dbFile, startPage, count, null);
+    }
+
+
+    /**
+     * Loads a run of consecutive pages like
+     * {@link #loadDBPages(DBFile, int, int)}, into frames of an arena while
+     * it has them free.
+     *
+     * @param dbFile the database file to load the pages from
+     * @param startPage the number of the first page to load
+     * @param count the number of pages to load
+     * @param arena the arena to take the pages' frames from, or <tt>null</tt>
+     *        to allocate the pages' data on the heap
+     *
+     * @return the newly loaded database pages, in page order
+     *
+     * @throws IllegalArgumentException if the page number is negative, or the
+     *         count isn't positive
+     *
+     * @throws java.io.EOFException if any of the pages is not in the data file.
+     */
+    public List<DBPage> loadDBPages(DBFile dbFile, int startPage, int count,
+                                    PageFrameArena arena) throws IOException {
+        if (count <= 0)
+            throw new IllegalArgumentException("count must be > 0, got " + count);
+
+        long start = getPageStart(dbFile, startPage);
+
+        ArrayList<DBPage> pages = new ArrayList<DBPage>(count);
+        ByteBuffer[] buffers = new ByteBuffer[count];
+        for (int i = 0; i < count; i++) {
+            DBPage page = new DBPage(dbFile, startPage + i, arena);
+            pages.add(page);
+            buffers[i] = page.getPageBuffer();
+        }
+
+        try {
+            // There is no positional scattering read, so the channel's
+            // position is set under the file's lock.
+            RandomAccessFile fileContents = dbFile.getFileContents();
+            synchronized (fileContents) {
+                FileChannel channel = dbFile.getChannel();
+                channel.position(start);
+                while (buffers[count - 1].hasRemaining()) {
+                    if (channel.read(buffers) < 0)
+                        throw new EOFException();
+                }
+            }
+        }
+        catch (IOException e) {
+            for (DBPage page : pages)
+                page.invalidate();
+            throw e;
+        }
+        return pages;
     }
 
 
@@ -304,6 +452,59 @@ public class FileManager {
     }
 
 
+    /**
+     * Returns a read-only page whose data is a slice of a memory mapping of
+     * the file, rather than a copy read from the file.  The file is mapped
+     * the first time a page is requested, and mapped again when a page past
+     * the end of the mapping is requested, since the file may have grown.
+     * <p>
+     * The page is not cached, and changes to it can't be saved.  It reflects
+     * the file's contents, so the caller must make sure that the page isn't
+     * cached in a modified state by the buffer manager.
+     *
+     * @param dbFile the database file to map the page of
+     * @param pageNo the number of the page to map
+     *
+     * @return the mapped page, or <tt>null</tt> if the page lies past the
+     *         2GB a mapping can hold, in which case it must be loaded
+     *
+     * @throws IllegalArgumentException if the page number is negative
+     *
+     * @throws java.io.EOFException if the requested page is not in the data file.
+     */
+    public DBPage mapDBPage(DBFile dbFile, int pageNo) throws IOException {
+        int pageSize = dbFile.getPageSize();
+        long pageEnd = getPageStart(dbFile, pageNo) + pageSize;
+        if (pageEnd > Integer.MAX_VALUE)
+            return null;
+
+        MappedByteBuffer mapping = dbFile.getMapping();
+        if (mapping == null || mapping.capacity() < pageEnd) {
+            RandomAccessFile fileContents = dbFile.getFileContents();
+            synchronized (fileContents) {
+                mapping = dbFile.getMapping();
+                if (mapping == null || mapping.capacity() < pageEnd) {
+                    long length = Math.min(fileContents.length(),
+                        Integer.MAX_VALUE / pageSize * (long) pageSize);
+                    if (length < pageEnd)
+                        throw new EOFException();
+
+                    logger.debug(String.format("Mapping %d bytes of file %s.",
+                        length, dbFile));
+                    mapping = dbFile.getChannel().map(
+                        FileChannel.MapMode.READ_ONLY, 0, length);
+                    dbFile.setMapping(mapping);
+                }
+            }
+        }
+
+        ByteBuffer pageData = mapping.duplicate();
+        pageData.position((int) pageEnd - pageSize);
+        pageData.limit((int) pageEnd);
+        return new DBPage(dbFile, pageNo, pageData.slice());
+    }
+
+
     /**
      * Saves a page to the DB file, and then clears the page's dirty flag.
      * Note that the data might not actually be written to disk until a sync
@@ -321,13 +522,79 @@ public class FileManager {
 
         long pageStart = getPageStart(dbFile, page.getPageNo());
 
-        RandomAccessFile fileContents = dbFile.getFileContents();
-        fileContents.seek(pageStart);
-        fileContents.write(page.getPageData());
+        ByteBuffer buffer = page.getPageBuffer();
+        FileChannel channel = dbFile.getChannel();
+        while (buffer.hasRemaining())
+            channel.write(buffer, pageStart + buffer.position());
+
         page.setDirty(false);
     }
 
 
+    /**
+     * Saves pages to their DB files, and then clears the pages' dirty flags.
+     * The pages are written in file and page order, and each run of adjacent
+     * pages of a file is written with a single gathering write, instead of a
+     * write per page.
+     *
+     * @param pages the pages to write back to their data files
+     *
+     * @throws IOException if an error occurs while writing the pages to disk
+     */
+    public void saveDBPages(List<DBPage> pages) throws IOException {
+        ArrayList<DBPage> sorted = new ArrayList<DBPage>(pages);
+        Collections.sort(sorted, PAGE_ORDER);
+
+        int runStart = 0;
+        while (runStart < sorted.size()) {
+            DBPage first = sorted.get(runStart);
+            int runEnd = runStart + 1;
+            while (runEnd < sorted.size()) {
+                DBPage page = sorted.get(runEnd);
+                if (!page.getDBFile().equals(first.getDBFile()) ||
+                    page.getPageNo() != first.getPageNo() + runEnd - runStart)
+                    break;
+                runEnd++;
+            }
+
+            if (runEnd - runStart == 1)
+                saveDBPage(first);
+            else
+                saveRun(sorted.subList(runStart, runEnd));
+
+            runStart = runEnd;
+        }
+    }
+
+
+    /** Writes a run of adjacent pages of a file with one gathering write. */
+    private void saveRun(List<DBPage> run) throws IOException {
+        DBPage first = run.get(0);
+        DBFile dbFile = first.getDBFile();
+        long start = getPageStart(dbFile, first.getPageNo());
+
+        ByteBuffer[] buffers = new ByteBuffer[run.size()];
+        for (int i = 0; i < buffers.length; i++)
+            buffers[i] = run.get(i).getPageBuffer();
+
+        // There is no positional gathering write, so the channel's position
+        // is set under the file's lock.
+        RandomAccessFile fileContents = dbFile.getFileContents();
+        synchronized (fileContents) {
+            FileChannel channel = dbFile.getChannel();
+            channel.position(start);
+            while (buffers[buffers.length - 1].hasRemaining())
+                channel.write(buffers);
+        }
+
+        logger.debug(String.format("Wrote pages %d to %d of file %s at once.",
+            first.getPageNo(), first.getPageNo() + run.size() - 1, dbFile));
+
+        for (DBPage page : run)
+            page.setDirty(false);
+    }
+
+
     /**
      * This method ensures that all file-writes on the specified DB-file have
      * actually been synchronized to the disk.  Note that even after a call to
@@ -363,7 +630,7 @@ public class FileManager {
         syncDBFile(dbFile);
 
         logger.info("Closing database file:  " + dbFile);
-        dbFile.getFileContents().close();
+        dbFile.close();
     }
 
 
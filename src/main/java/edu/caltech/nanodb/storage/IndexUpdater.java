@@ -48,6 +48,9 @@ public class IndexUpdater implements RowEventListener {
     @Override
     public void afterRowInserted(TableFileInfo tblFileInfo, Tuple newTuple) {
 
+        if (!hasIndexes(tblFileInfo))
+            return;
+
         if (!(newTuple instanceof PageTuple)) {
             throw new IllegalArgumentException(
                 "newTuple must be castable to PageTuple");
@@ -61,6 +64,9 @@ public class IndexUpdater implements RowEventListener {
     public void beforeRowUpdated(TableFileInfo tblFileInfo, Tuple oldTuple,
                                  Tuple newValues) {
 
+        if (!hasIndexes(tblFileInfo))
+            return;
+
         if (!(oldTuple instanceof PageTuple)) {
             throw new IllegalArgumentException(
                 "oldTuple must be castable to PageTuple");
@@ -74,6 +80,9 @@ public class IndexUpdater implements RowEventListener {
     public void afterRowUpdated(TableFileInfo tblFileInfo, Tuple oldValues,
                                 Tuple newTuple) {
 
+        if (!hasIndexes(tblFileInfo))
+            return;
+
         if (!(newTuple instanceof PageTuple)) {
             throw new IllegalArgumentException(
                 "newTuple must be castable to PageTuple");
@@ -86,6 +95,9 @@ public class IndexUpdater implements RowEventListener {
     @Override
     public void beforeRowDeleted(TableFileInfo tblFileInfo, Tuple oldTuple) {
 
+        if (!hasIndexes(tblFileInfo))
+            return;
+
         if (!(oldTuple instanceof PageTuple)) {
             throw new IllegalArgumentException(
                 "oldTuple must be castable to PageTuple");
@@ -101,6 +113,15 @@ public class IndexUpdater implements RowEventListener {
     }
 
 
+    /**
+     * Returns true if a table can have indexes.  Column-store tables don't
+     * have any, and their rows aren't {@link PageTuple}s.
+     */
+    private boolean hasIndexes(TableFileInfo tblFileInfo) {
+        return tblFileInfo.getFileType() != DBFileType.COLUMNSTORE_DATA_FILE;
+    }
+
+
     /**
      * This helper method handles the case when a tuple is being added to the
      * table, after the row has already been added to the table.  All indexes
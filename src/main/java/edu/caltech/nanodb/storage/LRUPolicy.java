@@ -0,0 +1,58 @@
+package edu.caltech.nanodb.storage;
+
+
+import java.util.LinkedHashSet;
+import java.util.Map;
+
+
+/**
+ * Evicts the least recently used page.  Pages loaded by sequential scans are
+ * kept apart, in the order they were loaded, and are evicted before all
+ * others unless a query other than a scan uses them again.
+ *
+ * @param <K> the type of the keys the buffer manager identifies pages by
+ */
+public class LRUPolicy<K> extends ReplacementPolicy<K> {
+
+    /** The pages loaded by scans and not used since, oldest first. */
+    protected LinkedHashSet<K> scanPages = new LinkedHashSet<K>();
+
+    /** The other pages, least recently used first. */
+    protected LinkedHashSet<K> pages = new LinkedHashSet<K>();
+
+
+    @Override
+    public void pageAdded(K key, boolean scan) {
+        if (scan)
+            scanPages.add(key);
+        else
+            pages.add(key);
+    }
+
+
+    @Override
+    public void pageAccessed(K key, boolean scan) {
+        if (scan)
+            return;
+
+        // Move the page to the most recently used end.
+        if (scanPages.remove(key) || pages.remove(key))
+            pages.add(key);
+    }
+
+
+    @Override
+    public void pageRemoved(K key) {
+        if (!scanPages.remove(key))
+            pages.remove(key);
+    }
+
+
+    @Override
+    public K chooseVictim(Map<K, DBPage> cachedPages) {
+        K victim = removeFirstUnpinned(scanPages, cachedPages);
+        if (victim == null)
+            victim = removeFirstUnpinned(pages, cachedPages);
+        return victim;
+    }
+}
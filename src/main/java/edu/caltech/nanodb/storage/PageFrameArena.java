@@ -0,0 +1,120 @@
+package edu.caltech.nanodb.storage;
+
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.ArrayBlockingQueue;
+
+import org.apache.log4j.Logger;
+
+
+/**
+ * A fixed set of page frames in direct (off-heap) memory, used by the buffer
+ * manager to hold the data of cached pages.  The memory is allocated once,
+ * when the arena is created, and is carved into frames of a single page
+ * size.  When a page is evicted its frame is returned to the arena, and the
+ * next page that is loaded reuses it, so that loading pages doesn't allocate
+ * on the Java heap and a large page cache doesn't burden the garbage
+ * collector.
+ * <p>
+ * Pages of other sizes, and pages loaded while every frame is in use, are
+ * allocated on the heap as usual.
+ */
+public class PageFrameArena {
+
+    /** A logging object for reporting anything interesting that happens. */
+    private static Logger logger = Logger.getLogger(PageFrameArena.class);
+
+
+    /**
+     * The largest block of memory allocated at once.  Direct buffers are
+     * limited to 2GB, so larger arenas are made of several blocks.
+     */
+    private static final int MAX_BLOCK_SIZE = 1 << 30;
+
+
+    /** The size of each frame, which is the page size of the pages it holds. */
+    private final int frameSize;
+
+
+    /** The total number of frames in the arena. */
+    private final int numFrames;
+
+
+    /** The frames that don't hold a page. */
+    private final ArrayBlockingQueue<ByteBuffer> freeFrames;
+
+
+    /**
+     * Allocates an arena of frames.
+     *
+     * @param frameSize the size of each frame
+     *
+     * @param size the total size of the arena, which is rounded down to a
+     *        whole number of frames
+     */
+    public PageFrameArena(int frameSize, long size) {
+        if (frameSize <= 0)
+            throw new IllegalArgumentException("frameSize must be positive");
+
+        this.frameSize = frameSize;
+        numFrames = (int) Math.min(Integer.MAX_VALUE,
+            Math.max(1, size / frameSize));
+        freeFrames = new ArrayBlockingQueue<ByteBuffer>(numFrames);
+
+        int framesPerBlock = Math.max(1, MAX_BLOCK_SIZE / frameSize);
+        for (int i = 0; i < numFrames; i += framesPerBlock) {
+            int n = Math.min(framesPerBlock, numFrames - i);
+            ByteBuffer block = ByteBuffer.allocateDirect(n * frameSize);
+            for (int j = 0; j < n; j++) {
+                block.limit((j + 1) * frameSize);
+                block.position(j * frameSize);
+                freeFrames.add(block.slice());
+            }
+        }
+
+        logger.info(String.format("Allocated %d off-heap page frames of %d bytes.",
+            numFrames, frameSize));
+    }
+
+
+    /** Returns the size of each frame. */
+    public int getFrameSize() {
+        return frameSize;
+    }
+
+
+    /** Returns the total number of frames in the arena. */
+    public int getNumFrames() {
+        return numFrames;
+    }
+
+
+    /** Returns the number of frames that don't hold a page. */
+    public int getNumFreeFrames() {
+        return freeFrames.size();
+    }
+
+
+    /**
+     * Takes a free frame from the arena.  The frame still holds the data of
+     * the last page that used it.
+     *
+     * @return the frame, or <tt>null</tt> if every frame is in use
+     */
+    public ByteBuffer allocate() {
+        return freeFrames.poll();
+    }
+
+
+    /**
+     * Returns a frame to the arena, once the page that used it is no longer
+     * cached.
+     *
+     * @param frame a frame allocated from this arena
+     */
+    public void release(ByteBuffer frame) {
+        frame.clear();
+        if (!freeFrames.offer(frame))
+            throw new IllegalStateException("Frame released more than once");
+    }
+}
@@ -0,0 +1,78 @@
+package edu.caltech.nanodb.storage;
+
+
+import java.util.Iterator;
+import java.util.Map;
+
+
+/**
+ * A page replacement policy chooses which page of a segment of the page cache
+ * to evict when the buffer manager needs room.  The buffer manager reports
+ * every page it adds to the segment, finds in it, or removes from it; all of
+ * these calls are made while holding the segment's lock, so policies don't
+ * need any synchronization of their own.
+ * <p>
+ * Pages that a sequential scan loads or finds are reported with
+ * <tt>scan</tt> set.  Policies should evict such pages before the ones other
+ * queries keep coming back to, so that scanning a large table doesn't push
+ * the B<sup>+</sup> tree inner pages and header pages out of the cache.
+ *
+ * @param <K> the type of the keys the buffer manager identifies pages by
+ */
+public abstract class ReplacementPolicy<K> {
+
+    /**
+     * Records a page that was added to the segment.
+     *
+     * @param key the key of the page
+     * @param scan true if the page was loaded by a sequential scan
+     */
+    public abstract void pageAdded(K key, boolean scan);
+
+
+    /**
+     * Records a page that was found in the segment.
+     *
+     * @param key the key of the page
+     * @param scan true if the page was requested by a sequential scan
+     */
+    public abstract void pageAccessed(K key, boolean scan);
+
+
+    /**
+     * Forgets a page that the buffer manager removed from the segment without
+     * asking the policy, e.g. because its file is being closed.
+     *
+     * @param key the key of the page
+     */
+    public abstract void pageRemoved(K key);
+
+
+    /**
+     * Chooses an unpinned page of the segment to evict, and forgets it.
+     *
+     * @param pages the pages of the segment, by key
+     *
+     * @return the key of the page to evict, or <tt>null</tt> if every page of
+     *         the segment is pinned
+     */
+    public abstract K chooseVictim(Map<K, DBPage> pages);
+
+
+    /**
+     * Removes and returns the first key of a collection whose page is not
+     * pinned, or returns <tt>null</tt> if there is none.
+     */
+    protected static <K> K removeFirstUnpinned(Iterable<K> keys,
+                                               Map<K, DBPage> pages) {
+        Iterator<K> iter = keys.iterator();
+        while (iter.hasNext()) {
+            K key = iter.next();
+            if (!pages.get(key).isPinned()) {
+                iter.remove();
+                return key;
+            }
+        }
+        return null;
+    }
+}
@@ -3,8 +3,11 @@ package edu.caltech.nanodb.storage;
 
 import java.io.File;
 import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.Collection;
 import java.util.HashMap;
 import java.util.List;
+import java.util.concurrent.CountDownLatch;
 
 import edu.caltech.nanodb.util.PropertiesUtil;
 import org.apache.log4j.Logger;
@@ -50,6 +53,14 @@ public class StorageManager {
     public static final String PROP_PAGESIZE = "nanodb.pagesize";
 
 
+    /**
+     * The system property that can be used to read the data pages of
+     * column-store files through memory mappings of the files, instead of
+     * through the buffer manager.  It defaults to false.
+     */
+    public static final String PROP_COLSTORE_MMAP = "nanodb.colstore.mmap";
+
+
     /**
      * The default base-directory path used by the storage manager.  This
      * value is set to "<tt>./datafiles</tt>" (or "<tt>.\datafiles</tt>"
@@ -168,6 +179,10 @@ public class StorageManager {
     private TransactionManager transactionManager;
 
 
+    /** True if column-store data pages are read from memory mappings. */
+    private boolean mapColumnStoreFiles;
+
+
     /**
      * This mapping is used to keep track of the manager objects used for each
      * file-type we need to operate on.
@@ -198,15 +213,16 @@ public class StorageManager {
 
     /**
      * The constructor initalizes the storage manager based on the passed-in
-     * arguments.  It is private because we only want a singleton instance of
-     * the storage manager, and this constructor is invoked from the static
-     * {@link #init} method.
+     * arguments.  It is not public because we only want a singleton instance
+     * of the storage manager, and this constructor is invoked from the static
+     * {@link #init} method; tests in this package also use it to work on
+     * files in a directory of their own.
      *
      * @param baseDir the directory containing the database's files
      *
      * @throws IOException if the directory cannot be accessed
      */
-    private StorageManager(File baseDir) throws IOException {
+    StorageManager(File baseDir) throws IOException {
         // Make sure the base directory exists and is valid and all that.
 
         if (!baseDir.exists()) {
@@ -226,6 +242,10 @@ public class StorageManager {
 
         fileManager = new FileManager(baseDir);
         bufferManager = new BufferManager(fileManager);
+
+        mapColumnStoreFiles = PropertiesUtil.getBoolean(PROP_COLSTORE_MMAP, false);
+        if (mapColumnStoreFiles)
+            logger.info("Column-store data pages are read from mapped files.");
     }
 
 
@@ -256,7 +276,7 @@ public class StorageManager {
 
 
     private void shutdownStorage() throws IOException {
-        transactionManager.forceWAL();
+        transactionManager.shutdown();
 
         List<DBFile> dbFiles = bufferManager.removeAll();
         for (DBFile dbFile : dbFiles)
@@ -279,16 +299,31 @@ public class StorageManager {
     }
 
 
+    /** Returns the buffer manager, for tests in this package. */
+    BufferManager getBufferManager() {
+        return bufferManager;
+    }
+
+
     public DBFile createDBFile(String filename, DBFileType type)
         throws IOException {
+        return createDBFile(filename, type, getCurrentPageSize());
+    }
+
+
+    /**
+     * Creates a database file with a specific page size, such as a file that
+     * replaces an existing one with the same page size.
+     */
+    public DBFile createDBFile(String filename, DBFileType type, int pageSize)
+        throws IOException {
 
         if (bufferManager.getFile(filename) != null) {
             throw new IllegalStateException("A file " + filename +
                 " is already cached in the Buffer Manager!  Does it already exist?");
         }
 
-        DBFile dbFile = fileManager.createDBFile(filename, type,
-            getCurrentPageSize());
+        DBFile dbFile = fileManager.createDBFile(filename, type, pageSize);
 
         bufferManager.addFile(dbFile);
 
@@ -405,16 +440,47 @@ public class StorageManager {
     public DBPage loadDBPage(DBFile dbFile, int pageNo, boolean create)
         throws IOException {
 
-        // Try to retrieve from the buffer manager.
-        DBPage dbPage = bufferManager.getPage(dbFile, pageNo);
-        if (dbPage == null) {
-            // Buffer manager didn't have it.  Read direct from the file, then
-            // add it to the buffer manager.
-            dbPage = fileManager.loadDBPage(dbFile, pageNo, create);
-            bufferManager.addPage(dbPage);
+        CountDownLatch loaded = new CountDownLatch(1);
+        while (true) {
+            // Try to retrieve from the buffer manager.
+            DBPage dbPage = bufferManager.getPage(dbFile, pageNo);
+            if (dbPage != null)
+                return dbPage;
+
+            // Only one thread loads a page at a time, so that two threads
+            // can't both miss the same page and add it to the buffer manager
+            // twice.  The others wait for it, then look the page up again.
+            CountDownLatch loading =
+                bufferManager.startLoad(dbFile, pageNo, loaded);
+            if (loading == null)
+                break;
+
+            try {
+                loading.await();
+            }
+            catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException(String.format(
+                    "Interrupted while loading page [%s,%d]", dbFile, pageNo));
+            }
         }
 
-        return dbPage;
+        try {
+            // The page may have been added after it was looked up.
+            DBPage dbPage = bufferManager.getPage(dbFile, pageNo);
+            if (dbPage == null) {
+                // Buffer manager didn't have it.  Read direct from the file,
+                // then add it to the buffer manager.
+                dbPage = fileManager.loadDBPage(dbFile, pageNo, create,
+                    bufferManager.getFrameArena());
+                bufferManager.addPage(dbPage);
+            }
+
+            return dbPage;
+        }
+        finally {
+            bufferManager.finishLoad(dbFile, pageNo, loaded);
+        }
     }
 
 
@@ -445,6 +511,63 @@ public class StorageManager {
     }
 
 
+    /**
+     * Returns a database page that the caller will only read.  Pages of
+     * column-store files are written once and then only read, so if
+     * {@link #PROP_COLSTORE_MMAP} is set and the buffer manager doesn't hold
+     * the page, the page is a slice of a read-only memory mapping of the file.
+     * Its data is read straight from the operating system's file cache,
+     * without a copy or a system call, and it isn't counted against the
+     * buffer manager's size.  Otherwise the page is loaded as usual.
+     * <p>
+     * A page the buffer manager holds is returned from there, since it may
+     * have been changed without being written back yet.
+     *
+     * @param dbFile the database file to read the page from
+     * @param pageNo the number of the page to read
+     *
+     * @return the database page, which must not be changed
+     *
+     * @throws IllegalArgumentException if the page number is negative
+     *
+     * @throws java.io.EOFException if the requested page is not in the data
+     *         file.
+     */
+    public DBPage readDBPage(DBFile dbFile, int pageNo) throws IOException {
+        if (!mapColumnStoreFiles ||
+            dbFile.getType() != DBFileType.COLUMNSTORE_DATA_FILE) {
+            return loadDBPage(dbFile, pageNo);
+        }
+
+        // If the page is being written back, this waits until it has been,
+        // so the mapping sees its current contents.
+        DBPage dbPage = bufferManager.getPage(dbFile, pageNo);
+        if (dbPage == null)
+            dbPage = fileManager.mapDBPage(dbFile, pageNo);
+        if (dbPage == null)
+            dbPage = loadDBPage(dbFile, pageNo);
+
+        return dbPage;
+    }
+
+
+    /**
+     * Marks the pages that the current thread loads from now on as being read
+     * by a sequential scan, or stops doing so, so that the scan doesn't push
+     * the pages other queries use out of the buffer manager.  Callers should
+     * restore the previous setting when they are done.
+     *
+     * @param scan true if the thread is about to read pages for a scan
+     *
+     * @return the previous setting
+     *
+     * @see BufferManager#setScanAccess
+     */
+    public boolean setScanAccess(boolean scan) {
+        return bufferManager.setScanAccess(scan);
+    }
+
+
     public void logDBPageWrite(DBPage dbPage) throws IOException {
         // If the page is dirty, record its changes to the write-ahead log.
         if (transactionManager != null)
@@ -458,6 +581,27 @@ public class StorageManager {
     }
 
 
+    /**
+     * Unpins all pages pinned by the current session, except for some pages
+     * it is still using.  Commands have their pages unpinned when they
+     * finish; tasks that run on their own threads, outside of any command,
+     * must unpin their pages themselves.
+     *
+     * @param keep the pages to leave pinned
+     *
+     * @see BufferManager#unpinAllPages(java.util.Collection)
+     */
+    public void unpinAllDBPages(Collection<DBPage> keep) {
+        bufferManager.unpinAllPages(keep);
+    }
+
+
+    /** Unpins all pages pinned by the current session. */
+    public void unpinAllDBPages() {
+        bufferManager.unpinAllPages();
+    }
+
+
     /*========================================================================
      * CODE RELATED TO TABLE FILES
      */
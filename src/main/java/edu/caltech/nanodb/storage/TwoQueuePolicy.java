@@ -0,0 +1,112 @@
+package edu.caltech.nanodb.storage;
+
+
+import java.util.Iterator;
+import java.util.LinkedHashSet;
+import java.util.Map;
+
+
+/**
+ * The 2Q replacement policy of Johnson and Shasha.  A page that is loaded
+ * goes into a FIFO queue of pages seen once, which is kept to about a
+ * quarter of the segment.  When a page is evicted from that queue its key is
+ * remembered in a queue of "ghosts", about half the size of the segment, and
+ * if the page is loaded again while it is remembered it goes into an LRU
+ * queue of hot pages instead.  A page has to be used again after a while to
+ * become hot, so a single pass over a large table can only replace the pages
+ * seen once, never the hot ones.
+ * <p>
+ * Pages loaded by sequential scans are kept in a FIFO queue of their own,
+ * which is evicted first, and aren't remembered when they are evicted, so
+ * that scanning a table repeatedly doesn't make its pages hot either.  Scans
+ * don't move hot pages to the recently used end of their queue.
+ *
+ * @param <K> the type of the keys the buffer manager identifies pages by
+ */
+public class TwoQueuePolicy<K> extends ReplacementPolicy<K> {
+
+    /** The pages seen once, oldest first.  (A1in in the paper.) */
+    private LinkedHashSet<K> recent = new LinkedHashSet<K>();
+
+    /** The pages loaded by scans and not used since, oldest first. */
+    private LinkedHashSet<K> scanPages = new LinkedHashSet<K>();
+
+    /**
+     * The keys of pages recently evicted from {@link #recent}, oldest first.
+     * (A1out in the paper.)
+     */
+    private LinkedHashSet<K> ghosts = new LinkedHashSet<K>();
+
+    /** The hot pages, least recently used first.  (Am in the paper.) */
+    private LinkedHashSet<K> frequent = new LinkedHashSet<K>();
+
+
+    @Override
+    public void pageAdded(K key, boolean scan) {
+        if (scan)
+            scanPages.add(key);
+        else if (ghosts.remove(key))
+            frequent.add(key);
+        else
+            recent.add(key);
+    }
+
+
+    @Override
+    public void pageAccessed(K key, boolean scan) {
+        if (scan)
+            return;
+
+        // Pages seen once stay in FIFO order, since uses close together
+        // are usually the same query.  But a page a scan loaded that another
+        // query uses becomes a page seen once.
+        if (frequent.remove(key))
+            frequent.add(key);
+        else if (scanPages.remove(key))
+            recent.add(key);
+    }
+
+
+    @Override
+    public void pageRemoved(K key) {
+        if (!scanPages.remove(key) && !recent.remove(key))
+            frequent.remove(key);
+    }
+
+
+    @Override
+    public K chooseVictim(Map<K, DBPage> pages) {
+        K victim = removeFirstUnpinned(scanPages, pages);
+        if (victim != null)
+            return victim;
+
+        int numPages = recent.size() + frequent.size();
+        if (recent.size() * 4 > numPages || frequent.isEmpty())
+            victim = removeRecent(pages);
+
+        if (victim == null)
+            victim = removeFirstUnpinned(frequent, pages);
+
+        if (victim == null)
+            victim = removeRecent(pages);
+
+        return victim;
+    }
+
+
+    /** Removes the oldest unpinned page seen once, and remembers it. */
+    private K removeRecent(Map<K, DBPage> pages) {
+        K victim = removeFirstUnpinned(recent, pages);
+        if (victim == null)
+            return null;
+
+        ghosts.add(victim);
+        int maxGhosts = Math.max(1, (recent.size() + frequent.size()) / 2);
+        Iterator<K> iter = ghosts.iterator();
+        while (ghosts.size() > maxGhosts) {
+            iter.next();
+            iter.remove();
+        }
+        return victim;
+    }
+}
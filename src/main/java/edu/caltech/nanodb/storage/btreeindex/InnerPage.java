@@ -509,7 +509,7 @@ public class InnerPage {
 
         // Copy the pointer data across
         leftSibling.dbPage.write(leftSibling.endOffset + parentKeyLen,
-            dbPage.getPageData(), OFFSET_FIRST_POINTER, len);
+            dbPage, OFFSET_FIRST_POINTER, len);
 
         if (parentKey != null) {
             // Update the entry-count
@@ -630,7 +630,7 @@ public class InnerPage {
         }
 
         // Copy the pointer data across
-        rightSibling.dbPage.write(OFFSET_FIRST_POINTER, dbPage.getPageData(),
+        rightSibling.dbPage.write(OFFSET_FIRST_POINTER, dbPage,
             startOffset, len);
 
         if (parentKey != null) {
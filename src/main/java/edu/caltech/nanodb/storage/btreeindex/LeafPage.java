@@ -428,7 +428,7 @@ public class LeafPage {
         // Copy the range of key-data to the destination page.  Then update the
         // count of entries in the destination page.
         // Don't need to move any data in the left sibling; we are appending!
-        leftSibling.dbPage.write(leftSibling.endOffset, dbPage.getPageData(),
+        leftSibling.dbPage.write(leftSibling.endOffset, dbPage,
             OFFSET_FIRST_KEY, len);             // Copy the key-data across
         leftSibling.dbPage.writeShort(OFFSET_NUM_ENTRIES,
             leftSibling.numEntries + count);    // Update the entry-count
@@ -486,7 +486,7 @@ public class LeafPage {
             OFFSET_FIRST_KEY + len, rightSibling.endOffset - OFFSET_FIRST_KEY);
 
         // Copy the key-data across
-        rightSibling.dbPage.write(OFFSET_FIRST_KEY, dbPage.getPageData(),
+        rightSibling.dbPage.write(OFFSET_FIRST_KEY, dbPage,
             startOffset, len);
 
         // Update the entry-count
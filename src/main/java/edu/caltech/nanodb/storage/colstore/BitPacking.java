@@ -0,0 +1,100 @@
+package edu.caltech.nanodb.storage.colstore;
+
+import edu.caltech.nanodb.storage.DBPage;
+
+/**
+ * Packs unsigned integers of 1 to 32 bits into consecutive 64-bit words of a
+ * page, and unpacks them again.  A value may continue from one word into the
+ * next, so no bits are wasted except at the end of the last word.  This is
+ * shared by the page formats that store small integers: dictionary codes,
+ * and frame-of-reference and delta offsets.
+ */
+public class BitPacking {
+
+    /**
+     * Returns the number of bits needed to store values from 0 up to and
+     * including <tt>max</tt>, which is always at least 1.
+     */
+    public static int getBitSize(long max) {
+        return Math.max(1, 64 - Long.numberOfLeadingZeros(max));
+    }
+
+    /**
+     * Returns the number of values of <tt>bitsize</tt> bits that fit between
+     * an offset and the end of a page.
+     */
+    public static int getCapacity(int pageSize, int offset, int bitsize) {
+        int words = (pageSize - offset) / 8;
+        return (int) ((long) words * 64 / bitsize);
+    }
+
+    /**
+     * Packs values into the page, starting at an offset.  Only the low
+     * <tt>bitsize</tt> bits of each value are stored.
+     *
+     * @param dbPage the page to write to
+     * @param offset the offset of the first word
+     * @param values the values to pack
+     * @param count the number of values to pack
+     * @param bitsize the number of bits per value, between 1 and 32
+     * @return the offset just past the last word written
+     */
+    public static int pack(DBPage dbPage, int offset, int[] values, int count,
+                           int bitsize) {
+        long mask = (1L << bitsize) - 1;
+        long word = 0;
+        int bit = 0;
+        for (int i = 0; i < count; i++) {
+            long value = values[i] & mask;
+            word |= value << bit;
+            bit += bitsize;
+            if (bit >= 64) {
+                dbPage.writeLong(offset, word);
+                offset += 8;
+                bit -= 64;
+                // The high bits of the value that didn't fit in the word.
+                word = (bit > 0) ? value >>> (bitsize - bit) : 0;
+            }
+        }
+        if (bit > 0) {
+            dbPage.writeLong(offset, word);
+            offset += 8;
+        }
+        return offset;
+    }
+
+    /**
+     * Unpacks values from the page in one pass.  Values of 32 bits are
+     * returned as <tt>int</tt>s with the same bits, so callers that need
+     * them unsigned must mask them with <tt>0xFFFFFFFFL</tt>.
+     *
+     * @param dbPage the page to read from
+     * @param offset the offset of the first word
+     * @param count the number of values to unpack
+     * @param bitsize the number of bits per value
+     * @param values the array to store the values into
+     */
+    public static void unpack(DBPage dbPage, int offset, int count, int bitsize,
+                              int[] values) {
+        if (count == 0)
+            return;
+
+        long mask = (1L << bitsize) - 1;
+        long word = dbPage.readLong(offset);
+        int bit = 0;
+        for (int i = 0; i < count; i++) {
+            long value = word >>> bit;
+            bit += bitsize;
+            if (bit >= 64) {
+                bit -= 64;
+                offset += 8;
+                if (i + 1 < count || bit > 0)
+                    word = dbPage.readLong(offset);
+                // Add the high bits of a value that continues into this word.
+                if (bit > 0)
+                    value |= word << (bitsize - bit);
+            }
+            values[i] = (int) (value & mask);
+        }
+    }
+}
@@ -3,10 +3,10 @@ package edu.caltech.nanodb.storage.colstore;
 import java.io.EOFException;
 import java.io.IOException;
 import java.util.ArrayList;
-import java.util.HashMap;
 
 import org.apache.log4j.Logger;
 
+import edu.caltech.nanodb.relations.ColumnIndexes;
 import edu.caltech.nanodb.relations.ColumnInfo;
 import edu.caltech.nanodb.relations.ColumnType;
 import edu.caltech.nanodb.relations.Tuple;
@@ -29,47 +29,231 @@ public class BlockColumnStoreReader {
     /** A logging object for reporting anything interesting that happens. */
     private static Logger logger = Logger.getLogger(BlockColumnStoreReader.class);
     
-    /** Information for dictionary encoded pages. */
-    private int bitsize;
-    
-    /** Information for dictionary encoded pages. */
-    private int blockNum;
+    /**
+     * The dictionary for dictionary encoded pages, as an array indexed by
+     * code.  Codes are in the same order as the values they stand for.
+     */
+    private Object[] decodeTable;
+
+    /**
+     * Maps the codes stored on dictionary encoded pages, which were given in
+     * order of appearance, to the codes of {@link #decodeTable}.
+     */
+    private int[] codeMap;
+
+    /** The table a batch scan is reading from. */
+    private TableFileInfo scanTable;
+
+    /** The column a batch scan is reading from. */
+    private int scanColumn;
+
+    /** The data page a batch scan is reading, or null when the scan is done. */
+    private DBPage scanPage;
+
+    /** The encoding of the data page a batch scan is reading. */
+    private FileEncoding scanEncoding;
+
+    /** The offset of the next unread block in the scan page. */
+    private int scanOffset;
+
+    /** The offset just past the last block in the scan page. */
+    private int scanEnd;
+
+    /** The number of rows in the scan page that have not been read or skipped. */
+    private int pageRowsLeft;
+
+    /** The type of the column a batch scan is reading. */
+    private ColumnType scanType;
+
+    /** The row number of the next row a batch scan will read or skip. */
+    private int scanRow;
+
+    /** The value of the RLE run being read by a batch scan. */
+    private Object runValue;
+
+    /** The number of rows of the current RLE run that have not been read. */
+    private int runRemaining;
+
+    /**
+     * The codes of the scan page, if it is a dictionary encoded page.  The
+     * whole page is unpacked at once, the first time a code is read.
+     */
+    private int[] pageCodes;
+
+    /**
+     * The values of the scan page, if it is a frame-of-reference or delta
+     * encoded page.  The whole page is unpacked at once, like
+     * {@link #pageCodes}.
+     */
+    private long[] pageValues;
+
+    /**
+     * True if {@link #pageCodes} or {@link #pageValues} holds the contents
+     * of the scan page.
+     */
+    private boolean pageUnpacked;
+
+    /** The position of the next unread code or value of the scan page. */
+    private int pagePos;
 
-    /** The dictionary for dictionary encoded pages. */
-    private HashMap<Integer, Object> dict;
+    /**
+     * The zone map of the column a batch scan is reading, or null if the
+     * column doesn't have one.  It is used to skip to a row's page directly.
+     */
+    private ZoneMap zoneMap;
+
+    /**
+     * The page after the last page of the table's last row group, in the file
+     * of the column being read.  Pages from here on aren't part of any group.
+     */
+    private int dataEndPage;
+
+    /**
+     * True if the data pages are read for a sequential scan, so the buffer
+     * manager should evict them before the pages other queries use.
+     */
+    private boolean scanAccess;
     
     /**
      * Initializes the blocked heap-file table reader.
      */
     public BlockColumnStoreReader() {
         this.storageManager = StorageManager.getInstance();
-        bitsize = -1;
-        blockNum = -1;
-        dict = null;
+        decodeTable = null;
     }
     
-    /** Get first data page. For dictionary encoding, that's the second page. */
+    /**
+     * Sets whether the data pages are read for a sequential scan.  Header,
+     * dictionary and zone map pages are always cached normally.
+     */
+    public void setScanAccess(boolean scanAccess) {
+        this.scanAccess = scanAccess;
+    }
+
+    /**
+     * Loads a data page of a column's file.  Data pages are only read, so
+     * they may come from a mapping of the file.
+     */
+    private DBPage loadDataPage(DBFile dbFile, int pageNo) throws IOException {
+        if (!scanAccess)
+            return storageManager.readDBPage(dbFile, pageNo);
+
+        boolean wasScan = storageManager.setScanAccess(true);
+        try {
+            return storageManager.readDBPage(dbFile, pageNo);
+        }
+        finally {
+            storageManager.setScanAccess(wasScan);
+        }
+    }
+
+    /**
+     * Get first data page, and read the column's dictionary if it has one.
+     * The row groups of a table are stored one after another in each
+     * column's file, so reading the pages in order from here reads the
+     * groups in order, up to the end of the last group recorded in the
+     * header page.
+     */
     public DBPage getFirstDataPage(TableFileInfo tblFileInfo, int column) throws IOException {
+        readDictionary(tblFileInfo, column);
+
+        DBPage headerPage = storageManager.loadDBPage(tblFileInfo.getDBFile(), 0);
+        dataEndPage = CSHeaderPage.getGroupEndPage(headerPage,
+            CSHeaderPage.getNumGroups(headerPage) - 1, column);
+
         // Try to fetch the first data page.  If none exists, return null.
         DBPage dbPage = null;
-        try {
-            dbPage = storageManager.loadDBPage(tblFileInfo.getDBFile(column + 1), 0);
-            if (CSDataPage.getEncoding(dbPage) == FileEncoding.DICTIONARY.ordinal()) {
-            	bitsize = DictionaryPage.getBitSize(dbPage);
-            	blockNum = DictionaryPage.getBlockNum(dbPage);
-            	dict = DictionaryPage.constructDictionary(dbPage, 
-            		tblFileInfo.getSchema().getColumnInfo(column));
-            	
-            	dbPage = storageManager.loadDBPage(tblFileInfo.getDBFile(column + 1), 1);
-            	
+        if (dataEndPage > 0) {
+            try {
+                dbPage = loadDataPage(tblFileInfo.getDBFile(column + 1), 0);
+            }
+            catch (EOFException e) {
+                // Ignore.
             }
-        }
-        catch (EOFException e) {
-            // Ignore.
         }
         return dbPage;
     }
 
+    /**
+     * Reads the dictionary of a column from the table's header file into
+     * {@link #decodeTable}, and the mapping of the codes stored on its pages
+     * into {@link #codeMap}.  Both are null if the column has no dictionary.
+     */
+    public void readDictionary(TableFileInfo tblFileInfo, int column)
+        throws IOException {
+
+        DBFile dbFile = tblFileInfo.getDBFile();
+        DBPage headerPage = storageManager.loadDBPage(dbFile, 0);
+        int size = CSHeaderPage.getDictionarySize(headerPage, column);
+        if (size <= 0) {
+            decodeTable = null;
+            codeMap = null;
+            return;
+        }
+
+        ColumnType colType = tblFileInfo.getSchema().getColumnInfo(column).getType();
+        decodeTable = new Object[size + 1];
+        codeMap = new int[size + 1];
+
+        int code = 1;
+        int pageNo = CSHeaderPage.getDictionaryPage(headerPage, column);
+        while (code <= size) {
+            code = DictionaryPage.readEntries(storageManager.loadDBPage(dbFile,
+                pageNo++), decodeTable, codeMap, code, colType);
+        }
+    }
+
+    /**
+     * Reads the zone map of a column from the table's header file.  The zone
+     * map is marked as sorted if the column is the first column of the
+     * table's sort key and the table's row groups are in key order.
+     *
+     * @return the zone map, or null if the column doesn't have one
+     */
+    public ZoneMap readZoneMap(TableFileInfo tblFileInfo, int column)
+        throws IOException {
+
+        DBFile dbFile = tblFileInfo.getDBFile();
+        DBPage headerPage = storageManager.loadDBPage(dbFile, 0);
+        int size = CSHeaderPage.getZoneMapSize(headerPage, column);
+        if (size <= 0)
+            return null;
+
+        ColumnType colType = tblFileInfo.getSchema().getColumnInfo(column).getType();
+        ZoneMap map = new ZoneMap();
+        int pageNo = CSHeaderPage.getZoneMapPage(headerPage, column);
+        while (map.size() < size) {
+            ZoneMapPage.readEntries(storageManager.loadDBPage(dbFile, pageNo++),
+                map, colType);
+        }
+
+        ColumnIndexes sortKey = tblFileInfo.getSchema().getSortKey();
+        if (sortKey != null && sortKey.getCol(0) == column)
+            map.setSorted(CSHeaderPage.isSorted(headerPage));
+        return map;
+    }
+
+    /**
+     * Returns the dictionary read by {@link #readDictionary}, indexed by
+     * code, or null.
+     */
+    public Object[] getDictionary() {
+        return decodeTable;
+    }
+
+    /**
+     * Returns the mapping of stored codes to dictionary codes read by
+     * {@link #readDictionary}, or null.
+     */
+    public int[] getCodeMap() {
+        return codeMap;
+    }
+
+    /** Returns the zone map of the column a batch scan is reading, or null. */
+    public ZoneMap getZoneMap() {
+        return zoneMap;
+    }
+
     /** Get last data page. */
     public DBPage getLastDataPage(TableFileInfo tblFileInfo, int column) throws IOException {
         // Try to fetch the last data page.  If none exists, return null.
@@ -79,22 +263,24 @@ public class BlockColumnStoreReader {
         DBPage dbPage = null;
         // If we have at least 2 pages, then we have at least 1 data page!
         if (numPages >= 2)
-            dbPage = storageManager.loadDBPage(dbFile, numPages - 1);
+            dbPage = loadDataPage(dbFile, numPages - 1);
 
         return dbPage;
     }
 
-    /** Get next data page, and return null if it doesn't exist. */
+    /**
+     * Get next data page, and return null if it doesn't exist, or if it is
+     * past the table's last row group.
+     */
     public DBPage getNextDataPage(TableFileInfo tblFileInfo, DBPage dbPage, int column)
         throws IOException {
 
         DBFile dbFile = tblFileInfo.getDBFile(column + 1);
-        int numPages = dbFile.getNumPages();
 
         DBPage nextPage = null;
         int nextPageNo = dbPage.getPageNo() + 1;
-        if (nextPageNo < numPages)
-            nextPage = storageManager.loadDBPage(dbFile, nextPageNo);
+        if (nextPageNo < dataEndPage)
+            nextPage = loadDataPage(dbFile, nextPageNo);
 
         return nextPage;
     }
@@ -108,7 +294,7 @@ public class BlockColumnStoreReader {
         DBPage prevPage = null;
         int prevPageNo = dbPage.getPageNo() - 1;
         if (prevPageNo >= 1)
-            prevPage = storageManager.loadDBPage(dbFile, prevPageNo);
+            prevPage = loadDataPage(dbFile, prevPageNo);
 
         return prevPage;
     }
@@ -153,31 +339,47 @@ public class BlockColumnStoreReader {
         		endOffset, colInfo, FileEncoding.NONE, contents, size);
     	}
     	else if (enc == FileEncoding.DICTIONARY.ordinal()) {
-    		int iblock = DictionaryPage.getFirstBlockEncodedData(dbPage);
+    		// The codes of a page are packed together, so the whole page is
+    		// a single block.
+    		int[] codes = new int[CSDataPage.getCount(dbPage)];
+    		int count = DictionaryPage.readPage(dbPage, codes);
     		
-    		if (iblock == Integer.MIN_VALUE) {
+    		if (count == 0) {
     			return null;
     		}
     		
-    		short sblock = (short) iblock;
-    		
     		ArrayList<Object> contents = new ArrayList<Object>();
-    		
-    		// Decode the bitstring
-    		int mask = (1 << bitsize) - 1;
-    		int current;
-    		for (int i = 0; i < blockNum; i++) {
-    			current = (sblock & mask) >> (i * bitsize);
-    			if (current == 0) break;
-    			
-    			contents.add(dict.get(current));
-    			
-    			mask = mask << bitsize;
-    		}
+    		for (int i = 0; i < count; i++)
+    			contents.add(decodeTable[codeMap[codes[i]]]);
     		
     		return new ColStoreBlock(dbPage, DictionaryPage.FIRST_BLOCK_OFFSET, 
-    			DictionaryPage.FIRST_BLOCK_OFFSET + 2, colInfo, 
+    			CSDataPage.getBlocksEnd(dbPage), colInfo, 
     			FileEncoding.DICTIONARY, contents, contents.size());
+    	}
+    	else if (enc == FileEncoding.FOR.ordinal() ||
+    			enc == FileEncoding.DELTA.ordinal()) {
+    		// Like dictionary pages, the whole page is a single block.
+    		int count = CSDataPage.getCount(dbPage);
+    		if (count == 0) {
+    			return null;
+    		}
+    		
+    		long[] values = new long[count];
+    		int[] offsets = new int[count];
+    		if (enc == FileEncoding.FOR.ordinal())
+    			FORPage.readPage(dbPage, values, offsets);
+    		else
+    			DeltaPage.readPage(dbPage, values, offsets);
+    		
+    		ColumnBatch batch = new ColumnBatch(colType, count);
+    		batch.addLongs(values, 0, count);
+    		ArrayList<Object> contents = new ArrayList<Object>();
+    		for (int i = 0; i < count; i++)
+    			contents.add(batch.getObject(i));
+    		
+    		return new ColStoreBlock(dbPage, CSDataPage.FIRST_BLOCK_OFFSET, 
+    			CSDataPage.getBlocksEnd(dbPage), colInfo, 
+    			FileEncoding.values()[enc], contents, count);
     	}
  		return null;
     }
@@ -228,33 +430,373 @@ public class BlockColumnStoreReader {
     		return new ColStoreBlock(dbPage, offset, endOffset, colInfo, 
     			FileEncoding.NONE, contents, size);
     	}
-    	else if (enc == FileEncoding.DICTIONARY.ordinal()) {
-    		int iblock = DictionaryPage.getBlockEncodedData(dbPage, offset);
-    		
-    		if (iblock == Integer.MIN_VALUE) {
-    			return null;
-    		}
-    		
-    		short sblock = (short) iblock;
-    		
-    		ArrayList<Object> contents = new ArrayList<Object>();
-    		
-    		// Decode the bitstring.
-    		int mask = (1 << bitsize) - 1;
-    		int current;
-    		for (int i = 0; i < blockNum; i++) {
-    			current = (sblock & mask) >> (i * bitsize);
-    			if (current == 0) break;
-    			
-    			contents.add(dict.get(current));
-    			
-    			mask = mask << bitsize;
-    		}
-    		
-    		return new ColStoreBlock(dbPage, offset, offset + 2, colInfo, 
-    			FileEncoding.DICTIONARY, contents, contents.size());
+    	else if (enc == FileEncoding.DICTIONARY.ordinal() ||
+    			enc == FileEncoding.FOR.ordinal() ||
+    			enc == FileEncoding.DELTA.ordinal()) {
+    		// The first block of a bit-packed page covers the whole page.
+    		return null;
     	}
         return null;
     }
 
+    /**
+     * Starts a batch scan over a column.  The first call to {@link #readBatch}
+     * will read from the first row of the column.
+     */
+    public void startScan(TableFileInfo tblFileInfo, int column) throws IOException {
+        scanTable = tblFileInfo;
+        scanColumn = column;
+        scanType = tblFileInfo.getSchema().getColumnInfo(column).getType();
+        scanRow = 0;
+        zoneMap = readZoneMap(tblFileInfo, column);
+        setScanPage(getFirstDataPage(tblFileInfo, column));
+    }
+
+    /**
+     * Reads the next values of the column being scanned into a batch, until
+     * either the batch is full or the column has no more values.
+     *
+     * @param batch the batch to append values to
+     * @return the number of values appended, or 0 if the scan is done
+     */
+    public int readBatch(ColumnBatch batch) throws IOException {
+        return readBatch(batch, batch.getRemaining());
+    }
+
+    /**
+     * Reads up to <tt>max</tt> of the next values of the column being scanned
+     * into a batch.
+     *
+     * @param batch the batch to append values to
+     * @param max the maximum number of values to append
+     * @return the number of values appended, or 0 if the scan is done
+     */
+    public int readBatch(ColumnBatch batch, int max) throws IOException {
+        int start = batch.getSize();
+        int limit = start + Math.min(max, batch.getRemaining());
+
+        while (scanPage != null && batch.getSize() < limit) {
+            if (isPageExhausted()) {
+                setScanPage(getNextDataPage(scanTable, scanPage, scanColumn));
+                continue;
+            }
+
+            int want = limit - batch.getSize();
+            int n;
+            switch (scanEncoding) {
+            case RLE:
+                if (runRemaining == 0)
+                    readRunHeader();
+
+                batch.decodeCodes();
+                n = Math.min(runRemaining, want);
+                batch.fill(runValue, n);
+                runRemaining -= n;
+                pageRowsLeft -= n;
+                break;
+
+            case NONE:
+                batch.decodeCodes();
+                n = batch.getSize();
+                scanOffset = UncompressedPage.readBatch(scanPage, scanOffset,
+                    scanEnd, batch, batch.getSize() + Math.min(want, pageRowsLeft));
+                pageRowsLeft -= batch.getSize() - n;
+                break;
+
+            case DICTIONARY:
+                pageRowsLeft -= readCodes(batch, Math.min(want, pageRowsLeft));
+                break;
+
+            case FOR:
+            case DELTA:
+                pageRowsLeft -= readValues(batch, Math.min(want, pageRowsLeft));
+                break;
+
+            default:
+                throw new IllegalStateException("Unsupported encoding " + scanEncoding);
+            }
+        }
+
+        scanRow += batch.getSize() - start;
+        return batch.getSize() - start;
+    }
+
+    /**
+     * Reads the next runs of the column being scanned into a batch that holds
+     * runs, until either the batch is full or the column has no more values.
+     * Each run-length encoded block becomes a single entry without being
+     * expanded; values on pages with other encodings become runs of one row.
+     *
+     * @param batch the batch to append runs to
+     * @return the number of runs appended, or 0 if the scan is done
+     */
+    public int readRuns(ColumnBatch batch) throws IOException {
+        int start = batch.getSize();
+
+        while (scanPage != null && !batch.isFull()) {
+            if (isPageExhausted()) {
+                setScanPage(getNextDataPage(scanTable, scanPage, scanColumn));
+                continue;
+            }
+
+            if (scanEncoding == FileEncoding.RLE) {
+                if (runRemaining == 0)
+                    readRunHeader();
+
+                batch.decodeCodes();
+                batch.addRun(runValue, scanRow, runRemaining);
+                scanRow += runRemaining;
+                pageRowsLeft -= runRemaining;
+                runRemaining = 0;
+            }
+            else {
+                // Stay within the current page, so that a following RLE page
+                // isn't expanded into single rows.
+                int before = batch.getSize();
+                int row = scanRow;
+                readBatch(batch, pageRowsLeft);
+
+                int[] starts = batch.getRunStarts();
+                int[] lengths = batch.getRunLengths();
+                for (int i = before; i < batch.getSize(); i++) {
+                    starts[i] = row++;
+                    lengths[i] = 1;
+                }
+            }
+        }
+
+        return batch.getSize() - start;
+    }
+
+    /**
+     * Skips over the next rows of the column being scanned.  Rows are skipped
+     * without decoding them wherever the encoding allows it: whole pages are
+     * skipped by finding the page that holds the target row in the zone map,
+     * or using each page's row count if there is no zone map; whole RLE runs
+     * using the run length, fixed-width uncompressed values by their
+     * position, and bit-packed codes and values by their position on the
+     * page.
+     *
+     * @param n the number of rows to skip
+     */
+    public void skip(int n) throws IOException {
+        int total = n;
+        while (n > 0 && scanPage != null) {
+            if (isPageExhausted()) {
+                setScanPage(getNextDataPage(scanTable, scanPage, scanColumn));
+                continue;
+            }
+
+            if (n >= pageRowsLeft) {
+                if (zoneMap != null) {
+                    // Go straight to the page that holds the target row.
+                    int target = scanRow + total;
+                    int i = zoneMap.findPage(target);
+                    if (i < zoneMap.size() && zoneMap.getPageNo(i) < dataEndPage) {
+                        setScanPage(loadDataPage(
+                            scanTable.getDBFile(scanColumn + 1), zoneMap.getPageNo(i)));
+                        n = target - zoneMap.getFirstRow(i);
+                    }
+                    else {
+                        setScanPage(null);
+                        n = target - zoneMap.getNumRows();
+                    }
+                    continue;
+                }
+
+                n -= pageRowsLeft;
+                setScanPage(getNextDataPage(scanTable, scanPage, scanColumn));
+                continue;
+            }
+
+            int k;
+            switch (scanEncoding) {
+            case RLE:
+                if (runRemaining == 0) {
+                    int size = CSDataPage.getValueSize(scanPage, scanOffset, scanType);
+                    int length = scanPage.readInt(scanOffset + size + 4);
+                    if (length <= n) {
+                        // Skip the entire run.
+                        scanOffset += size + 8;
+                        n -= length;
+                        pageRowsLeft -= length;
+                        break;
+                    }
+                    runValue = scanPage.readObject(scanOffset, scanType);
+                    runRemaining = length;
+                    scanOffset += size + 8;
+                }
+                k = Math.min(n, runRemaining);
+                runRemaining -= k;
+                pageRowsLeft -= k;
+                n -= k;
+                break;
+
+            case NONE:
+                scanOffset = UncompressedPage.skipValues(scanPage, scanOffset,
+                    n, scanType);
+                pageRowsLeft -= n;
+                n = 0;
+                break;
+
+            case DICTIONARY:
+            case FOR:
+            case DELTA:
+                pagePos += n;
+                pageRowsLeft -= n;
+                n = 0;
+                break;
+
+            default:
+                throw new IllegalStateException("Unsupported encoding " + scanEncoding);
+            }
+        }
+        scanRow += total - n;
+    }
+
+    /**
+     * Reads the next <tt>numRows</tt> rows of the column being scanned, but
+     * only decodes the rows at the selected positions; the other rows are
+     * skipped.  Each selected row is stored at its position in the batch, and
+     * the batch ends up with <tt>numRows</tt> values.
+     *
+     * @param batch the empty batch to read the rows into
+     * @param numRows the number of rows to advance the scan by
+     * @param sel the positions to decode, in increasing order
+     * @param selSize the number of positions to decode
+     */
+    public void readSelected(ColumnBatch batch, int numRows, int[] sel,
+                             int selSize) throws IOException {
+        int pos = 0;
+        int i = 0;
+        while (i < selSize) {
+            // Read consecutive positions together.
+            int start = sel[i++];
+            int end = start + 1;
+            while (i < selSize && sel[i] == end) {
+                i++;
+                end++;
+            }
+
+            if (start > pos) {
+                skip(start - pos);
+                batch.skip(start - pos);
+            }
+            readBatch(batch, end - start);
+            pos = end;
+        }
+
+        if (numRows > pos) {
+            skip(numRows - pos);
+            batch.skip(numRows - pos);
+        }
+    }
+
+    /** Reads the value and length of the next RLE block of the scan page. */
+    private void readRunHeader() {
+        runValue = scanPage.readObject(scanOffset, scanType);
+        scanOffset += DBPage.getObjectDiskSize(runValue, scanType);
+        runRemaining = scanPage.readInt(scanOffset + 4);
+        scanOffset += 8;
+    }
+
+    /**
+     * Moves the next <tt>n</tt> codes of the dictionary encoded scan page
+     * into a batch, unpacking the page first if necessary.
+     */
+    private int readCodes(ColumnBatch batch, int n) {
+        if (!pageUnpacked) {
+            int count = CSDataPage.getCount(scanPage);
+            if (pageCodes == null || pageCodes.length < count)
+                pageCodes = new int[count];
+            DictionaryPage.readPage(scanPage, pageCodes);
+            for (int i = 0; i < count; i++)
+                pageCodes[i] = codeMap[pageCodes[i]];
+            pageUnpacked = true;
+        }
+
+        if (batch.getSize() == 0)
+            batch.setDictionary(decodeTable);
+
+        if (batch.getKind() == ColumnBatch.Kind.CODE) {
+            int size = batch.getSize();
+            System.arraycopy(pageCodes, pagePos, batch.getCodes(), size, n);
+            batch.setSize(size + n);
+        }
+        else {
+            // The batch started on a page with a different encoding.
+            for (int i = 0; i < n; i++)
+                batch.add(decodeTable[pageCodes[pagePos + i]]);
+        }
+        pagePos += n;
+        return n;
+    }
+
+    /**
+     * Moves the next <tt>n</tt> values of the frame-of-reference or delta
+     * encoded scan page into a batch, unpacking the page first if necessary.
+     */
+    private int readValues(ColumnBatch batch, int n) {
+        if (!pageUnpacked) {
+            int count = CSDataPage.getCount(scanPage);
+            if (pageValues == null || pageValues.length < count) {
+                pageValues = new long[count];
+                pageCodes = new int[count];
+            }
+            else if (pageCodes == null || pageCodes.length < count) {
+                pageCodes = new int[count];
+            }
+
+            if (scanEncoding == FileEncoding.FOR)
+                FORPage.readPage(scanPage, pageValues, pageCodes);
+            else
+                DeltaPage.readPage(scanPage, pageValues, pageCodes);
+            pageUnpacked = true;
+        }
+
+        batch.decodeCodes();
+        batch.addLongs(pageValues, pagePos, n);
+        pagePos += n;
+        return n;
+    }
+
+    /** True if every row of the scan page has been read or skipped. */
+    private boolean isPageExhausted() {
+        if (pageRowsLeft <= 0)
+            return true;
+
+        // Guard against a row count that doesn't match the page's blocks.
+        // Bit-packed pages are read by position, not by offset.
+        if (scanEncoding == FileEncoding.DICTIONARY ||
+            scanEncoding == FileEncoding.FOR ||
+            scanEncoding == FileEncoding.DELTA)
+            return false;
+
+        return scanOffset >= scanEnd && runRemaining == 0;
+    }
+
+    /**
+     * Returns the data page a batch scan is reading, or null if the scan is
+     * done.  The page must stay pinned while the scan continues.
+     */
+    DBPage getScanPage() {
+        return scanPage;
+    }
+
+    /** Positions the batch scan at the first block of a data page. */
+    private void setScanPage(DBPage dbPage) {
+        scanPage = dbPage;
+        runRemaining = 0;
+        pageUnpacked = false;
+        pagePos = 0;
+        pageRowsLeft = 0;
+        if (dbPage == null)
+            return;
+
+        scanEncoding = FileEncoding.values()[CSDataPage.getEncoding(dbPage)];
+        scanOffset = (scanEncoding == FileEncoding.NONE) ?
+            UncompressedPage.FIRST_BLOCK_OFFSET : CSDataPage.FIRST_BLOCK_OFFSET;
+        scanEnd = CSDataPage.getBlocksEnd(dbPage);
+        pageRowsLeft = CSDataPage.getCount(dbPage);
+    }
 }
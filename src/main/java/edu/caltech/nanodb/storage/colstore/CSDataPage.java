@@ -2,6 +2,8 @@ package edu.caltech.nanodb.storage.colstore;
 
 import org.apache.log4j.Logger;
 
+import edu.caltech.nanodb.expressions.TypeConverter;
+import edu.caltech.nanodb.relations.ColumnType;
 import edu.caltech.nanodb.storage.DBPage;
 import edu.caltech.nanodb.storage.PageReader;
 import edu.caltech.nanodb.storage.heapfile.DataPage;
@@ -18,6 +20,10 @@ public class CSDataPage {
     public static final int ENCODING_OFFSET = 2;
     
     public static final int COUNT_OFFSET = 6;
+
+    public static final int NEXT_BLOCK_START_OFFSET = 10;
+
+    public static final int FIRST_BLOCK_OFFSET = 14;
 	
     /** Get the encoding of the page. */
 	public static int getEncoding(DBPage dbPage) {
@@ -32,4 +38,77 @@ public class CSDataPage {
 		reader.setPosition(COUNT_OFFSET);
 		return reader.readInt();
 	}
+
+	/** Get the offset just past the last block in the page. */
+	public static int getBlocksEnd(DBPage dbPage) {
+		return dbPage.readInt(NEXT_BLOCK_START_OFFSET);
+	}
+
+	/**
+	 * Get the on-disk size of every value of a column type, or -1 if the
+	 * size of a value depends on the value.
+	 */
+	public static int getFixedValueSize(ColumnType colType) {
+		switch (colType.getBaseType()) {
+		case TINYINT:
+			return 1;
+
+		case SMALLINT:
+			return 2;
+
+		case INTEGER:
+		case FLOAT:
+		case FILE_POINTER:
+			return 4;
+
+		case BIGINT:
+		case DOUBLE:
+			return 8;
+
+		case CHAR:
+			return colType.getLength();
+
+		default:
+			return -1;
+		}
+	}
+
+	/** Get the on-disk size of the value at an offset, without decoding it. */
+	public static int getValueSize(DBPage dbPage, int offset, ColumnType colType) {
+		int size = getFixedValueSize(colType);
+		if (size >= 0) return size;
+
+		// VARCHAR values are stored with a 2-byte length prefix.
+		return 2 + dbPage.readUnsignedShort(offset);
+	}
+
+	/**
+	 * Convert a value read from an input file into the object that
+	 * {@link DBPage#readObject} returns for the column type, so that values
+	 * can be compared in the column's order rather than as strings.
+	 */
+	public static Object parseValue(String value, ColumnType colType) {
+		switch (colType.getBaseType()) {
+		case TINYINT:
+			return TypeConverter.getByteValue(value);
+
+		case SMALLINT:
+			return TypeConverter.getShortValue(value);
+
+		case INTEGER:
+			return TypeConverter.getIntegerValue(value);
+
+		case BIGINT:
+			return TypeConverter.getLongValue(value);
+
+		case FLOAT:
+			return TypeConverter.getFloatValue(value);
+
+		case DOUBLE:
+			return TypeConverter.getDoubleValue(value);
+
+		default:
+			return value;
+		}
+	}
 }
@@ -1,9 +1,16 @@
 package edu.caltech.nanodb.storage.colstore;
 
+import java.util.ArrayList;
+
 import edu.caltech.nanodb.storage.heapfile.HeaderPage;
 import org.apache.log4j.Logger;
 
+import edu.caltech.nanodb.qeval.ColumnStats;
+import edu.caltech.nanodb.qeval.TableStats;
+import edu.caltech.nanodb.relations.ColumnType;
+import edu.caltech.nanodb.relations.Schema;
 import edu.caltech.nanodb.storage.DBPage;
+import edu.caltech.nanodb.storage.PageReader;
 import edu.caltech.nanodb.storage.PageWriter;
 import edu.caltech.nanodb.storage.heapfile.DataPage;
 
@@ -25,6 +32,24 @@ public class CSHeaderPage {
     
     public static final int SCHEMA_START_OFFSET = 14;
 
+    /**
+     * The offset from the end of the header page where the size of the
+     * table's statistics is stored.  The statistics are stored right before
+     * it, at the end of the page, and a size of 0 means the table hasn't
+     * been analyzed.
+     */
+    public static final int STATS_SIZE_RELOFF = 4;
+
+    /* The null-mask bits of a column's statistics, as in HeaderPage. */
+
+    private static final int COLSTAT_NULLMASK_NUM_DISTINCT_VALUES = 0x08;
+
+    private static final int COLSTAT_NULLMASK_NUM_NULL_VALUES = 0x04;
+
+    private static final int COLSTAT_NULLMASK_MIN_VALUE = 0x02;
+
+    private static final int COLSTAT_NULLMASK_MAX_VALUE = 0x01;
+
 	public static void initNewPage(DBPage dbPage) {
 		PageWriter rleWriter = new PageWriter(dbPage);
         rleWriter.setPosition(ENCODING_OFFSET);
@@ -41,4 +66,322 @@ public class CSHeaderPage {
         rleWriter.writeInt(schemaSize);
 	}
 
+	public static int getSchemaSize(DBPage dbPage) {
+		return dbPage.readInt(SCHEMA_SIZE_OFFSET);
+	}
+
+	/**
+	 * Returns true if the rows of the table's row groups are in the order of
+	 * its sort key, across all of its groups.  The flag is the last byte of
+	 * the schema, so this may only be called for tables with a sort key.
+	 */
+	public static boolean isSorted(DBPage dbPage) {
+		return dbPage.readByte(SCHEMA_START_OFFSET + getSchemaSize(dbPage)) != 0;
+	}
+
+	/** Records whether the row groups are in the order of the sort key. */
+	public static void setSorted(DBPage dbPage, boolean sorted) {
+		dbPage.writeByte(SCHEMA_START_OFFSET + getSchemaSize(dbPage),
+			sorted ? 1 : 0);
+	}
+
+	/**
+	 * 紧跟在schema后面的是列目录, 每列16字节:
+	 * 该列zone map的起始页号和条目数, 以及字典的起始页号和条目数.
+	 * 条目数为0表示该列没有zone map或字典.
+	 */
+	private static int getZoneDirectoryOffset(DBPage dbPage, int column) {
+		return SCHEMA_START_OFFSET + getSchemaSize(dbPage) + 1 + column * 16;
+	}
+
+	/**
+	 * Records where the zone map of a column is stored.
+	 *
+	 * @param dbPage the header page
+	 * @param column the index of the column
+	 * @param firstPage the header file page holding the first entry
+	 * @param size the number of entries
+	 */
+	public static void setZoneMap(DBPage dbPage, int column, int firstPage,
+			int size) {
+		int offset = getZoneDirectoryOffset(dbPage, column);
+		dbPage.writeInt(offset, firstPage);
+		dbPage.writeInt(offset + 4, size);
+	}
+
+	/** Returns the header file page holding a column's first zone map entry. */
+	public static int getZoneMapPage(DBPage dbPage, int column) {
+		return dbPage.readInt(getZoneDirectoryOffset(dbPage, column));
+	}
+
+	/** Returns the number of zone map entries of a column. */
+	public static int getZoneMapSize(DBPage dbPage, int column) {
+		return dbPage.readInt(getZoneDirectoryOffset(dbPage, column) + 4);
+	}
+
+	/**
+	 * Records where the dictionary of a column is stored.
+	 *
+	 * @param dbPage the header page
+	 * @param column the index of the column
+	 * @param firstPage the header file page holding the first entry
+	 * @param size the number of entries
+	 */
+	public static void setDictionary(DBPage dbPage, int column, int firstPage,
+			int size) {
+		int offset = getZoneDirectoryOffset(dbPage, column) + 8;
+		dbPage.writeInt(offset, firstPage);
+		dbPage.writeInt(offset + 4, size);
+	}
+
+	/** Returns the header file page holding a column's first dictionary entry. */
+	public static int getDictionaryPage(DBPage dbPage, int column) {
+		return dbPage.readInt(getZoneDirectoryOffset(dbPage, column) + 8);
+	}
+
+	/** Returns the number of dictionary entries of a column. */
+	public static int getDictionarySize(DBPage dbPage, int column) {
+		return dbPage.readInt(getZoneDirectoryOffset(dbPage, column) + 12);
+	}
+
+	/**
+	 * 列目录后面是行组目录. 每次LOAD都在各列文件的末尾追加一个新的行组,
+	 * 行组写完后不再修改. 目录先写行组个数(4字节), 然后每个行组依次写
+	 * 行数(4字节)以及每列在该行组最后一页之后的页号(每列4字节).
+	 * 一个行组在某列中的页从上一行组的结束页开始, 第一个行组从第0页开始.
+	 */
+	private static int getGroupDirectoryOffset(DBPage dbPage) {
+		int numColumns = dbPage.readUnsignedByte(SCHEMA_START_OFFSET);
+		return getZoneDirectoryOffset(dbPage, numColumns);
+	}
+
+	private static int getGroupOffset(DBPage dbPage, int group) {
+		int numColumns = dbPage.readUnsignedByte(SCHEMA_START_OFFSET);
+		return getGroupDirectoryOffset(dbPage) + 4 +
+			group * (4 + numColumns * 4);
+	}
+
+	/** Returns the number of row groups of the table. */
+	public static int getNumGroups(DBPage dbPage) {
+		return dbPage.readInt(getGroupDirectoryOffset(dbPage));
+	}
+
+	/** Returns the number of rows of a row group. */
+	public static int getGroupRows(DBPage dbPage, int group) {
+		return dbPage.readInt(getGroupOffset(dbPage, group));
+	}
+
+	/** Returns the number of rows of all of the table's row groups. */
+	public static int getNumRows(DBPage dbPage) {
+		int rows = 0;
+		for (int i = 0; i < getNumGroups(dbPage); i++)
+			rows += getGroupRows(dbPage, i);
+		return rows;
+	}
+
+	/** Returns the first page of a row group in a column's file. */
+	public static int getGroupFirstPage(DBPage dbPage, int group, int column) {
+		return (group == 0) ? 0 : getGroupEndPage(dbPage, group - 1, column);
+	}
+
+	/**
+	 * Returns the page after the last page of a row group in a column's
+	 * file.  With <tt>group</tt> -1, this is the first page of the first
+	 * group.
+	 */
+	public static int getGroupEndPage(DBPage dbPage, int group, int column) {
+		if (group < 0)
+			return 0;
+		return dbPage.readInt(getGroupOffset(dbPage, group) + 4 + column * 4);
+	}
+
+	/**
+	 * Records a new row group after the table's existing groups.  The group's
+	 * pages must already be written, right after the pages of the previous
+	 * group; once the group is recorded, scans read its rows.
+	 *
+	 * @param dbPage the header page
+	 * @param rows the number of rows of the group
+	 * @param endPages for each column, the page after the group's last page
+	 *
+	 * @throws IllegalStateException if the header page has no room for
+	 *         another group
+	 */
+	public static void addGroup(DBPage dbPage, int rows, int[] endPages) {
+		int numGroups = getNumGroups(dbPage);
+		int offset = getGroupOffset(dbPage, numGroups);
+		if (offset + 4 + endPages.length * 4 > getStatsOffset(dbPage)) {
+			throw new IllegalStateException("The header page has no room for " +
+				"more than " + numGroups + " row groups");
+		}
+
+		dbPage.writeInt(offset, rows);
+		for (int i = 0; i < endPages.length; i++)
+			dbPage.writeInt(offset + 4 + i * 4, endPages[i]);
+		dbPage.writeInt(getGroupDirectoryOffset(dbPage), numGroups + 1);
+	}
+
+	/**
+	 * Removes all of the row groups, zone maps and dictionaries from a header
+	 * page, leaving the schema as it is.  Used to start the header page of a
+	 * table that is rewritten from scratch.  The table's statistics are kept,
+	 * since rewriting the table doesn't change its rows.
+	 */
+	public static void clearGroups(DBPage dbPage) {
+		int numColumns = dbPage.readUnsignedByte(SCHEMA_START_OFFSET);
+		for (int i = 0; i < numColumns; i++) {
+			setZoneMap(dbPage, i, 0, 0);
+			setDictionary(dbPage, i, 0, 0);
+		}
+		dbPage.writeInt(getGroupDirectoryOffset(dbPage), 0);
+	}
+
+	/**
+	 * 统计信息放在表头页的末尾, 最后4字节是统计信息的大小, 统计信息紧挨在它前面:
+	 * 数据页数, 行数, 平均行大小, 然后每列依次写该列文件的页数, null-mask,
+	 * 以及不同值个数, NULL个数, 最小值和最大值中存在的那些.
+	 * 行组目录向后增长, 不能覆盖统计信息.
+	 */
+	private static int getStatsOffset(DBPage dbPage) {
+		int statsEnd = dbPage.getPageSize() - STATS_SIZE_RELOFF;
+		return statsEnd - dbPage.readInt(statsEnd);
+	}
+
+	/** Returns true if the table's statistics have been stored. */
+	public static boolean hasTableStats(DBPage dbPage) {
+		return dbPage.readInt(dbPage.getPageSize() - STATS_SIZE_RELOFF) > 0;
+	}
+
+	/**
+	 * Reads the table's statistics from the header page.
+	 *
+	 * @param dbPage the header page
+	 * @param schema the schema of the table
+	 * @return the statistics, or null if the table hasn't been analyzed
+	 */
+	public static TableStats getTableStats(DBPage dbPage, Schema schema) {
+		if (!hasTableStats(dbPage))
+			return null;
+
+		PageReader reader = new PageReader(dbPage);
+		reader.setPosition(getStatsOffset(dbPage));
+		int numDataPages = reader.readInt();
+		int numTuples = reader.readInt();
+		float avgTupleSize = reader.readFloat();
+
+		ArrayList<ColumnStats> colStats = new ArrayList<ColumnStats>();
+		for (int i = 0; i < schema.numColumns(); i++) {
+			ColumnType colType = schema.getColumnInfo(i).getType();
+			ColumnStats c = new ColumnStats();
+
+			reader.readInt();
+			byte nullMask = reader.readByte();
+			if ((nullMask & COLSTAT_NULLMASK_NUM_DISTINCT_VALUES) == 0)
+				c.setNumUniqueValues(reader.readInt());
+			if ((nullMask & COLSTAT_NULLMASK_NUM_NULL_VALUES) == 0)
+				c.setNumNullValues(reader.readInt());
+			if ((nullMask & COLSTAT_NULLMASK_MIN_VALUE) == 0)
+				c.setMinValue(reader.readObject(colType));
+			if ((nullMask & COLSTAT_NULLMASK_MAX_VALUE) == 0)
+				c.setMaxValue(reader.readObject(colType));
+
+			colStats.add(c);
+		}
+		return new TableStats(numDataPages, numTuples, avgTupleSize, colStats);
+	}
+
+	/**
+	 * Returns the number of pages of a column's file, as of the last time the
+	 * table was analyzed, or -1 if it hasn't been.
+	 */
+	public static int getColumnPages(DBPage dbPage, Schema schema, int column) {
+		if (!hasTableStats(dbPage))
+			return -1;
+
+		PageReader reader = new PageReader(dbPage);
+		reader.setPosition(getStatsOffset(dbPage) + 12);
+		for (int i = 0; i < column; i++) {
+			reader.movePosition(4);
+			ColumnType colType = schema.getColumnInfo(i).getType();
+			byte nullMask = reader.readByte();
+			if ((nullMask & COLSTAT_NULLMASK_NUM_DISTINCT_VALUES) == 0)
+				reader.movePosition(4);
+			if ((nullMask & COLSTAT_NULLMASK_NUM_NULL_VALUES) == 0)
+				reader.movePosition(4);
+			if ((nullMask & COLSTAT_NULLMASK_MIN_VALUE) == 0)
+				reader.readObject(colType);
+			if ((nullMask & COLSTAT_NULLMASK_MAX_VALUE) == 0)
+				reader.readObject(colType);
+		}
+		return reader.readInt();
+	}
+
+	/**
+	 * Stores the table's statistics at the end of the header page, replacing
+	 * any that were stored before.
+	 *
+	 * @param dbPage the header page
+	 * @param schema the schema of the table
+	 * @param stats the statistics of the table
+	 * @param columnPages for each column, the number of pages of its file
+	 *
+	 * @throws IllegalStateException if the statistics don't fit between the
+	 *         row group directory and the end of the page
+	 */
+	public static void setTableStats(DBPage dbPage, Schema schema,
+			TableStats stats, int[] columnPages) {
+		int size = 12;
+		for (int i = 0; i < schema.numColumns(); i++) {
+			ColumnType colType = schema.getColumnInfo(i).getType();
+			ColumnStats c = stats.getColumnStats(i);
+			size += 5;
+			if (c.getNumUniqueValues() != -1)
+				size += 4;
+			if (c.getNumNullValues() != -1)
+				size += 4;
+			if (c.getMinValue() != null)
+				size += DBPage.getObjectDiskSize(c.getMinValue(), colType);
+			if (c.getMaxValue() != null)
+				size += DBPage.getObjectDiskSize(c.getMaxValue(), colType);
+		}
+
+		int statsEnd = dbPage.getPageSize() - STATS_SIZE_RELOFF;
+		int offset = statsEnd - size;
+		if (offset < getGroupOffset(dbPage, getNumGroups(dbPage))) {
+			throw new IllegalStateException("The header page has no room " +
+				"for the table's statistics");
+		}
+
+		PageWriter writer = new PageWriter(dbPage);
+		writer.setPosition(offset);
+		writer.writeInt(stats.numDataPages);
+		writer.writeInt(stats.numTuples);
+		writer.writeFloat(stats.avgTupleSize);
+		for (int i = 0; i < schema.numColumns(); i++) {
+			ColumnType colType = schema.getColumnInfo(i).getType();
+			ColumnStats c = stats.getColumnStats(i);
+
+			byte nullMask = 0;
+			if (c.getNumUniqueValues() == -1)
+				nullMask |= COLSTAT_NULLMASK_NUM_DISTINCT_VALUES;
+			if (c.getNumNullValues() == -1)
+				nullMask |= COLSTAT_NULLMASK_NUM_NULL_VALUES;
+			if (c.getMinValue() == null)
+				nullMask |= COLSTAT_NULLMASK_MIN_VALUE;
+			if (c.getMaxValue() == null)
+				nullMask |= COLSTAT_NULLMASK_MAX_VALUE;
+
+			writer.writeInt(columnPages[i]);
+			writer.writeByte(nullMask);
+			if (c.getNumUniqueValues() != -1)
+				writer.writeInt(c.getNumUniqueValues());
+			if (c.getNumNullValues() != -1)
+				writer.writeInt(c.getNumNullValues());
+			if (c.getMinValue() != null)
+				writer.writeObject(colType, c.getMinValue());
+			if (c.getMaxValue() != null)
+				writer.writeObject(colType, c.getMaxValue());
+		}
+		dbPage.writeInt(statsEnd, size);
+	}
 }
@@ -0,0 +1,111 @@
+package edu.caltech.nanodb.storage.colstore;
+
+import java.io.IOException;
+import java.util.List;
+
+import edu.caltech.nanodb.relations.ColumnInfo;
+import edu.caltech.nanodb.relations.TableSchema;
+import edu.caltech.nanodb.storage.DBPage;
+import edu.caltech.nanodb.storage.TableFileInfo;
+
+/**
+ * Reads the rows of the row groups of a column-store table one at a time,
+ * for the tuple-at-a-time interface of {@link ColStoreTableManager}.  Every
+ * column is read a batch at a time, and rows that have been deleted are
+ * skipped.
+ */
+class CSRowReader {
+
+    private TableFileInfo tblFileInfo;
+
+    private DeleteBitmaps deletes;
+
+    private List<ColumnInfo> colInfos;
+
+    private BlockColumnStoreReader[] readers;
+
+    private ColumnBatch[] batches;
+
+    /** The number of rows in the current batches. */
+    private int batchSize;
+
+    /** The position in the current batches of the next row. */
+    private int batchPos;
+
+    /** The row number of the first row of the next batches. */
+    private int nextRow;
+
+
+    CSRowReader(TableFileInfo tblFileInfo, DeleteBitmaps deletes) {
+        this.tblFileInfo = tblFileInfo;
+        this.deletes = deletes;
+        TableSchema schema = tblFileInfo.getSchema();
+        colInfos = schema.getColumnInfos();
+        readers = new BlockColumnStoreReader[schema.numColumns()];
+        batches = new ColumnBatch[readers.length];
+        for (int i = 0; i < readers.length; i++) {
+            readers[i] = new BlockColumnStoreReader();
+            batches[i] = new ColumnBatch(colInfos.get(i).getType());
+        }
+    }
+
+
+    /** Starts reading at a row. */
+    void seek(int row) throws IOException {
+        for (int i = 0; i < readers.length; i++) {
+            readers[i].startScan(tblFileInfo, i);
+            if (row > 0)
+                readers[i].skip(row);
+        }
+        nextRow = row;
+        batchSize = 0;
+        batchPos = 0;
+    }
+
+    /** Returns the row number of the row the next call to next() starts at. */
+    int getPosition() {
+        return nextRow - batchSize + batchPos;
+    }
+
+    /**
+     * Returns the next row that hasn't been deleted, or null if there are no
+     * more rows.
+     */
+    CSRowTuple next() throws IOException {
+        while (true) {
+            if (batchPos >= batchSize && !readBatches())
+                return null;
+
+            int pos = batchPos++;
+            int row = batches[0].getFirstRow() + pos;
+            if (deletes != null && deletes.isDeleted(row))
+                continue;
+
+            CSRowTuple tuple = new CSRowTuple(colInfos, this, row);
+            for (int i = 0; i < batches.length; i++)
+                tuple.setColumnValue(i, batches[i].getObject(pos));
+            return tuple;
+        }
+    }
+
+    /** Adds the data pages the reader is reading to a list. */
+    void getPages(List<DBPage> pages) {
+        for (BlockColumnStoreReader reader : readers) {
+            DBPage dbPage = reader.getScanPage();
+            if (dbPage != null)
+                pages.add(dbPage);
+        }
+    }
+
+    private boolean readBatches() throws IOException {
+        int n = Integer.MAX_VALUE;
+        for (int i = 0; i < batches.length; i++) {
+            batches[i].reset(nextRow);
+            n = Math.min(n, readers[i].readBatch(batches[i]));
+        }
+        batchSize = n;
+        batchPos = 0;
+        nextRow += n;
+        return n > 0;
+    }
+}
@@ -0,0 +1,35 @@
+package edu.caltech.nanodb.storage.colstore;
+
+import java.util.List;
+
+import edu.caltech.nanodb.relations.ColumnInfo;
+
+/**
+ * A row of a row group of a column-store table, as returned by
+ * {@link ColStoreTableManager#getFirstTuple}.  The tuple remembers its row
+ * number, so that it can be deleted or updated, and the reader it came from,
+ * so that the scan can continue after it.
+ */
+public class CSRowTuple extends CSGeneratedTuple {
+
+    /** The reader that produced the tuple. */
+    private CSRowReader reader;
+
+    /** The row number of the tuple in the table. */
+    private int rowNo;
+
+    CSRowTuple(List<ColumnInfo> info, CSRowReader reader, int rowNo) {
+        super(info);
+        this.reader = reader;
+        this.rowNo = rowNo;
+    }
+
+    /** Returns the row number of the tuple in the table. */
+    public int getRowNo() {
+        return rowNo;
+    }
+
+    CSRowReader getReader() {
+        return reader;
+    }
+}
@@ -1,13 +1,36 @@
 package edu.caltech.nanodb.storage.colstore;
 
 
+import java.io.BufferedReader;
+import java.io.FileReader;
 import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.Comparator;
 import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
 import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
 
 import org.apache.log4j.Logger;
 
+import edu.caltech.nanodb.client.SessionState;
+import edu.caltech.nanodb.expressions.TupleLiteral;
+import edu.caltech.nanodb.qeval.ColumnStats;
+import edu.caltech.nanodb.qeval.TableStats;
 import edu.caltech.nanodb.relations.ColumnInfo;
+import edu.caltech.nanodb.relations.ColumnIndexes;
 import edu.caltech.nanodb.relations.ColumnType;
 import edu.caltech.nanodb.relations.ForeignKeyColumnIndexes;
 import edu.caltech.nanodb.relations.KeyColumnIndexes;
@@ -19,7 +42,6 @@ import edu.caltech.nanodb.storage.BlockedTableReader;
 import edu.caltech.nanodb.storage.DBFile;
 import edu.caltech.nanodb.storage.DBFileType;
 import edu.caltech.nanodb.storage.DBPage;
-import edu.caltech.nanodb.storage.FileAnalyzer;
 import edu.caltech.nanodb.storage.FilePointer;
 import edu.caltech.nanodb.storage.InvalidFilePointerException;
 import edu.caltech.nanodb.storage.PageReader;
@@ -27,6 +49,8 @@ import edu.caltech.nanodb.storage.PageWriter;
 import edu.caltech.nanodb.storage.StorageManager;
 import edu.caltech.nanodb.storage.TableFileInfo;
 import edu.caltech.nanodb.storage.TableManager;
+import edu.caltech.nanodb.storage.heapfile.HeapFileTableManager;
+import edu.caltech.nanodb.util.PropertiesUtil;
 
 
 /**
@@ -38,12 +62,94 @@ public class ColStoreTableManager implements TableManager {
 	/** A logging object for reporting anything interesting that happens. */
     private static Logger logger = Logger.getLogger(ColStoreTableManager.class);
 
+    /**
+     * The property for the number of worker threads a bulk load encodes and
+     * writes columns with.  It defaults to the number of processors; with
+     * 1, columns are loaded on the calling thread.
+     */
+    public static final String PROP_LOAD_THREADS = "nanodb.load.threads";
+
+    /**
+     * The property for the number of rows a bulk load into a table with a
+     * sort key, or a sorted compaction, sorts in memory; more rows are sorted
+     * in runs of that many rows, which are written to temporary files and
+     * merged.  It defaults to 256K rows.
+     */
+    public static final String PROP_LOAD_SORT_ROWS = "nanodb.load.sortRows";
+
+    /**
+     * The property for the number of rows of the input file a bulk load
+     * reads at a time, and hands to the worker threads as one chunk.  It
+     * defaults to {@link #LOAD_CHUNK_ROWS}.
+     */
+    public static final String PROP_LOAD_CHUNK_ROWS = "nanodb.load.chunkRows";
+
+    /** The default number of rows of the input file a bulk load reads at a time. */
+    public static final int LOAD_CHUNK_ROWS = 8192;
+
+    /**
+     * The property for the maximum number of rows of the row groups that
+     * <tt>OPTIMIZE</tt> writes.  It defaults to 1M rows.
+     */
+    public static final String PROP_OPTIMIZE_GROUP_ROWS =
+        "nanodb.optimize.groupRows";
+
+    /**
+     * The property for the number of pages a second <tt>OPTIMIZE</tt> writes
+     * at most, so that it leaves I/O for the queries that run meanwhile.  It
+     * defaults to 4096 pages; with 0, the writes aren't throttled.
+     */
+    public static final String PROP_OPTIMIZE_PAGES_PER_SECOND =
+        "nanodb.optimize.pagesPerSecond";
+
+    /**
+     * The property for whether <tt>OPTIMIZE</tt> compacts column-store tables
+     * in the background, which is the default, or waits for the compaction.
+     */
+    public static final String PROP_OPTIMIZE_BACKGROUND =
+        "nanodb.optimize.background";
+
+    /**
+     * Commands that read or change column-store tables hold the read lock
+     * while they run; a compaction holds the write lock while it swaps the
+     * new files of a table into place.  The lock is fair, so that a waiting
+     * swap isn't starved by a stream of queries.
+     */
+    private static final ReentrantReadWriteLock queryLock =
+        new ReentrantReadWriteLock(true);
+
     
     /**
      * The table manager uses the storage manager a lot, so it caches a reference
      * to the singleton instance of the storage manager at initialization.
      */
     private StorageManager storageManager;
+
+    /** Manages the heap files of the tables' delta stores. */
+    private HeapFileTableManager heapManager;
+
+    /** The delta stores of the open tables that have one, by table name. */
+    private HashMap<String, DeltaStore> deltaStores;
+
+    /** The deletion bitmaps of the open tables, by table name. */
+    private HashMap<String, DeleteBitmaps> deleteBitmaps;
+
+    /**
+     * The new versions of the rows of row groups that have been updated, by
+     * table name.  They are added to the delta store by
+     * {@link #flushChanges} once the update's scan is done, so that the scan
+     * doesn't read them again.
+     */
+    private HashMap<String, List<Tuple>> updatedRows;
+
+    /**
+     * The number of changes made to each open table, by table name, so that
+     * a compaction can tell whether the table changed while it ran.
+     */
+    private HashMap<String, Integer> changeCounts;
+
+    /** Runs the compactions of <tt>OPTIMIZE</tt>, one at a time. */
+    private ExecutorService compactor;
     
     /**
      * Initializes the column store table manager.  This class shouldn't be
@@ -59,6 +165,11 @@ public class ColStoreTableManager implements TableManager {
             throw new IllegalArgumentException("storageManager cannot be null");
 
         this.storageManager = storageManager;
+        heapManager = new HeapFileTableManager(storageManager);
+        deltaStores = new HashMap<String, DeltaStore>();
+        deleteBitmaps = new HashMap<String, DeleteBitmaps>();
+        updatedRows = new HashMap<String, List<Tuple>>();
+        changeCounts = new HashMap<String, Integer>();
 	}
 
 	@Override
@@ -117,6 +228,20 @@ public class ColStoreTableManager implements TableManager {
         logger.debug("Constraints occupy " +
             (hpWriter.getPosition() - constraintStartIndex) +
             " bytes in the schema");
+
+        // The sort key, if there is one, and after it the byte that says
+        // whether the row groups are in sort-key order, which they are while
+        // the table is empty.  It is the last byte of the schema.
+        ColumnIndexes sortKey = schema.getSortKey();
+        if (sortKey != null) {
+            hpWriter.writeByte(sortKey.size());
+            for (int i = 0; i < sortKey.size(); i++)
+                hpWriter.writeByte(sortKey.getCol(i));
+            hpWriter.writeByte(1);
+        }
+        else {
+            hpWriter.writeByte(0);
+        }
         
         // 计算 schema's size.(注意position始终指向下一个byte上了)
         int schemaSize = (hpWriter.getPosition()-1) - CSHeaderPage.SCHEMA_START_OFFSET;
@@ -127,7 +252,15 @@ public class ColStoreTableManager implements TableManager {
         // encoded page size, and the second 2 bytes are the schema size.)
         logger.debug("Column store " + tableName + " schema uses " + schemaSize +
             " bytes of the " + dbFile.getPageSize() + "-byte header page.");
-		
+
+        // Column stores don't keep statistics, but the selectivity estimates
+        // of the tuple-at-a-time scans need an entry per column.
+        tblFileInfo.setStats(new TableStats(schema.numColumns()));
+
+        synchronized (deleteBitmaps) {
+            deleteBitmaps.put(tableName,
+                DeleteBitmaps.create(storageManager, tblFileInfo));
+        }
 	}
 	
 	/**
@@ -311,8 +444,39 @@ public class ColStoreTableManager implements TableManager {
             }
         }
         
+        // Tables created before sort keys don't have the sort key's bytes.
+        if (hpReader.getPosition() <= CSHeaderPage.SCHEMA_START_OFFSET +
+                CSHeaderPage.getSchemaSize(dbPage)) {
+            int keySize = hpReader.readUnsignedByte();
+            if (keySize > 0) {
+                int[] keyCols = new int[keySize];
+                for (int i = 0; i < keySize; i++)
+                    keyCols[i] = hpReader.readUnsignedByte();
+                schema.setSortKey(new ColumnIndexes(keyCols));
+            }
+        }
+
         tblFileInfo.setFileType(DBFileType.COLUMNSTORE_DATA_FILE);
-		
+
+        // Use the statistics of the last ANALYZE, if there was one.
+        TableStats stats = CSHeaderPage.getTableStats(dbPage, schema);
+        if (stats == null)
+            stats = new TableStats(schema.numColumns());
+        tblFileInfo.setStats(stats);
+
+        DeltaStore deltaStore = DeltaStore.open(storageManager, heapManager,
+            tblFileInfo);
+        synchronized (deltaStores) {
+            if (deltaStore != null)
+                deltaStores.put(tableName, deltaStore);
+            else
+                deltaStores.remove(tableName);
+        }
+
+        DeleteBitmaps deletes = DeleteBitmaps.open(storageManager, tblFileInfo);
+        synchronized (deleteBitmaps) {
+            deleteBitmaps.put(tableName, deletes);
+        }
 	}
 	
 	/**
@@ -396,7 +560,16 @@ public class ColStoreTableManager implements TableManager {
 
 	@Override
 	public void beforeCloseTable(TableFileInfo tblFileInfo) throws IOException {
-		// Do nothing
+		flushChanges(tblFileInfo);
+		synchronized (deltaStores) {
+			deltaStores.remove(tblFileInfo.getTableName());
+		}
+		synchronized (deleteBitmaps) {
+			deleteBitmaps.remove(tblFileInfo.getTableName());
+		}
+		synchronized (changeCounts) {
+			changeCounts.remove(tblFileInfo.getTableName());
+		}
 	}
 
 	@Override
@@ -404,17 +577,96 @@ public class ColStoreTableManager implements TableManager {
 		// Do nothing
 	}
 
+	/**
+	 * Returns the delta store that holds the rows inserted into a table, or
+	 * null if no row has been inserted into the table.
+	 */
+	public DeltaStore getDeltaStore(TableFileInfo tblFileInfo) {
+		synchronized (deltaStores) {
+			return deltaStores.get(tblFileInfo.getTableName());
+		}
+	}
+
+	/**
+	 * Returns the deletion bitmaps of a table, or null if the table hasn't
+	 * been opened by this table manager.
+	 */
+	public DeleteBitmaps getDeleteBitmaps(TableFileInfo tblFileInfo) {
+		synchronized (deleteBitmaps) {
+			return deleteBitmaps.get(tblFileInfo.getTableName());
+		}
+	}
+
+	/**
+	 * Returns the lock that commands reading or changing column-store tables
+	 * hold the read lock of, and compactions and <tt>DROP TABLE</tt> the
+	 * write lock of.
+	 */
+	public static ReentrantReadWriteLock getQueryLock() {
+		return queryLock;
+	}
+
+	/**
+	 * Returns the number of rows that have been added to, deleted from or
+	 * updated in a table, and of row groups added to it, since it was opened.
+	 */
+	public int getChangeCount(TableFileInfo tblFileInfo) {
+		synchronized (changeCounts) {
+			Integer count = changeCounts.get(tblFileInfo.getTableName());
+			return (count == null) ? 0 : count;
+		}
+	}
+
+	private void noteChange(TableFileInfo tblFileInfo) {
+		synchronized (changeCounts) {
+			changeCounts.put(tblFileInfo.getTableName(),
+				getChangeCount(tblFileInfo) + 1);
+		}
+	}
+
+	/**
+	 * Returns the first row of the table.  The rows of the row groups that
+	 * haven't been deleted are returned first, as {@link CSRowTuple}s, and
+	 * then the rows of the delta store.  Scans that can work a batch at a
+	 * time should use the column-store plan nodes instead.
+	 */
 	@Override
 	public Tuple getFirstTuple(TableFileInfo tblFileInfo) throws IOException {
-		// Would have liked to throw an exception, but the interface doesn't 
-		// support it...
-		return null;
+		CSRowReader reader = new CSRowReader(tblFileInfo,
+			getDeleteBitmaps(tblFileInfo));
+		reader.seek(0);
+		Tuple tup = reader.next();
+		if (tup == null)
+			tup = getFirstDeltaTuple(tblFileInfo);
+		return tup;
 	}
 
 	@Override
 	public Tuple getNextTuple(TableFileInfo tblFileInfo, Tuple tup)
 			throws IOException {
-		return null;
+		if (tup instanceof CSRowTuple) {
+			CSRowTuple rowTup = (CSRowTuple) tup;
+			CSRowReader reader = rowTup.getReader();
+			// The scan may continue from an earlier, marked tuple.
+			if (reader.getPosition() != rowTup.getRowNo() + 1)
+				reader.seek(rowTup.getRowNo() + 1);
+
+			Tuple next = reader.next();
+			if (next == null)
+				next = getFirstDeltaTuple(tblFileInfo);
+			return next;
+		}
+
+		DeltaStore deltaStore = getDeltaStore(tblFileInfo);
+		if (deltaStore == null)
+			return null;
+		return deltaStore.getNextTuple(tup);
+	}
+
+	private Tuple getFirstDeltaTuple(TableFileInfo tblFileInfo)
+			throws IOException {
+		DeltaStore deltaStore = getDeltaStore(tblFileInfo);
+		return (deltaStore == null) ? null : deltaStore.getFirstTuple();
 	}
 
 	@Override
@@ -423,27 +675,280 @@ public class ColStoreTableManager implements TableManager {
 		return null;
 	}
 
+	/**
+	 * Adds a row to the table's delta store, creating the delta store if
+	 * this is the first row inserted into the table.  The row is read by
+	 * scans of the table right away, and is moved into a compressed row
+	 * group by the tuple mover.
+	 *
+	 * @throws IllegalArgumentException if the row has a NULL value, which
+	 *         column pages can't store
+	 */
 	@Override
 	public Tuple addTuple(TableFileInfo tblFileInfo, Tuple tup)
 			throws IOException {
-		return null;
+		checkNotNull(tblFileInfo, tup);
+		noteChange(tblFileInfo);
+
+		DeltaStore deltaStore;
+		synchronized (deltaStores) {
+			String tableName = tblFileInfo.getTableName();
+			deltaStore = deltaStores.get(tableName);
+			if (deltaStore == null) {
+				deltaStore = DeltaStore.create(storageManager, heapManager,
+					tblFileInfo);
+				deltaStores.put(tableName, deltaStore);
+			}
+		}
+		return deltaStore.addTuple(tup);
 	}
 
+	/**
+	 * @throws IllegalArgumentException if the row has a NULL value, which
+	 *         column pages can't store
+	 */
+	private void checkNotNull(TableFileInfo tblFileInfo, Tuple tup) {
+		for (int i = 0; i < tup.getColumnCount(); i++) {
+			if (tup.isNullValue(i)) {
+				throw new IllegalArgumentException("Column " +
+					tblFileInfo.getSchema().getColumnInfo(i).getName() +
+					" of a column-store table can't be NULL");
+			}
+		}
+	}
+
+	/**
+	 * Updates a row.  Rows of the delta store are updated in place.  A row
+	 * of a row group can't be changed in its compressed pages, so it is
+	 * deleted, and the new version of the row is added to the delta store by
+	 * {@link #flushChanges}.
+	 *
+	 * @throws IllegalArgumentException if the new row has a NULL value, which
+	 *         column pages can't store
+	 */
 	@Override
 	public void updateTuple(TableFileInfo tblFileInfo, Tuple tup,
 			Map<String, Object> newValues) throws IOException {
-		return;
+		TableSchema schema = tblFileInfo.getSchema();
+		TupleLiteral newTup = new TupleLiteral(tup);
+		for (Map.Entry<String, Object> entry : newValues.entrySet()) {
+			newTup.setColumnValue(schema.getColumnIndex(entry.getKey()),
+				entry.getValue());
+		}
+		checkNotNull(tblFileInfo, newTup);
+		noteChange(tblFileInfo);
+
+		if (!(tup instanceof CSRowTuple)) {
+			getDeltaStore(tblFileInfo).updateTuple(tup, newValues);
+			return;
+		}
+
+		deleteTuple(tblFileInfo, tup);
+		synchronized (updatedRows) {
+			List<Tuple> rows = updatedRows.get(tblFileInfo.getTableName());
+			if (rows == null) {
+				rows = new ArrayList<Tuple>();
+				updatedRows.put(tblFileInfo.getTableName(), rows);
+			}
+			rows.add(newTup);
+		}
 	}
 
+	/**
+	 * Deletes a row.  Rows of the delta store are removed from its heap
+	 * file; rows of a row group are marked in the group's deletion bitmap,
+	 * which is written to disk by {@link #flushChanges}.
+	 */
 	@Override
 	public void deleteTuple(TableFileInfo tblFileInfo, Tuple tup)
 			throws IOException {
-		
+		noteChange(tblFileInfo);
+		if (tup instanceof CSRowTuple)
+			getDeleteBitmaps(tblFileInfo).delete(((CSRowTuple) tup).getRowNo());
+		else
+			getDeltaStore(tblFileInfo).deleteTuple(tup);
+	}
+
+	/**
+	 * Finishes the changes of a <tt>DELETE</tt> or <tt>UPDATE</tt>: adds the
+	 * new versions of updated rows to the delta store, and writes the
+	 * deletion bitmaps if rows have been deleted.
+	 *
+	 * @param tblFileInfo the table that was changed
+	 */
+	public void flushChanges(TableFileInfo tblFileInfo) throws IOException {
+		List<Tuple> rows;
+		synchronized (updatedRows) {
+			rows = updatedRows.remove(tblFileInfo.getTableName());
+		}
+		if (rows != null) {
+			for (Tuple tup : rows)
+				addTuple(tblFileInfo, tup);
+		}
+
+		DeleteBitmaps deletes = getDeleteBitmaps(tblFileInfo);
+		if (deletes != null && deletes.isDirty())
+			deletes.write();
 	}
 
+	/**
+	 * Gathers the statistics of a table, and stores them at the end of its
+	 * header page.  The row count comes from the row group directory, the
+	 * deletion bitmaps and the delta store.  Each column is read a run at a
+	 * time, so run-length encoded blocks aren't expanded, and dictionary
+	 * encoded pages are read as codes, which are only looked up in the
+	 * dictionary for the smallest and largest code.  The size of a column is
+	 * the number of pages of its file.
+	 */
 	@Override
 	public void analyzeTable(TableFileInfo tblFileInfo) throws IOException {
-		// TODO This would be interesting...
+		TableSchema schema = tblFileInfo.getSchema();
+		DBFile dbFile = tblFileInfo.getDBFile();
+		logger.debug("Analyzing data file " + dbFile.getDataFile());
+
+		DBPage headerPage = storageManager.loadDBPage(dbFile, 0);
+		int lastGroup = CSHeaderPage.getNumGroups(headerPage) - 1;
+		DeleteBitmaps deletes = getDeleteBitmaps(tblFileInfo);
+		int numTuples = CSHeaderPage.getNumRows(headerPage);
+		if (deletes != null)
+			numTuples -= deletes.getNumDeleted();
+
+		// The rows of the delta store are few, and are read as tuples.
+		List<Object[]> deltaRows = new ArrayList<Object[]>();
+		DeltaStore deltaStore = getDeltaStore(tblFileInfo);
+		int deltaPages = 0;
+		long numBytes = 0;
+		if (deltaStore != null) {
+			Tuple tup = deltaStore.getFirstTuple();
+			while (tup != null) {
+				Object[] values = new Object[schema.numColumns()];
+				for (int i = 0; i < values.length; i++)
+					values[i] = tup.getColumnValue(i);
+				deltaRows.add(values);
+				tup = deltaStore.getNextTuple(tup);
+			}
+			DBFile deltaFile = deltaStore.getTableFileInfo().getDBFile();
+			deltaPages = deltaFile.getNumPages() - 1;
+			numBytes = (long) deltaPages * deltaFile.getPageSize();
+		}
+		numTuples += deltaRows.size();
+
+		ArrayList<ColumnStats> colStats = new ArrayList<ColumnStats>();
+		int[] columnPages = new int[schema.numColumns()];
+		for (int i = 0; i < schema.numColumns(); i++) {
+			colStats.add(analyzeColumn(tblFileInfo, i, deletes, deltaRows));
+			columnPages[i] = CSHeaderPage.getGroupEndPage(headerPage, lastGroup, i);
+			numBytes += (long) columnPages[i] * tblFileInfo.getDBFile(i + 1).getPageSize();
+		}
+
+		int numDataPages = deltaPages;
+		for (int pages : columnPages)
+			numDataPages += pages;
+		float avgTupleSize = 0;
+		if (numTuples > 0)
+			avgTupleSize = (float) numBytes / (float) numTuples;
+
+		TableStats stats = new TableStats(numDataPages, numTuples,
+			avgTupleSize, colStats);
+		tblFileInfo.setStats(stats);
+		CSHeaderPage.setTableStats(headerPage, schema, stats, columnPages);
+		storageManager.unpinDBPage(headerPage);
+
+		if (logger.isDebugEnabled()) {
+			logger.debug("Table " + tblFileInfo.getTableName() + " stats:  " + stats);
+			for (int i = 0; i < columnPages.length; i++) {
+				logger.debug(String.format("    Column %d:  %d pages", i,
+					columnPages[i]));
+			}
+		}
+	}
+
+	/**
+	 * Gathers the statistics of a column.  Runs whose rows have all been
+	 * deleted are left out.  Column pages can't hold NULLs, so the column's
+	 * NULL count is always 0.
+	 */
+	@SuppressWarnings("unchecked")
+	private ColumnStats analyzeColumn(TableFileInfo tblFileInfo, int column,
+			DeleteBitmaps deletes, List<Object[]> deltaRows) throws IOException {
+		ColumnType colType = tblFileInfo.getSchema().getColumnInfo(column).getType();
+		BlockColumnStoreReader reader = new BlockColumnStoreReader();
+		reader.startScan(tblFileInfo, column);
+		Object[] dictionary = reader.getDictionary();
+
+		// The dictionary codes in use, and the other distinct values.
+		BitSet codes = new BitSet();
+		HashSet<Object> values = new HashSet<Object>();
+
+		ColumnBatch batch = new ColumnBatch(colType);
+		while (true) {
+			batch.reset(0);
+			batch.startRuns();
+			int n = reader.readRuns(batch);
+			if (n == 0)
+				break;
+
+			int[] starts = batch.getRunStarts();
+			int[] lengths = batch.getRunLengths();
+			boolean isCodes = (batch.getKind() == ColumnBatch.Kind.CODE);
+			for (int i = 0; i < n; i++) {
+				if (deletes != null && deletes.countDeleted(starts[i],
+						starts[i] + lengths[i]) == lengths[i]) {
+					continue;
+				}
+
+				if (isCodes)
+					codes.set(batch.getCodes()[i]);
+				else
+					values.add(batch.getObject(i));
+			}
+		}
+		for (Object[] row : deltaRows)
+			values.add(row[column]);
+
+		// Values that are also in the dictionary are only counted once.
+		Object min = null;
+		Object max = null;
+		for (Iterator<Object> iter = values.iterator(); iter.hasNext(); ) {
+			Object value = iter.next();
+			if (dictionary != null) {
+				int code = Arrays.binarySearch(dictionary, 1, dictionary.length, value);
+				if (code > 0) {
+					codes.set(code);
+					iter.remove();
+					continue;
+				}
+			}
+			if (min == null || ((Comparable<Object>) value).compareTo(min) < 0)
+				min = value;
+			if (max == null || ((Comparable<Object>) value).compareTo(max) > 0)
+				max = value;
+		}
+
+		// Codes are in the same order as the values they stand for.
+		if (!codes.isEmpty()) {
+			Object first = dictionary[codes.nextSetBit(0)];
+			Object last = dictionary[codes.length() - 1];
+			if (min == null || ((Comparable<Object>) first).compareTo(min) < 0)
+				min = first;
+			if (max == null || ((Comparable<Object>) last).compareTo(max) > 0)
+				max = last;
+		}
+
+		return new ColumnStats(codes.cardinality() + values.size(), 0, min, max);
+	}
+
+	/**
+	 * Returns the number of pages of a column's file as of the last time the
+	 * table was analyzed, or -1 if it hasn't been.
+	 */
+	public int getColumnPages(TableFileInfo tblFileInfo, int column)
+			throws IOException {
+		DBPage headerPage = storageManager.loadDBPage(tblFileInfo.getDBFile(), 0);
+		int pages = CSHeaderPage.getColumnPages(headerPage,
+			tblFileInfo.getSchema(), column);
+		storageManager.unpinDBPage(headerPage);
+		return pages;
 	}
 
 	@Override
@@ -451,22 +956,583 @@ public class ColStoreTableManager implements TableManager {
 		return null;
 	}
 
-    public void writeTable(FileAnalyzer analyzer, TableFileInfo tblFileInfo) throws IOException, InterruptedException {
-        for (int i = 0; i < tblFileInfo.getSchema().numColumns(); i++) {
-            // Get the column's DBFile and ColInfo
-            DBFile dbFile = tblFileInfo.getDBFile(i + 1);
-            ColumnInfo colInfo = tblFileInfo.getSchema().getColumnInfo(i);
-            switch (analyzer.getEncoding(i)) {
-            case RLE:
-                writeRLE(dbFile, analyzer, i, colInfo);
-                break;
-            case DICTIONARY:
-                writeDictionary(dbFile, analyzer, i, colInfo);
-                break;
-            case NONE:
-                writeUncompressed(dbFile, analyzer, i, colInfo);
+    /**
+     * Bulk loads a table from a comma-separated input file, whose first line
+     * holds the column names.  The file is read and split into values once;
+     * each column's values are handed to a {@link ColumnLoader}, which picks
+     * the encoding of the column's pages as it writes them.  Afterwards the
+     * zone maps and dictionaries of the columns are written to the table's
+     * header file.
+     * <p>
+     * A load appends its rows to the table as a new row group, written after
+     * the pages of the existing groups.  The group is only recorded in the
+     * header page once all of its pages have been written, so scans never
+     * read a partly written group.
+     * <p>
+     * The file is read in chunks of {@link #PROP_LOAD_CHUNK_ROWS} rows.  Each
+     * column's file is independent, so the columns of a chunk are encoded and
+     * written concurrently by a pool of {@link #PROP_LOAD_THREADS} worker
+     * threads, while the next chunk is being read.  With one thread, the
+     * columns are loaded one after another on the calling thread.
+     * <p>
+     * If the table has a sort key, the whole file is first sorted by it with
+     * an {@link ExternalSorter}, so that the new group is in key order.
+     *
+     * @param fileName the name of the input file, in the input file directory
+     * @param tblFileInfo the table to load
+     */
+    public void writeTable(String fileName, TableFileInfo tblFileInfo)
+            throws IOException {
+        String path = PropertiesUtil.getProperty("nanodb.inputFileDir",
+            "input_datafiles/") + fileName;
+        TableSchema schema = tblFileInfo.getSchema();
+        int numColumns = schema.numColumns();
+
+        ColumnLoader[] loaders = createLoaders(tblFileInfo);
+
+        int threads = Math.min(getLoadThreads(), numColumns);
+        ExecutorService pool = null;
+        if (threads > 1)
+            pool = Executors.newFixedThreadPool(threads);
+
+        BufferedReader reader = new BufferedReader(new FileReader(path));
+        ExternalSorter sorter = null;
+        try {
+            // The first line holds the column names.
+            reader.readLine();
+
+            if (schema.getSortKey() != null)
+                sorter = sortLines(reader, fileName, schema);
+
+            // One chunk is loaded while the next one is read.
+            int chunkRows = getChunkRows();
+            String[][] chunk = new String[numColumns][chunkRows];
+            String[][] nextChunk = new String[numColumns][chunkRows];
+            String[] fields = new String[numColumns];
+            List<Future<Void>> pending = null;
+            int lineNo = 1;
+            while (true) {
+                int rows = 0;
+                String line;
+                while (rows < chunkRows && (line = (sorter != null ?
+                       sorter.readLine() : reader.readLine())) != null) {
+                    lineNo++;
+                    if (line.isEmpty())
+                        continue;
+
+                    if (splitLine(line, fields) < numColumns) {
+                        throw new IOException(String.format(
+                            "Line %d of %s has fewer than %d values.",
+                            lineNo, fileName, numColumns));
+                    }
+                    for (int i = 0; i < numColumns; i++)
+                        nextChunk[i][rows] = fields[i];
+                    rows++;
+                }
+
+                if (pending != null)
+                    waitForAll(pending);
+                if (rows == 0)
+                    break;
+
+                String[][] tmp = chunk;
+                chunk = nextChunk;
+                nextChunk = tmp;
+                pending = loadColumns(pool, loaders, chunk, rows);
+            }
+
+            waitForAll(loadColumns(pool, loaders, null, 0));
+        }
+        finally {
+            reader.close();
+            if (sorter != null)
+                sorter.close();
+            if (pool != null)
+                pool.shutdownNow();
+        }
+
+        addGroup(tblFileInfo, loaders,
+            sorter != null ? sorter.getFirstKey() : null);
+    }
+
+    /**
+     * Reads the rest of an input file into a sorter, sorted by the table's
+     * sort key.
+     *
+     * @return the sorter, ready to be read from
+     */
+    private ExternalSorter sortLines(BufferedReader reader, String fileName,
+            TableSchema schema) throws IOException {
+        ColumnIndexes sortKey = schema.getSortKey();
+        int numColumns = schema.numColumns();
+        int[] keyColumns = new int[sortKey.size()];
+        ColumnType[] keyTypes = new ColumnType[keyColumns.length];
+        for (int i = 0; i < keyColumns.length; i++) {
+            keyColumns[i] = sortKey.getCol(i);
+            keyTypes[i] = schema.getColumnInfo(keyColumns[i]).getType();
+        }
+
+        ExternalSorter sorter = new ExternalSorter(keyColumns, keyTypes,
+            getSortRows(), storageManager.getBaseDir());
+        try {
+            String[] fields = new String[numColumns];
+            String line;
+            int lineNo = 1;
+            while ((line = reader.readLine()) != null) {
+                lineNo++;
+                if (line.isEmpty())
+                    continue;
+
+                if (splitLine(line, fields) < numColumns) {
+                    throw new IOException(String.format(
+                        "Line %d of %s has fewer than %d values.",
+                        lineNo, fileName, numColumns));
+                }
+                sorter.add(line, fields);
+            }
+            sorter.finish();
+        }
+        catch (IOException | RuntimeException e) {
+            sorter.close();
+            throw e;
+        }
+        return sorter;
+    }
+
+    /**
+     * Creates the loaders of a new row group of a table, which write after
+     * the pages of the table's existing groups, and continue the columns'
+     * zone maps and dictionaries.
+     */
+    ColumnLoader[] createLoaders(TableFileInfo tblFileInfo)
+            throws IOException {
+        TableSchema schema = tblFileInfo.getSchema();
+        DBPage headerPage = storageManager.loadDBPage(tblFileInfo.getDBFile(), 0);
+        int lastGroup = CSHeaderPage.getNumGroups(headerPage) - 1;
+        int firstRow = CSHeaderPage.getNumRows(headerPage);
+
+        BlockColumnStoreReader columnReader = new BlockColumnStoreReader();
+        ColumnLoader[] loaders = new ColumnLoader[schema.numColumns()];
+        for (int i = 0; i < loaders.length; i++) {
+            loaders[i] = new ColumnLoader(storageManager,
+                tblFileInfo.getDBFile(i + 1), schema.getColumnInfo(i).getType(),
+                CSHeaderPage.getGroupEndPage(headerPage, lastGroup, i), firstRow);
+            if (lastGroup >= 0) {
+                columnReader.readDictionary(tblFileInfo, i);
+                loaders[i].continueFrom(columnReader.readZoneMap(tblFileInfo, i),
+                    columnReader.getDictionary(), columnReader.getCodeMap());
+            }
+        }
+        return loaders;
+    }
+
+    /**
+     * Writes the zone maps and dictionaries of the columns once the loaders
+     * have been finished, and records the loaders' rows as a new row group.
+     * Nothing is recorded if the loaders have no rows.
+     * <p>
+     * If the table has a sort key, the header page records whether its groups
+     * are still in key order: the new group must be sorted by the key, and
+     * must not start before the last row of the previous group.
+     *
+     * @param firstKey the sort key of the first row of the new group, if its
+     *        rows are sorted by the table's sort key, or null
+     * @return the number of rows of the new group
+     */
+    int addGroup(TableFileInfo tblFileInfo, ColumnLoader[] loaders,
+                 Object[] firstKey) throws IOException {
+        int rows = loaders[0].getNumRows();
+        if (rows == 0) {
+            logger.info("No rows to load into " + tblFileInfo.getTableName());
+            return 0;
+        }
+
+        ColumnIndexes sortKey = tblFileInfo.getSchema().getSortKey();
+        if (sortKey != null) {
+            DBPage headerPage =
+                storageManager.loadDBPage(tblFileInfo.getDBFile(), 0);
+            if (CSHeaderPage.isSorted(headerPage) && (firstKey == null ||
+                    compareLastKey(tblFileInfo, sortKey, firstKey) > 0)) {
+                CSHeaderPage.setSorted(headerPage, false);
+                logger.info(String.format("The row groups of %s are no " +
+                    "longer in sort key order.", tblFileInfo.getTableName()));
+            }
+        }
+
+        int pageNo = writeZoneMaps(tblFileInfo, loaders);
+        writeDictionaries(tblFileInfo, loaders, pageNo);
+
+        int[] endPages = new int[loaders.length];
+        for (int i = 0; i < loaders.length; i++)
+            endPages[i] = loaders[i].getEndPage();
+        DBPage headerPage = storageManager.loadDBPage(tblFileInfo.getDBFile(), 0);
+        CSHeaderPage.addGroup(headerPage, rows, endPages);
+        noteChange(tblFileInfo);
+        DeleteBitmaps deletes = getDeleteBitmaps(tblFileInfo);
+        if (deletes != null)
+            deletes.addGroup(rows);
+        logger.info(String.format("Loaded %d rows into row group %d of %s.",
+            rows, CSHeaderPage.getNumGroups(headerPage) - 1,
+            tblFileInfo.getTableName()));
+        return rows;
+    }
+
+    /**
+     * Compares the sort key of the last row of a table's row groups with a
+     * key.
+     *
+     * @return a negative number, zero or a positive number as the last row's
+     *         key is less than, equal to or greater than the key; or a
+     *         negative number if the table has no rows
+     */
+    private int compareLastKey(TableFileInfo tblFileInfo, ColumnIndexes sortKey,
+            Object[] key) throws IOException {
+        DBPage headerPage = storageManager.loadDBPage(tblFileInfo.getDBFile(), 0);
+        int lastRow = CSHeaderPage.getNumRows(headerPage) - 1;
+        if (lastRow < 0)
+            return -1;
+
+        BlockColumnStoreReader columnReader = new BlockColumnStoreReader();
+        Object[] lastKey = new Object[sortKey.size()];
+        for (int i = 0; i < lastKey.length; i++) {
+            int column = sortKey.getCol(i);
+            ColumnBatch batch = new ColumnBatch(
+                tblFileInfo.getSchema().getColumnInfo(column).getType(), 1);
+            columnReader.startScan(tblFileInfo, column);
+            columnReader.skip(lastRow);
+            if (columnReader.readBatch(batch, 1) == 0)
+                throw new IOException("Couldn't read the last row of column " + column);
+            lastKey[i] = batch.getObject(0);
+        }
+        return ExternalSorter.compareKeys(lastKey, key);
+    }
+
+    /**
+     * Returns true if the rows of a table are in the order of its sort key:
+     * the table has a sort key, its row groups are in key order, and its
+     * delta store is empty.
+     */
+    public boolean isSorted(TableFileInfo tblFileInfo) throws IOException {
+        if (tblFileInfo.getSchema().getSortKey() == null)
+            return false;
+
+        DeltaStore deltaStore = getDeltaStore(tblFileInfo);
+        if (deltaStore != null && deltaStore.getFirstTuple() != null)
+            return false;
+
+        DBPage headerPage = storageManager.loadDBPage(tblFileInfo.getDBFile(), 0);
+        return CSHeaderPage.isSorted(headerPage);
+    }
+
+    /**
+     * The tuple mover: compresses the rows of a table's delta store into a
+     * new row group, and empties the delta store.
+     *
+     * @param tblFileInfo the table
+     * @return the number of rows that were moved
+     */
+    public int moveDeltaRows(TableFileInfo tblFileInfo) throws IOException {
+        DeltaStore deltaStore = getDeltaStore(tblFileInfo);
+        if (deltaStore == null)
+            return 0;
+
+        ColumnLoader[] loaders = createLoaders(tblFileInfo);
+        List<Object[]> deltaRows = new ArrayList<Object[]>();
+        Tuple tup = deltaStore.getFirstTuple();
+        while (tup != null) {
+            Object[] values = new Object[loaders.length];
+            for (int i = 0; i < loaders.length; i++)
+                values[i] = tup.getColumnValue(i);
+            deltaRows.add(values);
+            tup = deltaStore.getNextTuple(tup);
+        }
+
+        // The delta store holds few rows, so they are sorted in memory.
+        final ColumnIndexes sortKey = tblFileInfo.getSchema().getSortKey();
+        Object[] firstKey = null;
+        if (sortKey != null && !deltaRows.isEmpty()) {
+            Collections.sort(deltaRows, new Comparator<Object[]>() {
+                @Override
+                public int compare(Object[] a, Object[] b) {
+                    return ExternalSorter.compareKeys(getKey(a, sortKey),
+                        getKey(b, sortKey));
+                }
+            });
+            firstKey = getKey(deltaRows.get(0), sortKey);
+        }
+
+        for (Object[] values : deltaRows) {
+            for (int i = 0; i < loaders.length; i++)
+                loaders[i].addValue(values[i]);
+        }
+        for (ColumnLoader loader : loaders)
+            loader.finish();
+
+        int rows = addGroup(tblFileInfo, loaders, firstKey);
+        deltaStore.clear();
+        logger.info(String.format("Moved %d rows of %s from the delta store " +
+            "into a row group.", rows, tblFileInfo.getTableName()));
+        return rows;
+    }
+
+    /** Returns the values of a row's sort key columns. */
+    static Object[] getKey(Object[] values, ColumnIndexes sortKey) {
+        Object[] key = new Object[sortKey.size()];
+        for (int i = 0; i < key.length; i++)
+            key[i] = values[sortKey.getCol(i)];
+        return key;
+    }
+
+    /**
+     * Starts compacting a table on the background thread of the table
+     * manager; see {@link TableCompactor}.  The table's row groups are
+     * rewritten without their deleted rows, together with the rows of its
+     * delta store, into row groups of up to {@link #PROP_OPTIMIZE_GROUP_ROWS}
+     * rows, sorted by the given columns if there are any, or else by the
+     * table's sort key if it has one.
+     *
+     * @param tblFileInfo the table to compact
+     * @param sortColumns the names of the columns to sort the rows by, which
+     *        may be empty
+     * @return the result of the compaction: the number of rows of the
+     *         compacted table, or -1 if the table changed during the
+     *         compaction and was left as it was
+     *
+     * @throws IllegalArgumentException if a sort column isn't a column of
+     *         the table
+     */
+    public Future<Integer> startCompaction(TableFileInfo tblFileInfo,
+            List<String> sortColumns) {
+        TableSchema schema = tblFileInfo.getSchema();
+        int[] sortIndexes = new int[sortColumns.size()];
+        for (int i = 0; i < sortIndexes.length; i++) {
+            sortIndexes[i] = schema.getColumnIndex(sortColumns.get(i));
+            if (sortIndexes[i] < 0) {
+                throw new IllegalArgumentException("Table " +
+                    tblFileInfo.getTableName() + " has no column " +
+                    sortColumns.get(i));
+            }
+        }
+        ColumnIndexes sortKey = schema.getSortKey();
+        if (sortIndexes.length == 0 && sortKey != null) {
+            sortIndexes = new int[sortKey.size()];
+            for (int i = 0; i < sortIndexes.length; i++)
+                sortIndexes[i] = sortKey.getCol(i);
+        }
+
+        TableCompactor task = new TableCompactor(storageManager, this,
+            tblFileInfo, sortIndexes,
+            PropertiesUtil.getInt(PROP_OPTIMIZE_GROUP_ROWS, 1 << 20),
+            PropertiesUtil.getInt(PROP_OPTIMIZE_PAGES_PER_SECOND, 4096));
+        synchronized (this) {
+            if (compactor == null) {
+                compactor = Executors.newSingleThreadExecutor(new ThreadFactory() {
+                    @Override
+                    public Thread newThread(Runnable r) {
+                        Thread thread = new Thread(r, "nanodb-compactor");
+                        thread.setDaemon(true);
+                        thread.setPriority(Thread.MIN_PRIORITY);
+                        return thread;
+                    }
+                });
+            }
+            return compactor.submit(task);
+        }
+    }
+
+    /**
+     * Returns the number of rows a bulk load or a compaction sorts in memory
+     * at a time.
+     */
+    static int getSortRows() {
+        return Math.max(1, PropertiesUtil.getInt(PROP_LOAD_SORT_ROWS, 1 << 18));
+    }
+
+    /** Returns the number of rows a bulk load reads at a time. */
+    private static int getChunkRows() {
+        return Math.max(1, PropertiesUtil.getInt(PROP_LOAD_CHUNK_ROWS,
+            LOAD_CHUNK_ROWS));
+    }
+
+    /** Returns the number of threads a bulk load encodes columns with. */
+    private static int getLoadThreads() {
+        String str = PropertiesUtil.getProperty(PROP_LOAD_THREADS);
+        if (str == null)
+            return Runtime.getRuntime().availableProcessors();
+
+        return Math.max(1, PropertiesUtil.getInt(PROP_LOAD_THREADS, 1));
+    }
+
+    /**
+     * Hands the values of a chunk of rows to the column loaders, one task per
+     * column.  The tasks run on the worker pool, on behalf of the calling
+     * thread's session so that the pages they pin are the session's, or on
+     * the calling thread if there is no pool.
+     *
+     * @param pool the worker pool, or null
+     * @param loaders the loaders of the columns
+     * @param chunk the values of the rows, by column, or null to finish the
+     *        loaders instead
+     * @param rows the number of rows in the chunk
+     * @return the tasks that were started
+     */
+    private List<Future<Void>> loadColumns(ExecutorService pool,
+            final ColumnLoader[] loaders, final String[][] chunk,
+            final int rows) throws IOException {
+        final SessionState session = SessionState.get();
+        List<Future<Void>> futures = new ArrayList<Future<Void>>();
+        for (int i = 0; i < loaders.length; i++) {
+            final int column = i;
+            Callable<Void> task = new Callable<Void>() {
+                @Override
+                public Void call() throws IOException {
+                    SessionState.set(session);
+                    ColumnLoader loader = loaders[column];
+                    if (chunk == null) {
+                        loader.finish();
+                    }
+                    else {
+                        String[] values = chunk[column];
+                        for (int r = 0; r < rows; r++)
+                            loader.add(values[r]);
+                    }
+                    return null;
+                }
+            };
+
+            if (pool != null) {
+                futures.add(pool.submit(task));
+            }
+            else {
+                try {
+                    task.call();
+                }
+                catch (IOException e) {
+                    throw e;
+                }
+                catch (Exception e) {
+                    throw new IOException(e);
+                }
+            }
+        }
+        return futures;
+    }
+
+    /**
+     * Waits for the tasks of {@link #loadColumns} to finish, and reports the
+     * first one that failed.
+     */
+    private void waitForAll(List<Future<Void>> futures) throws IOException {
+        try {
+            for (Future<Void> future : futures)
+                future.get();
+        }
+        catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while loading table");
+        }
+        catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof IOException)
+                throw (IOException) cause;
+            if (cause instanceof RuntimeException)
+                throw (RuntimeException) cause;
+            throw new IOException(cause);
+        }
+    }
+
+    /**
+     * Splits a line of an input file into the values of its columns, with
+     * surrounding whitespace removed.
+     *
+     * @param line the line to split
+     * @param fields the array to store the values into; values past its end
+     *        are ignored
+     * @return the number of values stored
+     */
+    static int splitLine(String line, String[] fields) {
+        int count = 0;
+        int start = 0;
+        while (count < fields.length) {
+            int end = line.indexOf(',', start);
+            if (end < 0) {
+                fields[count++] = line.substring(start).trim();
                 break;
             }
+            fields[count++] = line.substring(start, end).trim();
+            start = end + 1;
+        }
+        return count;
+    }
+
+    /**
+     * Writes the zone maps of all of the columns to the table's header file,
+     * starting on the page after the header page, and records where each
+     * column's zone map starts in the header page.
+     *
+     * @return the first header file page after the zone maps
+     */
+    private int writeZoneMaps(TableFileInfo tblFileInfo, ColumnLoader[] loaders)
+            throws IOException {
+        DBFile file = tblFileInfo.getDBFile();
+        DBPage headerPage = storageManager.loadDBPage(file, 0);
+        int pageNo = 1;
+        for (int i = 0; i < loaders.length; i++) {
+            ColumnType type = tblFileInfo.getSchema().getColumnInfo(i).getType();
+            ZoneMap zoneMap = loaders[i].getZoneMap();
+            CSHeaderPage.setZoneMap(headerPage, i, pageNo, zoneMap.size());
+            if (zoneMap.size() == 0)
+                continue;
+
+            int written = 0;
+            while (written < zoneMap.size()) {
+                DBPage dbPage = storageManager.loadDBPage(file, pageNo++, true);
+                ZoneMapPage.initNewPage(dbPage);
+                int next = ZoneMapPage.writeEntries(dbPage, zoneMap, written, type);
+                if (next == written) {
+                    throw new IllegalStateException(
+                        "Zone map entry doesn't fit on a page: " + zoneMap.getMin(written));
+                }
+                written = next;
+            }
+        }
+        logger.debug(String.format("Wrote zone maps of %s to %d pages.",
+            tblFileInfo.getTableName(), pageNo - 1));
+        return pageNo;
+    }
+
+    /**
+     * Writes the dictionaries of the columns to the table's header file,
+     * starting on page <tt>pageNo</tt>, and records where each column's
+     * dictionary starts in the header page.
+     */
+    private void writeDictionaries(TableFileInfo tblFileInfo,
+            ColumnLoader[] loaders, int pageNo) throws IOException {
+        DBFile file = tblFileInfo.getDBFile();
+        DBPage headerPage = storageManager.loadDBPage(file, 0);
+        for (int i = 0; i < loaders.length; i++) {
+            ColumnType type = tblFileInfo.getSchema().getColumnInfo(i).getType();
+            CSHeaderPage.setDictionary(headerPage, i, pageNo,
+                loaders[i].getDictionarySize());
+            if (loaders[i].getDictionarySize() == 0)
+                continue;
+
+            Object[] values = loaders[i].getSortedDictionary();
+            int[] storedCodes = loaders[i].getStoredCodes(values);
+            int written = 0;
+            while (written < values.length) {
+                DBPage dbPage = storageManager.loadDBPage(file, pageNo++, true);
+                DictionaryPage.initEntriesPage(dbPage);
+                int next = DictionaryPage.writeEntries(dbPage, values,
+                    storedCodes, written, type);
+                if (next == written) {
+                    throw new IllegalStateException(
+                        "Dictionary value doesn't fit on a page: " + values[written]);
+                }
+                written = next;
+            }
+            logger.debug(String.format("Wrote %d dictionary values of column %d.",
+                values.length, i));
         }
     }
 	
@@ -492,155 +1558,4 @@ public class ColStoreTableManager implements TableManager {
 			}
 		}
 	}
-	
-	/** Write the dictionary encoded data to disk. */
-	private void writeDictionary(DBFile file, FileAnalyzer analyzer, int index,
-			ColumnInfo info) throws IOException {
-		
-		DBPage dbPage = storageManager.loadDBPage(file, 0);
-		DictionaryPage.initNewPage(dbPage);
-		
-		dbPage = storageManager.loadDBPage(file, 1, true);
-		DictionaryPage.initNewPage(dbPage);
-		
-		HashMap<String, Integer> dict = new HashMap<String, Integer>();
-		
-		int distincts = analyzer.getCounts(index) + 1;
-		int bitsize = (int) Math.ceil(Math.log(distincts)/Math.log(2));
-		
-		int blockNum = (int) Math.floor(16.0 / bitsize);
-		
-		int val = 1;
-		int currentBlock = 0;
-		int blockIndex = 0;
-		
-		String object = analyzer.getNextObject(index);
-		
-		while (object != null) {
-			if (!dict.containsKey(object)) {
-				dict.put(object, val);
-				val++;
-			}
-			
-			int bitrep = dict.get(object);
-			
-			currentBlock = currentBlock | (bitrep << (blockIndex * bitsize));
-			
-			blockIndex++;
-			if (blockIndex == blockNum) {
-
-				if (DictionaryPage.writeBlock(dbPage, currentBlock, blockIndex)) {
-					logger.debug("Written to file!");
-				}
-				else
-				{
-					dbPage = storageManager.loadDBPage(file, dbPage.getPageNo() + 1, true);
-					DictionaryPage.initNewPage(dbPage);
-					DictionaryPage.writeBlock(dbPage, currentBlock, blockIndex);
-					logger.debug("New page loaded!");
-				}
-				
-				blockIndex = 0;
-				currentBlock = 0;
-			}
-			
-			object = analyzer.getNextObject(index);
-		}
-		
-		if (DictionaryPage.writeBlock(dbPage, currentBlock, blockIndex)) {
-		    logger.debug("Written to file!");
-		}
-		else
-		{
-			dbPage = storageManager.loadDBPage(file, dbPage.getPageNo() + 1, true);
-			DictionaryPage.initNewPage(dbPage);
-			DictionaryPage.writeBlock(dbPage, currentBlock, blockIndex);
-			logger.debug("New page loaded!");
-		}
-		blockIndex = 0;
-		currentBlock = 0;
-		
-		dbPage = storageManager.loadDBPage(file, 0);
-		
-		logger.debug(dict);
-		
-		DictionaryPage.writeDictionary(dbPage, dict, bitsize, blockNum, info);
-	}
-
-    /**
-     * 将数据通过非压缩方式写入到文件中
-     * @param file 数据文件
-     * @param analyzer 数据内容
-     * @param index 数据偏移量 like rowId
-     * @param info 列信息
-     * @throws IOException e
-     * @throws InterruptedException e
-     */
-    private void writeUncompressed(DBFile file, FileAnalyzer analyzer, int index, ColumnInfo info)
-            throws IOException, InterruptedException {
-
-        DBPage dbPage = storageManager.loadDBPage(file, 0);
-        UncompressedPage.initNewPage(dbPage);
-
-        int rowId = 0;
-        String object = analyzer.getNextObject(index);
-        while (object != null) {
-            if (UncompressedPage.writeBlock(dbPage, object, rowId, info.getType())) {
-                logger.debug("Written to file: " + object);
-            } else {
-                // 当前页空间不够时
-                dbPage = storageManager.loadDBPage(file, dbPage.getPageNo() + 1, true);
-                UncompressedPage.initNewPage(dbPage);
-                UncompressedPage.writeBlock(dbPage, object, rowId, info.getType());
-                logger.debug("New page loaded!");
-            }
-
-            rowId++;
-            object = analyzer.getNextObject(index);
-        }
-
-    }
-
-	/** Write the RLE data to disk. */
-	private void writeRLE(DBFile file, FileAnalyzer analyzer, int index, 
-			ColumnInfo info) throws IOException, InterruptedException {
-		
-		DBPage dbPage = storageManager.loadDBPage(file, 0);
-		RLEPage.initNewPage(dbPage);
-		
-		int position = 0;
-		// Start creating RLE block
-		
-		String object = analyzer.getNextObject(index);
-		
-		while (object != null) {
-			int start = position;
-			int count = 1;
-			
-			String compare = analyzer.getNextObject(index);
-			
-			while (compare != null && compare.equals(object)) {
-				count++;
-				position++;
-				compare = analyzer.getNextObject(index);
-			}
-			
-			logger.debug("Run: (" + object + ", " + start + ", " + count + ")");
-			
-			if (RLEPage.writeBlock(dbPage, object, start, count, info.getType())) {
-				logger.debug("Written to file!");
-			}
-			else
-			{
-				dbPage = storageManager.loadDBPage(file, dbPage.getPageNo() + 1, true);
-				RLEPage.initNewPage(dbPage);
-				RLEPage.writeBlock(dbPage, object, start, count, info.getType());
-				logger.debug("New page loaded!");
-			}
-			
-			analyzer.reset(index);
-			position++;
-			object = analyzer.getNextObject(index);
-		}
-	}
 }
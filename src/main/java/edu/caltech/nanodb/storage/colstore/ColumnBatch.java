@@ -0,0 +1,486 @@
+package edu.caltech.nanodb.storage.colstore;
+
+import java.util.Arrays;
+
+import edu.caltech.nanodb.relations.ColumnType;
+import edu.caltech.nanodb.relations.SQLDataType;
+
+/**
+ * A column batch holds up to {@link #getCapacity} consecutive values of a
+ * single column in primitive arrays, so that the column-store plan nodes can
+ * work on many values per call instead of one boxed object at a time.
+ * <p>
+ * Integer-like columns are stored in an <tt>int[]</tt>, <tt>BIGINT</tt> in a
+ * <tt>long[]</tt>, floating-point columns in a <tt>double[]</tt>, and all other
+ * types as objects.  Batches read from dictionary-encoded pages can instead
+ * hold the raw dictionary codes, along with the decode table for the codes.
+ */
+public class ColumnBatch {
+
+    /** The number of values a batch holds if no capacity is specified. */
+    public static final int DEFAULT_CAPACITY = 1024;
+
+    /** The physical representation of the values in a batch. */
+    public enum Kind {
+        /** Values are stored in {@link #getInts}. */
+        INT,
+
+        /** Values are stored in {@link #getLongs}. */
+        LONG,
+
+        /** Values are stored in {@link #getDoubles}. */
+        DOUBLE,
+
+        /** Dictionary codes are stored in {@link #getCodes}. */
+        CODE,
+
+        /** Values are stored in {@link #getObjects}. */
+        OBJECT
+    }
+
+    /** The type of the column the batch holds values for. */
+    private ColumnType colType;
+
+    /** The representation of the column's values when they are decoded. */
+    private Kind valueKind;
+
+    /** The current representation of the values in the batch. */
+    private Kind kind;
+
+    /** The maximum number of values in the batch. */
+    private int capacity;
+
+    /** The number of values currently in the batch. */
+    private int size;
+
+    /** The row number of the first value in the batch. */
+    private int firstRow;
+
+    private int[] ints;
+
+    private long[] longs;
+
+    private double[] doubles;
+
+    private int[] codes;
+
+    private Object[] objects;
+
+    /**
+     * The decode table for dictionary codes, indexed by code.  This is only
+     * used when the batch holds {@link Kind#CODE} values.
+     */
+    private Object[] dictionary;
+
+    /**
+     * True if each value in the batch stands for a run of rows, as read by
+     * {@link BlockColumnStoreReader#readRuns}, instead of a single row.
+     */
+    private boolean runs;
+
+    /** The row number of the first row of each run, when holding runs. */
+    private int[] runStarts;
+
+    /** The number of rows in each run, when holding runs. */
+    private int[] runLengths;
+
+
+    public ColumnBatch(ColumnType colType) {
+        this(colType, DEFAULT_CAPACITY);
+    }
+
+
+    public ColumnBatch(ColumnType colType, int capacity) {
+        if (capacity <= 0) {
+            throw new IllegalArgumentException(
+                "Batch capacity must be positive; got " + capacity);
+        }
+
+        this.colType = colType;
+        this.capacity = capacity;
+        valueKind = getValueKind(colType);
+        kind = valueKind;
+
+        switch (valueKind) {
+        case INT:
+            ints = new int[capacity];
+            break;
+
+        case LONG:
+            longs = new long[capacity];
+            break;
+
+        case DOUBLE:
+            doubles = new double[capacity];
+            break;
+
+        default:
+            objects = new Object[capacity];
+        }
+    }
+
+
+    /**
+     * Returns the primitive representation used for decoded values of the
+     * specified column type.
+     *
+     * @param colType the column type
+     *
+     * @return the kind of array that holds the column's values
+     */
+    public static Kind getValueKind(ColumnType colType) {
+        switch (colType.getBaseType()) {
+        case INTEGER:
+        case SMALLINT:
+        case TINYINT:
+            return Kind.INT;
+
+        case BIGINT:
+            return Kind.LONG;
+
+        case FLOAT:
+        case DOUBLE:
+            return Kind.DOUBLE;
+
+        default:
+            return Kind.OBJECT;
+        }
+    }
+
+
+    /**
+     * Empties the batch so that it can be refilled, starting at the specified
+     * row.  The batch goes back to holding decoded values.
+     *
+     * @param firstRow the row number of the first value that will be added
+     */
+    public void reset(int firstRow) {
+        this.firstRow = firstRow;
+        size = 0;
+        kind = valueKind;
+        dictionary = null;
+        runs = false;
+    }
+
+
+    /**
+     * Switches an empty batch over to holding one value per run of rows.
+     * Each value is then the <tt>(value, start, length)</tt> triple formed by
+     * the value and the corresponding entries of {@link #getRunStarts} and
+     * {@link #getRunLengths}.
+     */
+    public void startRuns() {
+        if (size != 0)
+            throw new IllegalStateException("Batch must be empty to hold runs");
+
+        if (runStarts == null) {
+            runStarts = new int[capacity];
+            runLengths = new int[capacity];
+        }
+        runs = true;
+    }
+
+
+    /** Returns true if each value in the batch stands for a run of rows. */
+    public boolean isRuns() {
+        return runs;
+    }
+
+
+    public int[] getRunStarts() {
+        return runStarts;
+    }
+
+
+    public int[] getRunLengths() {
+        return runLengths;
+    }
+
+
+    /**
+     * Appends a run of rows that all have the same value to a batch that
+     * holds runs.
+     *
+     * @param value the value of the run
+     * @param start the row number of the first row in the run
+     * @param length the number of rows in the run
+     */
+    public void addRun(Object value, int start, int length) {
+        runStarts[size] = start;
+        runLengths[size] = length;
+        add(value);
+    }
+
+
+    /**
+     * Switches an empty batch over to holding dictionary codes.
+     *
+     * @param dictionary the decode table for the codes, indexed by code
+     */
+    public void setDictionary(Object[] dictionary) {
+        if (size != 0)
+            throw new IllegalStateException("Batch must be empty to hold codes");
+
+        if (codes == null)
+            codes = new int[capacity];
+
+        this.dictionary = dictionary;
+        kind = Kind.CODE;
+    }
+
+
+    /**
+     * Replaces the dictionary codes in the batch with the values they stand
+     * for.  This is used when a batch spans a page boundary into a page that
+     * is not dictionary-encoded.
+     */
+    public void decodeCodes() {
+        if (kind != Kind.CODE)
+            return;
+
+        int n = size;
+        Object[] dict = dictionary;
+        kind = valueKind;
+        dictionary = null;
+        size = 0;
+        for (int i = 0; i < n; i++) {
+            if (codes[i] == 0)
+                size++;
+            else
+                add(dict[codes[i]]);
+        }
+    }
+
+
+    public ColumnType getColumnType() {
+        return colType;
+    }
+
+
+    public Kind getKind() {
+        return kind;
+    }
+
+
+    public Kind getValueKind() {
+        return valueKind;
+    }
+
+
+    public int getCapacity() {
+        return capacity;
+    }
+
+
+    public int getSize() {
+        return size;
+    }
+
+
+    public void setSize(int size) {
+        if (size < 0 || size > capacity) {
+            throw new IllegalArgumentException("Batch size must be in range [0," +
+                capacity + "], got " + size);
+        }
+        this.size = size;
+    }
+
+
+    /** Returns the number of values that can still be added to the batch. */
+    public int getRemaining() {
+        return capacity - size;
+    }
+
+
+    public boolean isFull() {
+        return size == capacity;
+    }
+
+
+    public int getFirstRow() {
+        return firstRow;
+    }
+
+
+    public int[] getInts() {
+        return ints;
+    }
+
+
+    public long[] getLongs() {
+        return longs;
+    }
+
+
+    public double[] getDoubles() {
+        return doubles;
+    }
+
+
+    public int[] getCodes() {
+        return codes;
+    }
+
+
+    public Object[] getObjects() {
+        return objects;
+    }
+
+
+    public Object[] getDictionary() {
+        return dictionary;
+    }
+
+
+    /**
+     * Appends a decoded value to the batch.
+     *
+     * @param value the value to append, as read from a data page
+     */
+    public void add(Object value) {
+        switch (kind) {
+        case INT:
+            ints[size++] = ((Number) value).intValue();
+            break;
+
+        case LONG:
+            longs[size++] = ((Number) value).longValue();
+            break;
+
+        case DOUBLE:
+            doubles[size++] = ((Number) value).doubleValue();
+            break;
+
+        case OBJECT:
+            objects[size++] = value;
+            break;
+
+        default:
+            throw new IllegalStateException("Batch holds dictionary codes");
+        }
+    }
+
+
+    /**
+     * Appends the same decoded value to the batch several times, as produced
+     * by a run-length encoded block.
+     *
+     * @param value the value to append
+     * @param count how many times to append it
+     */
+    public void fill(Object value, int count) {
+        int end = size + count;
+        switch (kind) {
+        case INT:
+            Arrays.fill(ints, size, end, ((Number) value).intValue());
+            break;
+
+        case LONG:
+            Arrays.fill(longs, size, end, ((Number) value).longValue());
+            break;
+
+        case DOUBLE:
+            Arrays.fill(doubles, size, end, ((Number) value).doubleValue());
+            break;
+
+        case OBJECT:
+            Arrays.fill(objects, size, end, value);
+            break;
+
+        default:
+            throw new IllegalStateException("Batch holds dictionary codes");
+        }
+        size = end;
+    }
+
+
+    /**
+     * Appends integer values to the batch, as decoded from a
+     * frame-of-reference or delta encoded page.
+     *
+     * @param values the values to append
+     * @param from the position of the first value to append
+     * @param count the number of values to append
+     */
+    public void addLongs(long[] values, int from, int count) {
+        switch (kind) {
+        case INT:
+            for (int i = 0; i < count; i++)
+                ints[size + i] = (int) values[from + i];
+            break;
+
+        case LONG:
+            System.arraycopy(values, from, longs, size, count);
+            break;
+
+        default:
+            for (int i = 0; i < count; i++)
+                add(Long.valueOf(values[from + i]));
+            return;
+        }
+        size += count;
+    }
+
+
+    /**
+     * Leaves the next positions of the batch unfilled, for rows that were
+     * skipped instead of decoded.  The values at these positions must not be
+     * used.
+     *
+     * @param count the number of positions to skip
+     */
+    public void skip(int count) {
+        int end = size + count;
+        if (kind == Kind.CODE) {
+            // Code 0 is never used, so decodeCodes() knows to leave these.
+            Arrays.fill(codes, size, end, 0);
+        }
+        size = end;
+    }
+
+
+    /** Appends a dictionary code to a batch that holds codes. */
+    public void addCode(int code) {
+        codes[size++] = code;
+    }
+
+
+    /**
+     * Returns the value at the specified position as an object of the type
+     * that {@link edu.caltech.nanodb.storage.DBPage#readObject} would return
+     * for the column.
+     *
+     * @param i the position in the batch
+     *
+     * @return the value at that position
+     */
+    public Object getObject(int i) {
+        switch (kind) {
+        case INT:
+            switch (colType.getBaseType()) {
+            case SMALLINT:
+                return Short.valueOf((short) ints[i]);
+
+            case TINYINT:
+                return Byte.valueOf((byte) ints[i]);
+
+            default:
+                return Integer.valueOf(ints[i]);
+            }
+
+        case LONG:
+            return Long.valueOf(longs[i]);
+
+        case DOUBLE:
+            if (colType.getBaseType() == SQLDataType.FLOAT)
+                return Float.valueOf((float) doubles[i]);
+            return Double.valueOf(doubles[i]);
+
+        case CODE:
+            return dictionary[codes[i]];
+
+        default:
+            return objects[i];
+        }
+    }
+}
@@ -0,0 +1,619 @@
+package edu.caltech.nanodb.storage.colstore;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+
+import org.apache.log4j.Logger;
+
+import edu.caltech.nanodb.relations.ColumnType;
+import edu.caltech.nanodb.relations.SQLDataType;
+import edu.caltech.nanodb.storage.DBFile;
+import edu.caltech.nanodb.storage.DBPage;
+import edu.caltech.nanodb.storage.FileEncoding;
+import edu.caltech.nanodb.storage.StorageManager;
+
+/**
+ * Writes the values of one column of a bulk load to the column's file, a
+ * page at a time.  The input file is parsed once, and each value is handed
+ * to its column's loader with {@link #add}.  Values are buffered in a window
+ * of {@link #WINDOW_SIZE} rows; when the window is full, the loader picks the
+ * encoding that suits the window's values, and appends them to the page
+ * being filled, starting a new page when that page is full or the encoding
+ * changes.  The pages of a column can therefore use different encodings, as
+ * the data changes through the file.
+ * <p>
+ * Memory stays bounded whatever the size of the file: a loader only holds a
+ * window of values, the page being filled, the zone map, and the column's
+ * dictionary, which takes no more than {@link #MAX_DICTIONARY_SIZE} values.
+ * <p>
+ * Each load writes a new row group after the pages of the table's existing
+ * groups, leaving those pages untouched.  The zone map and the dictionary
+ * cover the whole column, so a loader that appends a group starts from the
+ * column's existing ones (see {@link #continueFrom}).
+ */
+public class ColumnLoader {
+    private static Logger logger = Logger.getLogger(ColumnLoader.class);
+
+    /** The number of rows an encoding is chosen for at a time. */
+    public static final int WINDOW_SIZE = 1024;
+
+    /** The largest number of values a column's dictionary can hold. */
+    public static final int MAX_DICTIONARY_SIZE = 1 << 16;
+
+    /**
+     * The largest number of values on a bit-packed page, which bounds the
+     * buffer the page's values are collected in.
+     */
+    public static final int MAX_PAGE_VALUES = 1 << 16;
+
+    private StorageManager storageManager;
+
+    private DBFile file;
+
+    private ColumnType type;
+
+    /** True if the column holds integers, which can be FOR or delta encoded. */
+    private boolean integer;
+
+    private ZoneMap zoneMap;
+
+    /** The values of the current window. */
+    private Object[] window;
+
+    /** The values of the current window as longs, for integer columns. */
+    private long[] windowLongs;
+
+    private int windowSize;
+
+    /** The row number of the first value of the loader's row group. */
+    private int firstRow;
+
+    /** The row number of the next value to be appended to a page. */
+    private int row;
+
+    /** The page number of the next page to be written. */
+    private int pageNo;
+
+    /** The encoding of the page being filled, or null if there is none. */
+    private FileEncoding pageEncoding;
+
+    /** The RLE or uncompressed page being filled, which is written in place. */
+    private DBPage dbPage;
+
+    /** The values of the frame-of-reference or delta page being filled. */
+    private long[] pageLongs;
+
+    /** The codes of the dictionary page being filled. */
+    private int[] pageCodes;
+
+    /** The number of values in {@link #pageLongs} or {@link #pageCodes}. */
+    private int pageCount;
+
+    /**
+     * The range of the values on the frame-of-reference page being filled,
+     * or of the differences on the delta page being filled.
+     */
+    private long pageMin;
+
+    private long pageMax;
+
+    /** The largest code on the dictionary page being filled. */
+    private int pageMaxCode;
+
+    /** The number of codes that fit on the dictionary page being filled. */
+    private int pageCapacity;
+
+    /** The value and extent of the RLE run that hasn't been written yet. */
+    private Object runValue;
+
+    private int runStart;
+
+    private int runLength;
+
+    /**
+     * The column's dictionary.  Values are given codes in order of
+     * appearance, since the dictionary grows while data pages are written;
+     * the codes are mapped to codes in value order when the dictionary is
+     * stored (see {@link DictionaryPage#initEntriesPage}).
+     */
+    private HashMap<Object, Integer> dictionary;
+
+    /** The dictionary's values, indexed by code minus one. */
+    private ArrayList<Object> dictValues;
+
+    /** Scratch space for finding a window's distinct values. */
+    private HashSet<Object> windowValues;
+
+    /** Scratch space for finding the distinct codes of a page. */
+    private boolean[] seenCodes;
+
+
+    /**
+     * Creates a loader that writes a row group to a column's file.
+     *
+     * @param storageManager the storage manager to load pages with
+     * @param file the column's file
+     * @param type the type of the column
+     * @param firstPage the page to write the group's first page to
+     * @param firstRow the row number of the group's first value
+     */
+    public ColumnLoader(StorageManager storageManager, DBFile file,
+                        ColumnType type, int firstPage, int firstRow) {
+        this.storageManager = storageManager;
+        this.file = file;
+        this.type = type;
+        this.pageNo = firstPage;
+        this.firstRow = firstRow;
+        this.row = firstRow;
+
+        integer = SQLDataType.isInteger(type.getBaseType());
+        zoneMap = new ZoneMap();
+        window = new Object[WINDOW_SIZE];
+        if (integer)
+            windowLongs = new long[WINDOW_SIZE];
+
+        dictionary = new HashMap<Object, Integer>();
+        dictValues = new ArrayList<Object>();
+        windowValues = new HashSet<Object>();
+        resetPage();
+    }
+
+
+    /**
+     * Starts from the zone map and dictionary of the column's existing row
+     * groups.  The new group's entries are added after the existing entries,
+     * and values that are already in the dictionary keep their codes, so
+     * the pages of the existing groups stay valid.
+     *
+     * @param zoneMap the column's zone map, or null if it has none
+     * @param decodeTable the column's dictionary, indexed by code, or null if
+     *        it has none
+     * @param codeMap maps the codes stored on the column's pages to the codes
+     *        of <tt>decodeTable</tt>
+     */
+    public void continueFrom(ZoneMap zoneMap, Object[] decodeTable,
+                             int[] codeMap) {
+        if (zoneMap != null)
+            this.zoneMap = zoneMap;
+
+        if (decodeTable != null) {
+            // Stored codes run from 1 to the size of the dictionary.
+            for (int code = 1; code < codeMap.length; code++) {
+                Object value = decodeTable[codeMap[code]];
+                dictValues.add(value);
+                dictionary.put(value, code);
+            }
+        }
+    }
+
+    /**
+     * Adds the next value of the column.
+     *
+     * @param value the value, as it appears in the input file
+     */
+    public void add(String value) throws IOException {
+        addValue(CSDataPage.parseValue(value, type));
+    }
+
+    /**
+     * Adds the next value of the column, already converted to the column's
+     * type.
+     *
+     * @param value the value, which must not be null
+     */
+    public void addValue(Object value) throws IOException {
+        window[windowSize] = value;
+        if (integer)
+            windowLongs[windowSize] = ((Number) value).longValue();
+
+        if (++windowSize == WINDOW_SIZE)
+            writeWindow();
+    }
+
+    /** Writes the values that are still buffered. */
+    public void finish() throws IOException {
+        writeWindow();
+        closePage();
+
+        logger.debug(String.format("Wrote %d rows to %s, up to page %d, with " +
+            "%d dictionary values.", row - firstRow, file, pageNo,
+            dictValues.size()));
+    }
+
+    /**
+     * Returns the number of rows of the loader's row group, including the
+     * values that are still buffered.
+     */
+    public int getNumRows() {
+        return row - firstRow + windowSize;
+    }
+
+    /** Returns the page after the last page the loader has written. */
+    public int getEndPage() {
+        return pageNo;
+    }
+
+    /** Returns the zone map of the pages written so far. */
+    public ZoneMap getZoneMap() {
+        return zoneMap;
+    }
+
+    /** Returns the number of values in the column's dictionary. */
+    public int getDictionarySize() {
+        return dictValues.size();
+    }
+
+    /** Returns the dictionary's values in increasing order. */
+    public Object[] getSortedDictionary() {
+        Object[] values = dictValues.toArray();
+        Arrays.sort(values);
+        return values;
+    }
+
+    /**
+     * Returns the codes the data pages store for the values returned by
+     * {@link #getSortedDictionary}.
+     */
+    public int[] getStoredCodes(Object[] sortedValues) {
+        int[] codes = new int[sortedValues.length];
+        for (int i = 0; i < sortedValues.length; i++)
+            codes[i] = dictionary.get(sortedValues[i]);
+        return codes;
+    }
+
+
+    /** Appends the values of the window to the column's pages. */
+    private void writeWindow() throws IOException {
+        if (windowSize == 0)
+            return;
+
+        FileEncoding encoding = chooseEncoding();
+        if (encoding != pageEncoding) {
+            closePage();
+            pageEncoding = encoding;
+        }
+
+        switch (encoding) {
+        case RLE:
+            appendRuns();
+            break;
+        case NONE:
+            appendUncompressed();
+            break;
+        case DICTIONARY:
+            appendCodes();
+            break;
+        case FOR:
+        case DELTA:
+            appendLongs();
+            break;
+        }
+        windowSize = 0;
+    }
+
+    /**
+     * Picks the encoding for the values of the window.  Long runs are run
+     * length encoded.  Otherwise integers take the bit-packed encoding that
+     * needs the fewest bits per value, and other values are dictionary
+     * encoded if they repeat often enough and the dictionary has room for
+     * them, or stored uncompressed.
+     */
+    private FileEncoding chooseEncoding() {
+        int runs = 1;
+        long min = Long.MAX_VALUE;
+        long max = Long.MIN_VALUE;
+        long minDelta = Long.MAX_VALUE;
+        long maxDelta = Long.MIN_VALUE;
+        windowValues.clear();
+        int newValues = 0;
+
+        for (int i = 0; i < windowSize; i++) {
+            Object value = window[i];
+            if (i > 0 && !value.equals(window[i - 1]))
+                runs++;
+
+            if (windowValues.add(value) && !dictionary.containsKey(value))
+                newValues++;
+
+            if (integer) {
+                long v = windowLongs[i];
+                min = Math.min(min, v);
+                max = Math.max(max, v);
+                if (i > 0) {
+                    long delta = v - windowLongs[i - 1];
+                    minDelta = Math.min(minDelta, delta);
+                    maxDelta = Math.max(maxDelta, delta);
+                }
+            }
+        }
+
+        if (runs * 4 <= windowSize)
+            return FileEncoding.RLE;
+
+        int dictSize = dictValues.size() + newValues;
+        boolean dictOk = windowValues.size() < windowSize * 0.75 &&
+            dictSize <= MAX_DICTIONARY_SIZE;
+
+        if (!integer)
+            return dictOk ? FileEncoding.DICTIONARY : FileEncoding.NONE;
+
+        FileEncoding best = FileEncoding.NONE;
+        int bestBits = Integer.MAX_VALUE;
+        if (isNarrow(min, max)) {
+            best = FileEncoding.FOR;
+            bestBits = BitPacking.getBitSize(max - min);
+        }
+        if (windowSize > 1 && isNarrow(minDelta, maxDelta) &&
+            BitPacking.getBitSize(maxDelta - minDelta) < bestBits) {
+            best = FileEncoding.DELTA;
+            bestBits = BitPacking.getBitSize(maxDelta - minDelta);
+        }
+        if (dictOk && BitPacking.getBitSize(dictSize) < bestBits)
+            best = FileEncoding.DICTIONARY;
+
+        return best;
+    }
+
+    /** Returns true if the range from min to max fits in a 32-bit offset. */
+    private static boolean isNarrow(long min, long max) {
+        long range = max - min;
+        return min <= max && range >= 0 && range <= 0xFFFFFFFFL;
+    }
+
+    /** Adds the window's values to the current RLE run, or to new runs. */
+    private void appendRuns() throws IOException {
+        for (int i = 0; i < windowSize; i++) {
+            Object value = window[i];
+            if (runLength > 0 && value.equals(runValue)) {
+                runLength++;
+            }
+            else {
+                writeRun();
+                runValue = value;
+                runStart = row;
+                runLength = 1;
+            }
+            row++;
+        }
+    }
+
+    /** Writes the current RLE run to the page being filled. */
+    private void writeRun() throws IOException {
+        if (runLength == 0)
+            return;
+
+        if (dbPage == null ||
+            !RLEPage.writeBlock(dbPage, runValue, runStart, runLength, type)) {
+            releasePage();
+            dbPage = newPage(runStart);
+            RLEPage.initNewPage(dbPage);
+            if (!RLEPage.writeBlock(dbPage, runValue, runStart, runLength, type)) {
+                throw new IllegalStateException(
+                    "Value doesn't fit on a page: " + runValue);
+            }
+        }
+        zoneMap.addValue(runValue, runLength);
+        runLength = 0;
+    }
+
+    /** Writes the window's values to uncompressed pages. */
+    private void appendUncompressed() throws IOException {
+        for (int i = 0; i < windowSize; i++) {
+            Object value = window[i];
+            if (dbPage == null ||
+                !UncompressedPage.writeBlock(dbPage, value, type)) {
+                releasePage();
+                dbPage = newPage(row);
+                UncompressedPage.initNewPage(dbPage, row);
+                if (!UncompressedPage.writeBlock(dbPage, value, type)) {
+                    throw new IllegalStateException(
+                        "Value doesn't fit on a page: " + value);
+                }
+            }
+            zoneMap.addValue(value, 1);
+            row++;
+        }
+    }
+
+    /**
+     * Adds the window's values to frame-of-reference or delta pages.  Each
+     * page is filled until the next value would widen the page's range of
+     * values, or differences, past what fits.
+     */
+    private void appendLongs() throws IOException {
+        if (pageLongs == null)
+            pageLongs = new long[MAX_PAGE_VALUES];
+
+        int pageSize = file.getPageSize();
+        boolean delta = (pageEncoding == FileEncoding.DELTA);
+        for (int i = 0; i < windowSize; i++) {
+            long value = windowLongs[i];
+            if (pageCount > 0) {
+                long v = delta ? value - pageLongs[pageCount - 1] : value;
+                long newMin = Math.min(pageMin, v);
+                long newMax = Math.max(pageMax, v);
+                boolean fits = delta ?
+                    DeltaPage.fits(pageSize, pageCount + 1, newMin, newMax) :
+                    FORPage.fits(pageSize, pageCount + 1, newMin, newMax);
+                if (fits && pageCount < MAX_PAGE_VALUES) {
+                    pageMin = newMin;
+                    pageMax = newMax;
+                }
+                else {
+                    writeLongs();
+                    if (!delta)
+                        pageMin = pageMax = value;
+                }
+            }
+            else if (!delta) {
+                pageMin = pageMax = value;
+            }
+            pageLongs[pageCount++] = value;
+            row++;
+        }
+    }
+
+    /** Writes the frame-of-reference or delta page being filled. */
+    private void writeLongs() throws IOException {
+        if (pageCount == 0)
+            return;
+
+        long min = pageLongs[0];
+        long max = pageLongs[0];
+        for (int i = 1; i < pageCount; i++) {
+            min = Math.min(min, pageLongs[i]);
+            max = Math.max(max, pageLongs[i]);
+        }
+
+        zoneMap.addPage(pageNo, row - pageCount, pageCount, 0,
+            CSDataPage.parseValue(Long.toString(min), type),
+            CSDataPage.parseValue(Long.toString(max), type));
+        DBPage page = storageManager.loadDBPage(file, pageNo++, true);
+        if (pageEncoding == FileEncoding.FOR)
+            FORPage.writePage(page, pageLongs, pageCount);
+        else
+            DeltaPage.writePage(page, pageLongs, pageCount);
+        storageManager.unpinDBPage(page);
+        resetPage();
+    }
+
+    /**
+     * Adds the window's values to dictionary encoded pages, adding values
+     * that aren't in the dictionary yet.  Each page is filled until the next
+     * code would need more bits than the page has room for.
+     */
+    private void appendCodes() throws IOException {
+        if (pageCodes == null)
+            pageCodes = new int[MAX_PAGE_VALUES];
+
+        for (int i = 0; i < windowSize; i++) {
+            Object value = window[i];
+            Integer code = dictionary.get(value);
+            if (code == null) {
+                dictValues.add(value);
+                code = dictValues.size();
+                dictionary.put(value, code);
+            }
+
+            int maxCode = Math.max(pageMaxCode, code);
+            int capacity = (maxCode == pageMaxCode) ?
+                pageCapacity : getCodeCapacity(maxCode);
+            if (pageCount >= capacity) {
+                writeCodes();
+                maxCode = code;
+                capacity = getCodeCapacity(code);
+            }
+            pageMaxCode = maxCode;
+            pageCapacity = capacity;
+            pageCodes[pageCount++] = code;
+            row++;
+        }
+    }
+
+    /**
+     * Returns the number of codes that fit on a dictionary page whose
+     * largest code is <tt>maxCode</tt>.
+     */
+    private int getCodeCapacity(int maxCode) {
+        return Math.min(MAX_PAGE_VALUES, DictionaryPage.getPageCapacity(
+            file.getPageSize(), BitPacking.getBitSize(maxCode)));
+    }
+
+    /**
+     * Writes the dictionary page being filled.  The page's zone map entry
+     * holds values, not codes, since the codes of the page aren't in value
+     * order until the dictionary is sorted.
+     */
+    @SuppressWarnings("unchecked")
+    private void writeCodes() throws IOException {
+        if (pageCount == 0)
+            return;
+
+        if (seenCodes == null || seenCodes.length <= dictValues.size())
+            seenCodes = new boolean[Math.max(dictValues.size() + 1, 1024) * 2];
+
+        // Only compare each distinct value of the page once.
+        Comparable min = null;
+        Comparable max = null;
+        for (int i = 0; i < pageCount; i++) {
+            int code = pageCodes[i];
+            if (!seenCodes[code]) {
+                seenCodes[code] = true;
+                Comparable value = (Comparable) dictValues.get(code - 1);
+                if (min == null || value.compareTo(min) < 0)
+                    min = value;
+                if (max == null || value.compareTo(max) > 0)
+                    max = value;
+            }
+        }
+        for (int i = 0; i < pageCount; i++)
+            seenCodes[pageCodes[i]] = false;
+
+        zoneMap.addPage(pageNo, row - pageCount, pageCount, 0, min, max);
+        DBPage page = storageManager.loadDBPage(file, pageNo++, true);
+        DictionaryPage.writePage(page, pageCodes, pageCount,
+            BitPacking.getBitSize(pageMaxCode));
+        storageManager.unpinDBPage(page);
+        resetPage();
+    }
+
+    /** Writes out whatever the page being filled holds, and closes it. */
+    private void closePage() throws IOException {
+        if (pageEncoding == null)
+            return;
+
+        switch (pageEncoding) {
+        case RLE:
+            writeRun();
+            break;
+        case DICTIONARY:
+            writeCodes();
+            break;
+        case FOR:
+        case DELTA:
+            writeLongs();
+            break;
+        default:
+            break;
+        }
+        releasePage();
+        pageEncoding = null;
+    }
+
+    /**
+     * Unpins the RLE or uncompressed page that was being filled, once the
+     * loader is done with it, so that the buffer manager can write it out
+     * and evict it.  A load therefore doesn't hold all of the table's pages
+     * in memory.
+     */
+    private void releasePage() {
+        if (dbPage != null) {
+            storageManager.unpinDBPage(dbPage);
+            dbPage = null;
+        }
+    }
+
+    /**
+     * Allocates the next page of the column, and starts its zone map entry.
+     *
+     * @param firstRow the row number of the first value on the page
+     */
+    private DBPage newPage(int firstRow) throws IOException {
+        DBPage page = storageManager.loadDBPage(file, pageNo, true);
+        zoneMap.startPage(pageNo, firstRow);
+        pageNo++;
+        return page;
+    }
+
+    /** Empties the buffer of the bit-packed page being filled. */
+    private void resetPage() {
+        pageCount = 0;
+        pageMin = Long.MAX_VALUE;
+        pageMax = Long.MIN_VALUE;
+        pageMaxCode = 0;
+        pageCapacity = 0;
+    }
+}
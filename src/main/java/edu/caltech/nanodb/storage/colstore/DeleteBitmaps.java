@@ -0,0 +1,336 @@
+package edu.caltech.nanodb.storage.colstore;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.util.Arrays;
+
+import org.apache.log4j.Logger;
+
+import edu.caltech.nanodb.storage.DBFile;
+import edu.caltech.nanodb.storage.DBFileType;
+import edu.caltech.nanodb.storage.DBPage;
+import edu.caltech.nanodb.storage.StorageManager;
+import edu.caltech.nanodb.storage.TableFileInfo;
+
+/**
+ * The deletion bitmaps of a column-store table.  Rows can't be removed from
+ * compressed column pages, so <tt>DELETE</tt> marks them in a
+ * {@link RowBitmap} of their row group instead, and scans leave the marked
+ * rows out of their selection vectors.  Row numbers are global, as in the
+ * zone maps; each group's bitmap holds the rows relative to the group's
+ * first row.
+ * <p>
+ * The bitmaps are kept in memory while the table is open, and written to
+ * <tt>&lt;table&gt;/&lt;table&gt;.deletes</tt>, next to the column files,
+ * by {@link #write}.  The file is created by the first write.
+ *
+ * <pre>
+ * |   4B   |  4B  |    4B    |  ...  |
+ * |  标记  |count |  length  | bytes |
+ * </pre>
+ * The bitmaps are serialized as the number of groups followed by each
+ * group's bitmap, and the bytes are spread over consecutive pages; count is
+ * the number of bytes on the page, and length, on the first page only, the
+ * total number of bytes.
+ */
+public class DeleteBitmaps {
+    private static Logger logger = Logger.getLogger(DeleteBitmaps.class);
+
+    public static final int ENCODING_OFFSET = 2;
+
+    public static final int ENCODING_MARKER = -4;
+
+    public static final int COUNT_OFFSET = 6;
+
+    public static final int LENGTH_OFFSET = 10;
+
+    public static final int DATA_OFFSET = 14;
+
+
+    private StorageManager storageManager;
+
+    private TableFileInfo tblFileInfo;
+
+    /** The file the bitmaps are written to, or null until it exists. */
+    private DBFile dbFile;
+
+    private int numGroups;
+
+    /**
+     * The first row of each group, and past the last group, the number of
+     * rows of the table.
+     */
+    private int[] groupStarts;
+
+    /** The bitmap of each group, or null if none of its rows are deleted. */
+    private RowBitmap[] bitmaps;
+
+    /** The number of deleted rows, over all of the groups. */
+    private int numDeleted;
+
+    /** True if rows have been deleted since the bitmaps were written. */
+    private boolean dirty;
+
+
+    private DeleteBitmaps(StorageManager storageManager,
+                          TableFileInfo tblFileInfo) {
+        this.storageManager = storageManager;
+        this.tblFileInfo = tblFileInfo;
+        groupStarts = new int[5];
+        bitmaps = new RowBitmap[4];
+    }
+
+
+    /** Returns the name of the file of a table's deletion bitmaps. */
+    public static String getFileName(String tableName) {
+        return tableName + "/" + tableName + ".deletes";
+    }
+
+    /**
+     * Opens the deletion bitmaps of a column-store table, for the row groups
+     * recorded in its header page.  If the table has a deletes file, it's
+     * read and added to the table's files, so that it is closed and dropped
+     * with the table.
+     */
+    public static DeleteBitmaps open(StorageManager storageManager,
+            TableFileInfo tblFileInfo) throws IOException {
+        DeleteBitmaps deletes = new DeleteBitmaps(storageManager, tblFileInfo);
+
+        DBPage headerPage = storageManager.loadDBPage(tblFileInfo.getDBFile(), 0);
+        for (int i = 0; i < CSHeaderPage.getNumGroups(headerPage); i++)
+            deletes.addGroup(CSHeaderPage.getGroupRows(headerPage, i));
+        storageManager.unpinDBPage(headerPage);
+
+        String fileName = getFileName(tblFileInfo.getTableName());
+        if (new File(storageManager.getBaseDir(), fileName).exists()) {
+            deletes.dbFile = storageManager.openDBFile(fileName);
+            tblFileInfo.addDBFile(deletes.dbFile);
+            deletes.read();
+        }
+        return deletes;
+    }
+
+    /**
+     * Returns empty deletion bitmaps for a new table, which doesn't have any
+     * row groups yet.
+     */
+    public static DeleteBitmaps create(StorageManager storageManager,
+            TableFileInfo tblFileInfo) {
+        return new DeleteBitmaps(storageManager, tblFileInfo);
+    }
+
+
+    /** Adds a row group after the existing ones, with no deleted rows. */
+    public void addGroup(int rows) {
+        if (numGroups == bitmaps.length) {
+            bitmaps = Arrays.copyOf(bitmaps, numGroups * 2);
+            groupStarts = Arrays.copyOf(groupStarts, numGroups * 2 + 1);
+        }
+        groupStarts[numGroups + 1] = groupStarts[numGroups] + rows;
+        numGroups++;
+    }
+
+    public int getNumGroups() {
+        return numGroups;
+    }
+
+    /** Returns the first row of a group. */
+    public int getGroupStart(int group) {
+        return groupStarts[group];
+    }
+
+    /** Returns the deletion bitmap of a group, or null if it has none. */
+    public RowBitmap getBitmap(int group) {
+        return bitmaps[group];
+    }
+
+    /** Returns the number of deleted rows. */
+    public int getNumDeleted() {
+        return numDeleted;
+    }
+
+    /** Returns true if rows have been deleted since the last write. */
+    public boolean isDirty() {
+        return dirty;
+    }
+
+    /**
+     * Returns the group that holds a row.  Rows past the end of the table
+     * are in the last group.
+     */
+    private int findGroup(int row) {
+        int lo = 0;
+        int hi = numGroups - 1;
+        while (lo < hi) {
+            int mid = (lo + hi + 1) >>> 1;
+            if (groupStarts[mid] <= row)
+                lo = mid;
+            else
+                hi = mid - 1;
+        }
+        return lo;
+    }
+
+    /**
+     * Marks a row as deleted.
+     *
+     * @param row the row number
+     * @return true if the row was deleted, false if it already was
+     */
+    public boolean delete(int row) {
+        if (row < 0 || row >= groupStarts[numGroups]) {
+            throw new IllegalArgumentException("Row " + row +
+                " isn't in a row group of " + tblFileInfo.getTableName());
+        }
+
+        int group = findGroup(row);
+        if (bitmaps[group] == null)
+            bitmaps[group] = new RowBitmap();
+        if (!bitmaps[group].add(row - groupStarts[group]))
+            return false;
+
+        numDeleted++;
+        dirty = true;
+        return true;
+    }
+
+    /** Returns true if a row has been deleted. */
+    public boolean isDeleted(int row) {
+        if (numDeleted == 0 || numGroups == 0)
+            return false;
+
+        int group = findGroup(row);
+        return bitmaps[group] != null &&
+            bitmaps[group].contains(row - groupStarts[group]);
+    }
+
+    /** Returns the number of deleted rows in the range <tt>[from, to)</tt>. */
+    public int countDeleted(int from, int to) {
+        if (numDeleted == 0 || from >= to)
+            return 0;
+
+        int n = 0;
+        for (int group = findGroup(from); group < numGroups &&
+                groupStarts[group] < to; group++) {
+            if (bitmaps[group] == null)
+                continue;
+
+            int start = groupStarts[group];
+            n += bitmaps[group].countRange(Math.max(from, start) - start,
+                Math.min(to, groupStarts[group + 1]) - start);
+        }
+        return n;
+    }
+
+    /**
+     * Removes the deleted rows from a selection vector.  Batches whose rows
+     * have no deletions are left alone after a single range count.
+     *
+     * @param firstRow the row number of the first row of the batch
+     * @param sel the positions in the batch of the selected rows, in
+     *        increasing order
+     * @param selSize the number of positions in <tt>sel</tt>
+     * @return the number of positions left in <tt>sel</tt>
+     */
+    public int filter(int firstRow, int[] sel, int selSize) {
+        if (numDeleted == 0 || selSize == 0 ||
+            countDeleted(firstRow + sel[0], firstRow + sel[selSize - 1] + 1) == 0) {
+            return selSize;
+        }
+
+        int group = findGroup(firstRow + sel[0]);
+        int n = 0;
+        for (int j = 0; j < selSize; j++) {
+            int row = firstRow + sel[j];
+            while (group < numGroups - 1 && row >= groupStarts[group + 1])
+                group++;
+
+            RowBitmap bitmap = bitmaps[group];
+            if (bitmap == null || !bitmap.contains(row - groupStarts[group]))
+                sel[n++] = sel[j];
+        }
+        return n;
+    }
+
+
+    /**
+     * Writes the bitmaps to the table's deletes file, creating the file if
+     * the table doesn't have one yet.
+     */
+    public void write() throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(bytes);
+        out.writeInt(numGroups);
+        for (int i = 0; i < numGroups; i++) {
+            RowBitmap bitmap = (bitmaps[i] != null) ? bitmaps[i] : new RowBitmap();
+            bitmap.write(out);
+        }
+        out.flush();
+        byte[] data = bytes.toByteArray();
+
+        if (dbFile == null) {
+            dbFile = storageManager.createDBFile(
+                getFileName(tblFileInfo.getTableName()),
+                DBFileType.COLUMNSTORE_DATA_FILE);
+            tblFileInfo.addDBFile(dbFile);
+        }
+
+        int written = 0;
+        int pageNo = 0;
+        while (pageNo == 0 || written < data.length) {
+            DBPage dbPage = storageManager.loadDBPage(dbFile, pageNo, true);
+            int n = Math.min(data.length - written,
+                dbPage.getPageSize() - DATA_OFFSET);
+            dbPage.writeInt(ENCODING_OFFSET, ENCODING_MARKER);
+            dbPage.writeInt(COUNT_OFFSET, n);
+            dbPage.writeInt(LENGTH_OFFSET, (pageNo == 0) ? data.length : 0);
+            dbPage.write(DATA_OFFSET, data, written, n);
+            storageManager.unpinDBPage(dbPage);
+            written += n;
+            pageNo++;
+        }
+        dirty = false;
+
+        logger.debug(String.format("Wrote deletion bitmaps of %s: %d deleted " +
+            "rows in %d bytes.", tblFileInfo.getTableName(), numDeleted,
+            data.length));
+    }
+
+    /** Reads the bitmaps from the table's deletes file. */
+    private void read() throws IOException {
+        DBPage dbPage = storageManager.loadDBPage(dbFile, 0);
+        if (dbPage.readInt(ENCODING_OFFSET) != ENCODING_MARKER) {
+            storageManager.unpinDBPage(dbPage);
+            throw new IOException("Wrong encoding type of " + dbFile);
+        }
+
+        byte[] data = new byte[dbPage.readInt(LENGTH_OFFSET)];
+        int read = 0;
+        int pageNo = 0;
+        while (true) {
+            int n = dbPage.readInt(COUNT_OFFSET);
+            dbPage.read(DATA_OFFSET, data, read, n);
+            read += n;
+            storageManager.unpinDBPage(dbPage);
+            if (read >= data.length)
+                break;
+            dbPage = storageManager.loadDBPage(dbFile, ++pageNo);
+        }
+
+        DataInputStream in = new DataInputStream(new ByteArrayInputStream(data));
+        int groups = in.readInt();
+        for (int i = 0; i < groups && i < numGroups; i++) {
+            RowBitmap bitmap = RowBitmap.read(in);
+            if (!bitmap.isEmpty()) {
+                bitmaps[i] = bitmap;
+                numDeleted += bitmap.getCardinality();
+            }
+        }
+        logger.debug(String.format("Read deletion bitmaps of %s: %d deleted rows.",
+            tblFileInfo.getTableName(), numDeleted));
+    }
+}
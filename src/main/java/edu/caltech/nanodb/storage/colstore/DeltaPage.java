@@ -0,0 +1,132 @@
+package edu.caltech.nanodb.storage.colstore;
+
+import org.apache.log4j.Logger;
+
+import edu.caltech.nanodb.storage.DBPage;
+import edu.caltech.nanodb.storage.FileEncoding;
+import edu.caltech.nanodb.storage.PageWriter;
+
+/**
+ * Delta encoded page for integer columns whose values change slowly, such as
+ * sorted ids and timestamps.  The page stores its first value as the base,
+ * and each following value as its difference from the previous value.  The
+ * differences are stored as offsets from the smallest difference on the
+ * page, bit-packed with as many bits as the largest offset needs.
+ *
+ * <pre>
+ * |   4B   |  4B  |        4B       |  8B  |    8B     |   4B    |      ...       |
+ * |文件压缩方式|count |NEXT_BLOCK_OFFSET| base | min delta | bitsize | packed offsets |
+ * </pre>
+ */
+public class DeltaPage {
+    private static Logger logger = Logger.getLogger(DeltaPage.class);
+
+    public static final int ENCODING_OFFSET = 2;
+
+    public static final int ENCODING_MARKER = FileEncoding.DELTA.ordinal();
+
+    public static final int COUNT_OFFSET = 6;
+
+    public static final int NEXT_BLOCK_START_OFFSET = 10;
+
+    public static final int FIRST_BLOCK_OFFSET = 14;
+
+    public static final int BASE_OFFSET = 14;
+
+    public static final int MIN_DELTA_OFFSET = 22;
+
+    public static final int BITSIZE_OFFSET = 30;
+
+    public static final int DATA_OFFSET = 34;
+
+
+    /**
+     * Returns the number of values that fit on a page whose offsets take
+     * <tt>bitsize</tt> bits.  The first value is stored as the base, so it
+     * doesn't take any space in the packed offsets.
+     */
+    public static int getPageCapacity(int pageSize, int bitsize) {
+        return BitPacking.getCapacity(pageSize, DATA_OFFSET, bitsize) + 1;
+    }
+
+    /**
+     * Returns true if <tt>count</tt> values, whose differences range from
+     * <tt>minDelta</tt> to <tt>maxDelta</tt>, fit on one page.
+     */
+    public static boolean fits(int pageSize, int count, long minDelta,
+                               long maxDelta) {
+        if (count <= 1)
+            return true;
+
+        long range = maxDelta - minDelta;
+        if (range < 0 || range > 0xFFFFFFFFL)
+            return false;
+
+        return count <= getPageCapacity(pageSize, BitPacking.getBitSize(range));
+    }
+
+    /**
+     * Writes a page of values.
+     *
+     * @param dbPage the page to write
+     * @param values the values to store
+     * @param count the number of values to store
+     */
+    public static void writePage(DBPage dbPage, long[] values, int count) {
+        long minDelta = Long.MAX_VALUE;
+        long maxDelta = Long.MIN_VALUE;
+        for (int i = 1; i < count; i++) {
+            long delta = values[i] - values[i - 1];
+            minDelta = Math.min(minDelta, delta);
+            maxDelta = Math.max(maxDelta, delta);
+        }
+        if (count <= 1)
+            minDelta = maxDelta = 0;
+
+        if (!fits(dbPage.getPageSize(), count, minDelta, maxDelta)) {
+            throw new IllegalArgumentException(count + " values don't fit " +
+                "on a page with deltas " + minDelta + " to " + maxDelta);
+        }
+
+        int bitsize = BitPacking.getBitSize(maxDelta - minDelta);
+        int n = Math.max(count - 1, 0);
+        int[] offsets = new int[n];
+        for (int i = 0; i < n; i++)
+            offsets[i] = (int) (values[i + 1] - values[i] - minDelta);
+
+        PageWriter writer = new PageWriter(dbPage);
+        writer.setPosition(ENCODING_OFFSET);
+        writer.writeInt(ENCODING_MARKER);
+        writer.writeInt(count);
+        writer.writeInt(BitPacking.pack(dbPage, DATA_OFFSET, offsets, n, bitsize));
+        writer.writeLong(count > 0 ? values[0] : 0);
+        writer.writeLong(minDelta);
+        writer.writeInt(bitsize);
+    }
+
+    /**
+     * Decodes all of the values on a page in one pass.
+     *
+     * @param dbPage the page to read
+     * @param values the array to store the values into
+     * @param offsets scratch space for the unpacked offsets
+     * @return the number of values on the page
+     */
+    public static int readPage(DBPage dbPage, long[] values, int[] offsets) {
+        int count = dbPage.readInt(COUNT_OFFSET);
+        if (count == 0)
+            return 0;
+
+        long minDelta = dbPage.readLong(MIN_DELTA_OFFSET);
+        int bitsize = dbPage.readInt(BITSIZE_OFFSET);
+        BitPacking.unpack(dbPage, DATA_OFFSET, count - 1, bitsize, offsets);
+
+        long value = dbPage.readLong(BASE_OFFSET);
+        values[0] = value;
+        for (int i = 1; i < count; i++) {
+            value += minDelta + (offsets[i - 1] & 0xFFFFFFFFL);
+            values[i] = value;
+        }
+        return count;
+    }
+}
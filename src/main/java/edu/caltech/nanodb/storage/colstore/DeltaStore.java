@@ -0,0 +1,150 @@
+package edu.caltech.nanodb.storage.colstore;
+
+import java.io.EOFException;
+import java.io.File;
+import java.io.IOException;
+import java.util.Map;
+
+import org.apache.log4j.Logger;
+
+import edu.caltech.nanodb.relations.Tuple;
+import edu.caltech.nanodb.storage.DBFile;
+import edu.caltech.nanodb.storage.DBFileType;
+import edu.caltech.nanodb.storage.DBPage;
+import edu.caltech.nanodb.storage.StorageManager;
+import edu.caltech.nanodb.storage.TableFileInfo;
+import edu.caltech.nanodb.storage.heapfile.DataPage;
+import edu.caltech.nanodb.storage.heapfile.HeapFileTableManager;
+
+/**
+ * The delta store of a column-store table holds the rows added with
+ * <tt>INSERT</tt>.  Compressed column pages can't take single rows, so
+ * inserted rows are written to a heap file instead, in the same format as
+ * the tables of {@link HeapFileTableManager}, and scans of the table read
+ * them after the rows of the row groups.  The tuple mover
+ * ({@link ColStoreTableManager#moveDeltaRows}) later compresses the rows into
+ * a new row group and empties the delta store.
+ * <p>
+ * The heap file is stored with the column files, as
+ * <tt>&lt;table&gt;/&lt;table&gt;.delta</tt>, and is only created when the
+ * first row is inserted.
+ */
+public class DeltaStore {
+    private static Logger logger = Logger.getLogger(DeltaStore.class);
+
+    private StorageManager storageManager;
+
+    private HeapFileTableManager heapManager;
+
+    /** The heap file's table information, with the table's columns. */
+    private TableFileInfo heapInfo;
+
+
+    private DeltaStore(StorageManager storageManager,
+                       HeapFileTableManager heapManager, TableFileInfo heapInfo) {
+        this.storageManager = storageManager;
+        this.heapManager = heapManager;
+        this.heapInfo = heapInfo;
+    }
+
+
+    /** Returns the name of the delta store's file of a table. */
+    public static String getFileName(String tableName) {
+        return tableName + "/" + tableName + ".delta";
+    }
+
+    /**
+     * Opens the delta store of a column-store table, and adds its file to the
+     * table's files so that it is closed and dropped with the table.
+     *
+     * @return the delta store, or null if the table doesn't have one yet
+     */
+    public static DeltaStore open(StorageManager storageManager,
+            HeapFileTableManager heapManager, TableFileInfo tblFileInfo)
+            throws IOException {
+        String fileName = getFileName(tblFileInfo.getTableName());
+        if (!new File(storageManager.getBaseDir(), fileName).exists())
+            return null;
+
+        DBFile dbFile = storageManager.openDBFile(fileName);
+        TableFileInfo heapInfo = new TableFileInfo(
+            tblFileInfo.getTableName(), dbFile);
+        heapInfo.setFileType(DBFileType.HEAP_DATA_FILE);
+        heapManager.loadTableInfo(heapInfo);
+        tblFileInfo.addDBFile(dbFile);
+        return new DeltaStore(storageManager, heapManager, heapInfo);
+    }
+
+    /**
+     * Creates the delta store of a column-store table, with the table's
+     * columns.
+     */
+    public static DeltaStore create(StorageManager storageManager,
+            HeapFileTableManager heapManager, TableFileInfo tblFileInfo)
+            throws IOException {
+        DBFile dbFile = storageManager.createDBFile(
+            getFileName(tblFileInfo.getTableName()), DBFileType.HEAP_DATA_FILE);
+        TableFileInfo heapInfo = new TableFileInfo(
+            tblFileInfo.getTableName(), dbFile);
+        heapInfo.setFileType(DBFileType.HEAP_DATA_FILE);
+        heapInfo.getSchema().append(tblFileInfo.getSchema().getColumnInfos());
+        heapManager.initTableInfo(heapInfo);
+        tblFileInfo.addDBFile(dbFile);
+
+        logger.debug("Created delta store " + dbFile + " for table " +
+            tblFileInfo.getTableName());
+        return new DeltaStore(storageManager, heapManager, heapInfo);
+    }
+
+
+    /** Returns the heap file's table information. */
+    public TableFileInfo getTableFileInfo() {
+        return heapInfo;
+    }
+
+    /** Adds a row to the delta store. */
+    public Tuple addTuple(Tuple tup) throws IOException {
+        return heapManager.addTuple(heapInfo, tup);
+    }
+
+    /** Removes a row of the delta store. */
+    public void deleteTuple(Tuple tup) throws IOException {
+        heapManager.deleteTuple(heapInfo, tup);
+    }
+
+    /** Changes the values of a row of the delta store in place. */
+    public void updateTuple(Tuple tup, Map<String, Object> newValues)
+            throws IOException {
+        heapManager.updateTuple(heapInfo, tup, newValues);
+    }
+
+    /** Returns the first row of the delta store, or null if it is empty. */
+    public Tuple getFirstTuple() throws IOException {
+        return heapManager.getFirstTuple(heapInfo);
+    }
+
+    /** Returns the row after <tt>tup</tt>, or null if there is none. */
+    public Tuple getNextTuple(Tuple tup) throws IOException {
+        return heapManager.getNextTuple(heapInfo, tup);
+    }
+
+    /**
+     * Removes every row from the delta store.  The data pages are emptied
+     * rather than removed, and are reused by later inserts.
+     */
+    public void clear() throws IOException {
+        DBFile dbFile = heapInfo.getDBFile();
+        for (int pageNo = 1; ; pageNo++) {
+            DBPage dbPage;
+            try {
+                dbPage = storageManager.loadDBPage(dbFile, pageNo);
+            }
+            catch (EOFException e) {
+                break;
+            }
+            DataPage.initNewPage(dbPage);
+            storageManager.logDBPageWrite(dbPage);
+            storageManager.unpinDBPage(dbPage);
+        }
+    }
+}
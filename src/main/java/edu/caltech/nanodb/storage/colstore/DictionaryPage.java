@@ -1,13 +1,10 @@
 package edu.caltech.nanodb.storage.colstore;
 
-import java.util.HashMap;
-
 import org.apache.log4j.Logger;
 
-import edu.caltech.nanodb.relations.ColumnInfo;
+import edu.caltech.nanodb.relations.ColumnType;
 import edu.caltech.nanodb.storage.DBPage;
 import edu.caltech.nanodb.storage.FileEncoding;
-import edu.caltech.nanodb.storage.PageReader;
 import edu.caltech.nanodb.storage.PageWriter;
 import edu.caltech.nanodb.storage.heapfile.DataPage;
 
@@ -25,6 +22,15 @@ public class DictionaryPage {
 
     public static final int FIRST_BLOCK_OFFSET = 14;
 
+    /** The marker of the pages that hold the dictionary's entries. */
+    public static final int ENTRIES_MARKER = -3;
+
+    /** The offset of the number of bits per code on a data page. */
+    public static final int BITSIZE_OFFSET = 14;
+
+    /** The offset of the packed codes on a data page. */
+    public static final int DATA_OFFSET = 18;
+
 
     /**
      * Initialize a newly allocated dictionary page.  Currently this involves setting
@@ -40,156 +46,138 @@ public class DictionaryPage {
         dictWriter.writeInt(14);
 	}
 
-	/** Writes a dictionary block. */
-	public static boolean writeBlock(DBPage dbPage, int currentBlock, int blockNum) {
-		
-		PageReader dictReader = new PageReader(dbPage);
-    	PageWriter dictWriter = new PageWriter(dbPage);
-    	
-    	dictReader.setPosition(ENCODING_OFFSET);
-    	
-    	if (dictReader.readInt() != ENCODING_MARKER) {
-    		throw new IllegalArgumentException("Wrong encoding type");
-    	}
-    	
-    	dictReader.setPosition(NEXT_BLOCK_START_OFFSET);
-    	int write_offset = dictReader.readInt();
-    	
-    	if (write_offset + 2 > dbPage.getPageSize()) {
-    		return false;
-    	}
-    	
-    	dictWriter.setPosition(write_offset);
-    	
-    	dictWriter.writeShort(currentBlock);
-    	
-    	dictReader.setPosition(COUNT_OFFSET);
-    	int next_write_pos = dictWriter.getPosition();
-    	int count = dictReader.readInt() + blockNum;
-    	
-    	dictWriter.setPosition(COUNT_OFFSET);
-    	dictWriter.writeInt(count);
-    	dictWriter.writeInt(next_write_pos);
-    	
-    	return true;
+	/**
+	 * Initialize a newly allocated page for the entries of a dictionary.
+	 * The dictionaries of a table are stored in the table's header file,
+	 * after the zone maps; the header page records where each column's
+	 * entries start and how many there are (see
+	 * {@link CSHeaderPage#setDictionary}).  A column's entries are on
+	 * consecutive pages.
+	 * <p>
+	 * Entries are stored in increasing order of value, and the code of an
+	 * entry is its position in that order plus one, so comparing codes gives
+	 * the same result as comparing the values they stand for.  The data pages
+	 * were written while the dictionary was still growing, so they hold the
+	 * codes values were given in order of appearance; each entry records
+	 * that code after its value, and readers map it to the entry's code.
+	 *
+	 * @param dbPage the page to initialize
+	 */
+	public static void initEntriesPage(DBPage dbPage) {
+		PageWriter dictWriter = new PageWriter(dbPage);
+		dictWriter.setPosition(ENCODING_OFFSET);
+		dictWriter.writeInt(ENTRIES_MARKER);
+		dictWriter.writeInt(0);
+		dictWriter.writeInt(FIRST_BLOCK_OFFSET);
 	}
 
-	/** Writes a dictionary. */
-	public static void writeDictionary(DBPage dbPage, HashMap<String, Integer> dict,
-			int bitsize, int blockNum, ColumnInfo info) {
-		
-		PageReader dictReader = new PageReader(dbPage);
-    	PageWriter dictWriter = new PageWriter(dbPage);
-    	
-    	dictReader.setPosition(ENCODING_OFFSET);
-    	
-    	if (dictReader.readInt() != ENCODING_MARKER) {
-    		throw new IllegalArgumentException("Wrong encoding type");
-    	}
-    	
-    	dictReader.setPosition(NEXT_BLOCK_START_OFFSET);
-    	int write_offset = dictReader.readInt();
-    	
-    	dictWriter.setPosition(write_offset);
-    	
-    	dictWriter.writeInt(bitsize);
-    	dictWriter.writeInt(blockNum);
-    	dictWriter.writeInt(dict.size());
-    	
-    	for (String key : dict.keySet()) {
-    		dictWriter.setPosition(dictWriter.getPosition() + dbPage.writeObject
-    			(dictWriter.getPosition(), info.getType(), key));
-    		dictWriter.writeInt(dict.get(key));
-    	}
+	/**
+	 * Writes dictionary entries to an entries page, starting with
+	 * <tt>values[from]</tt>, until the page is full.
+	 *
+	 * @param dbPage the entries page
+	 * @param values the sorted values of the dictionary
+	 * @param storedCodes the codes the data pages store for the values
+	 * @param from the index of the first value to write
+	 * @param colType the type of the column
+	 * @return the index of the first value that was not written
+	 */
+	public static int writeEntries(DBPage dbPage, Object[] values,
+			int[] storedCodes, int from, ColumnType colType) {
+		if (getEncoding(dbPage) != ENTRIES_MARKER) {
+			throw new IllegalArgumentException("Wrong encoding type");
+		}
+
+		int offset = dbPage.readInt(NEXT_BLOCK_START_OFFSET);
+		int i = from;
+		while (i < values.length && offset + 4 +
+				DBPage.getObjectDiskSize(values[i], colType) <= dbPage.getPageSize()) {
+			offset += dbPage.writeObject(offset, colType, values[i]);
+			dbPage.writeInt(offset, storedCodes[i]);
+			offset += 4;
+			i++;
+		}
+
+		dbPage.writeInt(COUNT_OFFSET, dbPage.readInt(COUNT_OFFSET) + i - from);
+		dbPage.writeInt(NEXT_BLOCK_START_OFFSET, offset);
+		return i;
 	}
-	
-	/** Reads dictionary bit size. */
-	public static int getBitSize(DBPage dbPage) {
-		PageReader dictReader = new PageReader(dbPage);
-    	
-    	dictReader.setPosition(ENCODING_OFFSET);
-    	
-    	if (dictReader.readInt() != ENCODING_MARKER) {
-    		throw new IllegalArgumentException("Wrong encoding type");
-    	}
-    	
-    	dictReader.setPosition(NEXT_BLOCK_START_OFFSET);
-    	dictReader.setPosition(dictReader.readInt());
-    	
-    	return dictReader.readInt();
+
+	/**
+	 * Reads the dictionary entries stored on an entries page into a decode
+	 * table.
+	 *
+	 * @param dbPage the entries page
+	 * @param table the decode table, indexed by code
+	 * @param codeMap maps the codes stored on data pages to codes
+	 * @param code the code of the first entry on the page
+	 * @param colType the type of the column
+	 * @return the code of the first entry on the next entries page
+	 */
+	public static int readEntries(DBPage dbPage, Object[] table, int[] codeMap,
+			int code, ColumnType colType) {
+		int offset = FIRST_BLOCK_OFFSET;
+		int count = dbPage.readInt(COUNT_OFFSET);
+		for (int i = 0; i < count; i++) {
+			Object obj = dbPage.readObject(offset, colType);
+			offset += DBPage.getObjectDiskSize(obj, colType);
+			codeMap[dbPage.readInt(offset)] = code;
+			offset += 4;
+			table[code++] = obj;
+		}
+		return code;
 	}
-	
-	/** Reads dictionary block size. */
-	public static int getBlockNum(DBPage dbPage) {
-		PageReader dictReader = new PageReader(dbPage);
-    	
-    	dictReader.setPosition(ENCODING_OFFSET);
-    	
-    	if (dictReader.readInt() != ENCODING_MARKER) {
-    		throw new IllegalArgumentException("Wrong encoding type");
-    	}
-    	
-    	dictReader.setPosition(NEXT_BLOCK_START_OFFSET);
-    	dictReader.setPosition(dictReader.readInt() + 4);
-    	
-    	return dictReader.readInt();
+
+	private static int getEncoding(DBPage dbPage) {
+		return dbPage.readInt(ENCODING_OFFSET);
 	}
-	
-	/** Reconstruct dictionary from disk. */
-	public static HashMap<Integer, Object> constructDictionary(DBPage dbPage, 
-		ColumnInfo info) {
-	
-		PageReader dictReader = new PageReader(dbPage);
-    	
-    	dictReader.setPosition(ENCODING_OFFSET);
-    	
-    	if (dictReader.readInt() != ENCODING_MARKER) {
-    		throw new IllegalArgumentException("Wrong encoding type");
-    	}
-    	
-    	dictReader.setPosition(NEXT_BLOCK_START_OFFSET);
-    	dictReader.setPosition(dictReader.readInt() + 8);
-    	
-    	int size = dictReader.readInt();
-    	
-    	HashMap<Integer, Object> dict = new HashMap<Integer, Object>();
-    	Object obj;
-    	int bits;
-    	
-    	for (int i = 0; i < size; i++) {
-    		obj = dbPage.readObject(dictReader.getPosition(), info.getType());
-    		dictReader.setPosition(dictReader.getPosition() + 
-    			DBPage.getObjectDiskSize(obj, info.getType()));
-    		bits = dictReader.readInt();
-    		dict.put(bits, obj);
-    	}
-		
-		return dict;
+
+	/**
+	 * Returns the number of codes that fit on a data page, when each code
+	 * takes <tt>bitsize</tt> bits.
+	 */
+	public static int getPageCapacity(int pageSize, int bitsize) {
+		return BitPacking.getCapacity(pageSize, DATA_OFFSET, bitsize);
 	}
-	
-	/** Read block from disk. */
-	public static int getBlockEncodedData(DBPage dbPage, int blockStart) {
-		PageReader dictReader = new PageReader(dbPage);
-    	
-    	dictReader.setPosition(ENCODING_OFFSET);
-    	
-    	if (dictReader.readInt() != ENCODING_MARKER) {
-    		throw new IllegalArgumentException("Wrong encoding type");
-    	}
-    	
-    	dictReader.setPosition(NEXT_BLOCK_START_OFFSET);
-    	
-    	if (dictReader.readInt() <= blockStart) {
-    		return Integer.MIN_VALUE;
-    	}
-    	
-    	dictReader.setPosition(blockStart);
-    	
-    	return dictReader.readShort();
+
+	/**
+	 * Writes a data page of dictionary codes.  The codes are bit-packed
+	 * into consecutive 64-bit words by {@link BitPacking}, <tt>bitsize</tt>
+	 * bits per code; the page's count is the number of codes.  Each page
+	 * records its own bit size, since the dictionary may grow between pages.
+	 *
+	 * @param dbPage the data page to write
+	 * @param codes the codes to store
+	 * @param count the number of codes to store, at most
+	 *        {@link #getPageCapacity}
+	 * @param bitsize the number of bits per code, between 1 and 32
+	 */
+	public static void writePage(DBPage dbPage, int[] codes, int count,
+			int bitsize) {
+		if (count > getPageCapacity(dbPage.getPageSize(), bitsize)) {
+			throw new IllegalArgumentException(count +
+				" codes don't fit on a page with " + bitsize + " bits per code");
+		}
+
+		initNewPage(dbPage);
+		int end = BitPacking.pack(dbPage, DATA_OFFSET, codes, count, bitsize);
+		dbPage.writeInt(COUNT_OFFSET, count);
+		dbPage.writeInt(BITSIZE_OFFSET, bitsize);
+		dbPage.writeInt(NEXT_BLOCK_START_OFFSET, end);
 	}
-	
-	/** Read first block from disk. */
-	public static int getFirstBlockEncodedData(DBPage dbPage) {
-		return getBlockEncodedData(dbPage, FIRST_BLOCK_OFFSET);
+
+	/**
+	 * Unpacks all of the codes on a data page in one pass.
+	 *
+	 * @param dbPage the data page, as written by {@link #writePage}
+	 * @param codes the array to store the codes into, which must hold at
+	 *        least the page's count of codes
+	 * @return the number of codes on the page
+	 */
+	public static int readPage(DBPage dbPage, int[] codes) {
+		int count = dbPage.readInt(COUNT_OFFSET);
+		BitPacking.unpack(dbPage, DATA_OFFSET, count,
+			dbPage.readInt(BITSIZE_OFFSET), codes);
+		return count;
 	}
 }
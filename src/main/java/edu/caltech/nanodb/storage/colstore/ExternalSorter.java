@@ -0,0 +1,409 @@
+package edu.caltech.nanodb.storage.colstore;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.PriorityQueue;
+
+import org.apache.log4j.Logger;
+
+import edu.caltech.nanodb.relations.ColumnType;
+
+/**
+ * Sorts rows by the values of some of their columns: the lines of an input
+ * file, for a bulk load into a table with a sort key, or rows of values, for
+ * the compaction of a table.  Up to <tt>maxRows</tt> rows are sorted in
+ * memory; more rows are written to temporary files in sorted runs of that
+ * many rows, which are then merged.
+ * <p>
+ * The rows are added with {@link #add(String, String[])} or
+ * {@link #add(Object[])}, and read back in order with {@link #readLine} or
+ * {@link #readValues} once {@link #finish} has been called.  Rows with equal
+ * keys keep the order they were added in.
+ */
+public class ExternalSorter {
+    private static Logger logger = Logger.getLogger(ExternalSorter.class);
+
+    /** A row and the values of its key columns. */
+    private static class Entry {
+        Object[] key;
+
+        /** The row, either a line or an array of values. */
+        Object row;
+
+        /** The run the row was read from, while the runs are merged. */
+        int run;
+
+        Entry(Object[] key, Object row) {
+            this.key = key;
+            this.row = row;
+        }
+    }
+
+    private static final Comparator<Entry> ENTRY_ORDER = new Comparator<Entry>() {
+        @Override
+        public int compare(Entry a, Entry b) {
+            int c = compareKeys(a.key, b.key);
+            return c != 0 ? c : Integer.compare(a.run, b.run);
+        }
+    };
+
+    // The tags that the values of a run start with.
+    private static final int TAG_NULL = 0;
+    private static final int TAG_BYTE = 1;
+    private static final int TAG_SHORT = 2;
+    private static final int TAG_INT = 3;
+    private static final int TAG_LONG = 4;
+    private static final int TAG_FLOAT = 5;
+    private static final int TAG_DOUBLE = 6;
+    private static final int TAG_STRING = 7;
+
+    /** The indexes of the key columns in the rows. */
+    private int[] keyColumns;
+
+    /** The types of the key columns, to parse them from lines. */
+    private ColumnType[] keyTypes;
+
+    private int maxRows;
+
+    private File tempDir;
+
+    /** The rows that haven't been written to a run yet. */
+    private List<Entry> buffer = new ArrayList<Entry>();
+
+    /** The temporary files holding the sorted runs. */
+    private List<File> runFiles = new ArrayList<File>();
+
+    private DataInputStream[] runReaders;
+
+    /** The next row of each run, while the runs are merged. */
+    private PriorityQueue<Entry> heads;
+
+    /** The position of the next row in {@link #buffer}, if there are no runs. */
+    private int bufferPos;
+
+    private Object[] firstKey;
+
+    private int numRows;
+
+
+    /**
+     * Creates a sorter of the lines of an input file.
+     *
+     * @param keyColumns the indexes of the key columns in the lines
+     * @param keyTypes the types of the key columns
+     * @param maxRows the number of lines to sort in memory
+     * @param tempDir the directory to write the runs to
+     */
+    public ExternalSorter(int[] keyColumns, ColumnType[] keyTypes,
+                          int maxRows, File tempDir) {
+        this.keyColumns = keyColumns;
+        this.keyTypes = keyTypes;
+        this.maxRows = Math.max(1, maxRows);
+        this.tempDir = tempDir;
+    }
+
+
+    /**
+     * Creates a sorter of rows of values.  The values may be bytes, shorts,
+     * integers, longs, floats, doubles, strings or nulls.
+     *
+     * @param keyColumns the indexes of the key columns in the rows
+     * @param maxRows the number of rows to sort in memory
+     * @param tempDir the directory to write the runs to
+     */
+    public ExternalSorter(int[] keyColumns, int maxRows, File tempDir) {
+        this(keyColumns, null, maxRows, tempDir);
+    }
+
+
+    /**
+     * Adds a line to sort.
+     *
+     * @param line the line
+     * @param values the values of the line's columns, as split by the caller
+     */
+    public void add(String line, String[] values) throws IOException {
+        Object[] key = new Object[keyColumns.length];
+        for (int i = 0; i < key.length; i++)
+            key[i] = CSDataPage.parseValue(values[keyColumns[i]], keyTypes[i]);
+        add(key, line);
+    }
+
+    /**
+     * Adds a row of values to sort.  The array is kept, not copied.
+     *
+     * @param values the values of the row's columns
+     */
+    public void add(Object[] values) throws IOException {
+        Object[] key = new Object[keyColumns.length];
+        for (int i = 0; i < key.length; i++)
+            key[i] = values[keyColumns[i]];
+        add(key, values);
+    }
+
+    private void add(Object[] key, Object row) throws IOException {
+        buffer.add(new Entry(key, row));
+        numRows++;
+        if (buffer.size() >= maxRows)
+            writeRun();
+    }
+
+    /** Returns the number of rows added. */
+    public int getNumRows() {
+        return numRows;
+    }
+
+    /** Sorts the rows added so far, after which they can be read. */
+    public void finish() throws IOException {
+        if (runFiles.isEmpty()) {
+            Collections.sort(buffer, ENTRY_ORDER);
+            return;
+        }
+
+        writeRun();
+        logger.debug(String.format("Merging %d sorted runs of %d rows.",
+            runFiles.size(), numRows));
+        runReaders = new DataInputStream[runFiles.size()];
+        heads = new PriorityQueue<Entry>(runFiles.size(), ENTRY_ORDER);
+        for (int i = 0; i < runReaders.length; i++) {
+            runReaders[i] = new DataInputStream(new BufferedInputStream(
+                new FileInputStream(runFiles.get(i))));
+            readHead(i);
+        }
+    }
+
+    /**
+     * Returns the next line in the order of the key, or null after the last
+     * one.
+     */
+    public String readLine() throws IOException {
+        return (String) next();
+    }
+
+    /**
+     * Returns the next row of values in the order of the key, or null after
+     * the last one.
+     */
+    public Object[] readValues() throws IOException {
+        return (Object[]) next();
+    }
+
+    private Object next() throws IOException {
+        Entry next;
+        if (heads == null) {
+            if (bufferPos == buffer.size())
+                return null;
+            next = buffer.get(bufferPos);
+            buffer.set(bufferPos++, null);
+        }
+        else {
+            next = heads.poll();
+            if (next == null)
+                return null;
+            readHead(next.run);
+        }
+
+        if (firstKey == null)
+            firstKey = next.key;
+        return next.row;
+    }
+
+    /** Returns the key of the first row read, or null. */
+    public Object[] getFirstKey() {
+        return firstKey;
+    }
+
+    /** Closes and deletes the runs. */
+    public void close() {
+        if (runReaders != null) {
+            for (DataInputStream reader : runReaders) {
+                try {
+                    if (reader != null)
+                        reader.close();
+                }
+                catch (IOException e) {
+                    logger.warn("Couldn't close a sorted run", e);
+                }
+            }
+        }
+        for (File file : runFiles) {
+            if (!file.delete())
+                logger.warn("Couldn't delete sorted run " + file);
+        }
+        runFiles.clear();
+        buffer.clear();
+    }
+
+    /**
+     * Compares two keys value by value.  Null values sort before all others.
+     */
+    @SuppressWarnings("unchecked")
+    public static int compareKeys(Object[] a, Object[] b) {
+        for (int i = 0; i < a.length; i++) {
+            if (a[i] == null || b[i] == null) {
+                if (a[i] != b[i])
+                    return a[i] == null ? -1 : 1;
+                continue;
+            }
+            int c = ((Comparable<Object>) a[i]).compareTo(b[i]);
+            if (c != 0)
+                return c;
+        }
+        return 0;
+    }
+
+    /**
+     * Sorts the buffered rows and writes them to a new run.  Each row is
+     * written with its key, so that the key doesn't have to be parsed again
+     * when the runs are merged.
+     */
+    private void writeRun() throws IOException {
+        if (buffer.isEmpty())
+            return;
+
+        Collections.sort(buffer, ENTRY_ORDER);
+        File file = File.createTempFile("sort", ".run", tempDir);
+        runFiles.add(file);
+        DataOutputStream out = new DataOutputStream(new BufferedOutputStream(
+            new FileOutputStream(file)));
+        try {
+            for (Entry entry : buffer) {
+                writeValues(out, entry.key);
+                if (entry.row instanceof String) {
+                    out.writeBoolean(true);
+                    writeString(out, (String) entry.row);
+                }
+                else {
+                    out.writeBoolean(false);
+                    writeValues(out, (Object[]) entry.row);
+                }
+            }
+        }
+        finally {
+            out.close();
+        }
+        logger.debug(String.format("Wrote a sorted run of %d rows to %s.",
+            buffer.size(), file));
+        buffer.clear();
+    }
+
+    /** Reads the next row of a run into {@link #heads}. */
+    private void readHead(int run) throws IOException {
+        DataInputStream in = runReaders[run];
+        Object[] key;
+        try {
+            key = readValues(in);
+        }
+        catch (EOFException e) {
+            return;
+        }
+
+        Object row = in.readBoolean() ? readString(in) : readValues(in);
+        Entry entry = new Entry(key, row);
+        entry.run = run;
+        heads.add(entry);
+    }
+
+    private static void writeValues(DataOutputStream out, Object[] values)
+            throws IOException {
+        out.writeInt(values.length);
+        for (Object value : values) {
+            if (value == null) {
+                out.writeByte(TAG_NULL);
+            }
+            else if (value instanceof Byte) {
+                out.writeByte(TAG_BYTE);
+                out.writeByte((Byte) value);
+            }
+            else if (value instanceof Short) {
+                out.writeByte(TAG_SHORT);
+                out.writeShort((Short) value);
+            }
+            else if (value instanceof Integer) {
+                out.writeByte(TAG_INT);
+                out.writeInt((Integer) value);
+            }
+            else if (value instanceof Long) {
+                out.writeByte(TAG_LONG);
+                out.writeLong((Long) value);
+            }
+            else if (value instanceof Float) {
+                out.writeByte(TAG_FLOAT);
+                out.writeFloat((Float) value);
+            }
+            else if (value instanceof Double) {
+                out.writeByte(TAG_DOUBLE);
+                out.writeDouble((Double) value);
+            }
+            else if (value instanceof String) {
+                out.writeByte(TAG_STRING);
+                writeString(out, (String) value);
+            }
+            else {
+                throw new IllegalArgumentException("Can't sort values of " +
+                    value.getClass());
+            }
+        }
+    }
+
+    private static Object[] readValues(DataInputStream in) throws IOException {
+        Object[] values = new Object[in.readInt()];
+        for (int i = 0; i < values.length; i++) {
+            int tag = in.readByte();
+            switch (tag) {
+            case TAG_NULL:
+                break;
+            case TAG_BYTE:
+                values[i] = in.readByte();
+                break;
+            case TAG_SHORT:
+                values[i] = in.readShort();
+                break;
+            case TAG_INT:
+                values[i] = in.readInt();
+                break;
+            case TAG_LONG:
+                values[i] = in.readLong();
+                break;
+            case TAG_FLOAT:
+                values[i] = in.readFloat();
+                break;
+            case TAG_DOUBLE:
+                values[i] = in.readDouble();
+                break;
+            case TAG_STRING:
+                values[i] = readString(in);
+                break;
+            default:
+                throw new IOException("Corrupt sorted run:  unknown tag " + tag);
+            }
+        }
+        return values;
+    }
+
+    /** Writes a string of any length, unlike writeUTF. */
+    private static void writeString(DataOutputStream out, String s)
+            throws IOException {
+        byte[] bytes = s.getBytes(StandardCharsets.UTF_8);
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    private static String readString(DataInputStream in) throws IOException {
+        byte[] bytes = new byte[in.readInt()];
+        in.readFully(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+}
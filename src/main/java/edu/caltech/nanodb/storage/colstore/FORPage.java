@@ -0,0 +1,115 @@
+package edu.caltech.nanodb.storage.colstore;
+
+import org.apache.log4j.Logger;
+
+import edu.caltech.nanodb.storage.DBPage;
+import edu.caltech.nanodb.storage.FileEncoding;
+import edu.caltech.nanodb.storage.PageWriter;
+
+/**
+ * Frame-of-reference encoded page for integer columns.  The page stores the
+ * smallest value on the page as its base, and each value as its offset from
+ * the base, bit-packed with as many bits as the largest offset needs.  No row
+ * ids are stored; the rows of a page follow on from the previous page.
+ *
+ * <pre>
+ * |   4B   |  4B  |        4B       |  8B  |   4B    |         ...          |
+ * |文件压缩方式|count |NEXT_BLOCK_OFFSET| base | bitsize | bit-packed offsets |
+ * </pre>
+ */
+public class FORPage {
+    private static Logger logger = Logger.getLogger(FORPage.class);
+
+    public static final int ENCODING_OFFSET = 2;
+
+    public static final int ENCODING_MARKER = FileEncoding.FOR.ordinal();
+
+    public static final int COUNT_OFFSET = 6;
+
+    public static final int NEXT_BLOCK_START_OFFSET = 10;
+
+    public static final int FIRST_BLOCK_OFFSET = 14;
+
+    public static final int BASE_OFFSET = 14;
+
+    public static final int BITSIZE_OFFSET = 22;
+
+    public static final int DATA_OFFSET = 26;
+
+
+    /**
+     * Returns the number of values that fit on a page whose offsets take
+     * <tt>bitsize</tt> bits.
+     */
+    public static int getPageCapacity(int pageSize, int bitsize) {
+        return BitPacking.getCapacity(pageSize, DATA_OFFSET, bitsize);
+    }
+
+    /**
+     * Returns true if <tt>count</tt> values from <tt>min</tt> to <tt>max</tt>
+     * fit on one page.
+     */
+    public static boolean fits(int pageSize, int count, long min, long max) {
+        long range = max - min;
+        if (range < 0 || range > 0xFFFFFFFFL)
+            return false;
+
+        return count <= getPageCapacity(pageSize, BitPacking.getBitSize(range));
+    }
+
+    /**
+     * Writes a page of values.
+     *
+     * @param dbPage the page to write
+     * @param values the values to store
+     * @param count the number of values to store
+     */
+    public static void writePage(DBPage dbPage, long[] values, int count) {
+        long min = Long.MAX_VALUE;
+        long max = Long.MIN_VALUE;
+        for (int i = 0; i < count; i++) {
+            min = Math.min(min, values[i]);
+            max = Math.max(max, values[i]);
+        }
+        if (count == 0)
+            min = max = 0;
+
+        if (!fits(dbPage.getPageSize(), count, min, max)) {
+            throw new IllegalArgumentException(count +
+                " values don't fit on a page with range " + min + " to " + max);
+        }
+
+        int bitsize = BitPacking.getBitSize(max - min);
+        int[] offsets = new int[count];
+        for (int i = 0; i < count; i++)
+            offsets[i] = (int) (values[i] - min);
+
+        PageWriter writer = new PageWriter(dbPage);
+        writer.setPosition(ENCODING_OFFSET);
+        writer.writeInt(ENCODING_MARKER);
+        writer.writeInt(count);
+        writer.writeInt(BitPacking.pack(dbPage, DATA_OFFSET, offsets, count, bitsize));
+        writer.writeLong(min);
+        writer.writeInt(bitsize);
+    }
+
+    /**
+     * Decodes all of the values on a page in one pass.
+     *
+     * @param dbPage the page to read
+     * @param values the array to store the values into
+     * @param offsets scratch space for the unpacked offsets
+     * @return the number of values on the page
+     */
+    public static int readPage(DBPage dbPage, long[] values, int[] offsets) {
+        int count = dbPage.readInt(COUNT_OFFSET);
+        long base = dbPage.readLong(BASE_OFFSET);
+        int bitsize = dbPage.readInt(BITSIZE_OFFSET);
+
+        BitPacking.unpack(dbPage, DATA_OFFSET, count, bitsize, offsets);
+        for (int i = 0; i < count; i++)
+            values[i] = base + (offsets[i] & 0xFFFFFFFFL);
+
+        return count;
+    }
+}
@@ -40,7 +40,7 @@ public class RLEPage {
     }
 
     /** Writes a RLE block. */
-    public static boolean writeBlock(DBPage dbPage, String object, int start, 
+    public static boolean writeBlock(DBPage dbPage, Object object, int start, 
     	int length, ColumnType colType) throws IllegalArgumentException {
     	
     	PageReader rleReader = new PageReader(dbPage);
@@ -0,0 +1,295 @@
+package edu.caltech.nanodb.storage.colstore;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.util.Arrays;
+
+/**
+ * A compressed set of row numbers, in the style of a roaring bitmap.  The
+ * row numbers are split into chunks of 65536 rows by their upper 16 bits,
+ * and each chunk that holds rows has a container of the lower 16 bits:
+ * <ul>
+ *   <li>an array container, a sorted array of the rows, while the chunk
+ *       holds at most {@link #ARRAY_MAX_SIZE} rows</li>
+ *   <li>a bitmap container of 65536 bits once it holds more</li>
+ * </ul>
+ * So a few scattered rows take 2 bytes each, and a chunk never takes more
+ * than 8KB however many of its rows are set.
+ * <p>
+ * Containers are kept in parallel arrays, sorted by their chunk.
+ */
+public class RowBitmap {
+
+    /** The most rows an array container holds before it becomes a bitmap. */
+    public static final int ARRAY_MAX_SIZE = 4096;
+
+    /** The number of 64-bit words of a bitmap container. */
+    private static final int BITMAP_WORDS = 1024;
+
+    private static final int KIND_ARRAY = 0;
+
+    private static final int KIND_BITMAP = 1;
+
+
+    /** The number of containers. */
+    private int size;
+
+    /** The upper 16 bits of the rows of each container. */
+    private int[] keys;
+
+    /** The number of rows of each container. */
+    private int[] cardinalities;
+
+    /** The rows of each array container, or null for bitmap containers. */
+    private char[][] arrays;
+
+    /** The bits of each bitmap container, or null for array containers. */
+    private long[][] bitmaps;
+
+
+    public RowBitmap() {
+        keys = new int[4];
+        cardinalities = new int[4];
+        arrays = new char[4][];
+        bitmaps = new long[4][];
+    }
+
+
+    /**
+     * Adds a row.
+     *
+     * @param row the row number, which must not be negative
+     * @return true if the row was added, false if it was already set
+     */
+    public boolean add(int row) {
+        int key = row >>> 16;
+        char low = (char) row;
+        int i = findContainer(key);
+        if (i < 0) {
+            i = -i - 1;
+            insertContainer(i, key);
+        }
+
+        if (bitmaps[i] != null) {
+            long[] words = bitmaps[i];
+            long bit = 1L << low;
+            if ((words[low >>> 6] & bit) != 0)
+                return false;
+
+            words[low >>> 6] |= bit;
+            cardinalities[i]++;
+            return true;
+        }
+
+        char[] array = arrays[i];
+        int n = cardinalities[i];
+        int pos = Arrays.binarySearch(array, 0, n, low);
+        if (pos >= 0)
+            return false;
+
+        if (n == ARRAY_MAX_SIZE) {
+            toBitmap(i);
+            return add(row);
+        }
+
+        pos = -pos - 1;
+        if (n == array.length) {
+            array = Arrays.copyOf(array, Math.min(n * 2, ARRAY_MAX_SIZE));
+            arrays[i] = array;
+        }
+        System.arraycopy(array, pos, array, pos + 1, n - pos);
+        array[pos] = low;
+        cardinalities[i]++;
+        return true;
+    }
+
+    /** Returns true if a row is set. */
+    public boolean contains(int row) {
+        int i = findContainer(row >>> 16);
+        if (i < 0)
+            return false;
+
+        char low = (char) row;
+        if (bitmaps[i] != null)
+            return (bitmaps[i][low >>> 6] & (1L << low)) != 0;
+
+        return Arrays.binarySearch(arrays[i], 0, cardinalities[i], low) >= 0;
+    }
+
+    /** Returns the number of rows that are set. */
+    public int getCardinality() {
+        int n = 0;
+        for (int i = 0; i < size; i++)
+            n += cardinalities[i];
+        return n;
+    }
+
+    /** Returns true if no row is set. */
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    /**
+     * Returns the number of rows that are set in the range
+     * <tt>[from, to)</tt>.  Chunks inside the range are counted from their
+     * cardinality, without looking at their rows.
+     */
+    public int countRange(int from, int to) {
+        if (from >= to || size == 0)
+            return 0;
+
+        int last = (to - 1) >>> 16;
+        int i = findContainer(from >>> 16);
+        if (i < 0)
+            i = -i - 1;
+
+        int n = 0;
+        for (; i < size && keys[i] <= last; i++) {
+            int base = keys[i] << 16;
+            int lo = Math.max(from - base, 0);
+            int hi = Math.min(to - base, 65536);
+            if (lo == 0 && hi == 65536) {
+                n += cardinalities[i];
+            }
+            else if (bitmaps[i] != null) {
+                n += countBits(bitmaps[i], lo, hi);
+            }
+            else {
+                char[] array = arrays[i];
+                int start = lowerBound(array, cardinalities[i], lo);
+                int end = lowerBound(array, cardinalities[i], hi);
+                n += end - start;
+            }
+        }
+        return n;
+    }
+
+
+    /**
+     * Writes the bitmap to an output.  Each container is written with its
+     * chunk, cardinality and kind, followed by its rows or its bits.
+     */
+    public void write(DataOutput out) throws IOException {
+        out.writeInt(size);
+        for (int i = 0; i < size; i++) {
+            out.writeShort(keys[i]);
+            out.writeInt(cardinalities[i]);
+            if (bitmaps[i] != null) {
+                out.writeByte(KIND_BITMAP);
+                for (long word : bitmaps[i])
+                    out.writeLong(word);
+            }
+            else {
+                out.writeByte(KIND_ARRAY);
+                for (int j = 0; j < cardinalities[i]; j++)
+                    out.writeChar(arrays[i][j]);
+            }
+        }
+    }
+
+    /** Reads a bitmap written by {@link #write}. */
+    public static RowBitmap read(DataInput in) throws IOException {
+        RowBitmap bitmap = new RowBitmap();
+        int n = in.readInt();
+        for (int i = 0; i < n; i++) {
+            int key = in.readUnsignedShort();
+            int cardinality = in.readInt();
+            int kind = in.readByte();
+            bitmap.insertContainer(i, key);
+            bitmap.cardinalities[i] = cardinality;
+            if (kind == KIND_BITMAP) {
+                long[] words = new long[BITMAP_WORDS];
+                for (int j = 0; j < BITMAP_WORDS; j++)
+                    words[j] = in.readLong();
+                bitmap.arrays[i] = null;
+                bitmap.bitmaps[i] = words;
+            }
+            else {
+                char[] array = new char[Math.max(cardinality, 4)];
+                for (int j = 0; j < cardinality; j++)
+                    array[j] = in.readChar();
+                bitmap.arrays[i] = array;
+            }
+        }
+        return bitmap;
+    }
+
+    /** Returns the number of bytes {@link #write} writes. */
+    public int getSerializedSize() {
+        int n = 4;
+        for (int i = 0; i < size; i++) {
+            n += 7;
+            n += (bitmaps[i] != null) ? BITMAP_WORDS * 8 : cardinalities[i] * 2;
+        }
+        return n;
+    }
+
+
+    /**
+     * Returns the index of the container of a chunk, or
+     * <tt>-(insertion point) - 1</tt> if there is none.
+     */
+    private int findContainer(int key) {
+        return Arrays.binarySearch(keys, 0, size, key);
+    }
+
+    /** Inserts an empty array container at index <tt>i</tt>. */
+    private void insertContainer(int i, int key) {
+        if (size == keys.length) {
+            int capacity = size * 2;
+            keys = Arrays.copyOf(keys, capacity);
+            cardinalities = Arrays.copyOf(cardinalities, capacity);
+            arrays = Arrays.copyOf(arrays, capacity);
+            bitmaps = Arrays.copyOf(bitmaps, capacity);
+        }
+        System.arraycopy(keys, i, keys, i + 1, size - i);
+        System.arraycopy(cardinalities, i, cardinalities, i + 1, size - i);
+        System.arraycopy(arrays, i, arrays, i + 1, size - i);
+        System.arraycopy(bitmaps, i, bitmaps, i + 1, size - i);
+        keys[i] = key;
+        cardinalities[i] = 0;
+        arrays[i] = new char[4];
+        bitmaps[i] = null;
+        size++;
+    }
+
+    /** Turns a full array container into a bitmap container. */
+    private void toBitmap(int i) {
+        long[] words = new long[BITMAP_WORDS];
+        char[] array = arrays[i];
+        for (int j = 0; j < cardinalities[i]; j++)
+            words[array[j] >>> 6] |= 1L << array[j];
+        arrays[i] = null;
+        bitmaps[i] = words;
+    }
+
+    /** Returns the number of set bits of a bitmap container in [lo, hi). */
+    private static int countBits(long[] words, int lo, int hi) {
+        int first = lo >>> 6;
+        int last = (hi - 1) >>> 6;
+        long firstMask = -1L << lo;
+        long lastMask = -1L >>> (63 - ((hi - 1) & 63));
+        if (first == last)
+            return Long.bitCount(words[first] & firstMask & lastMask);
+
+        int n = Long.bitCount(words[first] & firstMask);
+        for (int w = first + 1; w < last; w++)
+            n += Long.bitCount(words[w]);
+        return n + Long.bitCount(words[last] & lastMask);
+    }
+
+    /** Returns the index of the first entry of an array that is >= value. */
+    private static int lowerBound(char[] array, int n, int value) {
+        int lo = 0;
+        int hi = n;
+        while (lo < hi) {
+            int mid = (lo + hi) >>> 1;
+            if (array[mid] < value)
+                lo = mid + 1;
+            else
+                hi = mid;
+        }
+        return lo;
+    }
+}
@@ -0,0 +1,453 @@
+package edu.caltech.nanodb.storage.colstore;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.concurrent.Callable;
+import java.util.concurrent.locks.Lock;
+
+import org.apache.log4j.Logger;
+
+import edu.caltech.nanodb.client.SessionState;
+import edu.caltech.nanodb.relations.ColumnIndexes;
+import edu.caltech.nanodb.relations.Tuple;
+import edu.caltech.nanodb.storage.DBFile;
+import edu.caltech.nanodb.storage.DBFileType;
+import edu.caltech.nanodb.storage.DBPage;
+import edu.caltech.nanodb.storage.PageTuple;
+import edu.caltech.nanodb.storage.StorageManager;
+import edu.caltech.nanodb.storage.TableFileInfo;
+import edu.caltech.nanodb.transactions.TransactionException;
+import edu.caltech.nanodb.transactions.TransactionManager;
+import edu.caltech.nanodb.transactions.TransactionState;
+
+/**
+ * Compacts a column-store table: the rows of all of its row groups that
+ * haven't been deleted, and the rows of its delta store, are written to new
+ * column files, in row groups of up to
+ * {@link ColStoreTableManager#PROP_OPTIMIZE_GROUP_ROWS} rows.  Small groups
+ * are merged, deleted rows are dropped, and the loaders pick the encoding
+ * of every page again.  If a sort key is given, the rows are sorted by it
+ * first with an {@link ExternalSorter}, so that runs form for RLE.  Tables
+ * with a sort key are sorted by it unless other columns are given.
+ * <p>
+ * The new files are written next to the table's files, with a
+ * <tt>.compact</tt> suffix, while queries keep reading the old files.  Pages
+ * are written at no more than
+ * {@link ColStoreTableManager#PROP_OPTIMIZE_PAGES_PER_SECOND} pages a second.
+ * The new files are then swapped in under the write lock of
+ * {@link ColStoreTableManager#getQueryLock}, so no query or load sees a mix of
+ * old and new files.  If the table was changed while it was being compacted,
+ * the new files are thrown away instead.
+ */
+public class TableCompactor implements Callable<Integer> {
+    private static Logger logger = Logger.getLogger(TableCompactor.class);
+
+    /** The suffix of the names of the files a compaction writes. */
+    public static final String TEMP_SUFFIX = ".compact";
+
+    private StorageManager storageManager;
+
+    private ColStoreTableManager tableManager;
+
+    private TableFileInfo tblFileInfo;
+
+    /** The columns to sort the rows by, or an empty array to keep their order. */
+    private int[] sortColumns;
+
+    private int groupRows;
+
+    private int pagesPerSecond;
+
+    /**
+     * The table's sort key, if the rows are sorted so that the groups are in
+     * its order, or null.
+     */
+    private ColumnIndexes groupKey;
+
+    /** The sort key of the first row of the group being written, or null. */
+    private Object[] groupFirstKey;
+
+
+    TableCompactor(StorageManager storageManager,
+                   ColStoreTableManager tableManager, TableFileInfo tblFileInfo,
+                   int[] sortColumns, int groupRows, int pagesPerSecond) {
+        this.storageManager = storageManager;
+        this.tableManager = tableManager;
+        this.tblFileInfo = tblFileInfo;
+        this.sortColumns = sortColumns;
+        this.groupRows = groupRows;
+        this.pagesPerSecond = pagesPerSecond;
+
+        // Rows sorted by columns that start with the sort key are in its order.
+        ColumnIndexes sortKey = tblFileInfo.getSchema().getSortKey();
+        if (sortKey != null && sortKey.size() <= sortColumns.length) {
+            groupKey = sortKey;
+            for (int i = 0; i < sortKey.size(); i++) {
+                if (sortKey.getCol(i) != sortColumns[i])
+                    groupKey = null;
+            }
+        }
+    }
+
+
+    /**
+     * Compacts the table.
+     *
+     * @return the number of rows of the compacted table, or -1 if the table
+     *         changed during the compaction and was left as it was
+     */
+    @Override
+    public Integer call() throws IOException {
+        try {
+            return compact();
+        }
+        finally {
+            // The compaction doesn't run as part of a command, so nothing
+            // else unpins the pages it pinned.
+            storageManager.unpinAllDBPages();
+        }
+    }
+
+    private int compact() throws IOException {
+        String tableName = tblFileInfo.getTableName();
+        long start = System.currentTimeMillis();
+
+        TableFileInfo tempInfo = null;
+        int changes;
+        int rows;
+        Lock queryLock = ColStoreTableManager.getQueryLock().readLock();
+        queryLock.lock();
+        try {
+            changes = tableManager.getChangeCount(tblFileInfo);
+            deleteTempFiles();
+            tempInfo = createTempTable();
+            rows = copyRows(tempInfo);
+            storageManager.closeTable(tempInfo);
+        }
+        catch (IOException | RuntimeException e) {
+            // Nobody may be waiting for the result of the compaction.
+            logger.error("Couldn't compact table " + tableName, e);
+            discard(tempInfo);
+            throw e;
+        }
+        finally {
+            queryLock.unlock();
+        }
+
+        Lock swapLock = ColStoreTableManager.getQueryLock().writeLock();
+        swapLock.lock();
+        try {
+            if (!isUnchanged(changes)) {
+                deleteTempFiles();
+                logger.info(String.format("Table %s changed while it was " +
+                    "being compacted; the compacted files were discarded.",
+                    tableName));
+                return -1;
+            }
+            swapFiles();
+        }
+        finally {
+            swapLock.unlock();
+        }
+
+        logger.info(String.format("Compacted table %s into %d rows in %d ms.",
+            tableName, rows, System.currentTimeMillis() - start));
+        return rows;
+    }
+
+    /**
+     * Returns true if the table is still open as the same table, and nothing
+     * has been added to, deleted from or updated in it.
+     */
+    private boolean isUnchanged(int changes) throws IOException {
+        TableFileInfo current;
+        try {
+            current = storageManager.openTable(tblFileInfo.getTableName());
+        }
+        catch (IOException e) {
+            // The table has been dropped.
+            return false;
+        }
+        return current == tblFileInfo &&
+            tableManager.getChangeCount(tblFileInfo) == changes;
+    }
+
+
+    private String getHeaderFileName() {
+        return tblFileInfo.getTableName() + ".tbl";
+    }
+
+    private String getColumnFileName(int column) {
+        String tableName = tblFileInfo.getTableName();
+        return tableName + "/" + tableName + "." +
+            tblFileInfo.getSchema().getColumnInfo(column).getName() + ".tbl";
+    }
+
+    /**
+     * Creates the files of the compacted table.  The header page is a copy of
+     * the table's, with the schema, but without any row groups, so its groups
+     * start out in sort key order.
+     */
+    private TableFileInfo createTempTable() throws IOException {
+        DBFile headerFile = storageManager.createDBFile(
+            getHeaderFileName() + TEMP_SUFFIX, DBFileType.COLUMNSTORE_DATA_FILE,
+            tblFileInfo.getDBFile().getPageSize());
+        TableFileInfo tempInfo = new TableFileInfo(
+            tblFileInfo.getTableName() + TEMP_SUFFIX, headerFile);
+        tempInfo.setFileType(DBFileType.COLUMNSTORE_DATA_FILE);
+        tempInfo.setTableManager(tableManager);
+        tempInfo.getSchema().append(tblFileInfo.getSchema().getColumnInfos());
+        tempInfo.getSchema().setSortKey(tblFileInfo.getSchema().getSortKey());
+
+        DBPage oldHeader = storageManager.loadDBPage(tblFileInfo.getDBFile(), 0);
+        DBPage newHeader = storageManager.loadDBPage(headerFile, 0, true);
+        byte[] bytes = new byte[oldHeader.getPageSize()];
+        oldHeader.read(0, bytes);
+        newHeader.write(0, bytes);
+        CSHeaderPage.clearGroups(newHeader);
+        if (tempInfo.getSchema().getSortKey() != null)
+            CSHeaderPage.setSorted(newHeader, true);
+        storageManager.unpinDBPage(oldHeader);
+        storageManager.unpinDBPage(newHeader);
+
+        for (int i = 0; i < tempInfo.getSchema().numColumns(); i++) {
+            tempInfo.addDBFile(storageManager.createDBFile(
+                getColumnFileName(i) + TEMP_SUFFIX,
+                DBFileType.COLUMNSTORE_DATA_FILE,
+                tblFileInfo.getDBFile(i + 1).getPageSize()));
+        }
+        return tempInfo;
+    }
+
+    /**
+     * Copies the rows of the table that haven't been deleted into the new
+     * files, sorted if there is a sort key.
+     *
+     * @return the number of rows copied
+     */
+    private int copyRows(TableFileInfo tempInfo) throws IOException {
+        int numColumns = tblFileInfo.getSchema().numColumns();
+        ExternalSorter sorter = null;
+        try {
+            ColumnLoader[] loaders = null;
+            if (sortColumns.length > 0) {
+                sorter = new ExternalSorter(sortColumns,
+                    ColStoreTableManager.getSortRows(), storageManager.getBaseDir());
+            }
+            else {
+                loaders = tableManager.createLoaders(tempInfo);
+            }
+            int rows = 0;
+            long throttleStart = System.nanoTime();
+
+            Tuple tup = tableManager.getFirstTuple(tblFileInfo);
+            while (tup != null) {
+                Object[] values = new Object[numColumns];
+                for (int i = 0; i < numColumns; i++)
+                    values[i] = tup.getColumnValue(i);
+                tup = tableManager.getNextTuple(tblFileInfo, tup);
+
+                if (sorter != null) {
+                    sorter.add(values);
+                    if (sorter.getNumRows() % ColStoreTableManager.LOAD_CHUNK_ROWS == 0)
+                        releasePages(tup);
+                    continue;
+                }
+                rows++;
+                loaders = addRow(tempInfo, loaders, values, tup);
+                if (rows % ColStoreTableManager.LOAD_CHUNK_ROWS == 0)
+                    throttle(loaders, throttleStart);
+            }
+
+            if (sorter != null) {
+                sorter.finish();
+                releasePages(null);
+                loaders = tableManager.createLoaders(tempInfo);
+                Object[] values;
+                while ((values = sorter.readValues()) != null) {
+                    rows++;
+                    loaders = addRow(tempInfo, loaders, values, null);
+                    if (rows % ColStoreTableManager.LOAD_CHUNK_ROWS == 0)
+                        throttle(loaders, throttleStart);
+                }
+            }
+
+            for (ColumnLoader loader : loaders)
+                loader.finish();
+            tableManager.addGroup(tempInfo, loaders, groupFirstKey);
+            return rows;
+        }
+        finally {
+            if (sorter != null)
+                sorter.close();
+        }
+    }
+
+    /**
+     * Adds a row to the loaders.  When the loaders' group is full, the group
+     * is written, the pages pinned so far are released, and the loaders of
+     * the next group are returned.
+     *
+     * @param next the tuple the scan of the table continues from, or null if
+     *        the scan is done
+     */
+    private ColumnLoader[] addRow(TableFileInfo tempInfo, ColumnLoader[] loaders,
+                                  Object[] values, Tuple next) throws IOException {
+        if (loaders[0].getNumRows() >= groupRows) {
+            for (ColumnLoader loader : loaders)
+                loader.finish();
+            tableManager.addGroup(tempInfo, loaders, groupFirstKey);
+            releasePages(next);
+            loaders = tableManager.createLoaders(tempInfo);
+        }
+
+        if (groupKey != null && loaders[0].getNumRows() == 0)
+            groupFirstKey = ColStoreTableManager.getKey(values, groupKey);
+
+        for (int i = 0; i < loaders.length; i++)
+            loaders[i].addValue(values[i]);
+        return loaders;
+    }
+
+    /**
+     * Unpins the pages the compaction has pinned so far, so that a large
+     * table doesn't fill the buffer manager with pages that can't be
+     * evicted.  The pages the scan of the table is still reading stay
+     * pinned.  No loader may be writing a group meanwhile.
+     *
+     * @param next the tuple the scan of the table continues from, or null if
+     *        the scan is done
+     */
+    private void releasePages(Tuple next) {
+        ArrayList<DBPage> inUse = new ArrayList<DBPage>();
+        if (next instanceof CSRowTuple)
+            ((CSRowTuple) next).getReader().getPages(inUse);
+        else if (next instanceof PageTuple)
+            inUse.add(((PageTuple) next).getDBPage());
+        storageManager.unpinAllDBPages(inUse);
+    }
+
+    /**
+     * Sleeps for as long as the compaction is ahead of its rate of pages
+     * written per second.  The column files are written from their first
+     * page, so the loaders' end pages count the pages written so far.
+     */
+    private void throttle(ColumnLoader[] loaders, long start)
+            throws IOException {
+        if (pagesPerSecond <= 0)
+            return;
+
+        long pages = 0;
+        for (ColumnLoader loader : loaders)
+            pages += loader.getEndPage();
+
+        long due = start + pages * 1000000000L / pagesPerSecond;
+        long wait = (due - System.nanoTime()) / 1000000;
+        if (wait > 0) {
+            try {
+                Thread.sleep(wait);
+            }
+            catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException("Interrupted while compacting " +
+                    tblFileInfo.getTableName());
+            }
+        }
+    }
+
+    /**
+     * Replaces the table's files with the compacted ones.  The table is
+     * closed first, so that its pages are flushed and its files released.
+     * The deletion bitmaps are removed and the delta store is emptied, since
+     * their rows have been compacted.
+     */
+    private void swapFiles() throws IOException {
+        storageManager.closeTable(tblFileInfo);
+
+        File baseDir = storageManager.getBaseDir();
+        for (int i = 0; i < tblFileInfo.getSchema().numColumns(); i++)
+            moveTempFile(new File(baseDir, getColumnFileName(i)));
+        moveTempFile(new File(baseDir, getHeaderFileName()));
+
+        String tableName = tblFileInfo.getTableName();
+        Files.deleteIfExists(
+            new File(baseDir, DeleteBitmaps.getFileName(tableName)).toPath());
+        clearDeltaStore();
+    }
+
+    /**
+     * Empties the delta store of the compacted table.  The changes to the
+     * delta store's pages are in the write-ahead log, and recovery replays
+     * them into the file, so the file is emptied by a logged transaction
+     * rather than deleted.
+     */
+    private void clearDeltaStore() throws IOException {
+        TableFileInfo newInfo =
+            storageManager.openTable(tblFileInfo.getTableName());
+        DeltaStore deltaStore = tableManager.getDeltaStore(newInfo);
+        if (deltaStore == null)
+            return;
+
+        TransactionManager txnMgr = storageManager.getTransactionManager();
+        if (txnMgr == null) {
+            deltaStore.clear();
+            return;
+        }
+
+        TransactionState txnState = SessionState.get().getTxnState();
+        try {
+            txnMgr.startTransaction(false);
+            deltaStore.clear();
+            txnMgr.commitTransaction();
+        }
+        catch (TransactionException e) {
+            throw new IOException("Couldn't empty the delta store of " +
+                tblFileInfo.getTableName(), e);
+        }
+        finally {
+            if (txnState.isTxnInProgress()) {
+                try {
+                    txnMgr.rollbackTransaction();
+                }
+                catch (TransactionException e) {
+                    logger.error("Couldn't roll back emptying the delta " +
+                        "store of " + tblFileInfo.getTableName(), e);
+                }
+            }
+        }
+    }
+
+    private void moveTempFile(File file) throws IOException {
+        File temp = new File(file.getPath() + TEMP_SUFFIX);
+        Files.move(temp.toPath(), file.toPath(),
+            StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    /** Closes and deletes the files of a compaction that failed. */
+    private void discard(TableFileInfo tempInfo) {
+        try {
+            if (tempInfo != null)
+                storageManager.closeTable(tempInfo);
+            deleteTempFiles();
+        }
+        catch (IOException e) {
+            logger.warn("Couldn't delete the files of a failed compaction of " +
+                tblFileInfo.getTableName(), e);
+        }
+    }
+
+    /** Deletes compacted files left over by an earlier compaction. */
+    private void deleteTempFiles() throws IOException {
+        File baseDir = storageManager.getBaseDir();
+        Files.deleteIfExists(
+            new File(baseDir, getHeaderFileName() + TEMP_SUFFIX).toPath());
+        for (int i = 0; i < tblFileInfo.getSchema().numColumns(); i++) {
+            Files.deleteIfExists(new File(baseDir,
+                getColumnFileName(i) + TEMP_SUFFIX).toPath());
+        }
+    }
+}
@@ -10,12 +10,15 @@ import edu.caltech.nanodb.storage.PageWriter;
 
 /**
  * <pre>
- * |    1B  |       1B     |   4B      |  4B  |        4B       |
- * |FileType|encodePageSize|文件压缩方式 |count |NEXT_BLOCK_OFFSET|
+ * |    1B  |       1B     |   4B      |  4B  |        4B       |    4B   |
+ * |FileType|encodePageSize|文件压缩方式 |count |NEXT_BLOCK_OFFSET|首行rowId|
  *
- * | 1B  |    4B     |  1B  |    4B     |
- * | 数据 | 数据偏移量  | 数据 | 数据偏移量  |
+ * | 1B  | 1B  | 1B  |
+ * | 数据 | 数据 | 数据 |
  * </pre>
+ * 值之间不再存储rowId, 第N行的值是页内第(N - 首行rowId)个值.
+ * 定长类型的值紧密排列, 第N行的值位于
+ * FIRST_BLOCK_OFFSET + (N - 首行rowId) * 值宽度, 可以直接随机访问.
  */
 public class UncompressedPage {
 
@@ -29,21 +32,25 @@ public class UncompressedPage {
 
     public static final int NEXT_BLOCK_START_OFFSET = 10;
 
-    public static final int FIRST_BLOCK_OFFSET = 14;
+    public static final int FIRST_ROW_OFFSET = 14;
+
+    public static final int FIRST_BLOCK_OFFSET = 18;
 
     /**
      * Initialize a newly allocated page. Currently this involves setting the
      * number of values to 0 and marking the page as normal page.
      *
      * @param dbPage the data page to initialize
+     * @param firstRowId the rowId of the first value on the page
      */
-    public static void initNewPage(DBPage dbPage) {
+    public static void initNewPage(DBPage dbPage, int firstRowId) {
         PageWriter uncWriter = new PageWriter(dbPage);
         uncWriter.setPosition(ENCODING_OFFSET);
         // 页压缩类型
         uncWriter.writeInt(ENCODING_MARKER);
         uncWriter.writeInt(0);
         uncWriter.writeInt(FIRST_BLOCK_OFFSET);
+        uncWriter.writeInt(firstRowId);
     }
 
     /**
@@ -51,11 +58,10 @@ public class UncompressedPage {
      * 
      * @param dbPage 待编辑的page
      * @param object 待写入的数据
-     * @param position 数据的偏移量类似于rowId
      * @param type 列类型
      * @return 添加成功与否
      */
-    public static boolean writeBlock(DBPage dbPage, String object, int position, ColumnType type) {
+    public static boolean writeBlock(DBPage dbPage, Object object, ColumnType type) {
 
         PageReader uncReader = new PageReader(dbPage);
         PageWriter uncWriter = new PageWriter(dbPage);
@@ -70,20 +76,17 @@ public class UncompressedPage {
         uncReader.setPosition(NEXT_BLOCK_START_OFFSET);
         int writeOffset = uncReader.readInt();
 
-        // 检查是否超过page size, +4是因为还要记录该object的offset
-        if (writeOffset + DBPage.getObjectDiskSize(object, type) + 4 > dbPage.getPageSize()) {
+        // 检查是否超过page size
+        if (writeOffset + DBPage.getObjectDiskSize(object, type) > dbPage.getPageSize()) {
             return false;
         }
         // 将值写入到文件
         int dataSize = dbPage.writeObject(writeOffset, type, object);
-        uncWriter.setPosition(writeOffset + dataSize);
-        // 此值的偏移量也记录下来
-        uncWriter.writeInt(position);
 
         // 获取当前记录数和记录位置
         uncReader.setPosition(COUNT_OFFSET);
         int count = uncReader.readInt() + 1;
-        int next_write_pos = uncWriter.getPosition();
+        int next_write_pos = writeOffset + dataSize;
 
         // 更新总记录数和下次追加记录的位置
         uncWriter.setPosition(COUNT_OFFSET);
@@ -148,7 +151,7 @@ public class UncompressedPage {
             return -1;
         }
 
-        return blockStart + DBPage.getObjectDiskSize(dbPage.readObject(blockStart, colType), colType) + 4;
+        return blockStart + CSDataPage.getValueSize(dbPage, blockStart, colType);
     }
 
     /**
@@ -161,4 +164,113 @@ public class UncompressedPage {
     public static int getFirstBlockEndOffset(DBPage dbPage, ColumnType colType) {
         return getBlockEndOffset(dbPage, FIRST_BLOCK_OFFSET, colType);
     }
+
+    /**
+     * 从指定位置开始连续读取值到batch中, 直到batch达到limit或者读到页内最后一个值
+     *
+     * @param dbPage 数据页
+     * @param offset 第一个值的偏移量
+     * @param end 页内数据的结束偏移量
+     * @param batch 存放读取结果的batch
+     * @param limit 读取后batch的最大size
+     * @return 下一个未读取值的偏移量
+     */
+    public static int readBatch(DBPage dbPage, int offset, int end, ColumnBatch batch,
+                                int limit) {
+        ColumnType colType = batch.getColumnType();
+        int size = batch.getSize();
+        int capacity = Math.min(limit, batch.getCapacity());
+
+        // 数值类型一次性批量读取n个值, 其它类型逐个读取
+        int width = CSDataPage.getFixedValueSize(colType);
+        int n = 0;
+        if (batch.getValueKind() != ColumnBatch.Kind.OBJECT)
+            n = Math.max(0, Math.min(capacity - size, (end - offset) / width));
+        switch (colType.getBaseType()) {
+        case INTEGER:
+            dbPage.readInts(offset, batch.getInts(), size, n);
+            break;
+        case SMALLINT: {
+            int[] ints = batch.getInts();
+            for (int i = 0; i < n; i++)
+                ints[size + i] = dbPage.readShort(offset + i * 2);
+            break;
+        }
+        case TINYINT: {
+            int[] ints = batch.getInts();
+            for (int i = 0; i < n; i++)
+                ints[size + i] = dbPage.readByte(offset + i);
+            break;
+        }
+        case BIGINT:
+            dbPage.readLongs(offset, batch.getLongs(), size, n);
+            break;
+        case FLOAT: {
+            double[] doubles = batch.getDoubles();
+            for (int i = 0; i < n; i++)
+                doubles[size + i] = dbPage.readFloat(offset + i * 4);
+            break;
+        }
+        case DOUBLE:
+            dbPage.readDoubles(offset, batch.getDoubles(), size, n);
+            break;
+        default: {
+            Object[] objects = batch.getObjects();
+            while (offset < end && size < capacity) {
+                Object value = dbPage.readObject(offset, colType);
+                objects[size++] = value;
+                offset += CSDataPage.getValueSize(dbPage, offset, colType);
+            }
+        }
+        }
+        size += n;
+        offset += n * width;
+
+        batch.setSize(size);
+        return offset;
+    }
+
+    /**
+     * 获取页内第一个值的rowId
+     *
+     * @param dbPage 数据页
+     * @return 第一个值的rowId
+     */
+    public static int getFirstRowId(DBPage dbPage) {
+        return dbPage.readInt(FIRST_ROW_OFFSET);
+    }
+
+    /**
+     * 根据rowId找到该行的值在页内的偏移量, 不需要解码其它的值.
+     * 定长类型直接根据值宽度计算, 变长类型从第一个值开始逐个跳过.
+     *
+     * @param dbPage 数据页
+     * @param rowId 要查找的rowId
+     * @param colType 列类型
+     * @return 该行的值的偏移量; 如果该行不在此页中则返回页内数据的结束偏移量
+     */
+    public static int getRowOffset(DBPage dbPage, int rowId, ColumnType colType) {
+        return skipValues(dbPage, FIRST_BLOCK_OFFSET, rowId - getFirstRowId(dbPage),
+            colType);
+    }
+
+    /**
+     * 从offset处的值开始向后跳过n个值, 不需要解码这些值.
+     *
+     * @param dbPage 数据页
+     * @param offset 起始值的偏移量
+     * @param n 要跳过的值的个数
+     * @param colType 列类型
+     * @return 跳过后的值的偏移量, 最多为页内数据的结束偏移量
+     */
+    public static int skipValues(DBPage dbPage, int offset, int n, ColumnType colType) {
+        int end = CSDataPage.getBlocksEnd(dbPage);
+        int width = CSDataPage.getFixedValueSize(colType);
+        if (width >= 0)
+            return Math.min(end, offset + n * width);
+
+        for (; n > 0 && offset < end; n--)
+            offset += CSDataPage.getValueSize(dbPage, offset, colType);
+        return offset;
+    }
 }
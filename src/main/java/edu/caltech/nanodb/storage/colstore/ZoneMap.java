@@ -0,0 +1,173 @@
+package edu.caltech.nanodb.storage.colstore;
+
+import java.util.Arrays;
+
+/**
+ * The zone map of a column: for every data page of the column, the page
+ * number, the rows the page holds, how many of them are null, and the
+ * smallest and largest non-null value on the page.  A scan uses the zone map
+ * to skip pages whose values can't satisfy its predicate, and to find the
+ * page that holds a row without reading the pages before it.
+ * <p>
+ * Entries are in row order, and every entry holds at least one row.
+ */
+public class ZoneMap {
+
+    private int size;
+
+    private int[] pageNos;
+
+    private int[] firstRows;
+
+    private int[] counts;
+
+    private int[] nullCounts;
+
+    private Object[] mins;
+
+    private Object[] maxs;
+
+    /** True if the column's values are in order across its pages. */
+    private boolean sorted;
+
+
+    public ZoneMap() {
+        pageNos = new int[16];
+        firstRows = new int[16];
+        counts = new int[16];
+        nullCounts = new int[16];
+        mins = new Object[16];
+        maxs = new Object[16];
+    }
+
+
+    /**
+     * Adds the entry of a data page.
+     *
+     * @param pageNo the page number of the data page
+     * @param firstRow the row number of the first value on the page
+     * @param count the number of values on the page
+     * @param nullCount the number of those values that are null
+     * @param min the smallest non-null value, or null if there is none
+     * @param max the largest non-null value, or null if there is none
+     */
+    public void addPage(int pageNo, int firstRow, int count, int nullCount,
+                        Object min, Object max) {
+        if (size == pageNos.length) {
+            int capacity = size * 2;
+            pageNos = Arrays.copyOf(pageNos, capacity);
+            firstRows = Arrays.copyOf(firstRows, capacity);
+            counts = Arrays.copyOf(counts, capacity);
+            nullCounts = Arrays.copyOf(nullCounts, capacity);
+            mins = Arrays.copyOf(mins, capacity);
+            maxs = Arrays.copyOf(maxs, capacity);
+        }
+
+        pageNos[size] = pageNo;
+        firstRows[size] = firstRow;
+        counts[size] = count;
+        nullCounts[size] = nullCount;
+        mins[size] = min;
+        maxs[size] = max;
+        size++;
+    }
+
+    /**
+     * Starts the entry of a data page whose values will be added one at a
+     * time with {@link #addValue}.
+     */
+    public void startPage(int pageNo, int firstRow) {
+        addPage(pageNo, firstRow, 0, 0, null, null);
+    }
+
+    /**
+     * Adds a value, repeated <tt>n</tt> times, to the last entry.
+     *
+     * @param value the value, or null
+     * @param n the number of times the value occurs
+     */
+    @SuppressWarnings("unchecked")
+    public void addValue(Object value, int n) {
+        int i = size - 1;
+        counts[i] += n;
+        if (value == null) {
+            nullCounts[i] += n;
+            return;
+        }
+
+        if (mins[i] == null || ((Comparable) value).compareTo(mins[i]) < 0)
+            mins[i] = value;
+        if (maxs[i] == null || ((Comparable) value).compareTo(maxs[i]) > 0)
+            maxs[i] = value;
+    }
+
+    /** Removes the last entry if it doesn't hold any rows. */
+    public void trim() {
+        if (size > 0 && counts[size - 1] == 0)
+            size--;
+    }
+
+
+    /** Returns the number of entries. */
+    public int size() {
+        return size;
+    }
+
+    public int getPageNo(int i) {
+        return pageNos[i];
+    }
+
+    public int getFirstRow(int i) {
+        return firstRows[i];
+    }
+
+    public int getCount(int i) {
+        return counts[i];
+    }
+
+    public int getNullCount(int i) {
+        return nullCounts[i];
+    }
+
+    public Object getMin(int i) {
+        return mins[i];
+    }
+
+    public Object getMax(int i) {
+        return maxs[i];
+    }
+
+    /**
+     * Records whether the column's values are in ascending order, with nulls
+     * first, so that the entries' ranges of values don't overlap.
+     */
+    public void setSorted(boolean sorted) {
+        this.sorted = sorted;
+    }
+
+    public boolean isSorted() {
+        return sorted;
+    }
+
+    /** Returns the number of rows of the column. */
+    public int getNumRows() {
+        return (size == 0) ? 0 : firstRows[size - 1] + counts[size - 1];
+    }
+
+    /**
+     * Returns the entry of the page that holds a row, or {@link #size()} if
+     * the row is past the end of the column.
+     */
+    public int findPage(int row) {
+        int lo = 0;
+        int hi = size;
+        while (lo < hi) {
+            int mid = (lo + hi) >>> 1;
+            if (firstRows[mid] + counts[mid] <= row)
+                lo = mid + 1;
+            else
+                hi = mid;
+        }
+        return lo;
+    }
+}
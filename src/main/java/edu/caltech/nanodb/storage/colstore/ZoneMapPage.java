@@ -0,0 +1,128 @@
+package edu.caltech.nanodb.storage.colstore;
+
+import org.apache.log4j.Logger;
+
+import edu.caltech.nanodb.relations.ColumnType;
+import edu.caltech.nanodb.storage.DBPage;
+import edu.caltech.nanodb.storage.PageWriter;
+
+/**
+ * Zone map pages hold the {@link ZoneMap} entries of the columns of a
+ * table.  They are stored in the table's header file, after the header page;
+ * the header page records where each column's entries start and how many
+ * there are (see {@link CSHeaderPage#setZoneMap}).  A column's entries are
+ * on consecutive pages.
+ *
+ * <pre>
+ * |   4B   |  4B  |        4B       |   ...   |   ...   |
+ * |  标记  |count |NEXT_BLOCK_OFFSET| entry 1 | entry 2 |
+ *
+ * entry:
+ * |   4B   |    4B    |  4B  |     4B    |  ...  |  ...  |
+ * | pageNo | firstRow |count | nullCount |  min  |  max  |
+ * </pre>
+ * The min and max are left out when every value on the page is null.
+ */
+public class ZoneMapPage {
+    private static Logger logger = Logger.getLogger(ZoneMapPage.class);
+
+    public static final int ENCODING_OFFSET = 2;
+
+    public static final int ENCODING_MARKER = -2;
+
+    public static final int COUNT_OFFSET = 6;
+
+    public static final int NEXT_BLOCK_START_OFFSET = 10;
+
+    public static final int FIRST_BLOCK_OFFSET = 14;
+
+
+    /**
+     * Initialize a newly allocated zone map page, with no entries.
+     *
+     * @param dbPage the page to initialize
+     */
+    public static void initNewPage(DBPage dbPage) {
+        PageWriter writer = new PageWriter(dbPage);
+        writer.setPosition(ENCODING_OFFSET);
+        writer.writeInt(ENCODING_MARKER);
+        writer.writeInt(0);
+        writer.writeInt(FIRST_BLOCK_OFFSET);
+    }
+
+    /**
+     * Writes zone map entries to a page, starting with entry <tt>from</tt>,
+     * until the page is full.
+     *
+     * @param dbPage the zone map page
+     * @param zoneMap the zone map to write
+     * @param from the index of the first entry to write
+     * @param colType the type of the column
+     * @return the index of the first entry that was not written
+     */
+    public static int writeEntries(DBPage dbPage, ZoneMap zoneMap, int from,
+                                   ColumnType colType) {
+        if (dbPage.readInt(ENCODING_OFFSET) != ENCODING_MARKER) {
+            throw new IllegalArgumentException("Wrong encoding type");
+        }
+
+        int offset = dbPage.readInt(NEXT_BLOCK_START_OFFSET);
+        int i = from;
+        for (; i < zoneMap.size(); i++) {
+            Object min = zoneMap.getMin(i);
+            Object max = zoneMap.getMax(i);
+            int size = 16;
+            if (min != null) {
+                size += DBPage.getObjectDiskSize(min, colType) +
+                    DBPage.getObjectDiskSize(max, colType);
+            }
+            if (offset + size > dbPage.getPageSize())
+                break;
+
+            dbPage.writeInt(offset, zoneMap.getPageNo(i));
+            dbPage.writeInt(offset + 4, zoneMap.getFirstRow(i));
+            dbPage.writeInt(offset + 8, zoneMap.getCount(i));
+            dbPage.writeInt(offset + 12, zoneMap.getNullCount(i));
+            offset += 16;
+            if (min != null) {
+                offset += dbPage.writeObject(offset, colType, min);
+                offset += dbPage.writeObject(offset, colType, max);
+            }
+        }
+
+        dbPage.writeInt(COUNT_OFFSET, dbPage.readInt(COUNT_OFFSET) + i - from);
+        dbPage.writeInt(NEXT_BLOCK_START_OFFSET, offset);
+        return i;
+    }
+
+    /**
+     * Reads the zone map entries stored on a page, and adds them to a zone
+     * map.
+     *
+     * @param dbPage the zone map page
+     * @param zoneMap the zone map to add the entries to
+     * @param colType the type of the column
+     */
+    public static void readEntries(DBPage dbPage, ZoneMap zoneMap,
+                                   ColumnType colType) {
+        int count = dbPage.readInt(COUNT_OFFSET);
+        int offset = FIRST_BLOCK_OFFSET;
+        for (int i = 0; i < count; i++) {
+            int pageNo = dbPage.readInt(offset);
+            int firstRow = dbPage.readInt(offset + 4);
+            int rows = dbPage.readInt(offset + 8);
+            int nullCount = dbPage.readInt(offset + 12);
+            offset += 16;
+
+            Object min = null;
+            Object max = null;
+            if (nullCount < rows) {
+                min = dbPage.readObject(offset, colType);
+                offset += DBPage.getObjectDiskSize(min, colType);
+                max = dbPage.readObject(offset, colType);
+                offset += DBPage.getObjectDiskSize(max, colType);
+            }
+            zoneMap.addPage(pageNo, firstRow, rows, nullCount, min, max);
+        }
+    }
+}
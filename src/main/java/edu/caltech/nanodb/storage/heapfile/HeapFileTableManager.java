@@ -777,7 +777,11 @@ public class HeapFileTableManager implements TableManager {
         DBPage dbPage = ptup.getDBPage();
         DataPage.sanityCheck(dbPage);
         storageManager.logDBPageWrite(dbPage);
-        storageManager.unpinDBPage(dbPage);
+
+        // Don't unpin the page:  pins are counted once per session, so this
+        // would also release the pin of the scan that is still reading the
+        // page, and it could be evicted under the scan.  The scan unpins it
+        // when it moves on.
     }
 
 
@@ -798,7 +802,8 @@ public class HeapFileTableManager implements TableManager {
         DataPage.sanityCheck(dbPage);
 
         storageManager.logDBPageWrite(dbPage);
-        storageManager.unpinDBPage(dbPage);
+
+        // As in updateTuple(), the scan that found the tuple unpins the page.
     }
 
 
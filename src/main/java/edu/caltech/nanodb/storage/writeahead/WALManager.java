@@ -2,6 +2,7 @@ package edu.caltech.nanodb.storage.writeahead;
 
 import java.io.ByteArrayOutputStream;
 import java.io.DataOutputStream;
+import java.io.File;
 import java.io.FileNotFoundException;
 import java.io.IOException;
 
@@ -232,7 +233,12 @@ public class WALManager {
                     int numSegments = walReader.readUnsignedShort();
 
                     // 打开对应的数据页
-                    DBFile redoFile = storageManager.openDBFile(redoFilename);
+                    DBFile redoFile = openLoggedFile(redoFilename);
+                    if (redoFile == null) {
+                        skipSegments(type, walReader, numSegments);
+                        walReader.movePosition(5);
+                        break;
+                    }
                     DBPage redoPage = storageManager.loadDBPage(redoFile, redoPageNo);
 
                     logger.debug(String.format("Redoing changes to file %s, page %d (%d segments)", redoFile,
@@ -389,7 +395,9 @@ public class WALManager {
                     String undoFilename = walReader.readVarString255();
                     int undoPageNo = walReader.readUnsignedShort();
                     // 打开数据文件
-                    DBFile undoFile = storageManager.openDBFile(undoFilename);
+                    DBFile undoFile = openLoggedFile(undoFilename);
+                    if (undoFile == null)
+                        break;
                     DBPage undoPage = storageManager.loadDBPage(undoFile, undoPageNo);
 
                     int numSegments = walReader.readUnsignedShort();
@@ -426,6 +434,40 @@ public class WALManager {
         logger.debug("Undo processing is complete.");
     }
 
+    /**
+     * Opens the data file that a WAL record changes, or returns null if the
+     * file has been deleted since, e.g. by <tt>DROP TABLE</tt>.  The changes
+     * to a deleted file don't need to be redone or undone.
+     *
+     * @param filename the name of the data file
+     * @return the data file, or null if it doesn't exist
+     * @throws IOException e
+     */
+    private DBFile openLoggedFile(String filename) throws IOException {
+        if (!new File(storageManager.getBaseDir(), filename).isFile()) {
+            logger.debug("File " + filename + " no longer exists; skipping its changes.");
+            return null;
+        }
+        return storageManager.openDBFile(filename);
+    }
+
+    /**
+     * 跳过一条UPDATE_PAGE或UPDATE_PAGE_REDO_ONLY记录的数据段
+     *
+     * @param type 记录的类型
+     * @param walReader 日志reader
+     * @param numSegments 数据段个数
+     * @throws IOException e
+     */
+    private void skipSegments(WALRecordType type, DBFileReader walReader, int numSegments)
+            throws IOException {
+        for (int iSeg = 0; iSeg < numSegments; iSeg++) {
+            walReader.movePosition(2);
+            int size = walReader.readUnsignedShort();
+            walReader.movePosition(type == WALRecordType.UPDATE_PAGE ? 2 * size : size);
+        }
+    }
+
     private LogSequenceNumber computeNextLSN(int fileNo, int fileOffset) {
         if (fileOffset >= MAX_WAL_FILE_SIZE) {
             // WAL文件超过大小限制后，fileNo+1,offset重置
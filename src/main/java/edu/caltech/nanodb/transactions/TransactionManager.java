@@ -71,6 +71,9 @@ public class TransactionManager {
      */
     private LogSequenceNumber txnStateNextLSN;
 
+    /** The listener that starts and commits the transactions of commands. */
+    private TransactionStateUpdater txnStateUpdater;
+
     public TransactionManager(StorageManager storageManager, BufferManager bufferManager) {
 
         this.storageManager = storageManager;
@@ -184,7 +187,20 @@ public class TransactionManager {
         storeTxnStateToFile();
 
         // Register the component that manages indexes when tables are modified.
-        EventDispatcher.getInstance().addCommandEventListener(new TransactionStateUpdater(this, bufferManager));
+        txnStateUpdater = new TransactionStateUpdater(this, bufferManager);
+        EventDispatcher.getInstance().addCommandEventListener(txnStateUpdater);
+    }
+
+    /**
+     * Forces the WAL and stops managing the transactions of commands, so that
+     * a storage manager started later in the same process doesn't write to
+     * the log through this one.
+     *
+     * @throws IOException if the WAL can't be forced
+     */
+    public void shutdown() throws IOException {
+        forceWAL();
+        EventDispatcher.getInstance().removeCommandEventListener(txnStateUpdater);
     }
 
     /**
@@ -54,6 +54,20 @@ public class PropertiesUtil {
         return StringUtils.trim(properties.getProperty(key, defaultValue));
     }
 
+    /**
+     * 设置属性, 覆盖配置文件中的值
+     *
+     * @param key 属性名
+     * @param value 属性值, 为null时删除该属性, 之后取默认值
+     */
+    public static void setProperty(String key, String value) {
+        if (value == null) {
+            properties.remove(key);
+        } else {
+            properties.setProperty(key, value);
+        }
+    }
+
     public static int getInt(String key, int def) {
         try {
             return Integer.parseInt(getProperty(key));
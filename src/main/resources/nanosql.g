@@ -52,6 +52,7 @@ tokens {
   DESC        = "desc";
   DISTINCT    = "distinct";
   DROP        = "drop";
+  ENGINE      = "engine";
   EXISTS      = "exists";
   EXIT        = "exit";
   EXPLAIN     = "explain";
@@ -59,6 +60,8 @@ tokens {
   FOREIGN     = "foreign";
   FROM        = "from";
   FULL        = "full";
+  GROUP       = "group";
+  HAVING      = "having";
   IF          = "if";
   IN          = "in";
   INDEX       = "index";
@@ -90,6 +93,7 @@ tokens {
   SET         = "set";
   SIMILAR     = "similar";
   SOME        = "some";
+  SORTED      = "sorted";
   START       = "start";
   STDDEV      = "stddev";
   STORE       = "store";
@@ -249,12 +253,15 @@ create_table returns [CreateTableCommand c]
     String name = null;
     boolean temp = false;
     boolean ifNotExists = false;
+    String engine = null;
   }
   :
   CREATE ( TEMPORARY { temp = true; } )? TABLE ( IF NOT EXISTS { ifNotExists = true; } )?
   name=dbobj_ident
   { c = new CreateTableCommand(name, temp, ifNotExists); }
   table_decl[c]
+  ( ENGINE EQUALS engine=dbobj_ident { c.setEngine(engine); } )?
+  ( sort_key_decl[c] )?
   ;
   
 create_table_from_file returns [CreateTableFromFileCommand c]
@@ -291,6 +298,18 @@ table_decl[CreateTableCommand ct] :
   ;
 
 
+/**
+ * Parse the <tt>SORTED BY</tt> clause of a column-store table, which lists
+ * the columns of the table's sort key.
+ */
+sort_key_decl[CreateTableCommand ct] :
+  { String colName = null; }
+  SORTED BY LPAREN colName=dbobj_ident { ct.addSortColumn(colName); }
+    ( COMMA colName=dbobj_ident { ct.addSortColumn(colName); } )*
+  RPAREN
+  ;
+
+
 /**
  * Table column declarations are similar to view column declarations, but can
  * have additional syntax declaring constraints on values in the table-column.
@@ -420,6 +439,7 @@ create_colstore returns [CreateColStoreCommand c]
   CREATE COLSTORE name=dbobj_ident FROM filename=file_name
   { c = new CreateColStoreCommand(name, filename); }
   table_decl[c]
+  ( sort_key_decl[c] )?
   ;
   
 
@@ -737,9 +757,12 @@ optimize_stmt returns [OptimizeCommand c]
   {
     c = null;
     String tblName = null;
+    String colName = null;
   } :
   OPTIMIZE tblName=dbobj_ident { c = new OptimizeCommand(tblName); }
   ( COMMA tblName=dbobj_ident { c.addTable(tblName); } )*
+  ( ORDER BY colName=dbobj_ident { c.addSortColumn(colName); }
+    ( COMMA colName=dbobj_ident { c.addSortColumn(colName); } )* )?
   ;
 
 
@@ -996,10 +1019,14 @@ function_call returns [FunctionCall f]
   }
   :
   ( name=dbobj_ident args=param_list { f = new FunctionCall(name, args); }
+    // The other aggregate functions' names are keywords, not identifiers.
+  | ( AVG { name="AVG"; } | MAX { name="MAX"; } | MIN { name="MIN"; }
+    | SUM { name="SUM"; } )
+    args=param_list { f = new FunctionCall(name, args); }
   | COUNT { name="COUNT"; args = new ArrayList<Expression>(); }
     LPAREN
     ( (DISTINCT { name="COUNT-DISTINCT"; } )? e=expression { args.add(e); }
-    | STAR { args.add(new ColumnValue(new ColumnName())); }
+    | STAR  // COUNT(*) has no arguments.
     )
     RPAREN
     { f = new FunctionCall(name, args); }
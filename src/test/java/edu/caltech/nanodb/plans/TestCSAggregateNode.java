@@ -0,0 +1,361 @@
+package edu.caltech.nanodb.plans;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import edu.caltech.nanodb.commands.SelectClause;
+import edu.caltech.nanodb.commands.SelectCommand;
+import edu.caltech.nanodb.expressions.TupleLiteral;
+import edu.caltech.nanodb.relations.Tuple;
+import edu.caltech.nanodb.server.NanoDBServer;
+import edu.caltech.nanodb.storage.TableFileInfo;
+import edu.caltech.nanodb.storage.colstore.ColStoreTestCase;
+
+/**
+ * This test class exercises {@link CSAggregateNode}, computing aggregates
+ * over dictionary-encoded, run-length encoded and uncompressed columns on
+ * one scan thread and on several, and checks the results against the same
+ * aggregates computed over the rows of the table.
+ */
+public class TestCSAggregateNode extends ColStoreTestCase {
+
+    private static final String TABLE_NAME = "TEST_CS_AGGREGATE";
+
+    private static final int ID = 0;
+
+    private static final int REGION = 1;
+
+    private static final int GRP = 2;
+
+    private static final int AMOUNT = 3;
+
+    /** The rows of the table, as values of the columns above. */
+    private List<Object[]> rows;
+
+    /** Selects some of the rows of the table. */
+    private interface RowFilter {
+        boolean accept(Object[] row);
+    }
+
+    /** Accepts every row. */
+    private static final RowFilter ALL_ROWS = new RowFilter() {
+        @Override
+        public boolean accept(Object[] row) {
+            return true;
+        }
+    };
+
+    @Before
+    public void createTable() throws Exception {
+        doCommand("DROP TABLE IF EXISTS " + TABLE_NAME + ";");
+        doCommand("CREATE TABLE " + TABLE_NAME + " (ID INTEGER, " +
+            "REGION VARCHAR(10), GRP INTEGER, AMOUNT DOUBLE) ENGINE = columnStore;");
+
+        // Small morsels, so that several threads share the scan.
+        setProperty(CSAggregateNode.PROP_SCAN_MORSEL_ROWS, "1000");
+        rows = new ArrayList<Object[]>();
+    }
+
+    @After
+    public void dropTable() throws Exception {
+        doCommand("DROP TABLE " + TABLE_NAME + ";");
+    }
+
+    /**
+     * Computes ungrouped aggregates over each kind of column, of the whole
+     * table and of the rows that pass a predicate.
+     */
+    @Test
+    public void testUngrouped() throws Exception {
+        loadTable();
+
+        for (int column : new int[] { ID, GRP, AMOUNT }) {
+            String name = getColumnName(column);
+            checkAggregate("SELECT COUNT(*), SUM(" + name + "), MIN(" + name +
+                "), MAX(" + name + "), AVG(" + name + ") FROM " + TABLE_NAME + ";",
+                ALL_ROWS, new int[0], new String[] { "COUNT", "SUM", "MIN", "MAX", "AVG" },
+                new int[] { -1, column, column, column, column });
+        }
+
+        checkAggregate("SELECT MIN(REGION), MAX(REGION), COUNT(REGION) FROM " +
+            TABLE_NAME + ";", ALL_ROWS, new int[0],
+            new String[] { "MIN", "MAX", "COUNT" }, new int[] { REGION, REGION, REGION });
+
+        checkAggregate("SELECT COUNT(*), SUM(AMOUNT), MIN(ID), MAX(REGION) FROM " +
+            TABLE_NAME + " WHERE REGION = 'r3';", new RowFilter() {
+                @Override
+                public boolean accept(Object[] row) {
+                    return row[REGION].equals("r3");
+                }
+            }, new int[0], new String[] { "COUNT", "SUM", "MIN", "MAX" },
+            new int[] { -1, AMOUNT, ID, REGION });
+
+        checkAggregate("SELECT COUNT(*), SUM(ID), AVG(AMOUNT) FROM " +
+            TABLE_NAME + " WHERE GRP = 2 AND ID > 7000;", new RowFilter() {
+                @Override
+                public boolean accept(Object[] row) {
+                    return row[GRP].equals(2) && (Integer) row[ID] > 7000;
+                }
+            }, new int[0], new String[] { "COUNT", "SUM", "AVG" },
+            new int[] { -1, ID, AMOUNT });
+    }
+
+    /** Groups by each kind of column, and by two columns. */
+    @Test
+    public void testGrouped() throws Exception {
+        loadTable();
+
+        checkAggregate("SELECT REGION, COUNT(*), SUM(AMOUNT), MIN(ID), " +
+            "MAX(ID), AVG(GRP) FROM " + TABLE_NAME + " GROUP BY REGION;",
+            ALL_ROWS, new int[] { REGION },
+            new String[] { "COUNT", "SUM", "MIN", "MAX", "AVG" },
+            new int[] { -1, AMOUNT, ID, ID, GRP });
+
+        checkAggregate("SELECT GRP, COUNT(*), SUM(ID), MIN(REGION), " +
+            "MAX(AMOUNT), AVG(AMOUNT) FROM " + TABLE_NAME + " GROUP BY GRP;",
+            ALL_ROWS, new int[] { GRP },
+            new String[] { "COUNT", "SUM", "MIN", "MAX", "AVG" },
+            new int[] { -1, ID, REGION, AMOUNT, AMOUNT });
+
+        checkAggregate("SELECT GRP, REGION, COUNT(*), SUM(ID), MAX(AMOUNT) FROM " +
+            TABLE_NAME + " WHERE ID >= 3000 GROUP BY GRP, REGION;",
+            new RowFilter() {
+                @Override
+                public boolean accept(Object[] row) {
+                    return (Integer) row[ID] >= 3000;
+                }
+            }, new int[] { GRP, REGION }, new String[] { "COUNT", "SUM", "MAX" },
+            new int[] { -1, ID, AMOUNT });
+
+        // Every group of the uncompressed column has one row.
+        checkAggregate("SELECT AMOUNT, COUNT(*), MIN(REGION) FROM " + TABLE_NAME +
+            " WHERE ID < 2500 GROUP BY AMOUNT;", new RowFilter() {
+                @Override
+                public boolean accept(Object[] row) {
+                    return (Integer) row[ID] < 2500;
+                }
+            }, new int[] { AMOUNT }, new String[] { "COUNT", "MIN" },
+            new int[] { -1, REGION });
+    }
+
+    /**
+     * Aggregates no rows, of an empty table and of rows that all fail the
+     * predicate: an ungrouped query gives one row, with a count of 0 and
+     * NULL for the other aggregates, and a grouped query gives no rows.
+     */
+    @Test
+    public void testNoRows() throws Exception {
+        String ungrouped = "SELECT COUNT(*), SUM(ID), MIN(REGION), MAX(GRP), " +
+            "AVG(AMOUNT) FROM " + TABLE_NAME;
+        String grouped = "SELECT REGION, COUNT(*), SUM(AMOUNT) FROM " + TABLE_NAME;
+
+        for (String threads : new String[] { "1", "4" }) {
+            setProperty(CSAggregateNode.PROP_SCAN_THREADS, threads);
+            checkEmpty(aggregate(ungrouped + ";"), aggregate(grouped +
+                " GROUP BY REGION;"));
+        }
+
+        loadTable();
+        for (String threads : new String[] { "1", "4" }) {
+            setProperty(CSAggregateNode.PROP_SCAN_THREADS, threads);
+            checkEmpty(aggregate(ungrouped + " WHERE ID < 0;"),
+                aggregate(grouped + " WHERE ID < 0 GROUP BY REGION;"));
+            checkEmpty(aggregate(ungrouped + " WHERE REGION = 'none';"),
+                aggregate(grouped + " WHERE REGION = 'none' GROUP BY REGION;"));
+        }
+    }
+
+
+    /**
+     * Loads 20000 rows in two row groups, deletes some of them, and inserts
+     * a few into the delta store.  REGION is dictionary encoded, GRP is run
+     * length encoded, and AMOUNT is uncompressed.
+     */
+    private void loadTable() throws Exception {
+        List<String> lines = new ArrayList<String>();
+        for (int id = 0; id < 20000; id++) {
+            Object[] row = { id, "r" + (id * 7919) % 13, (id / 500) % 5,
+                id * 1.5 + 0.25 };
+            rows.add(row);
+            lines.add(row[ID] + "," + row[REGION] + "," + row[GRP] + "," +
+                row[AMOUNT]);
+            if (id == 11999) {
+                loadRows(TABLE_NAME, "ID,REGION,GRP,AMOUNT", lines);
+                lines.clear();
+            }
+        }
+        loadRows(TABLE_NAME, "ID,REGION,GRP,AMOUNT", lines);
+
+        doCommand("DELETE FROM " + TABLE_NAME +
+            " WHERE ID >= 5000 AND ID < 5100;");
+        rows.subList(5000, 5100).clear();
+
+        Object[][] inserted = { { 20000, "r3", 7, -1.5 },
+            { 20001, "new", 2, 100000.0 } };
+        for (Object[] row : inserted) {
+            doCommand("INSERT INTO " + TABLE_NAME + " VALUES (" + row[ID] +
+                ", '" + row[REGION] + "', " + row[GRP] + ", " + row[AMOUNT] + ");");
+            rows.add(row);
+        }
+    }
+
+    private static String getColumnName(int column) {
+        return new String[] { "ID", "REGION", "GRP", "AMOUNT" }[column];
+    }
+
+    /**
+     * Runs a query on one scan thread and on four, and checks both results
+     * against aggregating the rows of the table.  The query must select its
+     * grouping columns first, in the order they are given here, followed by
+     * its aggregates.
+     *
+     * @param query the query
+     * @param filter the rows that pass the query's predicate
+     * @param groupColumns the grouping columns
+     * @param functions the aggregate functions
+     * @param columns the column each aggregate is over, or -1 for
+     *        <tt>COUNT(*)</tt>
+     */
+    private void checkAggregate(String query, RowFilter filter,
+                                int[] groupColumns, String[] functions,
+                                int[] columns) throws Exception {
+        Map<List<Object>, Object[]> expected =
+            compute(filter, groupColumns, functions, columns);
+
+        for (String threads : new String[] { "1", "4" }) {
+            setProperty(CSAggregateNode.PROP_SCAN_THREADS, threads);
+            List<TupleLiteral> result = aggregate(query);
+            assert result.size() == expected.size() : query + " with " +
+                threads + " threads gave " + result.size() + " groups";
+
+            for (TupleLiteral tup : result) {
+                List<Object> key = new ArrayList<Object>();
+                for (int i = 0; i < groupColumns.length; i++)
+                    key.add(tup.getColumnValue(i));
+                Object[] values = expected.get(key);
+                assert values != null : query + ": unexpected group " + key;
+
+                for (int i = 0; i < functions.length; i++) {
+                    Object actual = tup.getColumnValue(groupColumns.length + i);
+                    assert sameValue(values[i], actual) : query + " with " +
+                        threads + " threads, group " + key + ": " + functions[i] +
+                        " is " + actual + ", expected " + values[i];
+                }
+            }
+        }
+    }
+
+    /** Computes aggregates over the rows of the table. */
+    @SuppressWarnings("unchecked")
+    private Map<List<Object>, Object[]> compute(RowFilter filter,
+            int[] groupColumns, String[] functions, int[] columns) {
+        Map<List<Object>, Object[]> results = new HashMap<List<Object>, Object[]>();
+        Map<List<Object>, Integer> counts = new HashMap<List<Object>, Integer>();
+        if (groupColumns.length == 0) {
+            results.put(new ArrayList<Object>(), new Object[functions.length]);
+            counts.put(new ArrayList<Object>(), 0);
+        }
+
+        for (Object[] row : rows) {
+            if (!filter.accept(row))
+                continue;
+
+            List<Object> key = new ArrayList<Object>();
+            for (int column : groupColumns)
+                key.add(row[column]);
+            Object[] values = results.get(key);
+            if (values == null) {
+                values = new Object[functions.length];
+                results.put(key, values);
+                counts.put(key, 0);
+            }
+            counts.put(key, counts.get(key) + 1);
+
+            for (int i = 0; i < functions.length; i++) {
+                Object value = (columns[i] < 0) ? null : row[columns[i]];
+                Object old = values[i];
+                if (functions[i].equals("COUNT")) {
+                    values[i] = (old == null) ? 1 : (Integer) old + 1;
+                }
+                else if (functions[i].equals("SUM") || functions[i].equals("AVG")) {
+                    double sum = ((Number) value).doubleValue();
+                    values[i] = (old == null) ? sum : (Double) old + sum;
+                }
+                else if (functions[i].equals("MIN")) {
+                    if (old == null || ((Comparable) value).compareTo(old) < 0)
+                        values[i] = value;
+                }
+                else if (old == null || ((Comparable) value).compareTo(old) > 0) {
+                    values[i] = value;
+                }
+            }
+        }
+
+        for (Map.Entry<List<Object>, Object[]> entry : results.entrySet()) {
+            Object[] values = entry.getValue();
+            int count = counts.get(entry.getKey());
+            for (int i = 0; i < functions.length; i++) {
+                if (functions[i].equals("COUNT"))
+                    values[i] = count;
+                else if (functions[i].equals("AVG") && count > 0)
+                    values[i] = (Double) values[i] / count;
+            }
+        }
+        return results;
+    }
+
+    /** Compares values, with numbers of any type compared by value. */
+    private static boolean sameValue(Object expected, Object actual) {
+        if (expected == null || actual == null)
+            return expected == actual;
+
+        if (expected instanceof Number && actual instanceof Number) {
+            double e = ((Number) expected).doubleValue();
+            double a = ((Number) actual).doubleValue();
+            return Math.abs(e - a) <= 1e-9 * Math.max(1, Math.abs(e));
+        }
+        return expected.equals(actual);
+    }
+
+    private static void checkEmpty(List<TupleLiteral> ungrouped,
+                                   List<TupleLiteral> grouped) {
+        assert ungrouped.size() == 1 : ungrouped;
+        TupleLiteral tup = ungrouped.get(0);
+        assert ((Number) tup.getColumnValue(0)).intValue() == 0 : tup;
+        for (int i = 1; i < tup.getColumnCount(); i++)
+            assert tup.getColumnValue(i) == null : tup;
+
+        assert grouped.isEmpty() : grouped;
+    }
+
+    /** Runs a query with a {@link CSAggregateNode}, and returns its rows. */
+    private List<TupleLiteral> aggregate(String query) throws Exception {
+        SelectCommand command = (SelectCommand) NanoDBServer.parseCommand(query);
+        SelectClause selClause = command.getSelectClause();
+        selClause.computeSchema();
+
+        TableFileInfo tblFileInfo = storageManager.openTable(TABLE_NAME);
+        assert CSAggregateNode.canEvaluate(selClause, tblFileInfo) : query;
+        CSAggregateNode node = new CSAggregateNode(selClause, tblFileInfo);
+        node.prepare();
+        node.initialize();
+
+        List<TupleLiteral> tuples = new ArrayList<TupleLiteral>();
+        try {
+            Tuple tup;
+            while ((tup = node.getNextTuple()) != null)
+                tuples.add(new TupleLiteral(tup));
+        }
+        finally {
+            node.cleanUp();
+            storageManager.unpinAllDBPages();
+        }
+        return tuples;
+    }
+}
@@ -0,0 +1,364 @@
+package edu.caltech.nanodb.plans;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import edu.caltech.nanodb.expressions.BooleanOperator;
+import edu.caltech.nanodb.expressions.ColumnName;
+import edu.caltech.nanodb.expressions.ColumnValue;
+import edu.caltech.nanodb.expressions.CompareOperator;
+import edu.caltech.nanodb.expressions.Expression;
+import edu.caltech.nanodb.expressions.InOperator;
+import edu.caltech.nanodb.expressions.LiteralValue;
+import edu.caltech.nanodb.relations.ColumnInfo;
+import edu.caltech.nanodb.relations.ColumnType;
+import edu.caltech.nanodb.relations.SQLDataType;
+import edu.caltech.nanodb.relations.Schema;
+import edu.caltech.nanodb.storage.colstore.ColumnBatch;
+import edu.caltech.nanodb.storage.colstore.ZoneMap;
+
+/**
+ * This test class exercises {@link CSBatchPredicate}, both filtering batches
+ * of values and dictionary codes, and finding the candidate rows of a scan
+ * from zone maps.
+ */
+public class TestCSBatchPredicate {
+
+    private static final int ROWS = 10;
+
+    /** Column A is an integer column, and column S is a string column. */
+    private Schema schema;
+
+    private ColumnType intType;
+
+    private ColumnType stringType;
+
+    @Before
+    public void setUp() {
+        intType = new ColumnType(SQLDataType.INTEGER);
+        stringType = new ColumnType(SQLDataType.VARCHAR);
+        stringType.setLength(20);
+
+        schema = new Schema();
+        schema.addColumnInfo(new ColumnInfo("A", intType));
+        schema.addColumnInfo(new ColumnInfo("S", stringType));
+    }
+
+    /** Combines comparisons of a batch of the values 0 - 9. */
+    @Test
+    public void testBooleanOperators() {
+        ColumnBatch[] batches = makeBatches();
+
+        assert filter(and(compare("A", ">=", 2), compare("A", "<", 7)),
+            batches).equals(rows(2, 3, 4, 5, 6));
+        assert filter(or(compare("A", "<", 2), compare("A", ">", 7)),
+            batches).equals(rows(0, 1, 8, 9));
+        assert filter(not(compare("A", "<", 5)),
+            batches).equals(rows(5, 6, 7, 8, 9));
+        assert filter(not(or(compare("A", "=", 3), compare("A", "<>", 3))),
+            batches).equals(rows());
+
+        // A literal on the left is flipped onto the column.
+        CompareOperator cmp = new CompareOperator(CompareOperator.Type.LESS_THAN,
+            new LiteralValue(6), column("A"));
+        assert filter(cmp, batches).equals(rows(7, 8, 9));
+
+        // OR only evaluates its later terms on the rows that haven't passed,
+        // and NOT complements within the candidate positions it is given.
+        Expression expr = and(compare("A", "<>", 4),
+            or(compare("A", "<", 3), not(compare("A", "<=", 6))));
+        CSBatchPredicate pred = CSBatchPredicate.compile(expr, schema, ROWS);
+        int[] sel = { 1, 2, 4, 5, 7, 9 };
+        int[] out = new int[ROWS];
+        int n = pred.filter(batches, sel, sel.length, out);
+        assert toList(out, n).equals(rows(1, 2, 7, 9));
+    }
+
+    /** Tests <tt>IN</tt> lists against values and dictionary codes. */
+    @Test
+    public void testIn() {
+        ColumnBatch[] batches = makeBatches();
+        assert filter(in("A", 1, 3, 100), batches).equals(rows(1, 3));
+        assert filter(in("A", 100), batches).equals(rows());
+        assert filter(not(in("A", 0, 9)), batches).equals(
+            rows(1, 2, 3, 4, 5, 6, 7, 8));
+
+        // The integer column holding codes.
+        batches[0] = makeCodeBatch(intType, new Object[] { null, 2, 4, 6 });
+        assert filter(in("A", 4, 5, 6), batches).equals(
+            expected(in("A", 4, 5, 6), batches[0]));
+
+        batches[1] = makeCodeBatch(stringType,
+            new Object[] { null, "b", "d", "f" });
+        assert filter(in("S", "a", "d", "e"), batches).equals(
+            expected(in("S", "a", "d", "e"), batches[1]));
+        assert filter(in("S", "x"), batches).equals(rows());
+    }
+
+    /**
+     * Compares a column of dictionary codes against literals below the
+     * smallest dictionary value, equal to each value, between two values
+     * and above the largest value, with every operator, and checks the
+     * range of codes found against comparing the decoded values.
+     */
+    @Test
+    public void testDictionaryCodeRange() {
+        ColumnBatch[] batches = makeBatches();
+        batches[0] = makeCodeBatch(intType, new Object[] { null, 10, 20, 30 });
+        batches[1] = makeCodeBatch(stringType,
+            new Object[] { null, "b", "d", "f" });
+
+        String[] ops = { "=", "<>", "<", ">", "<=", ">=" };
+        Object[] intLiterals = { 5, 10, 15, 20, 30, 35 };
+        Object[] stringLiterals = { "a", "b", "c", "d", "f", "g" };
+        for (String op : ops) {
+            for (Object literal : intLiterals) {
+                Expression expr = compare("A", op, literal);
+                assert filter(expr, batches).equals(expected(expr, batches[0])) :
+                    "A " + op + " " + literal;
+            }
+            for (Object literal : stringLiterals) {
+                Expression expr = compare("S", op, literal);
+                assert filter(expr, batches).equals(expected(expr, batches[1])) :
+                    "S " + op + " " + literal;
+            }
+        }
+
+        // A dictionary with a single value.
+        batches[1] = makeCodeBatch(stringType, new Object[] { null, "m" });
+        assert filter(compare("S", "=", "m"), batches).equals(
+            expected(compare("S", "=", "m"), batches[1]));
+        assert filter(compare("S", "<", "m"), batches).equals(rows());
+        assert filter(compare("S", ">", "m"), batches).equals(rows());
+
+        // The code range is rebuilt when the batch's dictionary changes.
+        CSBatchPredicate pred =
+            CSBatchPredicate.compile(compare("S", ">=", "d"), schema, ROWS);
+        batches[1] = makeCodeBatch(stringType,
+            new Object[] { null, "b", "d", "f" });
+        int[] out = run(pred, batches);
+        assert toList(out, out.length).equals(
+            expected(compare("S", ">=", "d"), batches[1]));
+
+        batches[1] = makeCodeBatch(stringType, new Object[] { null, "a", "c" });
+        assert run(pred, batches).length == 0;
+    }
+
+    /**
+     * Finds the candidate rows of comparisons on a column whose zone map is
+     * in order, which binary searches the zone map, and checks them against
+     * testing every entry of the same zone map marked as unsorted.
+     */
+    @Test
+    public void testSortedZoneMap() {
+        // A page of nulls, then pages of 0 - 9, 10 - 19, ..., 40 - 49.
+        ZoneMap sorted = new ZoneMap();
+        ZoneMap unsorted = new ZoneMap();
+        for (ZoneMap zoneMap : new ZoneMap[] { sorted, unsorted }) {
+            zoneMap.addPage(1, 0, 100, 100, null, null);
+            for (int i = 0; i < 5; i++)
+                zoneMap.addPage(i + 2, 100 + i * 100, 100, 0, i * 10, i * 10 + 9);
+        }
+        sorted.setSorted(true);
+
+        ZoneMap[] sortedMaps = { sorted, null };
+        ZoneMap[] unsortedMaps = { unsorted, null };
+
+        assert Arrays.equals(candidates(compare("A", "=", 15), sortedMaps),
+            new int[] { 200, 300 });
+        assert Arrays.equals(candidates(compare("A", "<", 10), sortedMaps),
+            new int[] { 100, 200 });
+        assert Arrays.equals(candidates(compare("A", ">=", 40), sortedMaps),
+            new int[] { 500, 600 });
+        assert Arrays.equals(candidates(compare("A", ">", 49), sortedMaps),
+            new int[0]);
+        assert Arrays.equals(candidates(compare("A", "<", 0), sortedMaps),
+            new int[0]);
+
+        String[] ops = { "=", "<>", "<", ">", "<=", ">=" };
+        for (String op : ops) {
+            for (int literal = -5; literal <= 55; literal++) {
+                Expression expr = compare("A", op, literal);
+                assert Arrays.equals(candidates(expr, sortedMaps),
+                    candidates(expr, unsortedMaps)) : "A " + op + " " + literal;
+            }
+        }
+    }
+
+    /**
+     * Finds the candidate rows of predicates on a column whose zone map
+     * entries overlap, and on a column without a zone map.
+     */
+    @Test
+    public void testUnsortedZoneMap() {
+        ZoneMap zoneMap = new ZoneMap();
+        zoneMap.addPage(1, 0, 100, 0, 0, 50);
+        zoneMap.addPage(2, 100, 100, 0, 10, 20);
+        zoneMap.addPage(3, 200, 100, 10, 40, 60);
+        zoneMap.addPage(4, 300, 100, 100, null, null);
+        ZoneMap[] zoneMaps = { zoneMap, null };
+
+        // Adjacent entries are merged into one range.
+        assert Arrays.equals(candidates(compare("A", "=", 15), zoneMaps),
+            new int[] { 0, 200 });
+        assert Arrays.equals(candidates(compare("A", ">", 50), zoneMaps),
+            new int[] { 200, 300 });
+        assert Arrays.equals(candidates(compare("A", "<", 40), zoneMaps),
+            new int[] { 0, 200 });
+        assert Arrays.equals(candidates(compare("A", "<>", 15), zoneMaps),
+            new int[] { 0, 300 });
+        assert Arrays.equals(candidates(in("A", 5, 55), zoneMaps),
+            new int[] { 0, 100, 200, 300 });
+        assert Arrays.equals(candidates(in("A", 70), zoneMaps), new int[0]);
+
+        // AND intersects the ranges of its terms, and OR unions them.
+        assert Arrays.equals(candidates(
+            and(compare("A", "<", 12), compare("A", ">", 45)), zoneMaps),
+            new int[] { 0, 100 });
+        assert Arrays.equals(candidates(
+            or(compare("A", "=", 15), compare("A", ">", 55)), zoneMaps),
+            new int[] { 0, 300 });
+
+        // Terms on a column without a zone map allow every row, so they
+        // don't narrow an AND and make an OR allow every row.
+        assert Arrays.equals(candidates(
+            and(compare("A", ">", 50), compare("S", "=", "x")), zoneMaps),
+            new int[] { 200, 300 });
+        assert candidates(
+            or(compare("A", ">", 50), compare("S", "=", "x")), zoneMaps) == null;
+        assert candidates(not(compare("A", ">", 50)), zoneMaps) == null;
+    }
+
+
+    /** Makes batches of the values 0 - 9 in A, and "v0" - "v9" in S. */
+    private ColumnBatch[] makeBatches() {
+        ColumnBatch ints = new ColumnBatch(intType, ROWS);
+        ColumnBatch strings = new ColumnBatch(stringType, ROWS);
+        for (int i = 0; i < ROWS; i++) {
+            ints.add(i);
+            strings.add("v" + i);
+        }
+        return new ColumnBatch[] { ints, strings };
+    }
+
+    /**
+     * Makes a batch of codes that cycles through the dictionary, including
+     * code 0, which stands for a null.
+     */
+    private ColumnBatch makeCodeBatch(ColumnType type, Object[] dict) {
+        ColumnBatch batch = new ColumnBatch(type, ROWS);
+        batch.setDictionary(dict);
+        for (int i = 0; i < ROWS; i++)
+            batch.addCode(i % dict.length);
+        return batch;
+    }
+
+    /** Returns the positions of all rows that pass the predicate. */
+    private ArrayList<Integer> filter(Expression expr, ColumnBatch[] batches) {
+        int[] out = run(CSBatchPredicate.compile(expr, schema, ROWS), batches);
+        return toList(out, out.length);
+    }
+
+    private int[] run(CSBatchPredicate pred, ColumnBatch[] batches) {
+        int[] sel = new int[ROWS];
+        for (int i = 0; i < ROWS; i++)
+            sel[i] = i;
+        int n = pred.filter(batches, sel, ROWS, sel);
+        return Arrays.copyOf(sel, n);
+    }
+
+    /**
+     * Returns the positions of the rows that pass a predicate on a batch of
+     * codes, by evaluating the expression on each decoded value.
+     */
+    private ArrayList<Integer> expected(Expression expr, ColumnBatch batch) {
+        ArrayList<Integer> rows = new ArrayList<Integer>();
+        for (int i = 0; i < batch.getSize(); i++) {
+            int code = batch.getCodes()[i];
+            Object value = batch.getDictionary()[code];
+            if (value != null && passes(expr, value))
+                rows.add(i);
+        }
+        return rows;
+    }
+
+    /** Evaluates a comparison or IN list with the value of its column. */
+    private static boolean passes(Expression expr, Object value) {
+        if (expr instanceof InOperator) {
+            for (Expression e : ((InOperator) expr).getValues()) {
+                if (value.equals(e.evaluate(null)))
+                    return true;
+            }
+            return false;
+        }
+
+        CompareOperator cmp = (CompareOperator) expr;
+        CompareOperator literal = new CompareOperator(cmp.getType(),
+            new LiteralValue(value), cmp.getRightExpression());
+        return literal.evaluatePredicate(null);
+    }
+
+    private int[] candidates(Expression expr, ZoneMap[] zoneMaps) {
+        return CSBatchPredicate.compile(expr, schema, ROWS)
+            .getCandidateRows(zoneMaps);
+    }
+
+    private static ColumnValue column(String name) {
+        return new ColumnValue(new ColumnName(name));
+    }
+
+    private static CompareOperator compare(String name, String op,
+                                           Object value) {
+        CompareOperator.Type type;
+        if (op.equals("="))
+            type = CompareOperator.Type.EQUALS;
+        else if (op.equals("<>"))
+            type = CompareOperator.Type.NOT_EQUALS;
+        else if (op.equals("<"))
+            type = CompareOperator.Type.LESS_THAN;
+        else if (op.equals(">"))
+            type = CompareOperator.Type.GREATER_THAN;
+        else if (op.equals("<="))
+            type = CompareOperator.Type.LESS_OR_EQUAL;
+        else
+            type = CompareOperator.Type.GREATER_OR_EQUAL;
+
+        return new CompareOperator(type, column(name), new LiteralValue(value));
+    }
+
+    private static InOperator in(String name, Object... values) {
+        ArrayList<Expression> literals = new ArrayList<Expression>();
+        for (Object value : values)
+            literals.add(new LiteralValue(value));
+        return new InOperator(column(name), literals);
+    }
+
+    private static BooleanOperator and(Expression... terms) {
+        return new BooleanOperator(BooleanOperator.Type.AND_EXPR,
+            Arrays.asList(terms));
+    }
+
+    private static BooleanOperator or(Expression... terms) {
+        return new BooleanOperator(BooleanOperator.Type.OR_EXPR,
+            Arrays.asList(terms));
+    }
+
+    private static BooleanOperator not(Expression term) {
+        return new BooleanOperator(BooleanOperator.Type.NOT_EXPR,
+            Arrays.asList(term));
+    }
+
+    private static ArrayList<Integer> rows(Integer... rows) {
+        return new ArrayList<Integer>(Arrays.asList(rows));
+    }
+
+    private static ArrayList<Integer> toList(int[] rows, int n) {
+        ArrayList<Integer> list = new ArrayList<Integer>();
+        for (int i = 0; i < n; i++)
+            list.add(rows[i]);
+        return list;
+    }
+}
@@ -0,0 +1,316 @@
+package edu.caltech.nanodb.storage;
+
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+
+import org.junit.Test;
+
+import edu.caltech.nanodb.util.PropertiesUtil;
+
+
+/**
+ * This test class exercises the buffer manager with several threads loading
+ * and changing the pages of a file that is larger than the page cache,
+ * through the storage manager, and the {@link PageFrameArena} that cached
+ * pages can be kept in.
+ */
+public class TestBufferManager extends StorageTestCase {
+
+    private static final int NUM_PAGES = 1024;
+
+    private static final int NUM_THREADS = 8;
+
+    /** The offset of the page number written on each page. */
+    private static final int PAGE_NO_OFFSET = 100;
+
+    /** The offset of the counter each thread increments on its pages. */
+    private static final int COUNTER_OFFSET = 200;
+
+
+    /**
+     * Loads random pages from several threads, each of which also increments
+     * a counter on the pages it owns, and checks that every page read has the
+     * right contents and that no increment is lost when dirty pages are
+     * evicted and read back.
+     */
+    @Test
+    public void testConcurrentAccess() throws Exception {
+        String filename = "TestBufferManager_testConcurrentAccess";
+        StorageManager storageMgr = new StorageManager(testBaseDir);
+        DBFile dbf = createFile(storageMgr, filename);
+        try {
+            // The default page cache is smaller than the file, so pages are
+            // evicted all the time.
+            AtomicIntegerArray expected =
+                updatePages(storageMgr, dbf, 5000, false);
+
+            storageMgr.getBufferManager().flushAll();
+            checkFile(storageMgr, dbf, expected, false);
+        }
+        finally {
+            deleteFile(storageMgr, dbf);
+        }
+        assert !new File(testBaseDir, filename).exists();
+    }
+
+
+    /**
+     * Dirties every page that is loaded, from several threads, so that
+     * loading a page almost always evicts dirty pages, and checks that the
+     * evicted pages were written back before the cache is flushed.
+     */
+    @Test
+    public void testEvictDirtyPages() throws Exception {
+        String filename = "TestBufferManager_testEvictDirtyPages";
+        StorageManager storageMgr = new StorageManager(testBaseDir);
+        DBFile dbf = createFile(storageMgr, filename);
+        try {
+            AtomicIntegerArray expected =
+                updatePages(storageMgr, dbf, 2000, true);
+
+            // Only the pages that are still cached may be out of date on
+            // disk.  The cache holds half of the file.
+            int evicted = checkFile(storageMgr, dbf, expected, true);
+            assert evicted >= NUM_PAGES / 4;
+
+            storageMgr.getBufferManager().flushAll();
+            checkFile(storageMgr, dbf, expected, false);
+        }
+        finally {
+            deleteFile(storageMgr, dbf);
+        }
+        assert !new File(testBaseDir, filename).exists();
+    }
+
+
+    /**
+     * Runs the concurrent test with the cached pages held in an off-heap
+     * frame arena, and checks that the frames are returned to the arena
+     * when the file is removed from the cache.
+     */
+    @Test
+    public void testOffHeapCache() throws Exception {
+        String filename = "TestBufferManager_testOffHeapCache";
+        String oldValue =
+            PropertiesUtil.getProperty(BufferManager.PROP_PAGECACHE_OFFHEAP);
+        PropertiesUtil.setProperty(BufferManager.PROP_PAGECACHE_OFFHEAP, "true");
+        try {
+            StorageManager storageMgr = new StorageManager(testBaseDir);
+            PageFrameArena arena = storageMgr.getBufferManager().getFrameArena();
+            assert arena != null;
+            assert arena.getFrameSize() == DBFile.DEFAULT_PAGESIZE;
+
+            DBFile dbf = createFile(storageMgr, filename);
+            try {
+                AtomicIntegerArray expected =
+                    updatePages(storageMgr, dbf, 5000, false);
+                assert arena.getNumFreeFrames() < arena.getNumFrames();
+
+                storageMgr.getBufferManager().flushAll();
+                checkFile(storageMgr, dbf, expected, false);
+            }
+            finally {
+                deleteFile(storageMgr, dbf);
+            }
+            assert arena.getNumFreeFrames() == arena.getNumFrames();
+        }
+        finally {
+            PropertiesUtil.setProperty(BufferManager.PROP_PAGECACHE_OFFHEAP,
+                oldValue);
+        }
+    }
+
+
+    /**
+     * Loads pages into a frame arena of two frames, and checks that pages
+     * take frames while there are free ones, that invalidating a page returns
+     * its frame for the next page to reuse, and that pages go on the heap
+     * when the arena is exhausted or the file's page size doesn't match.
+     */
+    @Test
+    public void testFrameArena() throws Exception {
+        FileManager fileMgr = new FileManager(testBaseDir);
+        DBFile dbf = fileMgr.createDBFile("TestBufferManager_testFrameArena",
+            DBFileType.HEAP_DATA_FILE, DBFile.DEFAULT_PAGESIZE);
+        DBFile largePages = fileMgr.createDBFile(
+            "TestBufferManager_testFrameArena_large", DBFileType.HEAP_DATA_FILE,
+            DBFile.DEFAULT_PAGESIZE * 2);
+        try {
+            PageFrameArena arena =
+                new PageFrameArena(DBFile.DEFAULT_PAGESIZE, DBFile.DEFAULT_PAGESIZE * 2L);
+            assert arena.getNumFrames() == 2;
+            assert arena.getNumFreeFrames() == 2;
+
+            DBPage page1 = new DBPage(dbf, 1, arena);
+            DBPage page2 = new DBPage(dbf, 2, arena);
+            assert arena.getNumFreeFrames() == 0;
+            page1.writeInt(PAGE_NO_OFFSET, 1);
+            page2.writeInt(PAGE_NO_OFFSET, 2);
+
+            // The arena is exhausted, so the page goes on the heap, and
+            // invalidating it doesn't give the arena a frame.
+            DBPage heapPage = new DBPage(dbf, 3, arena);
+            heapPage.writeInt(PAGE_NO_OFFSET, 3);
+            assert heapPage.readInt(PAGE_NO_OFFSET) == 3;
+            heapPage.invalidate();
+            assert arena.getNumFreeFrames() == 0;
+
+            // The next page reuses the frame of the invalidated page, which
+            // still holds its data.
+            page1.invalidate();
+            assert arena.getNumFreeFrames() == 1;
+            DBPage page4 = new DBPage(dbf, 4, arena);
+            assert arena.getNumFreeFrames() == 0;
+            assert page4.readInt(PAGE_NO_OFFSET) == 1;
+            assert page2.readInt(PAGE_NO_OFFSET) == 2;
+
+            // Pages of another size never use the arena's frames.
+            page2.invalidate();
+            DBPage largePage = new DBPage(largePages, 1, arena);
+            assert largePage.getPageSize() == DBFile.DEFAULT_PAGESIZE * 2;
+            assert arena.getNumFreeFrames() == 1;
+            largePage.invalidate();
+            assert arena.getNumFreeFrames() == 1;
+
+            page4.invalidate();
+            assert arena.getNumFreeFrames() == 2;
+        }
+        finally {
+            fileMgr.deleteDBFile(dbf);
+            fileMgr.deleteDBFile(largePages);
+        }
+    }
+
+
+    /** Creates a file of {@link #NUM_PAGES} pages, numbered on each page. */
+    private DBFile createFile(StorageManager storageMgr, String filename)
+        throws IOException {
+
+        File f = new File(testBaseDir, filename);
+        if (f.exists())
+            f.delete();
+
+        FileManager fileMgr = new FileManager(testBaseDir);
+        DBFile dbf = fileMgr.createDBFile(filename, DBFileType.HEAP_DATA_FILE,
+            DBFile.DEFAULT_PAGESIZE);
+        for (int i = 1; i < NUM_PAGES; i++) {
+            DBPage page = fileMgr.loadDBPage(dbf, i, true);
+            page.writeInt(PAGE_NO_OFFSET, i);
+            fileMgr.saveDBPage(page);
+        }
+        fileMgr.closeDBFile(dbf);
+
+        return storageMgr.openDBFile(filename);
+    }
+
+
+    /** Removes a file from the cache and deletes it. */
+    private void deleteFile(StorageManager storageMgr, DBFile dbf)
+        throws IOException {
+
+        storageMgr.getBufferManager().removeDBFile(dbf);
+        new FileManager(testBaseDir).deleteDBFile(dbf);
+    }
+
+
+    /**
+     * Loads random pages of a file from {@link #NUM_THREADS} threads, each
+     * of which checks the page number on every page it loads and increments
+     * the counter on the pages it owns.
+     *
+     * @param ownPagesOnly true if each thread only loads the pages it owns
+     * @return the number of times the counter of each page was incremented
+     */
+    private AtomicIntegerArray updatePages(final StorageManager storageMgr,
+        final DBFile dbf, final int loadsPerThread, final boolean ownPagesOnly)
+        throws Exception {
+
+        final AtomicIntegerArray expected = new AtomicIntegerArray(NUM_PAGES);
+        ExecutorService pool = Executors.newFixedThreadPool(NUM_THREADS);
+        List<Future<Void>> futures = new ArrayList<Future<Void>>();
+        for (int t = 0; t < NUM_THREADS; t++) {
+            final int thread = t;
+            futures.add(pool.submit(new Callable<Void>() {
+                @Override
+                public Void call() throws IOException {
+                    Random random = new Random(thread);
+                    for (int i = 0; i < loadsPerThread; i++) {
+                        int pageNo = 1 + random.nextInt(NUM_PAGES - 1);
+                        if (ownPagesOnly) {
+                            pageNo = thread + NUM_THREADS *
+                                random.nextInt(NUM_PAGES / NUM_THREADS);
+                            if (pageNo == 0)
+                                continue;
+                        }
+
+                        DBPage page = storageMgr.loadDBPage(dbf, pageNo);
+                        assert page.readInt(PAGE_NO_OFFSET) == pageNo;
+
+                        if (pageNo % NUM_THREADS == thread) {
+                            page.writeInt(COUNTER_OFFSET,
+                                page.readInt(COUNTER_OFFSET) + 1);
+                            expected.incrementAndGet(pageNo);
+                        }
+                        storageMgr.unpinDBPage(page);
+                    }
+                    return null;
+                }
+            }));
+        }
+        try {
+            for (Future<Void> future : futures)
+                future.get();
+        }
+        finally {
+            pool.shutdown();
+        }
+        return expected;
+    }
+
+
+    /**
+     * Reads the pages of a file from disk, bypassing the cache, and checks
+     * their contents.
+     *
+     * @param skipCached true to skip the pages that are still cached
+     * @return the number of pages checked
+     */
+    private int checkFile(StorageManager storageMgr, DBFile dbf,
+                          AtomicIntegerArray expected, boolean skipCached)
+        throws IOException {
+
+        BufferManager bufferMgr = storageMgr.getBufferManager();
+        FileManager fileMgr = new FileManager(testBaseDir);
+        DBFile file = fileMgr.openDBFile(dbf.getDataFile().getName());
+        int checked = 0;
+        try {
+            for (int i = 1; i < NUM_PAGES; i++) {
+                if (skipCached) {
+                    DBPage cached = bufferMgr.getPage(dbf, i);
+                    if (cached != null) {
+                        bufferMgr.unpinPage(cached);
+                        continue;
+                    }
+                }
+
+                DBPage page = fileMgr.loadDBPage(file, i);
+                assert page.readInt(PAGE_NO_OFFSET) == i;
+                assert page.readInt(COUNTER_OFFSET) == expected.get(i);
+                checked++;
+            }
+        }
+        finally {
+            fileMgr.closeDBFile(file);
+        }
+        return checked;
+    }
+}
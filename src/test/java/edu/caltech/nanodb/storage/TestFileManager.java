@@ -1,8 +1,11 @@
 package edu.caltech.nanodb.storage;
 
 
+import java.io.EOFException;
 import java.io.File;
 import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
 
 import org.junit.Before;
 import org.junit.Test;
@@ -72,4 +75,100 @@ public class TestFileManager extends StorageTestCase {
         fileMgr.deleteDBFile(dbf);
         assert !f.exists();
     }
+
+
+    /**
+     * Checks that mapped pages hold what was written to the file, including
+     * pages added after the file was first mapped.
+     */
+    @Test
+    public void testMapPages() throws IOException {
+        String filename = "TestFileManager_testMapPages";
+        File f = new File(testBaseDir, filename);
+        if (f.exists())
+            f.delete();
+
+        DBFile dbf = fileMgr.createDBFile(filename,
+            DBFileType.COLUMNSTORE_DATA_FILE, DBFile.MIN_PAGESIZE);
+
+        DBPage page1 = fileMgr.loadDBPage(dbf, 1, true);
+        page1.writeInt(100, 12345);
+        fileMgr.saveDBPage(page1);
+
+        DBPage mapped1 = fileMgr.mapDBPage(dbf, 1);
+        assert mapped1.readInt(100) == 12345;
+        assert fileMgr.mapDBPage(dbf, 0).readByte(0) ==
+            DBFileType.COLUMNSTORE_DATA_FILE.getID();
+
+        // The file grows past the end of the mapping.
+        DBPage page2 = fileMgr.loadDBPage(dbf, 2, true);
+        page2.writeLong(8, 987654321L);
+        fileMgr.saveDBPage(page2);
+
+        assert fileMgr.mapDBPage(dbf, 2).readLong(8) == 987654321L;
+        assert mapped1.readInt(100) == 12345;
+
+        try {
+            fileMgr.mapDBPage(dbf, 3);
+            assert false : "Shouldn't be able to map a page past the end.";
+        }
+        catch (EOFException e) {
+            // Success.
+        }
+
+        fileMgr.deleteDBFile(dbf);
+    }
+
+
+    /**
+     * Checks that pages saved together, out of order and with gaps, can be
+     * loaded back together.
+     */
+    @Test
+    public void testSaveLoadPages() throws IOException {
+        String filename = "TestFileManager_testSaveLoadPages";
+        File f = new File(testBaseDir, filename);
+        if (f.exists())
+            f.delete();
+
+        DBFile dbf = fileMgr.createDBFile(filename, DBFileType.HEAP_DATA_FILE,
+            DBFile.MIN_PAGESIZE);
+
+        List<DBPage> pages = new ArrayList<DBPage>();
+        for (int pageNo : new int[] {5, 2, 3, 7, 1, 6}) {
+            DBPage page = fileMgr.loadDBPage(dbf, pageNo, true);
+            page.writeInt(0, pageNo * 1000);
+            page.writeInt(DBFile.MIN_PAGESIZE - 4, -pageNo);
+            page.setDirty(true);
+            pages.add(page);
+        }
+        fileMgr.saveDBPages(pages);
+        for (DBPage page : pages)
+            assert !page.isDirty();
+
+        assert dbf.getNumPages() == 8;
+        List<DBPage> loaded = fileMgr.loadDBPages(dbf, 1, 7);
+        for (int i = 0; i < loaded.size(); i++) {
+            DBPage page = loaded.get(i);
+            int pageNo = i + 1;
+            assert page.getPageNo() == pageNo;
+            if (pageNo == 4) {
+                assert page.readInt(0) == 0;
+            }
+            else {
+                assert page.readInt(0) == pageNo * 1000;
+                assert page.readInt(DBFile.MIN_PAGESIZE - 4) == -pageNo;
+            }
+        }
+
+        try {
+            fileMgr.loadDBPages(dbf, 6, 3);
+            assert false : "Shouldn't be able to load pages past the end.";
+        }
+        catch (EOFException e) {
+            // Success.
+        }
+
+        fileMgr.deleteDBFile(dbf);
+    }
 }
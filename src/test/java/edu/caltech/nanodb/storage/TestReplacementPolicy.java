@@ -0,0 +1,146 @@
+package edu.caltech.nanodb.storage;
+
+
+import java.io.IOException;
+import java.util.HashMap;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+
+/**
+ * This test class exercises the page replacement policies of the buffer
+ * manager on a simulated segment of the page cache.
+ */
+public class TestReplacementPolicy extends StorageTestCase {
+
+    private static final int CACHE_PAGES = 100;
+
+    private FileManager fileMgr;
+
+    /** The file that the simulated pages belong to. */
+    private DBFile dbFile;
+
+
+    /** A segment of the cache, mapping page numbers to unpinned pages. */
+    private HashMap<Integer, DBPage> pages = new HashMap<Integer, DBPage>();
+
+
+    @Before
+    public void createFile() throws IOException {
+        fileMgr = new FileManager(testBaseDir);
+        dbFile = fileMgr.createDBFile("TestReplacementPolicy_TestFile",
+            DBFileType.HEAP_DATA_FILE, DBFile.MIN_PAGESIZE);
+    }
+
+
+    @After
+    public void deleteFile() throws IOException {
+        fileMgr.deleteDBFile(dbFile);
+    }
+
+
+    /**
+     * Loads a page through a policy like the buffer manager does, evicting a
+     * page if the segment is full.
+     *
+     * @return true if the page was cached
+     */
+    private boolean access(ReplacementPolicy<Integer> policy, int pageNo,
+                           boolean scan) {
+        if (pages.containsKey(pageNo)) {
+            policy.pageAccessed(pageNo, scan);
+            return true;
+        }
+
+        pages.put(pageNo, new DBPage(dbFile, pageNo));
+        policy.pageAdded(pageNo, scan);
+        if (pages.size() > CACHE_PAGES) {
+            Integer victim = policy.chooseVictim(pages);
+            assert victim != null;
+            pages.remove(victim);
+        }
+        return false;
+    }
+
+
+    /**
+     * Uses a set of hot pages twice, then scans many more pages than the
+     * cache holds, and checks that the hot pages are all still cached.
+     */
+    private void checkScanResistance(ReplacementPolicy<Integer> policy) {
+        pages.clear();
+        for (int round = 0; round < 2; round++) {
+            for (int i = 0; i < CACHE_PAGES / 2; i++)
+                access(policy, i, false);
+        }
+
+        for (int i = 1000; i < 1000 + 5 * CACHE_PAGES; i++)
+            access(policy, i, true);
+
+        for (int i = 0; i < CACHE_PAGES / 2; i++)
+            assert pages.containsKey(i);
+    }
+
+
+    @Test
+    public void testScanResistance() {
+        checkScanResistance(new LRUPolicy<Integer>());
+        checkScanResistance(new FIFOPolicy<Integer>());
+        checkScanResistance(new ClockPolicy<Integer>());
+        checkScanResistance(new TwoQueuePolicy<Integer>());
+    }
+
+
+    /**
+     * Checks that 2Q keeps pages that are used again after a while, even if
+     * pages used only once, without a scan hint, are loaded in between.
+     */
+    @Test
+    public void testTwoQueuePromotion() {
+        TwoQueuePolicy<Integer> policy = new TwoQueuePolicy<Integer>();
+        pages.clear();
+
+        // Fill the cache so that the hot pages are evicted once, and then
+        // load them again while they are remembered.
+        for (int i = 0; i < 20; i++)
+            access(policy, i, false);
+        for (int i = 1000; i < 1000 + CACHE_PAGES; i++)
+            access(policy, i, false);
+        for (int i = 0; i < 20; i++)
+            assert !access(policy, i, false);
+
+        for (int i = 2000; i < 2000 + 5 * CACHE_PAGES; i++)
+            access(policy, i, false);
+
+        for (int i = 0; i < 20; i++)
+            assert pages.containsKey(i);
+    }
+
+
+    /** Checks that no policy evicts a pinned page. */
+    @Test
+    public void testPinnedPages() {
+        ReplacementPolicy<?>[] policies = {
+            new LRUPolicy<Integer>(), new FIFOPolicy<Integer>(),
+            new ClockPolicy<Integer>(), new TwoQueuePolicy<Integer>()
+        };
+
+        for (ReplacementPolicy<?> p : policies) {
+            @SuppressWarnings("unchecked")
+            ReplacementPolicy<Integer> policy = (ReplacementPolicy<Integer>) p;
+            pages.clear();
+            for (int i = 0; i < 10; i++) {
+                DBPage page = new DBPage(dbFile, i);
+                pages.put(i, page);
+                policy.pageAdded(i, i % 2 == 0);
+                if (i != 7)
+                    page.incPinCount();
+            }
+
+            assert policy.chooseVictim(pages) == 7;
+            assert policy.chooseVictim(pages) == null;
+        }
+    }
+}
@@ -0,0 +1,177 @@
+package edu.caltech.nanodb.storage.colstore;
+
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.After;
+import org.junit.Before;
+
+import edu.caltech.nanodb.commands.Command;
+import edu.caltech.nanodb.commands.CreateTableCommand;
+import edu.caltech.nanodb.commands.LoadFileCommand;
+import edu.caltech.nanodb.expressions.TupleLiteral;
+import edu.caltech.nanodb.relations.Tuple;
+import edu.caltech.nanodb.server.CommandResult;
+import edu.caltech.nanodb.server.NanoDBServer;
+import edu.caltech.nanodb.storage.DBPage;
+import edu.caltech.nanodb.storage.StorageManager;
+import edu.caltech.nanodb.storage.StorageTestCase;
+import edu.caltech.nanodb.storage.TableFileInfo;
+import edu.caltech.nanodb.util.PropertiesUtil;
+
+/**
+ * A base class for tests that run commands against column-store tables.  The
+ * server is started before each test and shut down after it, and properties
+ * set by the test are put back.
+ */
+public abstract class ColStoreTestCase extends StorageTestCase {
+
+    protected StorageManager storageManager;
+
+    /** The values that properties set by the test had before. */
+    private Map<String, String> savedProperties = new HashMap<String, String>();
+
+    @Before
+    public void startServer() throws Exception {
+        // Other tests may leave the storage manager running.
+        try {
+            StorageManager.shutdown();
+        }
+        catch (IllegalStateException e) {
+            // It wasn't running.
+        }
+        NanoDBServer.startup();
+        storageManager = StorageManager.getInstance();
+    }
+
+    @After
+    public void stopServer() {
+        NanoDBServer.shutdown();
+        for (Map.Entry<String, String> entry : savedProperties.entrySet())
+            PropertiesUtil.setProperty(entry.getKey(), entry.getValue());
+        savedProperties.clear();
+    }
+
+
+    /** Sets a property until the end of the test. */
+    protected void setProperty(String key, String value) {
+        if (!savedProperties.containsKey(key))
+            savedProperties.put(key, PropertiesUtil.getProperty(key));
+        PropertiesUtil.setProperty(key, value);
+    }
+
+    protected void doCommand(String command) throws Exception {
+        CommandResult result = NanoDBServer.doCommand(command, false);
+        if (result.failed())
+            throw result.getFailure();
+    }
+
+    protected void doCommand(Command command) throws Exception {
+        CommandResult result = NanoDBServer.doCommand(command, false);
+        if (result.failed())
+            throw result.getFailure();
+    }
+
+    /**
+     * Creates a column-store table.
+     *
+     * @param tableName the name of the table
+     * @param columns the column declarations of <tt>CREATE TABLE</tt>
+     */
+    protected void createTable(String tableName, String columns)
+            throws Exception {
+        CreateTableCommand command = (CreateTableCommand)
+            NanoDBServer.parseCommand("CREATE TABLE " + tableName + " (" +
+            columns + ");");
+        command.setEngine("columnStore");
+        doCommand(command);
+    }
+
+    /** Runs a query and returns its rows. */
+    protected List<TupleLiteral> select(String query) throws Exception {
+        CommandResult result = NanoDBServer.doCommand(query, true);
+        if (result.failed())
+            throw result.getFailure();
+        return result.getTuples();
+    }
+
+    /**
+     * Loads rows into a table with <tt>LOAD FILE</tt>, from an input file
+     * that is deleted afterwards.
+     *
+     * @param tableName the table to load
+     * @param header the first line of the file, which holds the column names
+     * @param lines the rows, as comma-separated values
+     */
+    protected void loadRows(String tableName, String header, List<String> lines)
+            throws Exception {
+        String fileName = tableName + ".csv";
+        File file = new File(PropertiesUtil.getProperty("nanodb.inputFileDir",
+            "input_datafiles/"), fileName);
+        PrintWriter writer = new PrintWriter(new FileWriter(file));
+        try {
+            writer.println(header);
+            for (String line : lines)
+                writer.println(line);
+        }
+        finally {
+            writer.close();
+        }
+
+        try {
+            doCommand(new LoadFileCommand(tableName, fileName));
+        }
+        finally {
+            file.delete();
+        }
+    }
+
+    protected ColStoreTableManager getTableManager(TableFileInfo tblFileInfo) {
+        return (ColStoreTableManager) tblFileInfo.getTableManager();
+    }
+
+    /** Returns the number of rows of each row group of a table. */
+    protected List<Integer> getGroupRows(String tableName) throws IOException {
+        TableFileInfo tblFileInfo = storageManager.openTable(tableName);
+        DBPage header = storageManager.loadDBPage(tblFileInfo.getDBFile(), 0);
+        try {
+            List<Integer> groupRows = new ArrayList<Integer>();
+            for (int i = 0; i < CSHeaderPage.getNumGroups(header); i++)
+                groupRows.add(CSHeaderPage.getGroupRows(header, i));
+            return groupRows;
+        }
+        finally {
+            storageManager.unpinDBPage(header);
+        }
+    }
+
+    /** Returns the number of rows in the delta store of a table. */
+    protected int countDeltaRows(String tableName) throws IOException {
+        TableFileInfo tblFileInfo = storageManager.openTable(tableName);
+        DeltaStore deltaStore =
+            getTableManager(tblFileInfo).getDeltaStore(tblFileInfo);
+        int rows = 0;
+        if (deltaStore != null) {
+            for (Tuple tup = deltaStore.getFirstTuple(); tup != null;
+                 tup = deltaStore.getNextTuple(tup)) {
+                rows++;
+            }
+        }
+        return rows;
+    }
+
+    /** Returns the values of a column of rows. */
+    protected static List<Object> getColumn(List<TupleLiteral> tuples,
+                                            int column) {
+        List<Object> values = new ArrayList<Object>();
+        for (TupleLiteral tup : tuples)
+            values.add(tup.getColumnValue(column));
+        return values;
+    }
+}
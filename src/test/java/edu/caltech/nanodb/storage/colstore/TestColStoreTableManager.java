@@ -0,0 +1,267 @@
+package edu.caltech.nanodb.storage.colstore;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import edu.caltech.nanodb.commands.ExecutionException;
+import edu.caltech.nanodb.commands.SelectClause;
+import edu.caltech.nanodb.commands.SelectCommand;
+import edu.caltech.nanodb.expressions.TupleLiteral;
+import edu.caltech.nanodb.plans.CSProjectNode;
+import edu.caltech.nanodb.plans.PlanNode;
+import edu.caltech.nanodb.qeval.ColumnStats;
+import edu.caltech.nanodb.qeval.PlanCost;
+import edu.caltech.nanodb.qeval.PlannerFactory;
+import edu.caltech.nanodb.qeval.TableStats;
+import edu.caltech.nanodb.relations.TableSchema;
+import edu.caltech.nanodb.server.NanoDBServer;
+import edu.caltech.nanodb.storage.DBPage;
+import edu.caltech.nanodb.storage.StorageManager;
+import edu.caltech.nanodb.storage.TableFileInfo;
+
+/**
+ * This test class exercises loading and changing column-store tables through
+ * {@link ColStoreTableManager}.
+ */
+public class TestColStoreTableManager extends ColStoreTestCase {
+
+    private static final String TABLE_NAME = "TEST_CS_TABLE";
+
+    private static final String OTHER_TABLE_NAME = "TEST_CS_OTHER";
+
+    private static final String HEADER = "ID,NAME,CODE";
+
+    @Before
+    public void createTables() throws Exception {
+        for (String tableName : new String[] { TABLE_NAME, OTHER_TABLE_NAME }) {
+            doCommand("DROP TABLE IF EXISTS " + tableName + ";");
+            createTable(tableName, "ID INTEGER, NAME VARCHAR(20), CODE INTEGER");
+        }
+    }
+
+    @After
+    public void dropTables() throws Exception {
+        doCommand("DROP TABLE " + TABLE_NAME + ";");
+        doCommand("DROP TABLE " + OTHER_TABLE_NAME + ";");
+    }
+
+    /**
+     * Loads the same rows on one thread and on several, in chunks that end
+     * partway through the column loaders' windows, and checks that both
+     * tables read back the rows in order.
+     */
+    @Test
+    public void testParallelLoad() throws Exception {
+        assert 1000 % ColumnLoader.WINDOW_SIZE != 0;
+        setProperty(ColStoreTableManager.PROP_LOAD_CHUNK_ROWS, "1000");
+
+        setProperty(ColStoreTableManager.PROP_LOAD_THREADS, "1");
+        loadRows(TABLE_NAME, HEADER, makeLines(0, 5500));
+
+        setProperty(ColStoreTableManager.PROP_LOAD_THREADS, "3");
+        loadRows(OTHER_TABLE_NAME, HEADER, makeLines(0, 5500));
+
+        checkRows(select("SELECT * FROM " + TABLE_NAME + ";"), 0, 5500);
+        checkRows(select("SELECT * FROM " + OTHER_TABLE_NAME + ";"), 0, 5500);
+    }
+
+    /**
+     * Loads a table three times, and checks that each load adds a row group
+     * and that scans read the groups in order.
+     */
+    @Test
+    public void testLoadGroups() throws Exception {
+        loadRows(TABLE_NAME, HEADER, makeLines(0, 1200));
+        loadRows(TABLE_NAME, HEADER, makeLines(1200, 3700));
+        loadRows(TABLE_NAME, HEADER, makeLines(3700, 4000));
+
+        List<Integer> groupRows = getGroupRows(TABLE_NAME);
+        assert groupRows.equals(Arrays.asList(1200, 2500, 300)) : groupRows;
+        checkRows(select("SELECT * FROM " + TABLE_NAME + ";"), 0, 4000);
+
+        // A range that spans the end of the first group.
+        checkRows(select("SELECT * FROM " + TABLE_NAME +
+            " WHERE ID >= 1150 AND ID < 1250;"), 1150, 1250);
+
+        // The later groups continue the first group's dictionary.
+        List<TupleLiteral> rows = select("SELECT ID FROM " + TABLE_NAME +
+            " WHERE CODE = 3;");
+        List<Object> ids = new ArrayList<Object>();
+        for (int id = 0; id < 4000; id++) {
+            if ((id / 100) % 7 == 3)
+                ids.add(id);
+        }
+        assert getColumn(rows, 0).equals(ids);
+    }
+
+    /**
+     * Inserts rows into a loaded table and into an empty one, and checks that
+     * the rows go to the delta store and that scans read them after the rows
+     * of the row groups.
+     */
+    @Test
+    public void testInsertIntoDeltaStore() throws Exception {
+        loadRows(TABLE_NAME, HEADER, makeLines(0, 1000));
+        insertRows(TABLE_NAME, 1000, 1005);
+        insertRows(OTHER_TABLE_NAME, 0, 3);
+
+        assert getGroupRows(TABLE_NAME).equals(Arrays.asList(1000));
+        assert countDeltaRows(TABLE_NAME) == 5;
+        assert getGroupRows(OTHER_TABLE_NAME).isEmpty();
+        assert countDeltaRows(OTHER_TABLE_NAME) == 3;
+
+        checkRows(select("SELECT * FROM " + TABLE_NAME + ";"), 0, 1005);
+        checkRows(select("SELECT * FROM " + TABLE_NAME +
+            " WHERE ID >= 995;"), 995, 1005);
+        checkRows(select("SELECT * FROM " + OTHER_TABLE_NAME + ";"), 0, 3);
+
+        // The zone maps of the row groups don't rule out the delta rows.
+        checkRows(select("SELECT * FROM " + TABLE_NAME +
+            " WHERE ID > 1002;"), 1003, 1005);
+    }
+
+
+    /**
+     * Sets a column to NULL in a row of a row group and in a row of the delta
+     * store, and checks that both updates are refused and leave the rows as
+     * they were, since column pages can't store NULLs.
+     */
+    @Test
+    public void testUpdateToNull() throws Exception {
+        loadRows(TABLE_NAME, HEADER, makeLines(0, 10));
+        insertRows(TABLE_NAME, 10, 11);
+
+        for (int id : new int[] { 5, 10 }) {
+            try {
+                doCommand("UPDATE " + TABLE_NAME +
+                    " SET NAME = NULL WHERE ID = " + id + ";");
+                assert false : "Set NAME to NULL in row " + id;
+            }
+            catch (ExecutionException e) {
+                assert e.getCause() instanceof IllegalArgumentException : e;
+            }
+        }
+
+        checkRows(select("SELECT * FROM " + TABLE_NAME + ";"), 0, 11);
+        assert countDeltaRows(TABLE_NAME) == 1;
+    }
+
+    /**
+     * Analyzes a table with deleted rows and rows in its delta store, checks
+     * the statistics stored in its header page, and checks the cost that the
+     * planner gives a scan of the table from them.
+     */
+    @Test
+    public void testAnalyze() throws Exception {
+        loadRows(TABLE_NAME, HEADER, makeLines(0, 1000));
+        doCommand("DELETE FROM " + TABLE_NAME + " WHERE ID < 100;");
+        doCommand("INSERT INTO " + TABLE_NAME + " VALUES (1000, 'row 1000', 9);");
+        doCommand("INSERT INTO " + TABLE_NAME + " VALUES (1001, 'row 1001', 9);");
+        doCommand("ANALYZE " + TABLE_NAME + ";");
+
+        // The statistics are read back from the header page after a restart.
+        NanoDBServer.shutdown();
+        NanoDBServer.startup();
+        storageManager = StorageManager.getInstance();
+
+        TableFileInfo tblFileInfo = storageManager.openTable(TABLE_NAME);
+        TableSchema schema = tblFileInfo.getSchema();
+        DBPage header = storageManager.loadDBPage(tblFileInfo.getDBFile(), 0);
+        TableStats stats;
+        int[] columnPages = new int[schema.numColumns()];
+        try {
+            stats = CSHeaderPage.getTableStats(header, schema);
+            for (int i = 0; i < columnPages.length; i++) {
+                columnPages[i] = CSHeaderPage.getColumnPages(header, schema, i);
+                assert columnPages[i] ==
+                    CSHeaderPage.getGroupEndPage(header, 0, i) : "Column " + i;
+            }
+        }
+        finally {
+            storageManager.unpinDBPage(header);
+        }
+
+        assert stats.numTuples == 902 : stats;
+        assert stats.numDataPages >= columnPages[0] + columnPages[1] +
+            columnPages[2] : stats;
+        assert stats.avgTupleSize > 0 : stats;
+
+        // The first 100 rows are deleted, and the delta store adds two rows.
+        checkColumnStats(stats.getColumnStats(0), 902, 100, 1001);
+        checkColumnStats(stats.getColumnStats(1), 902, "row 100", "row 999");
+        checkColumnStats(stats.getColumnStats(2), 8, 0, 9);
+
+        // The scan only reads the pages of the ID column, and the estimated
+        // number of rows comes from the range of IDs.
+        PlanCost cost = planCost("SELECT ID FROM " + TABLE_NAME +
+            " WHERE ID < 200;");
+        assert cost.numBlockIOs == columnPages[0] : cost;
+        assert Math.abs(cost.numTuples - 902f * 100 / 901) < 0.5 : cost;
+
+        // With a predicate on CODE, its pages are read too, and the estimate
+        // comes from the number of distinct codes.
+        cost = planCost("SELECT ID FROM " + TABLE_NAME + " WHERE CODE = 3;");
+        assert cost.numBlockIOs == columnPages[0] + columnPages[2] : cost;
+        assert Math.abs(cost.numTuples - 902f / 8) < 0.5 : cost;
+    }
+
+    /**
+     * Makes the input lines of the rows with IDs from <tt>start</tt> to
+     * <tt>end</tt> - 1.  The codes repeat in runs, so that the column is
+     * dictionary or run-length encoded.
+     */
+    private static List<String> makeLines(int start, int end) {
+        List<String> lines = new ArrayList<String>();
+        for (int id = start; id < end; id++)
+            lines.add(id + ",row " + id + "," + (id / 100) % 7);
+        return lines;
+    }
+
+    private static void checkColumnStats(ColumnStats stats, int numUnique,
+                                         Object min, Object max) {
+        assert stats.getNumUniqueValues() == numUnique : stats;
+        assert stats.getNumNullValues() == 0 : stats;
+        assert min.equals(stats.getMinValue()) : stats;
+        assert max.equals(stats.getMaxValue()) : stats;
+    }
+
+    /** Returns the cost the planner estimates for a query. */
+    private static PlanCost planCost(String query) throws Exception {
+        SelectCommand command = (SelectCommand) NanoDBServer.parseCommand(query);
+        SelectClause selClause = command.getSelectClause();
+        selClause.computeSchema();
+        PlanNode plan = PlannerFactory.getPlanner().makePlan(selClause);
+        assert plan instanceof CSProjectNode : plan;
+        return plan.getCost();
+    }
+
+    /** Inserts the rows of {@link #makeLines} with <tt>INSERT</tt>. */
+    private void insertRows(String tableName, int start, int end)
+            throws Exception {
+        for (String line : makeLines(start, end)) {
+            String[] values = line.split(",");
+            doCommand("INSERT INTO " + tableName + " VALUES (" + values[0] +
+                ", '" + values[1] + "', " + values[2] + ");");
+        }
+    }
+
+    /**
+     * Checks that the rows are those of {@link #makeLines}, in the order of
+     * their IDs.
+     */
+    private static void checkRows(List<TupleLiteral> rows, int start, int end) {
+        assert rows.size() == end - start : "Got " + rows.size() + " rows";
+        for (int i = 0; i < rows.size(); i++) {
+            int id = start + i;
+            TupleLiteral row = rows.get(i);
+            assert row.getColumnValue(0).equals(id) : "Row " + i + " is " + row;
+            assert row.getColumnValue(1).equals("row " + id) : row;
+            assert row.getColumnValue(2).equals((id / 100) % 7) : row;
+        }
+    }
+}
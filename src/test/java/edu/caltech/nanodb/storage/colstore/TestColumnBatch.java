@@ -0,0 +1,142 @@
+package edu.caltech.nanodb.storage.colstore;
+
+import java.io.IOException;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import edu.caltech.nanodb.relations.ColumnType;
+import edu.caltech.nanodb.relations.SQLDataType;
+import edu.caltech.nanodb.storage.DBFile;
+import edu.caltech.nanodb.storage.DBFileType;
+import edu.caltech.nanodb.storage.DBPage;
+import edu.caltech.nanodb.storage.FileManager;
+import edu.caltech.nanodb.storage.StorageTestCase;
+
+/**
+ * This test class exercises decoding column-store pages into
+ * {@link ColumnBatch}es.
+ */
+public class TestColumnBatch extends StorageTestCase {
+
+    private final String TEST_FILE_NAME = "TestColumnBatch_TestFile";
+
+    private FileManager fileMgr;
+
+    private DBFile dbFile;
+
+    private DBPage dbPage;
+
+    @Before
+    public void beforeClass() throws IOException {
+        fileMgr = new FileManager(testBaseDir);
+        dbFile = fileMgr.createDBFile(TEST_FILE_NAME,
+            DBFileType.COLUMNSTORE_DATA_FILE, DBFile.DEFAULT_PAGESIZE);
+        dbPage = new DBPage(dbFile, 0);
+    }
+
+    @After
+    public void afterClass() throws IOException {
+        fileMgr.deleteDBFile(dbFile);
+    }
+
+    /** Reads an uncompressed page into batches smaller than the page. */
+    @Test
+    public void testReadUncompressedBatch() {
+        ColumnType type = new ColumnType(SQLDataType.INTEGER);
+        UncompressedPage.initNewPage(dbPage, 100);
+        for (int i = 0; i < 10; i++)
+            assert UncompressedPage.writeBlock(dbPage, "" + (i * 3), type);
+
+        // Values are stored densely, without row ids.
+        ColumnBatch batch = new ColumnBatch(type, 4);
+        int end = CSDataPage.getBlocksEnd(dbPage);
+        assert end == UncompressedPage.FIRST_BLOCK_OFFSET + 10 * 4;
+        int offset = UncompressedPage.readBatch(dbPage,
+            UncompressedPage.FIRST_BLOCK_OFFSET, end, batch, 4);
+        assert batch.getSize() == 4;
+        assert batch.getInts()[3] == 9;
+
+        batch.reset(4);
+        offset = UncompressedPage.readBatch(dbPage, offset, end, batch, 4);
+        batch.reset(8);
+        offset = UncompressedPage.readBatch(dbPage, offset, end, batch, 4);
+        assert batch.getSize() == 2;
+        assert offset == end;
+        assert batch.getObject(1).equals(27);
+
+        // Row 107 can be found from its row id without reading rows 100 - 106.
+        offset = UncompressedPage.getRowOffset(dbPage, 107, type);
+        assert offset == UncompressedPage.FIRST_BLOCK_OFFSET + 7 * 4;
+        assert dbPage.readInt(offset) == 21;
+    }
+
+    /** Unpacks a page of dictionary codes and then the codes of a batch. */
+    @Test
+    public void testDictionaryCodes() {
+        int bitsize = 3;
+        int[] codes = { 1, 5, 2 };
+        DictionaryPage.writePage(dbPage, codes, 3, bitsize);
+        codes = new int[3];
+        assert DictionaryPage.readPage(dbPage, codes) == 3;
+        assert codes[0] == 1 && codes[1] == 5 && codes[2] == 2;
+
+        ColumnBatch batch = new ColumnBatch(new ColumnType(SQLDataType.INTEGER));
+        Object[] dict = { null, 10, 20, 30, 40, 50 };
+        batch.setDictionary(dict);
+        for (int i = 0; i < 3; i++)
+            batch.addCode(codes[i]);
+        assert batch.getObject(1).equals(50);
+
+        batch.decodeCodes();
+        assert batch.getKind() == ColumnBatch.Kind.INT;
+        assert batch.getSize() == 3;
+        assert batch.getInts()[2] == 20;
+    }
+
+    /** Packs codes of every width, including codes that span two words. */
+    @Test
+    public void testPackedCodeWidths() {
+        for (int bitsize = 1; bitsize <= 32; bitsize++) {
+            int capacity = DictionaryPage.getPageCapacity(
+                dbPage.getPageSize(), bitsize);
+            int[] codes = new int[capacity];
+            long max = (1L << bitsize) - 1;
+            for (int i = 0; i < capacity; i++)
+                codes[i] = (int) ((i * 2654435761L) & max);
+
+            DictionaryPage.writePage(dbPage, codes, capacity, bitsize);
+            int[] read = new int[capacity];
+            assert DictionaryPage.readPage(dbPage, read) == capacity;
+            for (int i = 0; i < capacity; i++)
+                assert read[i] == codes[i] : "bitsize " + bitsize + ", code " + i;
+        }
+    }
+
+    /** Writes frame-of-reference and delta pages, and reads them back. */
+    @Test
+    public void testForAndDeltaPages() {
+        int count = 500;
+        long[] values = new long[count];
+        for (int i = 0; i < count; i++)
+            values[i] = 1000000000000L + i * 7 + (i * 2654435761L) % 5;
+
+        assert FORPage.fits(dbPage.getPageSize(), count, values[0],
+            values[count - 1]);
+        FORPage.writePage(dbPage, values, count);
+        long[] read = new long[count];
+        assert FORPage.readPage(dbPage, read, new int[count]) == count;
+        for (int i = 0; i < count; i++)
+            assert read[i] == values[i] : "FOR value " + i;
+
+        DeltaPage.writePage(dbPage, values, count);
+        read = new long[count];
+        assert DeltaPage.readPage(dbPage, read, new int[count]) == count;
+        for (int i = 0; i < count; i++)
+            assert read[i] == values[i] : "delta value " + i;
+
+        // Values further apart than 32 bits don't fit on a FOR page.
+        assert !FORPage.fits(dbPage.getPageSize(), 2, 0, 1L << 33);
+    }
+}
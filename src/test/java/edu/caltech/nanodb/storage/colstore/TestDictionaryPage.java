@@ -0,0 +1,83 @@
+package edu.caltech.nanodb.storage.colstore;
+
+import java.io.IOException;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import edu.caltech.nanodb.relations.ColumnType;
+import edu.caltech.nanodb.relations.SQLDataType;
+import edu.caltech.nanodb.storage.DBFile;
+import edu.caltech.nanodb.storage.DBFileType;
+import edu.caltech.nanodb.storage.DBPage;
+import edu.caltech.nanodb.storage.FileManager;
+import edu.caltech.nanodb.storage.StorageTestCase;
+
+/**
+ * This test class exercises writing and reading the dictionary of a
+ * dictionary-encoded column.
+ */
+public class TestDictionaryPage extends StorageTestCase {
+
+    private final String TEST_FILE_NAME = "TestDictionaryPage_TestFile";
+
+    private FileManager fileMgr;
+
+    private DBFile dbFile;
+
+    @Before
+    public void beforeClass() throws IOException {
+        fileMgr = new FileManager(testBaseDir);
+        dbFile = fileMgr.createDBFile(TEST_FILE_NAME,
+            DBFileType.COLUMNSTORE_DATA_FILE, DBFile.MIN_PAGESIZE);
+    }
+
+    @After
+    public void afterClass() throws IOException {
+        fileMgr.deleteDBFile(dbFile);
+    }
+
+    /** Writes a dictionary too large for one page, and reads it back. */
+    @Test
+    public void testDictionarySpill() {
+        ColumnType type = new ColumnType(SQLDataType.VARCHAR);
+        type.setLength(20);
+
+        // The data pages store codes in order of appearance, here the
+        // reverse of value order.
+        Object[] values = new Object[90];
+        int[] storedCodes = new int[values.length];
+        for (int i = 0; i < values.length; i++) {
+            values[i] = String.format("value-%03d", i);
+            storedCodes[i] = values.length - i;
+        }
+
+        DBPage page1 = new DBPage(dbFile, 1);
+        DictionaryPage.initEntriesPage(page1);
+        int written = DictionaryPage.writeEntries(page1, values, storedCodes, 0, type);
+        assert written > 0 && written < values.length;
+
+        DBPage page2 = new DBPage(dbFile, 2);
+        DictionaryPage.initEntriesPage(page2);
+        written = DictionaryPage.writeEntries(page2, values, storedCodes, written, type);
+
+        DBPage page3 = new DBPage(dbFile, 3);
+        DictionaryPage.initEntriesPage(page3);
+        written = DictionaryPage.writeEntries(page3, values, storedCodes, written, type);
+        assert written == values.length;
+
+        Object[] table = new Object[values.length + 1];
+        int[] codeMap = new int[values.length + 1];
+        int code = DictionaryPage.readEntries(page1, table, codeMap, 1, type);
+        code = DictionaryPage.readEntries(page2, table, codeMap, code, type);
+        code = DictionaryPage.readEntries(page3, table, codeMap, code, type);
+        assert code == values.length + 1;
+
+        // Codes are one more than the value's position in sorted order.
+        for (int i = 0; i < values.length; i++) {
+            assert table[i + 1].equals(values[i]);
+            assert codeMap[storedCodes[i]] == i + 1;
+        }
+    }
+}
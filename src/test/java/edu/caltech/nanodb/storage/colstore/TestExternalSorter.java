@@ -0,0 +1,109 @@
+package edu.caltech.nanodb.storage.colstore;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.Random;
+
+import org.junit.Test;
+
+import edu.caltech.nanodb.relations.ColumnType;
+import edu.caltech.nanodb.relations.SQLDataType;
+
+/**
+ * This test class exercises the sorter that bulk loads into tables with a
+ * sort key use.
+ */
+public class TestExternalSorter {
+
+    /**
+     * Sorts more lines than fit in memory by a string and an integer column,
+     * and checks the order, that equal keys keep their order, and that the
+     * runs are deleted.
+     */
+    @Test
+    public void testSortRuns() throws IOException {
+        File dir = Files.createTempDirectory("sorter").toFile();
+        ColumnType varchar = new ColumnType(SQLDataType.VARCHAR);
+        varchar.setLength(10);
+        ExternalSorter sorter = new ExternalSorter(new int[] { 1, 0 },
+            new ColumnType[] { varchar, new ColumnType(SQLDataType.INTEGER) },
+            100, dir);
+
+        Random random = new Random(3);
+        String[] fields = new String[3];
+        for (int i = 0; i < 1000; i++) {
+            // Integers that sort differently as strings, and duplicate keys.
+            String line = random.nextInt(50) + ",r" + random.nextInt(4) + "," + i;
+            ColStoreTableManager.splitLine(line, fields);
+            sorter.add(line, fields);
+        }
+        sorter.finish();
+        assert dir.list().length == 10;
+
+        String[] prev = null;
+        int count = 0;
+        String line;
+        while ((line = sorter.readLine()) != null) {
+            String[] cur = line.split(",");
+            if (prev != null) {
+                int c = prev[1].compareTo(cur[1]);
+                if (c == 0)
+                    c = Integer.compare(Integer.parseInt(prev[0]), Integer.parseInt(cur[0]));
+                assert c <= 0;
+                if (c == 0)
+                    assert Integer.parseInt(prev[2]) < Integer.parseInt(cur[2]);
+            }
+            prev = cur;
+            count++;
+        }
+        assert count == 1000;
+        assert sorter.getFirstKey()[0].equals("r0");
+
+        sorter.close();
+        assert dir.list().length == 0;
+        assert dir.delete();
+    }
+
+    /**
+     * Sorts rows of values through runs, by a column with nulls and a long
+     * column, and checks that every type of value is read back intact.
+     */
+    @Test
+    public void testSortValues() throws IOException {
+        File dir = Files.createTempDirectory("sorter").toFile();
+        ExternalSorter sorter = new ExternalSorter(new int[] { 0, 1 }, 64, dir);
+
+        Random random = new Random(5);
+        for (int i = 0; i < 500; i++) {
+            String tag = random.nextInt(6) == 0 ? null : "t" + random.nextInt(5);
+            sorter.add(new Object[] { tag, (long) random.nextInt(100), i,
+                (short) i, (byte) i, i / 4.0f, i / 8.0, "row \u00e9" + i });
+        }
+        sorter.finish();
+        assert dir.list().length == 8;
+
+        Object[] prev = null;
+        int count = 0;
+        Object[] row;
+        while ((row = sorter.readValues()) != null) {
+            int i = (Integer) row[2];
+            assert row[3].equals((short) i) && row[4].equals((byte) i);
+            assert row[5].equals(i / 4.0f) && row[6].equals(i / 8.0);
+            assert row[7].equals("row \u00e9" + i);
+            if (prev != null) {
+                int c = ExternalSorter.compareKeys(
+                    new Object[] { prev[0], prev[1] }, new Object[] { row[0], row[1] });
+                assert c < 0 || (c == 0 && (Integer) prev[2] < i);
+            }
+            prev = row;
+            count++;
+        }
+        assert count == 500;
+        assert sorter.getFirstKey()[0] == null;
+
+        sorter.close();
+        assert dir.list().length == 0;
+        assert dir.delete();
+    }
+}
@@ -0,0 +1,76 @@
+package edu.caltech.nanodb.storage.colstore;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+
+import org.junit.Test;
+
+/**
+ * This test class exercises the compressed row bitmaps that column-store
+ * tables use to mark deleted rows.
+ */
+public class TestRowBitmap {
+
+    /**
+     * Sets rows in a sparse chunk, a dense chunk that turns into a bitmap
+     * container and a chunk far away, and counts them in ranges.
+     */
+    @Test
+    public void testAddAndCount() {
+        RowBitmap bitmap = new RowBitmap();
+        assert bitmap.isEmpty();
+
+        for (int i = 0; i < 100; i++)
+            assert bitmap.add(i * 7);
+        assert !bitmap.add(0);
+
+        // More than RowBitmap.ARRAY_MAX_SIZE rows in the second chunk.
+        for (int i = 65536; i < 65536 + 10000; i += 2)
+            bitmap.add(i);
+        bitmap.add(5 << 16);
+
+        assert bitmap.getCardinality() == 100 + 5000 + 1;
+        assert bitmap.contains(693);
+        assert !bitmap.contains(694);
+        assert bitmap.contains(65538);
+        assert !bitmap.contains(65539);
+        assert bitmap.contains(5 << 16);
+        assert !bitmap.contains(3 << 16);
+
+        assert bitmap.countRange(0, 700) == 100;
+        assert bitmap.countRange(7, 14) == 1;
+        assert bitmap.countRange(65536, 65536 + 100) == 50;
+        assert bitmap.countRange(65537, 65536 + 129) == 64;
+        assert bitmap.countRange(0, Integer.MAX_VALUE) == 5101;
+        assert bitmap.countRange(700, 65536) == 0;
+    }
+
+    /** Writes a bitmap and reads it back. */
+    @Test
+    public void testSerialize() throws IOException {
+        RowBitmap bitmap = new RowBitmap();
+        for (int i = 0; i < 20000; i += 3)
+            bitmap.add(i);
+        for (int i = 200000; i < 200010; i++)
+            bitmap.add(i);
+
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        bitmap.write(new DataOutputStream(bytes));
+        assert bytes.size() == bitmap.getSerializedSize();
+
+        RowBitmap read = RowBitmap.read(new DataInputStream(
+            new ByteArrayInputStream(bytes.toByteArray())));
+        assert read.getCardinality() == bitmap.getCardinality();
+        for (int i = 0; i < 20000; i++)
+            assert read.contains(i) == (i % 3 == 0);
+        assert read.contains(200009);
+        assert !read.contains(200010);
+
+        // The read containers can still grow.
+        assert read.add(200010);
+        assert read.countRange(200000, 300000) == 11;
+    }
+}
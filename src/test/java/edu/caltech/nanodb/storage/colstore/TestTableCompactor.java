@@ -0,0 +1,253 @@
+package edu.caltech.nanodb.storage.colstore;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.locks.Lock;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import edu.caltech.nanodb.commands.Command;
+import edu.caltech.nanodb.commands.CreateTableCommand;
+import edu.caltech.nanodb.expressions.TupleLiteral;
+import edu.caltech.nanodb.relations.Tuple;
+import edu.caltech.nanodb.server.CommandResult;
+import edu.caltech.nanodb.server.NanoDBServer;
+import edu.caltech.nanodb.storage.DBPage;
+import edu.caltech.nanodb.storage.StorageManager;
+import edu.caltech.nanodb.storage.StorageTestCase;
+import edu.caltech.nanodb.storage.TableFileInfo;
+
+/**
+ * This test class exercises {@link TableCompactor}, which rewrites a
+ * column-store table without its deleted rows and with the rows of its delta
+ * store.
+ */
+public class TestTableCompactor extends StorageTestCase {
+
+    private static final String TABLE_NAME = "TEST_COMPACTOR";
+
+    private StorageManager storageManager;
+
+    @Before
+    public void beforeClass() throws Exception {
+        // Other tests may leave the storage manager running.
+        try {
+            StorageManager.shutdown();
+        }
+        catch (IllegalStateException e) {
+            // It wasn't running.
+        }
+        NanoDBServer.startup();
+        storageManager = StorageManager.getInstance();
+
+        doCommand("DROP TABLE IF EXISTS " + TABLE_NAME + ";");
+        CreateTableCommand command = (CreateTableCommand)
+            NanoDBServer.parseCommand("CREATE TABLE " + TABLE_NAME +
+            " (ID INTEGER, NAME VARCHAR(20));");
+        command.setEngine("columnStore");
+        doCommand(command);
+    }
+
+    @After
+    public void afterClass() throws Exception {
+        doCommand("DROP TABLE " + TABLE_NAME + ";");
+        NanoDBServer.shutdown();
+    }
+
+    /**
+     * Compacts the rows of the delta store into row groups of the given size,
+     * then deletes and inserts rows and compacts the table again, and checks
+     * that the deleted rows are dropped and the new rows are merged.
+     */
+    @Test
+    public void testCompact() throws Exception {
+        insertRows(0, 250);
+        assert countDeltaRows() == 250;
+
+        assert compact(100) == 250;
+        assert getGroupRows().equals(Arrays.asList(100, 100, 50));
+        assert countDeltaRows() == 0;
+        assert selectIds().equals(ids(0, 250));
+
+        doCommand("DELETE FROM " + TABLE_NAME + " WHERE ID < 50;");
+        insertRows(250, 270);
+
+        assert compact(100) == 220;
+        assert getGroupRows().equals(Arrays.asList(100, 100, 20));
+        assert countDeltaRows() == 0;
+        assert selectIds().equals(ids(50, 270));
+
+        File baseDir = storageManager.getBaseDir();
+        assert !new File(baseDir,
+            DeleteBitmaps.getFileName(TABLE_NAME)).exists();
+        assert !hasTempFiles();
+    }
+
+    /**
+     * Merges small row groups into one, since the group size is larger than
+     * the table.
+     */
+    @Test
+    public void testMergeGroups() throws Exception {
+        insertRows(0, 30);
+        compact(10);
+        assert getGroupRows().equals(Arrays.asList(10, 10, 10));
+
+        assert compact(1000) == 30;
+        assert getGroupRows().equals(Arrays.asList(30));
+        assert selectIds().equals(ids(0, 30));
+    }
+
+    /**
+     * Changes the table while the compactor waits to swap in its files, and
+     * checks that the compacted files are thrown away and the table is left
+     * as it was, with the new row.
+     */
+    @Test
+    public void testDiscardChangedTable() throws Exception {
+        insertRows(0, 20);
+        compact(10);
+
+        final TableCompactor compactor = createCompactor(5);
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        Lock queryLock = ColStoreTableManager.getQueryLock().readLock();
+        Future<Integer> result;
+        queryLock.lock();
+        try {
+            result = executor.submit(new Callable<Integer>() {
+                @Override
+                public Integer call() throws IOException {
+                    return compactor.call();
+                }
+            });
+
+            // The compactor copies the rows under the read lock, then waits
+            // for the write lock to swap in the files.
+            while (!ColStoreTableManager.getQueryLock().hasQueuedThreads()) {
+                assert !result.isDone() : "The compactor finished early";
+                Thread.sleep(10);
+            }
+
+            // This thread already holds the read lock, so the insert doesn't
+            // wait behind the compactor.
+            insertRows(20, 21);
+        }
+        finally {
+            queryLock.unlock();
+            executor.shutdown();
+        }
+
+        assert result.get() == -1;
+        assert !hasTempFiles();
+        assert getGroupRows().equals(Arrays.asList(10, 10));
+        assert selectIds().equals(ids(0, 21));
+    }
+
+
+    private void doCommand(String command) throws Exception {
+        CommandResult result = NanoDBServer.doCommand(command, false);
+        if (result.failed())
+            throw result.getFailure();
+    }
+
+    private void doCommand(Command command) throws Exception {
+        CommandResult result = NanoDBServer.doCommand(command, false);
+        if (result.failed())
+            throw result.getFailure();
+    }
+
+    /** Inserts the rows with IDs from <tt>start</tt> to <tt>end</tt> - 1. */
+    private void insertRows(int start, int end) throws Exception {
+        for (int id = start; id < end; id++) {
+            doCommand("INSERT INTO " + TABLE_NAME + " VALUES (" + id +
+                ", 'row " + id + "');");
+        }
+    }
+
+    private TableCompactor createCompactor(int groupRows) throws IOException {
+        TableFileInfo tblFileInfo = storageManager.openTable(TABLE_NAME);
+        return new TableCompactor(storageManager,
+            (ColStoreTableManager) tblFileInfo.getTableManager(), tblFileInfo,
+            new int[0], groupRows, 0);
+    }
+
+    private int compact(int groupRows) throws IOException {
+        return createCompactor(groupRows).call();
+    }
+
+    private int countDeltaRows() throws IOException {
+        TableFileInfo tblFileInfo = storageManager.openTable(TABLE_NAME);
+        DeltaStore deltaStore = ((ColStoreTableManager)
+            tblFileInfo.getTableManager()).getDeltaStore(tblFileInfo);
+        int rows = 0;
+        if (deltaStore != null) {
+            for (Tuple tup = deltaStore.getFirstTuple(); tup != null;
+                 tup = deltaStore.getNextTuple(tup)) {
+                rows++;
+            }
+        }
+        storageManager.unpinAllDBPages();
+        return rows;
+    }
+
+    /** Returns the number of rows of each row group of the table. */
+    private List<Integer> getGroupRows() throws IOException {
+        TableFileInfo tblFileInfo = storageManager.openTable(TABLE_NAME);
+        DBPage header = storageManager.loadDBPage(tblFileInfo.getDBFile(), 0);
+        try {
+            List<Integer> groupRows = new ArrayList<Integer>();
+            for (int i = 0; i < CSHeaderPage.getNumGroups(header); i++)
+                groupRows.add(CSHeaderPage.getGroupRows(header, i));
+            return groupRows;
+        }
+        finally {
+            storageManager.unpinDBPage(header);
+        }
+    }
+
+    private Set<Integer> selectIds() throws Exception {
+        CommandResult result = NanoDBServer.doCommand(
+            "SELECT ID FROM " + TABLE_NAME + ";", true);
+        if (result.failed())
+            throw result.getFailure();
+
+        Set<Integer> ids = new HashSet<Integer>();
+        for (TupleLiteral tup : result.getTuples())
+            ids.add((Integer) tup.getColumnValue(0));
+        assert ids.size() == result.getTuples().size() : "Duplicate rows";
+        return ids;
+    }
+
+    private static Set<Integer> ids(int start, int end) {
+        Set<Integer> ids = new HashSet<Integer>();
+        for (int id = start; id < end; id++)
+            ids.add(id);
+        return ids;
+    }
+
+    private boolean hasTempFiles() {
+        File baseDir = storageManager.getBaseDir();
+        File[] files = baseDir.listFiles();
+        File[] columnFiles = new File(baseDir, TABLE_NAME).listFiles();
+        for (File[] dir : new File[][] { files, columnFiles }) {
+            if (dir == null)
+                continue;
+            for (File file : dir) {
+                if (file.getName().endsWith(TableCompactor.TEMP_SUFFIX))
+                    return true;
+            }
+        }
+        return false;
+    }
+}
@@ -0,0 +1,92 @@
+package edu.caltech.nanodb.storage.colstore;
+
+import java.io.IOException;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import edu.caltech.nanodb.relations.ColumnType;
+import edu.caltech.nanodb.relations.SQLDataType;
+import edu.caltech.nanodb.storage.DBFile;
+import edu.caltech.nanodb.storage.DBFileType;
+import edu.caltech.nanodb.storage.DBPage;
+import edu.caltech.nanodb.storage.FileManager;
+import edu.caltech.nanodb.storage.StorageTestCase;
+
+/**
+ * This test class exercises writing and reading the zone map of a
+ * column-store column.
+ */
+public class TestZoneMapPage extends StorageTestCase {
+
+    private final String TEST_FILE_NAME = "TestZoneMapPage_TestFile";
+
+    private FileManager fileMgr;
+
+    private DBFile dbFile;
+
+    @Before
+    public void beforeClass() throws IOException {
+        fileMgr = new FileManager(testBaseDir);
+        dbFile = fileMgr.createDBFile(TEST_FILE_NAME,
+            DBFileType.COLUMNSTORE_DATA_FILE, DBFile.MIN_PAGESIZE);
+    }
+
+    @After
+    public void afterClass() throws IOException {
+        fileMgr.deleteDBFile(dbFile);
+    }
+
+    /** Writes a zone map too large for one page, and reads it back. */
+    @Test
+    public void testZoneMapSpill() {
+        ColumnType type = new ColumnType(SQLDataType.VARCHAR);
+        type.setLength(20);
+
+        ZoneMap zoneMap = new ZoneMap();
+        for (int i = 0; i < 40; i++) {
+            zoneMap.startPage(i + 1, i * 100);
+            zoneMap.addValue(String.format("upper-%03d", i), 60);
+            zoneMap.addValue(null, 10);
+            zoneMap.addValue(String.format("lower-%03d", i), 30);
+        }
+        // A page of nulls has no min or max.
+        zoneMap.startPage(41, 4000);
+        zoneMap.addValue(null, 5);
+
+        DBPage[] pages = new DBPage[10];
+        int numPages = 0;
+        int written = 0;
+        while (written < zoneMap.size()) {
+            DBPage dbPage = new DBPage(dbFile, numPages);
+            ZoneMapPage.initNewPage(dbPage);
+            int next = ZoneMapPage.writeEntries(dbPage, zoneMap, written, type);
+            assert next > written;
+            written = next;
+            pages[numPages++] = dbPage;
+        }
+        assert numPages > 1;
+
+        ZoneMap read = new ZoneMap();
+        for (int i = 0; i < numPages; i++)
+            ZoneMapPage.readEntries(pages[i], read, type);
+        assert read.size() == 41;
+        for (int i = 0; i < 40; i++) {
+            assert read.getPageNo(i) == i + 1;
+            assert read.getCount(i) == 100;
+            assert read.getNullCount(i) == 10;
+            assert read.getMin(i).equals(String.format("lower-%03d", i));
+            assert read.getMax(i).equals(String.format("upper-%03d", i));
+        }
+        assert read.getMin(40) == null;
+        assert read.getNumRows() == 4005;
+
+        // Rows are found by binary search on the entries' row ranges.
+        assert read.findPage(0) == 0;
+        assert read.findPage(1999) == 19;
+        assert read.findPage(2000) == 20;
+        assert read.findPage(4004) == 40;
+        assert read.findPage(4005) == 41;
+    }
+}